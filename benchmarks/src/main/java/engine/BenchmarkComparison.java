@@ -0,0 +1,286 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Compares two JMH JSON results, benchmark by benchmark and parameters by parameters, and exits with 1 when one got
+// slower or allocates more by more than the threshold and by more than the error of both runs. Made with:
+//
+//   java -jar benchmarks/target/benchmarks.jar -prof gc -rf json -rff current.json [benchmarks]
+//   java -cp benchmarks/target/benchmarks.jar engine.BenchmarkComparison baseline.json current.json [percent]
+public final class BenchmarkComparison {
+
+    private static final double DEFAULT_THRESHOLD = 10;
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    // Allocations that differ by less are noise of the profiler, not objects
+    private static final double ALLOCATION_SLACK_BYTES = 16;
+
+    private BenchmarkComparison() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: BenchmarkComparison baseline.json current.json [threshold percent]");
+            System.exit(2);
+        }
+        Map<String, Result> baseline = read(Path.of(args[0]));
+        Map<String, Result> current = read(Path.of(args[1]));
+        double threshold = (args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD) / 100;
+
+        int regressions = 0;
+        System.out.printf("%-96s %14s %14s %9s %12s %12s  %s%n", "benchmark", "baseline", "current", "change",
+                "B/op before", "B/op after", "");
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result after = entry.getValue();
+            Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-96s %14s %14s %9s %12s %12s  new%n", entry.getKey(), "",
+                        format(after.score, after.unit), "", "", format(after.allocation));
+                continue;
+            }
+            List<String> verdicts = new ArrayList<>();
+            // Lower is better for times, higher for throughput
+            double change = (after.score - before.score) / before.score;
+            double worse = after.higherIsBetter ? -change : change;
+            double margin = error(before) + error(after);
+            if (worse > threshold && Math.abs(after.score - before.score) > margin) {
+                verdicts.add("SLOWER");
+            } else if (-worse > threshold && Math.abs(after.score - before.score) > margin) {
+                verdicts.add("faster");
+            }
+            if (!Double.isNaN(before.allocation) && !Double.isNaN(after.allocation)
+                    && after.allocation - before.allocation > ALLOCATION_SLACK_BYTES
+                    && after.allocation > before.allocation * (1 + threshold)) {
+                verdicts.add("ALLOCATES MORE");
+            }
+            if (verdicts.contains("SLOWER") || verdicts.contains("ALLOCATES MORE")) {
+                regressions++;
+            }
+            System.out.printf("%-96s %14s %14s %+8.1f%% %12s %12s  %s%n", entry.getKey(),
+                    format(before.score, before.unit), format(after.score, after.unit), change * 100,
+                    format(before.allocation), format(after.allocation), String.join(", ", verdicts));
+        }
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                System.out.printf("%-96s %14s %14s %9s %12s %12s  removed%n", key, "", "", "", "", "");
+            }
+        }
+
+        System.out.printf("%d regressions over %.0f%%%n", regressions, threshold * 100);
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static double error(Result result) {
+        return Double.isNaN(result.error) ? 0 : result.error;
+    }
+
+    private static String format(double score, String unit) {
+        return String.format("%.3f %s", score, unit);
+    }
+
+    private static String format(double bytes) {
+        return Double.isNaN(bytes) ? "" : String.format("%.1f", bytes);
+    }
+
+    // Results by benchmark, mode and parameters
+    @SuppressWarnings("unchecked")
+    private static Map<String, Result> read(Path path) throws IOException {
+        Map<String, Result> results = new TreeMap<>();
+        for (Object element : (List<Object>) new JsonParser(Files.readString(path)).parse()) {
+            Map<String, Object> run = (Map<String, Object>) element;
+            // The full name, classes of the same name in two packages are two benchmarks
+            StringBuilder key = new StringBuilder((String) run.get("benchmark"));
+            Map<String, Object> params = (Map<String, Object>) run.get("params");
+            if (params != null) {
+                for (Map.Entry<String, Object> param : new TreeMap<>(params).entrySet()) {
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue());
+                }
+            }
+            String mode = (String) run.get("mode");
+            key.append(" [").append(mode).append(']');
+
+            Map<String, Object> primary = (Map<String, Object>) run.get("primaryMetric");
+            Map<String, Object> secondary = (Map<String, Object>) run.get("secondaryMetrics");
+            Map<String, Object> allocation = secondary != null ? (Map<String, Object>) secondary.get(ALLOCATION) : null;
+            Result previous = results.put(key.toString(), new Result(number(primary.get("score")), number(primary.get("scoreError")),
+                    (String) primary.get("scoreUnit"), "thrpt".equals(mode),
+                    allocation != null ? number(allocation.get("score")) : Double.NaN));
+            if (previous != null) {
+                throw new IllegalArgumentException(path + " has " + key + " twice");
+            }
+        }
+        return results;
+    }
+
+    // JMH writes NaN as a string
+    private static double number(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return value != null ? Double.parseDouble(value.toString()) : Double.NaN;
+    }
+
+    private record Result(double score, double error, String unit, boolean higherIsBetter, double allocation) {}
+
+    // Enough JSON for what JMH writes: objects, arrays, strings, numbers, booleans and null
+    private static final class JsonParser {
+
+        private final String text;
+
+        private int position;
+
+        JsonParser(String text) {
+            this.text = text;
+        }
+
+        Object parse() {
+            Object value = value();
+            skipWhitespace();
+            if (position != text.length()) {
+                throw error("Trailing characters");
+            }
+            return value;
+        }
+
+        private Object value() {
+            skipWhitespace();
+            if (position >= text.length()) {
+                throw error("Unexpected end");
+            }
+            char c = text.charAt(position);
+            switch (c) {
+                case '{':
+                    return object();
+                case '[':
+                    return array();
+                case '"':
+                    return string();
+                case 't':
+                    return literal("true", Boolean.TRUE);
+                case 'f':
+                    return literal("false", Boolean.FALSE);
+                case 'n':
+                    return literal("null", null);
+                default:
+                    return number();
+            }
+        }
+
+        private Map<String, Object> object() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            position++;
+            skipWhitespace();
+            if (text.charAt(position) == '}') {
+                position++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = string();
+                skipWhitespace();
+                expect(':');
+                object.put(key, value());
+                skipWhitespace();
+                if (text.charAt(position) == ',') {
+                    position++;
+                } else {
+                    expect('}');
+                    return object;
+                }
+            }
+        }
+
+        private List<Object> array() {
+            List<Object> array = new ArrayList<>();
+            position++;
+            skipWhitespace();
+            if (text.charAt(position) == ']') {
+                position++;
+                return array;
+            }
+            while (true) {
+                array.add(value());
+                skipWhitespace();
+                if (text.charAt(position) == ',') {
+                    position++;
+                } else {
+                    expect(']');
+                    return array;
+                }
+            }
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder string = new StringBuilder();
+            while (true) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return string.toString();
+                }
+                if (c != '\\') {
+                    string.append(c);
+                    continue;
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'n' -> string.append('\n');
+                    case 't' -> string.append('\t');
+                    case 'r' -> string.append('\r');
+                    case 'b' -> string.append('\b');
+                    case 'f' -> string.append('\f');
+                    case 'u' -> {
+                        string.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                    }
+                    default -> string.append(escaped);
+                }
+            }
+        }
+
+        private Object literal(String literal, Object value) {
+            if (!text.startsWith(literal, position)) {
+                throw error("Unexpected token");
+            }
+            position += literal.length();
+            return value;
+        }
+
+        private Double number() {
+            int start = position;
+            while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            if (start == position) {
+                throw error("Unexpected character");
+            }
+            return Double.parseDouble(text.substring(start, position));
+        }
+
+        private void expect(char c) {
+            if (position >= text.length() || text.charAt(position) != c) {
+                throw error("Expected " + c);
+            }
+            position++;
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + position);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package engine;
+
+import java.util.Random;
+
+// Paces frames of random work at target rates with the frame pacer and with the sleep(1) loop GameEngine used
+// before it, and fails when the pacer's mean frame time is off the target by more than 1%. Time the deadlines
+// slipped after frames more than a frame late is left out, those are stalls of the machine the pacer cannot make
+// up for. Needs no window:
+//
+//   java -cp benchmarks/target/benchmarks.jar engine.FramePacerCheck [fps...]
+public final class FramePacerCheck {
+
+    private static final double SECONDS_PER_RATE = 3;
+
+    // Work of each frame, up to this fraction of the frame
+    private static final double MAX_WORK = 0.6;
+
+    private static final double MAX_MEAN_ERROR = 0.01;
+
+    private FramePacerCheck() {}
+
+    public static void main(String[] args) {
+        int[] rates = {60, 144, 240};
+        if (args.length > 0) {
+            rates = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                rates[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        boolean failed = false;
+        for (int fps : rates) {
+            int frames = (int) (fps * SECONDS_PER_RATE);
+
+            FramePacer pacer = new FramePacer(fps);
+            Random random = new Random(fps);
+            // Let the oversleep estimate settle before measuring
+            for (int i = 0; i < fps / 2; i++) {
+                work(random, pacer.getFrameNanos());
+                pacer.sync();
+            }
+            pacer.resetStats();
+            for (int i = 0; i < frames; i++) {
+                work(random, pacer.getFrameNanos());
+                pacer.sync();
+            }
+            FrameTimeStats paced = pacer.getStats();
+
+            FrameTimeStats slept = sleepLoop(fps, frames, new Random(fps));
+
+            System.out.printf("%d fps, target %.3f ms%n", fps, paced.getTargetNanos() / 1e6);
+            System.out.printf("  pacer          %s, %d late slipping %.3f ms, oversleep estimate %.3f ms%n", paced,
+                    pacer.getLateFrames(), pacer.getSlipNanos() / 1e6, pacer.getOversleepEstimate() / 1e6);
+            System.out.printf("  sleep(1) loop  %s%n", slept);
+            double mean = paced.getMeanNanos() - (double) pacer.getSlipNanos() / frames;
+            double error = Math.abs(mean - paced.getTargetNanos()) / paced.getTargetNanos();
+            if (error > MAX_MEAN_ERROR) {
+                System.out.printf("  mean frame time off by %.2f%%%n", error * 100);
+                failed = true;
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static void work(Random random, long frameNanos) {
+        long end = System.nanoTime() + (long) (random.nextDouble() * MAX_WORK * frameNanos);
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    // Sleeps a millisecond at a time until a frame has passed since the last loop, in double seconds
+    private static FrameTimeStats sleepLoop(int fps, int frames, Random random) {
+        FrameTimeStats stats = new FrameTimeStats(1_000_000_000L / fps);
+        Timer timer = new Timer();
+        timer.init();
+        long lastEnd = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            work(random, stats.getTargetNanos());
+            double endTime = timer.getLastLoopNanoTime() / 1_000_000_000.0 + 1f / fps;
+            while (timer.getTime() < endTime) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return stats;
+                }
+            }
+            timer.getElapsedTime();
+            long end = System.nanoTime();
+            stats.record(end - lastEnd);
+            lastEnd = end;
+        }
+        return stats;
+    }
+}
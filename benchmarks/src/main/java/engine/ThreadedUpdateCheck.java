@@ -0,0 +1,382 @@
+package engine;
+
+import engine.graph.Camera;
+import engine.graph.Material;
+import engine.graph.Mesh;
+import engine.graph.lights.DirectionalLight;
+import engine.items.GameItem;
+import org.joml.Vector3f;
+
+import java.util.Random;
+
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_SPACE;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_W;
+
+// Fails when updates on their own thread publish a state that differs from the one the same number of updates
+// reach on a single thread, or when interpolating does not start from the previous state. Then plays the window
+// thread against a running update loop, recording scripted mouse movement and keys, and fails when movement is
+// lost or counted twice, a tap is missed or seen by more than two updates, a key held while no frame is recorded
+// is dropped, or the lights a frame renders change after the update that set them. Needs no window:
+//
+//   java -cp benchmarks/target/benchmarks.jar engine.ThreadedUpdateCheck [updates]
+public final class ThreadedUpdateCheck {
+
+    private static final int NUM_ITEMS = 2000;
+
+    // Far faster than a game runs, so the check is quick and the render side falls behind
+    private static final int UPDATES_PER_SECOND = 2000;
+
+    private static final int INPUT_FRAMES = 3000;
+
+    private static final int TAPS = 20;
+
+    // Far enough from the edges that the cursor stays in the window
+    private static final double START_POS = 1000;
+
+    // Updates a key stays held with no frame recorded
+    private static final int HELD_UPDATES = 50;
+
+    private ThreadedUpdateCheck() {}
+
+    public static void main(String[] args) {
+        int updates = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int failures = checkUpdates(updates) + checkInput();
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int checkUpdates(int updates) {
+        // State after every update on this thread
+        long[] expected = new long[updates + 1];
+        SimulatedGame reference = new SimulatedGame();
+        TransformSnapshot snapshot = new TransformSnapshot();
+        snapshot.capture(0, 0, reference.getScene(), reference.getCamera());
+        expected[0] = snapshot.stateHash();
+        for (int tick = 1; tick <= updates; tick++) {
+            reference.update(1f / UPDATES_PER_SECOND, new MouseInput());
+            snapshot.capture(tick, 0, reference.getScene(), reference.getCamera());
+            expected[tick] = snapshot.stateHash();
+        }
+
+        SimulatedGame game = new SimulatedGame();
+        UpdateLoop updateLoop = new UpdateLoop(game, UPDATES_PER_SECOND);
+        SnapshotExchange exchange = updateLoop.getExchange();
+        InterpolatedScene interpolatedScene = new InterpolatedScene(game.getScene());
+        TransformSnapshot rendered = new TransformSnapshot();
+        int checked = 0;
+        int failures = 0;
+        updateLoop.start();
+        try {
+            while (true) {
+                if (!exchange.poll()) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                TransformSnapshot current = exchange.getCurrent();
+                long tick = current.getTick();
+                if (tick > updates) {
+                    break;
+                }
+                if (current.stateHash() != expected[(int) tick]) {
+                    System.out.println("Update " + tick + " differs from the single threaded one");
+                    failures++;
+                }
+                checked++;
+
+                // No way into the interval is the previous state as it was captured
+                TransformSnapshot previous = exchange.getPrevious();
+                if (previous != null) {
+                    interpolatedScene.update(previous, current, 0);
+                    rendered.capture(previous.getTick(), 0, interpolatedScene.getScene(),
+                            interpolatedScene.getCamera());
+                    if (rendered.stateHash() != previous.stateHash()) {
+                        System.out.println("Interpolating from update " + previous.getTick() + " moved the items");
+                        failures++;
+                    }
+                }
+            }
+        } finally {
+            updateLoop.stop();
+        }
+
+        System.out.printf("%d updates, %d published states checked, %d failures%n", updates, checked, failures);
+        return checked == 0 ? failures + 1 : failures;
+    }
+
+    // This thread plays the window thread: it records input as GameEngine does and renders the published states
+    private static int checkInput() {
+        InputGame game = new InputGame();
+        UpdateLoop updateLoop = new UpdateLoop(game, UPDATES_PER_SECOND);
+        SnapshotExchange exchange = updateLoop.getExchange();
+        InputExchange inputExchange = updateLoop.getInputExchange();
+        InterpolatedScene interpolatedScene = new InterpolatedScene(game.getScene());
+        MouseInput mouseInput = new MouseInput();
+        boolean[] keysDown = new boolean[org.lwjgl.glfw.GLFW.GLFW_KEY_LAST + 1];
+        KeyInput window = keyCode -> keysDown[keyCode];
+        Camera camera = new Camera();
+        int failures = 0;
+
+        // The cursor has to be in the window and have a previous position before it moves anything
+        mouseInput.cursorEntered(true);
+        mouseInput.cursorMoved(START_POS, START_POS);
+        mouseInput.input(null);
+        updateLoop.start();
+        try {
+            // Frames at their own pace, each moving the cursor, some with a tap pressed and released before the next
+            double x = START_POS;
+            double y = START_POS;
+            int taps = 0;
+            Random random = new Random(11);
+            for (int frame = 0; frame < INPUT_FRAMES; frame++) {
+                x += random.nextInt(7) - 3;
+                y += random.nextInt(5) - 2;
+                mouseInput.cursorMoved(x, y);
+                mouseInput.input(null);
+                inputExchange.record(window, mouseInput);
+                if (frame % (INPUT_FRAMES / TAPS) == INPUT_FRAMES / TAPS / 2) {
+                    taps++;
+                    failures += tap(exchange, inputExchange, window, keysDown, mouseInput, camera);
+                }
+                failures += renderFrame(exchange, interpolatedScene);
+                if (frame % 3 == 0) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+
+            // Held down while the window thread records nothing, as when a frame takes long
+            keysDown[GLFW_KEY_W] = true;
+            mouseInput.input(null);
+            inputExchange.record(window, mouseInput);
+            long pressedTick = latestTick(exchange);
+            failures += waitUpdates(exchange, HELD_UPDATES) ? 0 : 1;
+            long releasedTick = latestTick(exchange);
+            keysDown[GLFW_KEY_W] = false;
+            mouseInput.input(null);
+            inputExchange.record(window, mouseInput);
+            failures += waitUpdates(exchange, 3) ? 0 : 1;
+            failures += renderFrame(exchange, interpolatedScene);
+
+            latestCamera(exchange, camera);
+            // Rotations add up the movement of the cursor, y across and x down
+            if (camera.getRotation().x != (float) (y - START_POS)
+                    || camera.getRotation().y != (float) (x - START_POS)) {
+                System.out.printf("Updates turned by %.0f, %.0f, the cursor moved %.0f, %.0f%n",
+                        camera.getRotation().x, camera.getRotation().y, y - START_POS, x - START_POS);
+                failures++;
+            }
+            // At most one update took the input before the press and one after the release
+            long heldTicks = releasedTick - pressedTick;
+            if (camera.getPosition().z < heldTicks - 1 || camera.getPosition().z > heldTicks + 2) {
+                System.out.printf("A key held for %d updates was seen by %.0f%n", heldTicks,
+                        camera.getPosition().z);
+                failures++;
+            }
+            System.out.printf("%d frames recorded, cursor moved %.0f, %.0f, %d taps, key held for %d updates"
+                    + " and seen by %.0f, %d failures%n", INPUT_FRAMES, x - START_POS, y - START_POS, taps, heldTicks,
+                    camera.getPosition().z, failures);
+        } finally {
+            updateLoop.stop();
+        }
+        return failures;
+    }
+
+    // A press and a release recorded in two frames back to back, the cursor still. Counts once, or twice when
+    // updates ran between the two recordings, the key was down at the last recording before them
+    private static int tap(SnapshotExchange exchange, InputExchange inputExchange, KeyInput window,
+                           boolean[] keysDown, MouseInput mouseInput, Camera camera) {
+        // Updates up to here saw the taps before this one
+        float before = latestCamera(exchange, camera).getPosition().y;
+        keysDown[GLFW_KEY_SPACE] = true;
+        mouseInput.input(null);
+        inputExchange.record(window, mouseInput);
+        keysDown[GLFW_KEY_SPACE] = false;
+        mouseInput.input(null);
+        inputExchange.record(window, mouseInput);
+        if (!waitUpdates(exchange, 2)) {
+            return 1;
+        }
+        float seen = latestCamera(exchange, camera).getPosition().y - before;
+        if (seen != 1 && seen != 2) {
+            System.out.printf("A tap was seen by %.0f updates%n", seen);
+            return 1;
+        }
+        return 0;
+    }
+
+    private static Camera latestCamera(SnapshotExchange exchange, Camera camera) {
+        exchange.poll();
+        exchange.getCurrent().interpolateCamera(null, 1, camera);
+        return camera;
+    }
+
+    // Renders the newest state, and fails when its lights are not the ones of its update or change while updates go on
+    private static int renderFrame(SnapshotExchange exchange, InterpolatedScene interpolatedScene) {
+        exchange.poll();
+        TransformSnapshot current = exchange.getCurrent();
+        if (current == null) {
+            return 0;
+        }
+        interpolatedScene.update(exchange.getPrevious(), current, 1);
+        DirectionalLight light = interpolatedScene.getScene().getSceneLight().getDirectionalLight();
+        float rendered = light.getDirection().x;
+        // Other updates run while the frame would be drawn
+        Thread.yield();
+        if (rendered != current.getTick() || light.getDirection().x != rendered) {
+            System.out.printf("Update %d rendered with the light of update %.0f, then %.0f%n", current.getTick(),
+                    rendered, light.getDirection().x);
+            return 1;
+        }
+        return 0;
+    }
+
+    // Waits for a state published that many updates after the newest one now
+    private static boolean waitUpdates(SnapshotExchange exchange, int updates) {
+        long target = latestTick(exchange) + updates;
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (latestTick(exchange) < target) {
+            if (System.nanoTime() > deadline) {
+                System.out.println("Updates stopped");
+                return false;
+            }
+            Thread.onSpinWait();
+        }
+        return true;
+    }
+
+    private static long latestTick(SnapshotExchange exchange) {
+        exchange.poll();
+        return exchange.getCurrent() != null ? exchange.getCurrent().getTick() : 0;
+    }
+
+    // Items that drift and spin by amounts taken from a seeded generator, so every run is the same
+    private static final class SimulatedGame implements IGameLogic {
+
+        private final Scene scene;
+
+        private final Camera camera;
+
+        private final Random random;
+
+        private final Vector3f[] velocities;
+
+        SimulatedGame() {
+            scene = new Scene();
+            camera = new Camera();
+            random = new Random(7);
+            Mesh mesh = new Mesh(new Vector3f(-1, -1, -1), new Vector3f(1, 1, 1));
+            mesh.setMaterial(new Material());
+            velocities = new Vector3f[NUM_ITEMS];
+            for (int i = 0; i < NUM_ITEMS; i++) {
+                GameItem gameItem = new GameItem(mesh);
+                gameItem.setPosition(random.nextFloat() * 100, 0, random.nextFloat() * 100);
+                velocities[i] = new Vector3f(random.nextFloat() - 0.5f, 0, random.nextFloat() - 0.5f);
+                scene.addGameItem(gameItem);
+            }
+        }
+
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public void input(KeyInput keys, MouseInput mouseInput) {
+        }
+
+        @Override
+        public void update(float interval, MouseInput mouseInput) {
+            for (int i = 0; i < NUM_ITEMS; i++) {
+                GameItem gameItem = scene.getGameItem(i);
+                Vector3f position = gameItem.getPosition();
+                Vector3f velocity = velocities[i];
+                gameItem.setPosition(position.x + velocity.x * interval * 60, position.y,
+                        position.z + velocity.z * interval * 60);
+                Vector3f rotation = gameItem.getRotation();
+                gameItem.setRotation(rotation.x, (rotation.y + random.nextFloat() * 10) % 360, rotation.z);
+            }
+            camera.movePosition(0, 0, -interval);
+            camera.moveRotation(0, interval * 30, 0);
+        }
+
+        @Override
+        public void render(Window window) {
+        }
+
+        @Override
+        public Scene getScene() {
+            return scene;
+        }
+
+        @Override
+        public Camera getCamera() {
+            return camera;
+        }
+
+        @Override
+        public void cleanup() {
+        }
+    }
+
+    // Keeps its input in the camera: turned by the mouse, raised once for each update that sees the tap key and
+    // moved forward for each one that sees the held key. The light points along x as far as the update count
+    private static final class InputGame implements IGameLogic {
+
+        private final Scene scene;
+
+        private final Camera camera;
+
+        private long tick;
+
+        private boolean tapped;
+
+        private boolean held;
+
+        InputGame() {
+            scene = new Scene();
+            camera = new Camera();
+            SceneLight sceneLight = new SceneLight();
+            sceneLight.setAmbientLight(new Vector3f(0.3f, 0.3f, 0.3f));
+            sceneLight.setDirectionalLight(new DirectionalLight(new Vector3f(1, 1, 1), new Vector3f(), 1));
+            scene.setSceneLight(sceneLight);
+        }
+
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public void input(KeyInput keys, MouseInput mouseInput) {
+            tapped = keys.isKeyPressed(GLFW_KEY_SPACE);
+            held = keys.isKeyPressed(GLFW_KEY_W);
+        }
+
+        @Override
+        public void update(float interval, MouseInput mouseInput) {
+            tick++;
+            camera.moveRotation(mouseInput.getDisplVec().x, mouseInput.getDisplVec().y, 0);
+            Vector3f position = camera.getPosition();
+            camera.setPosition(position.x, position.y + (tapped ? 1 : 0), position.z + (held ? 1 : 0));
+            scene.getSceneLight().getDirectionalLight().getDirection().x = tick;
+        }
+
+        @Override
+        public void render(Window window) {
+        }
+
+        @Override
+        public Scene getScene() {
+            return scene;
+        }
+
+        @Override
+        public Camera getCamera() {
+            return camera;
+        }
+
+        @Override
+        public void cleanup() {
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package engine.graph;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+// One camera move of the input handling, forward and sideways at once as with two keys held
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CameraBenchmark {
+
+    private Camera camera;
+
+    private float step;
+
+    @Setup
+    public void setup() {
+        camera = new Camera();
+        step = 0.05f;
+    }
+
+    @Benchmark
+    public Camera movePosition() {
+        // Turning keeps the angle from settling into a value the JIT could fold
+        camera.moveRotation(0, 0.1f, 0);
+        camera.movePosition(step, 0, -step);
+        return camera;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CameraBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
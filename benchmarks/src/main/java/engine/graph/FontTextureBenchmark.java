@@ -0,0 +1,44 @@
+package engine.graph;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.*;
+import java.util.concurrent.TimeUnit;
+
+// Building the atlas of the HUD font, everything FontTexture does before the texture upload
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FontTextureBenchmark {
+
+    @Param({"US-ASCII", "ISO-8859-1"})
+    public String charSetName;
+
+    private Font font;
+
+    @Setup
+    public void setup() {
+        font = new Font("Arial", Font.BOLD, 48);
+    }
+
+    @Benchmark
+    public FontTexture.Atlas buildAtlas() throws Exception {
+        return FontTexture.buildAtlas(font, charSetName);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(FontTextureBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,59 @@
+package engine.graph;
+
+import engine.SceneLight;
+import engine.graph.weather.Fog;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+// Fails when preparing the per frame uniform data allocates once warmed up, so it can gate a build:
+//
+//   java -cp benchmarks/target/benchmarks.jar engine.graph.FrameAllocationCheck [lights]
+public final class FrameAllocationCheck {
+
+    private static final int WARMUP_FRAMES = 50_000;
+
+    private static final int MEASURED_FRAMES = 10_000;
+
+    private FrameAllocationCheck() {}
+
+    public static void main(String[] args) {
+        int lightCount = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        FrameDataWriter writer = new FrameDataWriter(lightCount, lightCount);
+        ByteBuffer frame = ByteBuffer.allocateDirect(FrameDataWriter.FRAME_DATA_SIZE).order(ByteOrder.nativeOrder());
+        ByteBuffer lights = ByteBuffer.allocateDirect(FrameDataWriter.lightDataSize(lightCount, lightCount))
+                .order(ByteOrder.nativeOrder());
+        Matrix4f projectionMatrix = new Matrix4f().setPerspective((float) Math.toRadians(60), 16f / 9f, 0.01f, 1000f);
+        Matrix4f viewMatrix = new Matrix4f();
+        SceneLight sceneLight = FrameDataWriterBenchmark.createSceneLight(lightCount, new Random(42));
+        Fog fog = new Fog(true, new Vector3f(0.5f, 0.5f, 0.5f), 0.05f);
+
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            viewMatrix.identity().rotateY(i * 0.001f);
+            writer.write(frame, lights, projectionMatrix, viewMatrix, sceneLight, fog, 10f);
+        }
+
+        // What reading the counter costs, so it is not blamed on the frames
+        long overhead = -threadBean.getCurrentThreadAllocatedBytes() + threadBean.getCurrentThreadAllocatedBytes();
+        long start = threadBean.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            viewMatrix.identity().rotateY(i * 0.001f);
+            writer.write(frame, lights, projectionMatrix, viewMatrix, sceneLight, fog, 10f);
+        }
+        long allocated = threadBean.getCurrentThreadAllocatedBytes() - start - overhead;
+
+        double perFrame = (double) allocated / MEASURED_FRAMES;
+        System.out.printf("%d point and %d spot lights: %.2f bytes allocated per frame%n", lightCount, lightCount,
+                perFrame);
+        if (allocated > 0) {
+            System.exit(1);
+        }
+    }
+}
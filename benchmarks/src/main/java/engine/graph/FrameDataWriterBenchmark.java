@@ -0,0 +1,139 @@
+package engine.graph;
+
+import engine.SceneLight;
+import engine.graph.lights.DirectionalLight;
+import engine.graph.lights.PointLight;
+import engine.graph.lights.SpotLight;
+import engine.graph.weather.Fog;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Cost of preparing the lights of one frame, against copying every light to move it to view coordinates as the
+// renderer used to do. Run through main to also get the bytes allocated per frame
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameDataWriterBenchmark {
+
+    @Param({"8", "64", "256"})
+    public int lightCount;
+
+    private FrameDataWriter writer;
+
+    private ByteBuffer frame;
+
+    private ByteBuffer lights;
+
+    private Matrix4f projectionMatrix;
+
+    private Matrix4f viewMatrix;
+
+    private SceneLight sceneLight;
+
+    private Fog fog;
+
+    @Setup
+    public void setup() {
+        writer = new FrameDataWriter(lightCount, lightCount);
+        frame = ByteBuffer.allocateDirect(FrameDataWriter.FRAME_DATA_SIZE).order(ByteOrder.nativeOrder());
+        lights = ByteBuffer.allocateDirect(FrameDataWriter.lightDataSize(lightCount, lightCount))
+                .order(ByteOrder.nativeOrder());
+        projectionMatrix = new Matrix4f().setPerspective((float) Math.toRadians(60), 16f / 9f, 0.01f, 1000f);
+        viewMatrix = new Matrix4f().lookAt(0, 5, 10, 0, 0, 0, 0, 1, 0);
+        sceneLight = createSceneLight(lightCount, new Random(42));
+        fog = new Fog(true, new Vector3f(0.5f, 0.5f, 0.5f), 0.05f);
+    }
+
+    static SceneLight createSceneLight(int lightCount, Random random) {
+        SceneLight sceneLight = new SceneLight();
+        sceneLight.setAmbientLight(new Vector3f(0.3f, 0.3f, 0.3f));
+        PointLight[] pointLights = new PointLight[lightCount];
+        SpotLight[] spotLights = new SpotLight[lightCount];
+        for (int i = 0; i < lightCount; i++) {
+            Vector3f position = new Vector3f(random.nextFloat() * 100, random.nextFloat() * 10, random.nextFloat() * 100);
+            pointLights[i] = new PointLight(new Vector3f(1, 1, 1), position, 1.0f,
+                    new PointLight.Attenuation(0, 0, 1));
+            PointLight spotPointLight = new PointLight(new Vector3f(1, 1, 1), new Vector3f(position), 1.0f,
+                    new PointLight.Attenuation(0, 0, 0.02f));
+            spotLights[i] = new SpotLight(spotPointLight, new Vector3f(0, -1, 0), 140);
+        }
+        sceneLight.setPointLightList(pointLights);
+        sceneLight.setSpotLightList(spotLights);
+        sceneLight.setDirectionalLight(new DirectionalLight(new Vector3f(1, 1, 1), new Vector3f(0, 1, 1), 1.0f));
+        return sceneLight;
+    }
+
+    @Benchmark
+    public ByteBuffer write() {
+        writer.write(frame, lights, projectionMatrix, viewMatrix, sceneLight, fog, 10f);
+        return lights;
+    }
+
+    // What renderLights did before, per light copies and temporary vectors, written with the same layout
+    @Benchmark
+    public ByteBuffer writeCopyingLights() {
+        PointLight[] pointLightList = sceneLight.getPointLightList();
+        for (int i = 0; i < pointLightList.length; i++) {
+            PointLight currPointLight = new PointLight(pointLightList[i]);
+            Vector3f lightPos = currPointLight.getPosition();
+            Vector4f aux = new Vector4f(lightPos, 1);
+            aux.mul(viewMatrix);
+            lightPos.set(aux.x, aux.y, aux.z);
+            putPointLight(i * 48, currPointLight);
+        }
+        SpotLight[] spotLightList = sceneLight.getSpotLightList();
+        int spotLightsOffset = pointLightList.length * 48;
+        for (int i = 0; i < spotLightList.length; i++) {
+            SpotLight currSpotLight = new SpotLight(spotLightList[i]);
+            Vector4f spotLightDir = new Vector4f(currSpotLight.getConeDirection(), 0);
+            spotLightDir.mul(viewMatrix);
+            currSpotLight.setConeDirection(new Vector3f(spotLightDir.x, spotLightDir.y, spotLightDir.z));
+            Vector3f spotLightPos = currSpotLight.getPointLight().getPosition();
+            Vector4f auxSpot = new Vector4f(spotLightPos, 1);
+            auxSpot.mul(viewMatrix);
+            spotLightPos.set(auxSpot.x, auxSpot.y, auxSpot.z);
+            int offset = spotLightsOffset + i * 64;
+            putPointLight(offset, currSpotLight.getPointLight());
+            currSpotLight.getConeDirection().get(offset + 48, lights);
+            lights.putFloat(offset + 60, currSpotLight.getCutOff());
+        }
+        DirectionalLight currDirLight = new DirectionalLight(sceneLight.getDirectionalLight());
+        Vector4f dirLightDir = new Vector4f(currDirLight.getDirection(), 0);
+        dirLightDir.mul(viewMatrix);
+        currDirLight.setDirection(new Vector3f(dirLightDir.x, dirLightDir.y, dirLightDir.z));
+        currDirLight.getDirection().get(192, frame);
+        return lights;
+    }
+
+    private void putPointLight(int offset, PointLight pointLight) {
+        pointLight.getColor().get(offset, lights);
+        pointLight.getPosition().get(offset + 16, lights);
+        lights.putFloat(offset + 28, pointLight.getIntensity());
+        lights.putFloat(offset + 32, pointLight.getAttenuation().getConstant());
+        lights.putFloat(offset + 36, pointLight.getAttenuation().getLinear());
+        lights.putFloat(offset + 40, pointLight.getAttenuation().getExponent());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(FrameDataWriterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
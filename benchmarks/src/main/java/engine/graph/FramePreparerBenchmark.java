@@ -0,0 +1,96 @@
+package engine.graph;
+
+import engine.Scene;
+import engine.items.GameItem;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Culling, building the matrices and sorting the draws of a large scene, on the calling thread and on the
+// common pool. Meshes only have their bounds, no OpenGL context is needed
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FramePreparerBenchmark {
+
+    private static final float WORLD_SIZE = 400f;
+
+    private static final int NUM_MESHES = 64;
+
+    @Param({"10000", "100000"})
+    public int itemCount;
+
+    // 0 takes every available processor
+    @Param({"1", "0"})
+    public int parallelism;
+
+    @Param({"true", "false"})
+    public boolean instanced;
+
+    private Scene scene;
+
+    private FramePreparer preparer;
+
+    private Matrix4f projectionMatrix;
+
+    private Matrix4f viewMatrix;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(11);
+        Mesh[] meshes = new Mesh[NUM_MESHES];
+        for (int i = 0; i < NUM_MESHES; i++) {
+            meshes[i] = new Mesh(new Vector3f(-1, -1, -1), new Vector3f(1, 1, 1));
+            // One mesh in eight blended
+            Vector4f color = new Vector4f(1, 1, 1, i % 8 == 0 ? 0.5f : 1);
+            meshes[i].setMaterial(new Material(color, 0));
+        }
+        scene = new Scene();
+        for (int i = 0; i < itemCount; i++) {
+            GameItem gameItem = new GameItem(meshes[random.nextInt(NUM_MESHES)]);
+            gameItem.setPosition((random.nextFloat() - 0.5f) * WORLD_SIZE, random.nextFloat() * 20,
+                    (random.nextFloat() - 0.5f) * WORLD_SIZE);
+            gameItem.setRotation(0, random.nextFloat() * 360, 0);
+            gameItem.setScale(0.5f + random.nextFloat());
+            scene.addGameItem(gameItem);
+        }
+
+        preparer = new FramePreparer(0);
+        preparer.setParallelism(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        preparer.setInstancedRendering(instanced);
+        // Looking down the world from its middle, about a quarter of the items are in view
+        projectionMatrix = new Matrix4f().setPerspective((float) Math.toRadians(60), 16f / 9f, 0.01f, 1000f);
+        viewMatrix = new Matrix4f().rotateX((float) Math.toRadians(20)).translate(0, -30, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        preparer.cleanup();
+    }
+
+    @Benchmark
+    public int prepare() {
+        preparer.prepare(scene, projectionMatrix, viewMatrix, 1000f);
+        return preparer.getQueue().size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(FramePreparerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,320 @@
+package engine.graph;
+
+import com.sun.management.ThreadMXBean;
+import engine.IHud;
+import engine.Scene;
+import engine.SceneLight;
+import engine.Window;
+import engine.graph.lights.DirectionalLight;
+import engine.items.GameItem;
+import engine.items.SkyBox;
+import engine.items.Terrain;
+import game.Hud;
+import org.joml.Vector3f;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL33.*;
+
+// Renders scripted scenes through Renderer.render in an invisible window for a fixed number of frames and prints
+// frame time percentiles, what each frame drew and what the render thread allocated. With no GPU, Mesa renders
+// on the CPU, under a virtual display on machines without one. Needs the natives of the platform:
+//
+//   mvn -Dlwjgl.natives=natives-linux install
+//   LIBGL_ALWAYS_SOFTWARE=1 xvfb-run -s "-screen 0 1280x720x24" \
+//       java -cp benchmarks/target/benchmarks.jar engine.graph.HeadlessRenderBenchmark [frames] [scene...]
+public final class HeadlessRenderBenchmark {
+
+    private static final int WIDTH = 1280;
+
+    private static final int HEIGHT = 720;
+
+    private static final int WARMUP_FRAMES = 60;
+
+    // Cubes of the mixed scene
+    private static final int MIXED_CUBES = 4096;
+
+    private static final float BLOCK_SCALE = 0.5f;
+
+    private static final float BLOCK_SPACING = 1.5f;
+
+    // Cube scenes drawn one by one and instanced, then the other scenes
+    private static final String[] SCENES = {"cubes-1k", "cubes-1k-instanced", "cubes-10k", "cubes-10k-instanced",
+            "cubes-100k", "cubes-100k-instanced", "terrain", "hud", "mixed"};
+
+    private HeadlessRenderBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        // The HUD font is drawn with AWT, which must not look for a display of its own
+        System.setProperty("java.awt.headless", "true");
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+        String[] names = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : SCENES;
+
+        Window window = new Window("HEADLESS RENDER BENCHMARK", WIDTH, HEIGHT, false, false);
+        window.init();
+        System.out.println(glGetString(GL_RENDERER) + ", OpenGL " + glGetString(GL_VERSION));
+        Renderer renderer = new Renderer();
+        Assets assets = null;
+        try {
+            renderer.init();
+            assets = new Assets(window);
+            System.out.printf("%-16s %8s %8s %8s %8s %8s %10s %9s %9s %10s %10s %4s%n", "scene", "frames",
+                    "p50 ms", "p95 ms", "p99 ms", "max ms", "draws", "triangles", "uniforms", "KB/frame",
+                    "MB/s", "gcs");
+            for (String name : names) {
+                ScriptedScene scene = assets.scene(name);
+                renderer.setInstancedRendering(scene.instanced);
+                run(window, renderer, scene, WARMUP_FRAMES);
+                Result result = run(window, renderer, scene, frames);
+                result.print(name);
+            }
+        } finally {
+            if (assets != null) {
+                assets.cleanup();
+            }
+            renderer.cleanup();
+            window.cleanup();
+        }
+    }
+
+    private static Result run(Window window, Renderer renderer, ScriptedScene scene, int frames) {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Result result = new Result(frames);
+        long gcs = gcCount();
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            long frameStart = System.nanoTime();
+            scene.animate(frame);
+            renderer.render(window, scene.camera, scene.scene, scene.hud);
+            // Wait for the GPU so frames include the work they submitted and not only the CPU side
+            glFinish();
+            window.update();
+            result.frameNanos[frame] = System.nanoTime() - frameStart;
+            result.drawCalls += renderer.getDrawCalls();
+            result.triangles += renderer.getTriangles();
+            result.uniformUploads += renderer.getUniformUploads();
+        }
+        result.totalNanos = System.nanoTime() - start;
+        result.allocatedBytes = threads.getCurrentThreadAllocatedBytes() - allocated;
+        result.gcs = gcCount() - gcs;
+        return result;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static final class Result {
+
+        private final long[] frameNanos;
+
+        private long totalNanos;
+
+        private long drawCalls;
+
+        private long triangles;
+
+        private long uniformUploads;
+
+        private long allocatedBytes;
+
+        private long gcs;
+
+        Result(int frames) {
+            frameNanos = new long[frames];
+        }
+
+        void print(String name) {
+            int frames = frameNanos.length;
+            long[] sorted = frameNanos.clone();
+            Arrays.sort(sorted);
+            System.out.printf("%-16s %8d %8.3f %8.3f %8.3f %8.3f %10d %9d %9d %10.1f %10.1f %4d%n", name, frames,
+                    percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                    sorted[frames - 1] / 1e6, drawCalls / frames, triangles / frames, uniformUploads / frames,
+                    allocatedBytes / 1024.0 / frames, allocatedBytes / 1e6 / (totalNanos / 1e9), gcs);
+        }
+
+        // Nearest rank, in milliseconds
+        private static double percentile(long[] sorted, double fraction) {
+            int rank = (int) Math.ceil(fraction * sorted.length);
+            return sorted[Math.max(0, rank - 1)] / 1e6;
+        }
+    }
+
+    // A scene, its HUD and a camera moved the same way every run
+    private static class ScriptedScene {
+
+        final Scene scene;
+
+        final Camera camera;
+
+        final boolean instanced;
+
+        IHud hud;
+
+        // Its text changes every frame and its compass turns
+        Hud statusHud;
+
+        ScriptedScene(Scene scene, boolean instanced) {
+            this.scene = scene;
+            this.camera = new Camera();
+            this.instanced = instanced;
+            this.hud = () -> new GameItem[0];
+        }
+
+        // Orbits the origin once every ten seconds at 60 frames per second
+        void animate(int frame) {
+            float angle = (float) (frame * 2 * Math.PI / 600);
+            float radius = orbitRadius();
+            camera.setPosition((float) Math.sin(angle) * radius, orbitHeight(), (float) Math.cos(angle) * radius);
+            camera.setRotation(15, (float) -Math.toDegrees(angle), 0);
+            if (statusHud != null) {
+                statusHud.setStatusText("frame " + frame);
+                statusHud.rotateCompass(frame % 360);
+            }
+        }
+
+        float orbitRadius() {
+            return 40;
+        }
+
+        float orbitHeight() {
+            return 12;
+        }
+    }
+
+    // Loaded once and shared by every scene that uses them
+    private static final class Assets {
+
+        private final Mesh cube;
+
+        private final Terrain terrain;
+
+        private final SkyBox skyBox;
+
+        private final Hud statusHud;
+
+        private final List<Mesh> meshes;
+
+        Assets(Window window) throws Exception {
+            meshes = new ArrayList<>();
+            cube = OBJLoader.loadMesh("assets/models/cube.obj");
+            cube.setMaterial(new Material(new Texture("assets/textures/block.png"), 0.5f));
+            meshes.add(cube);
+            terrain = new Terrain(3, 10, -0.1f, 0.1f, "assets/textures/heightmap.png", "assets/textures/terrain.png",
+                    40);
+            meshes.add(terrain.getGameItems()[0].getMesh());
+            skyBox = new SkyBox("assets/models/skybox.obj", "assets/textures/skybox.png");
+            skyBox.setScale(50.0f);
+            meshes.add(skyBox.getMesh());
+            statusHud = new Hud("0");
+            statusHud.updateSize(window);
+        }
+
+        ScriptedScene scene(String name) {
+            if (name.startsWith("cubes-")) {
+                // cubes-<count>k, then -instanced
+                String[] parts = name.split("-");
+                int count = Integer.parseInt(parts[1].substring(0, parts[1].length() - 1)) * 1000;
+                return cubes(count, parts.length > 2 && parts[2].equals("instanced"));
+            }
+            switch (name) {
+                case "terrain":
+                    return terrain();
+                case "hud":
+                    return hud(new ScriptedScene(litScene(), false));
+                case "mixed":
+                    ScriptedScene mixed = cubes(MIXED_CUBES, true);
+                    addTerrain(mixed.scene);
+                    mixed.scene.setSkyBox(skyBox);
+                    return hud(mixed);
+                default:
+                    throw new IllegalArgumentException("No scene " + name + ", scenes are "
+                            + String.join(", ", SCENES));
+            }
+        }
+
+        // A cube of cubes around the origin, orbited from outside
+        private ScriptedScene cubes(int count, boolean instanced) {
+            Scene scene = litScene();
+            int side = (int) Math.ceil(Math.cbrt(count));
+            float offset = (side - 1) * BLOCK_SPACING / 2;
+            for (int i = 0; i < count; i++) {
+                GameItem gameItem = new GameItem(cube);
+                gameItem.setScale(BLOCK_SCALE);
+                gameItem.setPosition(i % side * BLOCK_SPACING - offset, i / side % side * BLOCK_SPACING - offset,
+                        i / (side * side) * BLOCK_SPACING - offset);
+                scene.addGameItem(gameItem);
+            }
+            float radius = Math.max(40, offset * 3);
+            return new ScriptedScene(scene, instanced) {
+                @Override
+                float orbitRadius() {
+                    return radius;
+                }
+            };
+        }
+
+        // Close over the ground, under the sky box
+        private ScriptedScene terrain() {
+            Scene scene = litScene();
+            addTerrain(scene);
+            scene.setSkyBox(skyBox);
+            return new ScriptedScene(scene, false) {
+                @Override
+                float orbitRadius() {
+                    return 8;
+                }
+
+                @Override
+                float orbitHeight() {
+                    return 2;
+                }
+            };
+        }
+
+        // Items of their own sharing the terrain meshes, an item belongs to one scene only
+        private void addTerrain(Scene scene) {
+            for (GameItem block : terrain.getGameItems()) {
+                GameItem gameItem = new GameItem(block.getMesh());
+                Vector3f position = block.getPosition();
+                Vector3f rotation = block.getRotation();
+                gameItem.setPosition(position.x, position.y, position.z);
+                gameItem.setRotation(rotation.x, rotation.y, rotation.z);
+                gameItem.setScale(block.getScale());
+                scene.addGameItem(gameItem);
+            }
+        }
+
+        private ScriptedScene hud(ScriptedScene scene) {
+            scene.hud = statusHud;
+            scene.statusHud = statusHud;
+            return scene;
+        }
+
+        private static Scene litScene() {
+            Scene scene = new Scene();
+            SceneLight sceneLight = new SceneLight();
+            sceneLight.setAmbientLight(new Vector3f(0.3f, 0.3f, 0.3f));
+            sceneLight.setDirectionalLight(new DirectionalLight(new Vector3f(1, 1, 1), new Vector3f(0, 1, 1), 1.0f));
+            scene.setSceneLight(sceneLight);
+            return scene;
+        }
+
+        void cleanup() {
+            statusHud.cleanup();
+            for (Mesh mesh : meshes) {
+                mesh.cleanUp();
+            }
+        }
+    }
+}
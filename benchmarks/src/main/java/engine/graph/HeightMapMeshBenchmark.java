@@ -0,0 +1,65 @@
+package engine.graph;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Build time of the height map vertices, run through main to also get the allocation rate
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class HeightMapMeshBenchmark {
+
+    @Param({"256", "512", "1024", "2048"})
+    public int size;
+
+    private ByteBuffer heightMap;
+
+    private float[] heights;
+
+    private float[] positions;
+
+    @Setup
+    public void setup() {
+        // RGBA pixels like the ones decoded by Images
+        byte[] pixels = new byte[size * size * 4];
+        new Random(42).nextBytes(pixels);
+        heightMap = ByteBuffer.wrap(pixels);
+        heights = new float[size * size];
+        positions = HeightMapMesh.buildMeshData(heightMap, size, size, -0.1f, 0.1f, 40, heights).positions;
+    }
+
+    @Benchmark
+    public MeshData buildMeshData() {
+        return HeightMapMesh.buildMeshData(heightMap, size, size, -0.1f, 0.1f, 40, heights);
+    }
+
+    @Benchmark
+    public float[] calcNormalsSerial() {
+        return HeightMapMesh.calcNormals(positions, size, size);
+    }
+
+    @Benchmark
+    public float[] calcNormalsParallel() {
+        return HeightMapMesh.calcNormals(positions, size, size, ForkJoinPool.commonPool());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(HeightMapMeshBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,67 @@
+package engine.graph;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Builds a random height map of odd size on one thread and in pools of several sizes, and exits with 1 when the
+// normals or any other vertex data of the parallel builds differ from the serial one by a single bit:
+//
+//   java -cp benchmarks/target/benchmarks.jar engine.graph.HeightMapNormalsCheck [width] [height]
+public final class HeightMapNormalsCheck {
+
+    private static final int[] POOL_SIZES = {1, 2, 3, 7, 16};
+
+    private HeightMapNormalsCheck() {}
+
+    public static void main(String[] args) {
+        // Odd and not a multiple of the rows a task takes, so the split leaves uneven ranges
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 301;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 517;
+        // RGBA pixels like the ones decoded by Images
+        byte[] pixels = new byte[width * height * 4];
+        new Random(5).nextBytes(pixels);
+        ByteBuffer heightMap = ByteBuffer.wrap(pixels);
+
+        MeshData serial = HeightMapMesh.buildMeshData(heightMap, width, height, -0.1f, 0.1f, 40,
+                new float[width * height]);
+        int failures = 0;
+        for (int poolSize : POOL_SIZES) {
+            ForkJoinPool pool = new ForkJoinPool(poolSize);
+            try {
+                float[] normals = HeightMapMesh.calcNormals(serial.positions, width, height, pool);
+                failures += compare("normals in a pool of " + poolSize, serial.normals, normals);
+                MeshData parallel = HeightMapMesh.buildMeshData(heightMap, width, height, -0.1f, 0.1f, 40,
+                        new float[width * height], pool);
+                failures += compare("positions built in a pool of " + poolSize, serial.positions,
+                        parallel.positions);
+                failures += compare("texture coordinates built in a pool of " + poolSize, serial.textCoords,
+                        parallel.textCoords);
+                failures += compare("normals built in a pool of " + poolSize, serial.normals, parallel.normals);
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        System.out.printf("%dx%d height map, %d pool sizes, %d failures%n", width, height, POOL_SIZES.length,
+                failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Raw bits, so a NaN or a zero of the other sign is a difference too
+    private static int compare(String what, float[] expected, float[] actual) {
+        if (expected.length != actual.length) {
+            System.out.printf("%d %s, expected %d%n", actual.length, what, expected.length);
+            return 1;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (Float.floatToRawIntBits(expected[i]) != Float.floatToRawIntBits(actual[i])) {
+                System.out.printf("%s differ at %d: %s instead of %s%n", what, i, actual[i], expected[i]);
+                return 1;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,293 @@
+package engine.graph;
+
+import engine.items.GameItem;
+import engine.items.TextItem;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import java.awt.Font;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Batches a HUD of labels in two fonts and flat colored meshes the way Renderer does every frame, checks the groups
+// and the vertices against transforming them one by one, and fails when a frame with nothing changed writes a
+// vertex, a changed label rewrites more than the characters from the first to the last that changed, or a warmed
+// up frame allocates. Measures frames where one label changes, like a frame counter. Prints the draws of drawing
+// each item on its own and of the batch:
+//
+//   java -Djava.awt.headless=true -cp benchmarks/target/benchmarks.jar engine.graph.HudBatchCheck [labels]
+public final class HudBatchCheck {
+
+    private static final int WARMUP_FRAMES = 20_000;
+
+    private static final int MEASURED_FRAMES = 5_000;
+
+    private static final int WIDTH = 1280;
+
+    private static final int HEIGHT = 720;
+
+    private static final float EPSILON = 1e-5f;
+
+    private HudBatchCheck() {}
+
+    public static void main(String[] args) throws Exception {
+        int labelCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        FontTexture.Atlas atlas = FontTexture.buildAtlas(new Font("Monospaced", Font.PLAIN, 20), "ISO-8859-1");
+        // Texture ids are never bound here, they only tell the atlases apart
+        FontTexture[] fonts = {
+                new FontTexture(atlas, new Texture(1, atlas.width(), atlas.height())),
+                new FontTexture(atlas, new Texture(2, atlas.width(), atlas.height()))
+        };
+
+        TextItem[] labels = new TextItem[labelCount];
+        for (int i = 0; i < labelCount; i++) {
+            labels[i] = new TextItem("label " + i, fonts[i % fonts.length]);
+            labels[i].setPosition(i % 10 * 120, i / 10 * 24 % HEIGHT, 0);
+        }
+        // A triangle like the compass, flat colored, scaled and turned
+        MeshData triangle = new MeshData(new float[]{0, -0.5f, 0, 0.25f, 0.5f, 0, -0.25f, 0.5f, 0}, new float[0],
+                new float[0], new int[]{0, 1, 2});
+        GameItem[] shapes = new GameItem[labelCount / 10];
+        for (int i = 0; i < shapes.length; i++) {
+            Mesh mesh = new Mesh(new Vector3f(-0.25f, -0.5f, 0), new Vector3f(0.25f, 0.5f, 0));
+            mesh.setMeshData(triangle);
+            mesh.setMaterial(new Material(new Vector4f(0, 0, 0, 1), 0));
+            shapes[i] = new GameItem(mesh);
+            shapes[i].setScale(40);
+            shapes[i].setPosition(WIDTH - 50, 50 + i * 60, 0);
+            shapes[i].setRotation(0, 0, i * 15);
+        }
+
+        Transformation transformation = new Transformation();
+        Matrix4f ortho = transformation.getOrthoProjectionMatrix(0, WIDTH, HEIGHT, 0);
+        HudBatch batch = new HudBatch();
+        for (int frame = 0; frame < WARMUP_FRAMES; frame++) {
+            batchFrame(batch, transformation, ortho, labels, shapes);
+        }
+
+        boolean failed = false;
+        int expectedGroups = shapes.length > 0 ? 3 : 2;
+        if (batch.getGroupCount() != expectedGroups) {
+            System.out.printf("%d groups, expected %d%n", batch.getGroupCount(), expectedGroups);
+            failed = true;
+        }
+        failed |= !verifyLabel(batch, transformation, ortho, labels[labelCount - 1]);
+        if (shapes.length > 0) {
+            failed |= !verifyShape(batch, transformation, ortho, shapes[shapes.length - 1], triangle);
+        }
+        failed |= !verifyWritten(batch, 0, "A frame with nothing changed");
+
+        // Same length, the last character differs
+        TextItem label = labels[labelCount - 1];
+        label.setText(label.getText().substring(0, label.getText().length() - 1) + "X");
+        batchFrame(batch, transformation, ortho, labels, shapes);
+        failed |= !verifyWritten(batch, TextItem.VERTICES_PER_CHAR, "Changing a character");
+        failed |= !verifyLabel(batch, transformation, ortho, label);
+        // Shorter, the characters left are drawn as nothing
+        label.setText("short");
+        batchFrame(batch, transformation, ortho, labels, shapes);
+        failed |= !verifyLabel(batch, transformation, ortho, label);
+        // A longer text than the label was made with is laid out again and grows its quads
+        label.setText("a label that got longer " + labelCount);
+        batchFrame(batch, transformation, ortho, labels, shapes);
+        failed |= !verifyLabel(batch, transformation, ortho, label);
+        // Moved, only the label is written again
+        label.setPosition(label.getPosition().x + 3, label.getPosition().y, 0);
+        batchFrame(batch, transformation, ortho, labels, shapes);
+        failed |= !verifyWritten(batch, label.getQuadCapacity(), "Moving a label");
+        failed |= !verifyLabel(batch, transformation, ortho, label);
+        // A frame without the first label moves the ones after it in the vertices, and the next frame back
+        batchFrame(batch, transformation, ortho, Arrays.copyOfRange(labels, 1, labelCount), shapes);
+        failed |= !verifyLabel(batch, transformation, ortho, label);
+        batchFrame(batch, transformation, ortho, labels, shapes);
+        failed |= !verifyLabel(batch, transformation, ortho, label);
+
+        // Counter texts made up front so the frames allocate nothing of their own
+        String[] counters = new String[100];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = "FPS " + (100 + i);
+        }
+        TextItem counter = labels[0];
+        counter.setText(counters[0]);
+        for (int frame = 0; frame < WARMUP_FRAMES; frame++) {
+            counter.setText(counters[frame % counters.length]);
+            batchFrame(batch, transformation, ortho, labels, shapes);
+        }
+
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        // What reading the counter costs, so it is not blamed on the frames
+        long overhead = -threadBean.getCurrentThreadAllocatedBytes() + threadBean.getCurrentThreadAllocatedBytes();
+        long start = threadBean.getCurrentThreadAllocatedBytes();
+        long startNanos = System.nanoTime();
+        long written = 0;
+        for (int frame = 0; frame < MEASURED_FRAMES; frame++) {
+            counter.setText(counters[frame % counters.length]);
+            batchFrame(batch, transformation, ortho, labels, shapes);
+            written += batch.getWrittenVertexCount();
+        }
+        long nanos = System.nanoTime() - startNanos;
+        long allocated = threadBean.getCurrentThreadAllocatedBytes() - start - overhead;
+
+        int items = labelCount + shapes.length;
+        System.out.printf("%d items: %d draws one by one, %d batched, %d vertices of which %.1f written, %.1f us and"
+                        + " %.2f bytes allocated per frame%n", items, items, batch.getGroupCount(),
+                batch.getTotalVertexCount(), (double) written / MEASURED_FRAMES, nanos / 1e3 / MEASURED_FRAMES,
+                (double) allocated / MEASURED_FRAMES);
+        if (allocated > 0) {
+            failed = true;
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static void batchFrame(HudBatch batch, Transformation transformation, Matrix4f ortho, TextItem[] labels,
+                                   GameItem[] shapes) {
+        batch.begin();
+        for (TextItem label : labels) {
+            batch.add(label, transformation.buildOrthoProjModelMatrix(label, ortho));
+        }
+        for (GameItem shape : shapes) {
+            batch.add(shape, transformation.buildOrthoProjModelMatrix(shape, ortho));
+        }
+    }
+
+    // The last characters of the group of its font are the ones of the label
+    private static boolean verifyLabel(HudBatch batch, Transformation transformation, Matrix4f ortho,
+                                       TextItem label) {
+        int group = groupOf(batch, label.getFontTexture().getTexture());
+        Matrix4f m = new Matrix4f(transformation.buildOrthoProjModelMatrix(label, ortho));
+        MeshData expected = textMeshData(label.getText(), label.getFontTexture());
+        // The last item of its group, with room for its capacity
+        int first = batch.getVertexCount(group) - label.getQuadCapacity();
+        if (!verify(batch, group, first, m, expected, "label")) {
+            return false;
+        }
+        ByteBuffer vertices = batch.getVertices(group);
+        for (int i = first + expected.indices.length; i < batch.getVertexCount(group); i++) {
+            for (int b = 0; b < HudBatch.VERTEX_BYTES; b++) {
+                if (vertices.get(i * HudBatch.VERTEX_BYTES + b) != 0) {
+                    System.out.printf("label vertex %d past the text is not empty%n", i - first);
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Vertices written by the last frame, and that the renderer is told to upload no more than those
+    private static boolean verifyWritten(HudBatch batch, int expected, String what) {
+        int dirtyBytes = 0;
+        for (int i = 0; i < batch.getGroupCount(); i++) {
+            dirtyBytes += Math.max(0, batch.getDirtyEnd(i) - batch.getDirtyStart(i));
+        }
+        if (batch.getWrittenVertexCount() != expected || dirtyBytes > expected * HudBatch.VERTEX_BYTES) {
+            System.out.printf("%s wrote %d vertices and left %d bytes to upload, expected %d vertices%n", what,
+                    batch.getWrittenVertexCount(), dirtyBytes, expected);
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean verifyShape(HudBatch batch, Transformation transformation, Matrix4f ortho,
+                                       GameItem shape, MeshData meshData) {
+        int group = groupOf(batch, null);
+        Matrix4f m = new Matrix4f(transformation.buildOrthoProjModelMatrix(shape, ortho));
+        int first = batch.getVertexCount(group) - meshData.indices.length;
+        return verify(batch, group, first, m, meshData, "shape");
+    }
+
+    private static boolean verify(HudBatch batch, int group, int first, Matrix4f m, MeshData expected, String what) {
+        ByteBuffer vertices = batch.getVertices(group);
+        Vector3f position = new Vector3f();
+        for (int i = 0; i < expected.indices.length; i++) {
+            int index = expected.indices[i];
+            position.set(expected.positions[index * 3], expected.positions[index * 3 + 1],
+                    expected.positions[index * 3 + 2]);
+            m.transformPosition(position);
+            int offset = (first + i) * HudBatch.VERTEX_BYTES;
+            float x = vertices.getFloat(offset);
+            float y = vertices.getFloat(offset + Float.BYTES);
+            boolean textured = expected.textCoords.length > 0;
+            float u = textured ? expected.textCoords[index * 2] : 0.5f;
+            float v = textured ? expected.textCoords[index * 2 + 1] : 0.5f;
+            if (Math.abs(x - position.x) > EPSILON || Math.abs(y - position.y) > EPSILON
+                    || vertices.getFloat(offset + 2 * Float.BYTES) != u
+                    || vertices.getFloat(offset + 3 * Float.BYTES) != v) {
+                System.out.printf("%s vertex %d is %f,%f, expected %f,%f%n", what, i, x, y, position.x, position.y);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Quads of a text built apart from TextItem, as indexed quads with the characters left to right from the origin
+    private static MeshData textMeshData(String text, FontTexture fontTexture) {
+        int numChars = text.length();
+        float[] positions = new float[numChars * 4 * 3];
+        float[] textCoords = new float[numChars * 4 * 2];
+        int[] indices = new int[numChars * 6];
+
+        float width = fontTexture.getWidth();
+        float height = fontTexture.getHeight();
+        int p = 0;
+        int t = 0;
+        int n = 0;
+        float startX = 0.0f;
+        for (int i = 0; i < numChars; i++) {
+            FontTexture.CharInfo charInfo = fontTexture.getCharInfo(text.charAt(i));
+            float endX = startX + charInfo.width();
+            float startU = charInfo.startX() / width;
+            float endU = (charInfo.startX() + charInfo.width()) / width;
+
+            // Build a character tile composed by two triangles: left top, left bottom, right bottom, right top
+            positions[p++] = startX;
+            positions[p++] = 0.0f;
+            positions[p++] = 0.0f;
+            textCoords[t++] = startU;
+            textCoords[t++] = 0.0f;
+
+            positions[p++] = startX;
+            positions[p++] = height;
+            positions[p++] = 0.0f;
+            textCoords[t++] = startU;
+            textCoords[t++] = 1.0f;
+
+            positions[p++] = endX;
+            positions[p++] = height;
+            positions[p++] = 0.0f;
+            textCoords[t++] = endU;
+            textCoords[t++] = 1.0f;
+
+            positions[p++] = endX;
+            positions[p++] = 0.0f;
+            positions[p++] = 0.0f;
+            textCoords[t++] = endU;
+            textCoords[t++] = 0.0f;
+
+            int vertex = i * 4;
+            indices[n++] = vertex;
+            indices[n++] = vertex + 1;
+            indices[n++] = vertex + 2;
+            // Add indices for left top and bottom right vertices
+            indices[n++] = vertex + 3;
+            indices[n++] = vertex;
+            indices[n++] = vertex + 2;
+
+            startX = endX;
+        }
+        return new MeshData(positions, textCoords, new float[0], indices);
+    }
+
+    private static int groupOf(HudBatch batch, Texture texture) {
+        for (int i = 0; i < batch.getGroupCount(); i++) {
+            if (batch.getTexture(i) == texture) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("No group for " + texture);
+    }
+}
@@ -0,0 +1,128 @@
+package engine.graph;
+
+import engine.SceneLight;
+import engine.graph.lights.PointLight;
+import engine.graph.lights.SpotLight;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Checks the light clusters against shading every light: any light that reaches a point of the view must be in
+// the cluster of that point, and binning in parallel must give the same lists as on one thread. Exits with 1
+// otherwise:
+//
+//   java -cp benchmarks/target/benchmarks.jar engine.graph.LightClusterCheck [lights] [points]
+public final class LightClusterCheck {
+
+    private static final float Z_NEAR = 0.01f;
+
+    private static final float Z_FAR = 1000f;
+
+    private LightClusterCheck() {}
+
+    public static void main(String[] args) {
+        int lightCount = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int pointCount = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        Random random = new Random(7);
+
+        Matrix4f projectionMatrix = new Matrix4f().setPerspective((float) Math.toRadians(60), 16f / 9f, Z_NEAR, Z_FAR);
+        Matrix4f viewMatrix = new Matrix4f().lookAt(50, 8, 120, 50, 0, 50, 0, 1, 0);
+        SceneLight sceneLight = createSceneLight(lightCount, random);
+
+        LightClusterer serial = new LightClusterer(16, 9, 24, lightCount, lightCount);
+        serial.setParallelism(1);
+        serial.setProjection(projectionMatrix, Z_NEAR, Z_FAR);
+        serial.update(viewMatrix, sceneLight);
+
+        LightClusterer parallel = new LightClusterer(16, 9, 24, lightCount, lightCount);
+        parallel.setProjection(projectionMatrix, Z_NEAR, Z_FAR);
+        parallel.update(viewMatrix, sceneLight);
+
+        boolean failed = false;
+        if (!Arrays.equals(serial.getGrid(), parallel.getGrid())
+                || !Arrays.equals(serial.getIndices(), 0, serial.getIndexCount(),
+                parallel.getIndices(), 0, parallel.getIndexCount())) {
+            System.out.println("Parallel binning differs from binning on one thread");
+            failed = true;
+        }
+
+        PointLight[] pointLights = sceneLight.getPointLightList();
+        SpotLight[] spotLights = sceneLight.getSpotLightList();
+        float[] radii = new float[lightCount * 2];
+        Vector3f[] positions = new Vector3f[lightCount * 2];
+        for (int i = 0; i < lightCount; i++) {
+            radii[i] = LightClusterer.lightRadius(pointLights[i]);
+            positions[i] = viewMatrix.transformPosition(new Vector3f(pointLights[i].getPosition()));
+            radii[lightCount + i] = LightClusterer.lightRadius(spotLights[i].getPointLight());
+            positions[lightCount + i] = viewMatrix.transformPosition(new Vector3f(spotLights[i].getPointLight().getPosition()));
+        }
+
+        int missing = 0;
+        long assigned = 0;
+        Vector3f point = new Vector3f();
+        for (int p = 0; p < pointCount; p++) {
+            // Uniform over the screen, depths up to 200
+            float depth = Z_NEAR + random.nextFloat() * 200;
+            float ndcX = random.nextFloat() * 2 - 1;
+            float ndcY = random.nextFloat() * 2 - 1;
+            point.set(ndcX * depth / projectionMatrix.m00(), ndcY * depth / projectionMatrix.m11(), -depth);
+            int cluster = serial.findCluster(point.x, point.y, point.z);
+            int offset = serial.getOffset(cluster);
+            int points = serial.getPointLightCount(cluster);
+            int spots = serial.getSpotLightCount(cluster);
+            assigned += points + spots;
+            for (int l = 0; l < lightCount * 2; l++) {
+                // Leave some room for rounding at the cluster faces
+                if (point.distance(positions[l]) >= radii[l] * 0.999f) {
+                    continue;
+                }
+                boolean spot = l >= lightCount;
+                int index = spot ? l - lightCount : l;
+                int from = spot ? offset + points : offset;
+                int to = spot ? offset + points + spots : offset + points;
+                if (!contains(serial.getIndices(), from, to, index)) {
+                    missing++;
+                }
+            }
+        }
+
+        System.out.printf("%d point and %d spot lights, %d indices, %.1f lights per sampled point, %d missing%n",
+                lightCount, lightCount, serial.getIndexCount(), (double) assigned / pointCount, missing);
+        if (missing > 0 || failed) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean contains(short[] indices, int from, int to, int index) {
+        for (int i = from; i < to; i++) {
+            if ((indices[i] & 0xFFFF) == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static SceneLight createSceneLight(int lightCount, Random random) {
+        SceneLight sceneLight = new SceneLight();
+        sceneLight.setAmbientLight(new Vector3f(0.3f, 0.3f, 0.3f));
+        PointLight[] pointLights = new PointLight[lightCount];
+        SpotLight[] spotLights = new SpotLight[lightCount];
+        for (int i = 0; i < lightCount; i++) {
+            Vector3f color = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat());
+            pointLights[i] = new PointLight(color, randomPosition(random), 1.0f,
+                    new PointLight.Attenuation(1, 0.5f, 0.5f + random.nextFloat() * 2));
+            PointLight spotPointLight = new PointLight(new Vector3f(1, 1, 1), randomPosition(random), 1.0f,
+                    new PointLight.Attenuation(0, 0, 0.1f + random.nextFloat()));
+            spotLights[i] = new SpotLight(spotPointLight, new Vector3f(0, -1, 0), 140);
+        }
+        sceneLight.setPointLightList(pointLights);
+        sceneLight.setSpotLightList(spotLights);
+        return sceneLight;
+    }
+
+    private static Vector3f randomPosition(Random random) {
+        return new Vector3f(random.nextFloat() * 100, random.nextFloat() * 10, random.nextFloat() * 100);
+    }
+}
@@ -0,0 +1,62 @@
+package engine.graph;
+
+import engine.SceneLight;
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Time to bin the point and spot lights of a frame into 16x9x24 clusters, on one thread and on every core
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LightClustererBenchmark {
+
+    @Param({"64", "256", "1024"})
+    public int lightCount;
+
+    // 0 uses every core
+    @Param({"1", "0"})
+    public int parallelism;
+
+    private LightClusterer clusterer;
+
+    private Matrix4f viewMatrix;
+
+    private SceneLight sceneLight;
+
+    @Setup
+    public void setup() {
+        Matrix4f projectionMatrix = new Matrix4f().setPerspective((float) Math.toRadians(60), 16f / 9f, 0.01f, 1000f);
+        viewMatrix = new Matrix4f().lookAt(50, 8, 120, 50, 0, 50, 0, 1, 0);
+        sceneLight = LightClusterCheck.createSceneLight(lightCount, new Random(7));
+        clusterer = new LightClusterer(16, 9, 24, lightCount, lightCount);
+        if (parallelism > 0) {
+            clusterer.setParallelism(parallelism);
+        }
+        clusterer.setProjection(projectionMatrix, 0.01f, 1000f);
+    }
+
+    @Benchmark
+    public int update() {
+        clusterer.update(viewMatrix, sceneLight);
+        return clusterer.getIndexCount();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LightClustererBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
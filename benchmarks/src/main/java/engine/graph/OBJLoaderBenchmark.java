@@ -0,0 +1,122 @@
+package engine.graph;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Load time of a generated grid model, from text and from its compiled file.
+// Run through main to also get the allocation rate
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class OBJLoaderBenchmark {
+
+    @Param({"250000", "1000000"})
+    public int faceCount;
+
+    private Path file;
+
+    private Path meshFile;
+
+    // Stands in for the buffer the driver copies the compiled vertices and indices into
+    private ByteBuffer uploadBuffer;
+
+    @Setup
+    public void setup() throws Exception {
+        file = Files.createTempFile("grid", ".obj");
+        writeGrid(file, faceCount);
+        meshFile = Files.createTempFile("grid", ".mesh");
+        MeshFile.write(OBJLoader.loadMeshData(file), meshFile);
+        uploadBuffer = ByteBuffer.allocateDirect((int) Files.size(meshFile));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(meshFile);
+    }
+
+    @Benchmark
+    public MeshData loadMeshData() throws Exception {
+        return OBJLoader.loadMeshData(file);
+    }
+
+    @Benchmark
+    public MeshData loadMeshDataLegacy() throws Exception {
+        return LegacyOBJLoader.loadMeshData(file);
+    }
+
+    @Benchmark
+    public ByteBuffer loadMeshFile() throws IOException {
+        MeshFile compiled = MeshFile.map(meshFile);
+        uploadBuffer.clear();
+        uploadBuffer.put(compiled.getVertices());
+        uploadBuffer.put(compiled.getIndices());
+        return uploadBuffer;
+    }
+
+    // Square grid of two triangles per cell, with one texture coordinate and normal per vertex
+    private static void writeGrid(Path path, int faceCount) throws IOException {
+        int cells = (int) Math.ceil(Math.sqrt(faceCount / 2.0));
+        int side = cells + 1;
+        Random random = new Random(42);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+            for (int row = 0; row < side; row++) {
+                for (int col = 0; col < side; col++) {
+                    writer.write(String.format(Locale.ROOT, "v %.6f %.6f %.6f%n",
+                            (float) col / cells, random.nextFloat() * 0.1f, (float) row / cells));
+                }
+            }
+            for (int row = 0; row < side; row++) {
+                for (int col = 0; col < side; col++) {
+                    writer.write(String.format(Locale.ROOT, "vt %.6f %.6f%n", (float) col / cells, (float) row / cells));
+                }
+            }
+            for (int i = 0; i < side * side; i++) {
+                writer.write(String.format(Locale.ROOT, "vn %.6f %.6f %.6f%n",
+                        random.nextFloat() * 0.2f - 0.1f, 1f, random.nextFloat() * 0.2f - 0.1f));
+            }
+            int faces = 0;
+            for (int row = 0; row < cells && faces < faceCount; row++) {
+                for (int col = 0; col < cells && faces < faceCount; col++) {
+                    int topLeft = row * side + col + 1;
+                    int bottomLeft = topLeft + side;
+                    writeFace(writer, topLeft, bottomLeft, topLeft + 1);
+                    faces++;
+                    if (faces < faceCount) {
+                        writeFace(writer, topLeft + 1, bottomLeft, bottomLeft + 1);
+                        faces++;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeFace(BufferedWriter writer, int a, int b, int c) throws IOException {
+        writer.write("f " + a + "/" + a + "/" + a + " " + b + "/" + b + "/" + b + " " + c + "/" + c + "/" + c + "\n");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(OBJLoaderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
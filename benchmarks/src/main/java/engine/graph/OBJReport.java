@@ -0,0 +1,35 @@
+package engine.graph;
+
+import java.nio.file.Path;
+
+// Prints how many vertices OBJLoader merges for each model given on the command line, and the GPU memory
+// each vertex layout would take
+public final class OBJReport {
+
+    // Position, text coords and normal as floats
+    private static final int VERTEX_SIZE = (3 + 2 + 3) * Float.BYTES;
+
+    private static final VertexFormat[] LAYOUTS = {
+            VertexFormat.DEFAULT,
+            VertexFormat.COMPACT,
+            new VertexFormat(VertexFormat.Encoding.FLOAT, VertexFormat.Encoding.FLOAT, VertexFormat.Encoding.FLOAT),
+            new VertexFormat(VertexFormat.Encoding.HALF_FLOAT, VertexFormat.Encoding.PACKED, VertexFormat.Encoding.PACKED)
+    };
+
+    private OBJReport() {}
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-40s %12s %12s %8s %12s%n", "model", "face verts", "vertices", "reuse", "saved (KB)");
+        for (String fileName : args) {
+            MeshData meshData = OBJLoader.loadMeshData(Path.of(fileName));
+            int saved = (meshData.faceVertexCount - meshData.getVertexCount()) * VERTEX_SIZE;
+            System.out.printf("%-40s %12d %12d %7.2fx %12.1f%n", fileName, meshData.faceVertexCount,
+                    meshData.getVertexCount(), meshData.getVertexReuse(), saved / 1024f);
+        }
+        for (String fileName : args) {
+            MeshData meshData = OBJLoader.loadMeshData(Path.of(fileName));
+            System.out.println();
+            System.out.print(MeshFootprint.report(fileName, meshData, LAYOUTS));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package engine.graph;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Submitting and sorting a frame of draws with the render queue, against sorting draw objects by key with a
+// comparator and against sorting the bare keys
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderQueueBenchmark {
+
+    @Param({"10000", "100000"})
+    public int draws;
+
+    private long[] keys;
+
+    private long[] keysCopy;
+
+    private RenderQueue queue;
+
+    private List<Draw> drawList;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(3);
+        keys = new long[draws];
+        drawList = new ArrayList<>(draws);
+        for (int i = 0; i < draws; i++) {
+            // A few hundred materials and meshes, a tenth of the draws blended
+            int material = random.nextInt(300);
+            int mesh = random.nextInt(500);
+            float depth = random.nextFloat();
+            keys[i] = random.nextInt(10) == 0
+                    ? RenderQueue.blendedKey(0, material, material, mesh, depth)
+                    : RenderQueue.opaqueKey(0, material, material, mesh, depth);
+            drawList.add(new Draw(keys[i], i));
+        }
+        keysCopy = new long[draws];
+        queue = new RenderQueue(draws);
+    }
+
+    @Benchmark
+    public void radixSort(Blackhole blackhole) {
+        queue.clear();
+        for (int i = 0; i < draws; i++) {
+            queue.submit(keys[i], null, i);
+        }
+        queue.sort();
+        blackhole.consume(queue.getCommand(0));
+    }
+
+    @Benchmark
+    public void comparatorSort(Blackhole blackhole) {
+        // Shuffled back by the copy, as a queue filled again every frame would be
+        List<Draw> list = new ArrayList<>(drawList);
+        list.sort(Comparator.comparingLong(draw -> draw.key));
+        blackhole.consume(list.get(0));
+    }
+
+    @Benchmark
+    public long[] keysOnlySort() {
+        System.arraycopy(keys, 0, keysCopy, 0, draws);
+        Arrays.sort(keysCopy);
+        return keysCopy;
+    }
+
+    private static final class Draw {
+
+        private final long key;
+
+        private final int command;
+
+        private Draw(long key, int command) {
+            this.key = key;
+            this.command = command;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(RenderQueueBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,145 @@
+package engine.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL33.*;
+
+// Runs RenderState against a backend that records the calls instead of making them, and checks that only the
+// calls that change something get through. Exits with 1 otherwise:
+//
+//   java -cp benchmarks/target/benchmarks.jar engine.graph.RenderStateCheck
+public final class RenderStateCheck {
+
+    private static boolean failed;
+
+    private RenderStateCheck() {}
+
+    public static void main(String[] args) {
+        RecordingBackend backend = new RecordingBackend();
+        RenderState state = new RenderState(backend);
+
+        // Two passes over meshes that share a program and, in pairs, a texture
+        for (int frame = 0; frame < 3; frame++) {
+            backend.calls.clear();
+            state.newFrame();
+            renderFrame(state);
+            if (frame == 0) {
+                check("first frame", backend.calls, List.of(
+                        "useProgram 1", "activeTexture 0", "bindTexture 3553 10", "bindVertexArray 1",
+                        "bindVertexArray 2", "bindTexture 3553 11", "bindVertexArray 3", "bindVertexArray 4",
+                        "useProgram 2", "bindTexture 3553 12", "bindVertexArray 5"));
+            } else {
+                // The state at the end of a frame is the state the next one starts with
+                check("frame " + frame, backend.calls, List.of(
+                        "useProgram 1", "bindTexture 3553 10", "bindVertexArray 1", "bindVertexArray 2",
+                        "bindTexture 3553 11", "bindVertexArray 3", "bindVertexArray 4",
+                        "useProgram 2", "bindTexture 3553 12", "bindVertexArray 5"));
+            }
+        }
+        state.newFrame();
+        System.out.printf("Steady frame: %d state changes, %d avoided%n", state.getStateChanges(),
+                state.getSkippedChanges());
+
+        // Attributes belong to the vertex array they were enabled in
+        backend.calls.clear();
+        state.bindVertexArray(1);
+        state.enableVertexAttribArray(3);
+        state.enableVertexAttribArray(3);
+        state.bindVertexArray(2);
+        state.enableVertexAttribArray(3);
+        state.bindVertexArray(1);
+        state.disableVertexAttribArray(3);
+        state.disableVertexAttribArray(3);
+        check("attributes", backend.calls, List.of(
+                "bindVertexArray 1", "enable 3", "bindVertexArray 2", "enable 3", "bindVertexArray 1", "disable 3"));
+
+        // A deleted name may come back for a new object, which starts unbound and with no attributes known
+        backend.calls.clear();
+        state.bindTexture(0, GL_TEXTURE_2D, 10);
+        state.textureDeleted(10);
+        state.bindTexture(0, GL_TEXTURE_2D, 10);
+        state.vertexArrayDeleted(1);
+        state.bindVertexArray(1);
+        state.disableVertexAttribArray(3);
+        check("deleted names", backend.calls, List.of(
+                "bindTexture 3553 10", "bindTexture 3553 10", "bindVertexArray 1", "disable 3"));
+
+        // Texture units and targets are independent
+        backend.calls.clear();
+        state.bindTexture(2, GL_TEXTURE_BUFFER, 20);
+        state.bindTexture(2, GL_TEXTURE_2D, 10);
+        state.bindTexture(0, GL_TEXTURE_2D, 10);
+        state.bindTexture(2, GL_TEXTURE_BUFFER, 20);
+        check("texture units", backend.calls, List.of(
+                "activeTexture 2", "bindTexture 35882 20", "bindTexture 3553 10"));
+
+        // After an invalidate everything goes through once
+        backend.calls.clear();
+        state.invalidate();
+        state.useProgram(2);
+        state.useProgram(2);
+        state.bindVertexArray(5);
+        state.bindTexture(0, GL_TEXTURE_2D, 10);
+        check("invalidate", backend.calls, List.of(
+                "useProgram 2", "bindVertexArray 5", "activeTexture 0", "bindTexture 3553 10"));
+
+        if (failed) {
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+    }
+
+    private static void renderFrame(RenderState state) {
+        state.useProgram(1);
+        for (int mesh = 1; mesh <= 4; mesh++) {
+            state.bindTexture(0, GL_TEXTURE_2D, 10 + (mesh - 1) / 2);
+            state.bindVertexArray(mesh);
+        }
+        state.useProgram(2);
+        state.bindTexture(0, GL_TEXTURE_2D, 12);
+        state.bindVertexArray(5);
+    }
+
+    private static void check(String name, List<String> calls, List<String> expected) {
+        if (!calls.equals(expected)) {
+            System.out.println(name + ": expected " + expected + " but got " + calls);
+            failed = true;
+        }
+    }
+
+    private static final class RecordingBackend implements GLBackend {
+
+        private final List<String> calls = new ArrayList<>();
+
+        @Override
+        public void useProgram(int program) {
+            calls.add("useProgram " + program);
+        }
+
+        @Override
+        public void bindVertexArray(int vao) {
+            calls.add("bindVertexArray " + vao);
+        }
+
+        @Override
+        public void activeTexture(int unit) {
+            calls.add("activeTexture " + unit);
+        }
+
+        @Override
+        public void bindTexture(int target, int texture) {
+            calls.add("bindTexture " + target + " " + texture);
+        }
+
+        @Override
+        public void enableVertexAttribArray(int index) {
+            calls.add("enable " + index);
+        }
+
+        @Override
+        public void disableVertexAttribArray(int index) {
+            calls.add("disable " + index);
+        }
+    }
+}
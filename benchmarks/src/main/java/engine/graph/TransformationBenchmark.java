@@ -0,0 +1,66 @@
+package engine.graph;
+
+import engine.items.GameItem;
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Model view matrices of items placed and turned at random, as the per item draw path builds them
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransformationBenchmark {
+
+    @Param({"1000", "100000"})
+    public int numItems;
+
+    private Transformation transformation;
+
+    private Matrix4f viewMatrix;
+
+    private GameItem[] gameItems;
+
+    @Setup
+    public void setup() {
+        transformation = new Transformation();
+        Camera camera = new Camera();
+        camera.setPosition(3, 2, 10);
+        camera.setRotation(20, 30, 0);
+        viewMatrix = new Matrix4f(transformation.updateViewMatrix(camera));
+        Random random = new Random(42);
+        gameItems = new GameItem[numItems];
+        for (int i = 0; i < numItems; i++) {
+            GameItem gameItem = new GameItem();
+            gameItem.setPosition(random.nextFloat() * 100, random.nextFloat() * 10, random.nextFloat() * 100);
+            gameItem.setRotation(random.nextFloat() * 360, random.nextFloat() * 360, random.nextFloat() * 360);
+            gameItem.setScale(0.5f + random.nextFloat());
+            gameItems[i] = gameItem;
+        }
+    }
+
+    @Benchmark
+    public void buildModelViewMatrix(Blackhole blackhole) {
+        for (GameItem gameItem : gameItems) {
+            blackhole.consume(transformation.buildModelViewMatrix(gameItem, viewMatrix).m30());
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TransformationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,249 @@
+package engine.items;
+
+import engine.Scene;
+import engine.graph.Camera;
+import engine.graph.LodMesh;
+import engine.graph.Material;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Streams a chunked terrain around a camera that crosses the map and back, with tiles built on a loader thread
+// and meshes that only keep their bounds. At every stop it fails when a tile in range is missing, one out of range
+// is kept, the scene and the terrain disagree on the tiles, a level of detail is not the one of its distance, or
+// the border of two tiles could open a crack the skirts do not cover:
+//
+//   java -cp benchmarks/target/benchmarks.jar engine.items.ChunkedTerrainCheck
+public final class ChunkedTerrainCheck {
+
+    private static final int MAP_SIZE = 257;
+
+    private static final int TILE_SIZE = 32;
+
+    private static final int NUM_LODS = 3;
+
+    private static final float CELL_SIZE = 1;
+
+    private static final float LOD_DISTANCE = 40;
+
+    private static final float VIEW_DISTANCE = 64;
+
+    private static final float MIN_Y = -4;
+
+    private static final float MAX_Y = 4;
+
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static int created;
+
+    private static int released;
+
+    // Vertices of every mesh still loaded
+    private static final Map<LodMesh, float[]> positionsByMesh = new IdentityHashMap<>();
+
+    private ChunkedTerrainCheck() {}
+
+    public static void main(String[] args) throws Exception {
+        ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "terrain-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ChunkedTerrain terrain = new ChunkedTerrain(heightMap(), new Material(new Vector4f(1, 1, 1, 1), 0),
+                CELL_SIZE, TILE_SIZE, NUM_LODS, LOD_DISTANCE, VIEW_DISTANCE, 40, loader) {
+            @Override
+            protected LodMesh createTileMesh(float[] positions, float[] textCoords, float[] normals,
+                                             int[][] lodIndices) {
+                Vector3f min = new Vector3f(Float.MAX_VALUE);
+                Vector3f max = new Vector3f(-Float.MAX_VALUE);
+                for (int i = 0; i < positions.length; i += 3) {
+                    min.min(new Vector3f(positions[i], positions[i + 1], positions[i + 2]));
+                    max.max(new Vector3f(positions[i], positions[i + 1], positions[i + 2]));
+                }
+                LodMesh mesh = new LodMesh(min, max, lodIndices);
+                positionsByMesh.put(mesh, positions);
+                created++;
+                return mesh;
+            }
+
+            @Override
+            protected void releaseTileMesh(LodMesh mesh) {
+                positionsByMesh.remove(mesh);
+                released++;
+            }
+        };
+
+        Scene scene = new Scene();
+        Camera camera = new Camera();
+        float half = (MAP_SIZE - 1) * CELL_SIZE / 2;
+        int stops = 0;
+        int failures = 0;
+        int mostLoaded = 0;
+        // Corner to corner and back, a little more than a tile at a time
+        float step = TILE_SIZE * CELL_SIZE * 1.3f;
+        for (float t = -half; t <= half; t += step, stops++) {
+            failures += stop(terrain, scene, camera, t, t * 0.5f);
+            mostLoaded = Math.max(mostLoaded, terrain.getLoadedTiles());
+        }
+        for (float t = half; t >= -half; t -= step, stops++) {
+            failures += stop(terrain, scene, camera, t, -t);
+            mostLoaded = Math.max(mostLoaded, terrain.getLoadedTiles());
+        }
+
+        terrain.cleanup(scene);
+        loader.shutdownNow();
+        if (scene.getGameItemCount() != 0 || created != released) {
+            System.out.printf("After cleanup: %d items in the scene, %d meshes created and %d released%n",
+                    scene.getGameItemCount(), created, released);
+            failures++;
+        }
+        System.out.printf("%d stops, %d tiles built, at most %d loaded of %d, %d failures%n", stops, created,
+                mostLoaded, terrain.getTilesX() * terrain.getTilesZ(), failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Moves the camera and updates until every requested tile is in, then checks what is loaded
+    private static int stop(ChunkedTerrain terrain, Scene scene, Camera camera, float x, float z) {
+        camera.setPosition(x, 10, z);
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        do {
+            terrain.update(camera, scene);
+            if (System.nanoTime() > deadline) {
+                System.out.printf("At %.1f, %.1f: %d tiles still pending%n", x, z, terrain.getPendingTiles());
+                return 1;
+            }
+            LockSupport.parkNanos(100_000);
+        } while (terrain.getPendingTiles() > 0);
+        // Levels of detail follow the tiles uploaded by the last update
+        terrain.update(camera, scene);
+
+        int failures = 0;
+        float tileWorldSize = TILE_SIZE * CELL_SIZE;
+        int cameraTileX = (int) Math.floor((x - terrain.getTileX(0)) / tileWorldSize);
+        int cameraTileZ = (int) Math.floor((z - terrain.getTileZ(0)) / tileWorldSize);
+        int radius = terrain.getLoadRadius();
+        for (int tileZ = 0; tileZ < terrain.getTilesZ(); tileZ++) {
+            for (int tileX = 0; tileX < terrain.getTilesX(); tileX++) {
+                int distance = Math.max(Math.abs(tileX - cameraTileX), Math.abs(tileZ - cameraTileZ));
+                int lod = terrain.getTileLod(tileX, tileZ);
+                if (distance <= radius && lod < 0) {
+                    System.out.printf("At %.1f, %.1f: tile %d, %d in range is not loaded%n", x, z, tileX, tileZ);
+                    failures++;
+                } else if (distance > radius + 1 && lod >= 0) {
+                    System.out.printf("At %.1f, %.1f: tile %d, %d out of range is kept%n", x, z, tileX, tileZ);
+                    failures++;
+                } else if (lod >= 0 && lod != expectedLod(terrain, tileX, tileZ, x, z)) {
+                    System.out.printf("At %.1f, %.1f: tile %d, %d has level %d instead of %d%n", x, z, tileX, tileZ,
+                            lod, expectedLod(terrain, tileX, tileZ, x, z));
+                    failures++;
+                }
+            }
+        }
+        if (scene.getGameItemCount() != terrain.getLoadedTiles() || created - released != terrain.getLoadedTiles()) {
+            System.out.printf("At %.1f, %.1f: %d tiles loaded, %d items in the scene, %d meshes alive%n", x, z,
+                    terrain.getLoadedTiles(), scene.getGameItemCount(), created - released);
+            failures++;
+        }
+        failures += checkSeams(terrain, scene);
+        return failures;
+    }
+
+    private static int expectedLod(ChunkedTerrain terrain, int tileX, int tileZ, float x, float z) {
+        float tileWorldSize = TILE_SIZE * CELL_SIZE;
+        float dx = terrain.getTileX(tileX) + tileWorldSize / 2 - x;
+        float dz = terrain.getTileZ(tileZ) + tileWorldSize / 2 - z;
+        return Math.min(NUM_LODS - 1, (int) ((float) Math.sqrt(dx * dx + dz * dz) / LOD_DISTANCE));
+    }
+
+    // Every border between two loaded tiles: the shared vertices match, and where the levels differ the surfaces
+    // part by less than the skirts hang
+    private static int checkSeams(ChunkedTerrain terrain, Scene scene) {
+        int tilesX = terrain.getTilesX();
+        int tilesZ = terrain.getTilesZ();
+        float[][] tilePositions = new float[tilesX * tilesZ][];
+        int[] tileLods = new int[tilesX * tilesZ];
+        float tileWorldSize = TILE_SIZE * CELL_SIZE;
+        for (int i = 0; i < scene.getGameItemCount(); i++) {
+            GameItem gameItem = scene.getGameItem(i);
+            int tileX = Math.round((gameItem.getPosition().x - terrain.getTileX(0)) / tileWorldSize);
+            int tileZ = Math.round((gameItem.getPosition().z - terrain.getTileZ(0)) / tileWorldSize);
+            LodMesh mesh = (LodMesh) gameItem.getMesh();
+            tilePositions[tileZ * tilesX + tileX] = positionsByMesh.get(mesh);
+            tileLods[tileZ * tilesX + tileX] = mesh.getLod();
+        }
+
+        int failures = 0;
+        int n = TILE_SIZE + 1;
+        for (int tileZ = 0; tileZ < tilesZ; tileZ++) {
+            for (int tileX = 0; tileX < tilesX; tileX++) {
+                float[] tile = tilePositions[tileZ * tilesX + tileX];
+                if (tile == null) {
+                    continue;
+                }
+                int lod = tileLods[tileZ * tilesX + tileX];
+                if (tileX + 1 < tilesX && tilePositions[tileZ * tilesX + tileX + 1] != null) {
+                    // Right column of this tile against the left column of the next
+                    failures += checkSeam(terrain, tile, lod, TILE_SIZE, n, tilePositions[tileZ * tilesX + tileX + 1],
+                            tileLods[tileZ * tilesX + tileX + 1], 0, n);
+                }
+                if (tileZ + 1 < tilesZ && tilePositions[(tileZ + 1) * tilesX + tileX] != null) {
+                    // Bottom row of this tile against the top row of the one below
+                    failures += checkSeam(terrain, tile, lod, TILE_SIZE * n, 1,
+                            tilePositions[(tileZ + 1) * tilesX + tileX], tileLods[(tileZ + 1) * tilesX + tileX], 0, 1);
+                }
+            }
+        }
+        return failures;
+    }
+
+    // Edges are the grid vertex of k = 0 at first and stride to the next
+    private static int checkSeam(ChunkedTerrain terrain, float[] a, int lodA, int firstA, int strideA, float[] b,
+                                 int lodB, int firstB, int strideB) {
+        for (int k = 0; k <= TILE_SIZE; k++) {
+            float heightA = a[(firstA + k * strideA) * 3 + 1];
+            float heightB = b[(firstB + k * strideB) * 3 + 1];
+            if (heightA != heightB) {
+                System.out.printf("Shared vertex %d is at %f on one side and %f on the other%n", k, heightA, heightB);
+                return 1;
+            }
+            float gap = Math.abs(surface(a, lodA, firstA, strideA, k) - surface(b, lodB, firstB, strideB, k));
+            if (gap > terrain.getSkirtDepth()) {
+                System.out.printf("Levels %d and %d part by %f at vertex %d, skirts hang %f%n", lodA, lodB, gap, k,
+                        terrain.getSkirtDepth());
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    // Height of an edge drawn at a level of detail, between the vertices it keeps
+    private static float surface(float[] positions, int lod, int first, int stride, int k) {
+        int step = 1 << lod;
+        int from = k / step * step;
+        int to = Math.min(from + step, TILE_SIZE);
+        float fromHeight = positions[(first + from * stride) * 3 + 1];
+        float toHeight = positions[(first + to * stride) * 3 + 1];
+        return to == from ? fromHeight : fromHeight + (toHeight - fromHeight) * (k - from) / (to - from);
+    }
+
+    // Rolling hills with a ridge across, so coarse levels really differ from fine ones
+    private static ChunkedTerrain.HeightMap heightMap() {
+        float[] heights = new float[MAP_SIZE * MAP_SIZE];
+        for (int row = 0; row < MAP_SIZE; row++) {
+            for (int col = 0; col < MAP_SIZE; col++) {
+                float height = (float) (Math.sin(col * 0.37) * Math.cos(row * 0.21) * 3
+                        + Math.sin((col + row) * 1.3) * 0.8);
+                heights[row * MAP_SIZE + col] = Math.max(MIN_Y, Math.min(MAX_Y, height));
+            }
+        }
+        return new ChunkedTerrain.HeightMap(heights, MAP_SIZE, MAP_SIZE, MIN_Y, MAX_Y);
+    }
+}
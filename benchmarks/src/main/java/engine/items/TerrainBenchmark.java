@@ -0,0 +1,72 @@
+package engine.items;
+
+import engine.graph.HeightMapMesh;
+import engine.graph.Mesh;
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Height lookups at random points of the terrain, as for every item placed on it each update
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TerrainBenchmark {
+
+    private static final int HEIGHT_MAP_SIZE = 256;
+
+    private static final int TERRAIN_SIZE = 3;
+
+    private static final float SCALE = 10;
+
+    private static final int NUM_POINTS = 4096;
+
+    private Terrain terrain;
+
+    private float[] points;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        byte[] pixels = new byte[HEIGHT_MAP_SIZE * HEIGHT_MAP_SIZE * 4];
+        Random random = new Random(42);
+        random.nextBytes(pixels);
+        float[] heights = new float[HEIGHT_MAP_SIZE * HEIGHT_MAP_SIZE];
+        HeightMapMesh.buildMeshData(ByteBuffer.wrap(pixels), HEIGHT_MAP_SIZE, HEIGHT_MAP_SIZE, -0.1f, 0.1f, 40,
+                heights);
+        Mesh mesh = new Mesh(new Vector3f(-0.5f, -0.1f, -0.5f), new Vector3f(0.5f, 0.1f, 0.5f));
+        terrain = new Terrain(TERRAIN_SIZE, SCALE,
+                new HeightMapMesh(-0.1f, 0.1f, heights, HEIGHT_MAP_SIZE, mesh));
+
+        float extent = TERRAIN_SIZE * SCALE / 2;
+        points = new float[NUM_POINTS * 2];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = (random.nextFloat() * 2 - 1) * extent;
+        }
+    }
+
+    @Benchmark
+    public float getHeight() {
+        next = (next + 2) % points.length;
+        return terrain.getHeight(points[next], points[next + 1]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TerrainBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
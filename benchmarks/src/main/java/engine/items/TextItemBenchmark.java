@@ -0,0 +1,64 @@
+package engine.items;
+
+import engine.graph.FontTexture;
+import engine.graph.Texture;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.*;
+import java.util.concurrent.TimeUnit;
+
+// Laying out the quads of a text item on setText, what a label that changes every frame costs before batching
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class TextItemBenchmark {
+
+    @Param({"16", "256"})
+    public int length;
+
+    private TextItem textItem;
+
+    private String[] texts;
+
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        FontTexture.Atlas atlas = FontTexture.buildAtlas(new Font("Arial", Font.BOLD, 48), "ISO-8859-1");
+        // The texture is never bound here
+        FontTexture fontTexture = new FontTexture(atlas, new Texture(1, atlas.width(), atlas.height()));
+        // Texts like a status line that changes every frame
+        texts = new String[64];
+        for (int i = 0; i < texts.length; i++) {
+            StringBuilder text = new StringBuilder();
+            while (text.length() < length) {
+                text.append("Frame ").append(i * 7919).append(' ');
+            }
+            texts[i] = text.substring(0, length);
+        }
+        textItem = new TextItem(texts[0], fontTexture, length);
+    }
+
+    @Benchmark
+    public float[] setText() {
+        next = (next + 1) % texts.length;
+        textItem.setText(texts[next]);
+        return textItem.getQuadVertices();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TextItemBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
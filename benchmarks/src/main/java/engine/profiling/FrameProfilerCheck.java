@@ -0,0 +1,202 @@
+package engine.profiling;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// Records frames against a GPU clock that answers a few frames late while another thread reads the ring, fails
+// when a record read is torn or a frame lost its GPU times, and prints what a disabled and an enabled profiler
+// cost per frame. Writes the exports to the directory given, if any. Needs no window:
+//
+//   java -cp benchmarks/target/benchmarks.jar engine.profiling.FrameProfilerCheck [directory]
+public final class FrameProfilerCheck {
+
+    private static final int FRAMES = 200_000;
+
+    private static final int CAPACITY = 256;
+
+    // Frames the fake GPU is behind
+    private static final int GPU_DELAY = 2;
+
+    private static final int TIMING_FRAMES = 2_000_000;
+
+    private FrameProfilerCheck() {}
+
+    public static void main(String[] args) throws Exception {
+        boolean failed = false;
+
+        FakeGpuClock clock = new FakeGpuClock();
+        FrameProfiler profiler = new FrameProfiler(CAPACITY);
+        profiler.setGpuClock(clock);
+        profiler.setEnabled(true);
+
+        Reader reader = new Reader(profiler);
+        Thread thread = new Thread(reader, "reader");
+        thread.start();
+        for (int frame = 0; frame < FRAMES; frame++) {
+            clock.frame = frame;
+            recordFrame(profiler, frame);
+        }
+        reader.running = false;
+        thread.join();
+
+        List<FrameRecord> records = profiler.getRecords();
+        System.out.printf("%d frames published, %d records read while recording, %d torn, %d without GPU times%n",
+                profiler.getPublishedFrames(), reader.read, reader.torn, reader.withoutGpu);
+        // The last frames still wait for the GPU
+        if (profiler.getPublishedFrames() != FRAMES - GPU_DELAY || reader.read == 0 || reader.torn > 0
+                || reader.withoutGpu > 0 || records.size() != CAPACITY) {
+            failed = true;
+        }
+
+        // Too late for the latency the profiler waits, frames are published with no GPU times
+        FrameProfiler lateProfiler = new FrameProfiler(CAPACITY);
+        FakeGpuClock lateClock = new FakeGpuClock();
+        lateClock.delay = FrameProfiler.GPU_LATENCY + 1;
+        lateProfiler.setGpuClock(lateClock);
+        lateProfiler.setEnabled(true);
+        for (int frame = 0; frame < 100; frame++) {
+            lateClock.frame = frame;
+            recordFrame(lateProfiler, frame);
+        }
+        for (FrameRecord record : lateProfiler.getRecords()) {
+            if (record.getPassGpuNanos(FrameProfiler.PASS_SCENE) != -1) {
+                System.out.println("Frame " + record.getFrame() + " has GPU times the GPU never gave");
+                failed = true;
+                break;
+            }
+        }
+
+        // Disabled, then enabled without a GPU clock
+        FrameProfiler timed = new FrameProfiler(CAPACITY);
+        for (int run = 0; run < 3; run++) {
+            timed.setEnabled(false);
+            long disabled = timeFrames(timed);
+            timed.setEnabled(true);
+            long enabled = timeFrames(timed);
+            System.out.printf("disabled %.1f ns/frame, enabled %.1f ns/frame%n",
+                    (double) disabled / TIMING_FRAMES, (double) enabled / TIMING_FRAMES);
+        }
+
+        StringWriter csv = new StringWriter();
+        StringWriter json = new StringWriter();
+        StringWriter trace = new StringWriter();
+        ProfileExporter.writeCsv(records, csv);
+        ProfileExporter.writeJson(records, json);
+        ProfileExporter.writeChromeTrace(records, trace);
+        System.out.printf("exported %d frames: %d bytes of CSV, %d of JSON, %d of trace%n", records.size(),
+                csv.getBuffer().length(), json.getBuffer().length(), trace.getBuffer().length());
+        if (csv.toString().split("\n").length != records.size() + 1) {
+            System.out.println("CSV has a line missing");
+            failed = true;
+        }
+        if (args.length > 0) {
+            Path directory = Path.of(args[0]);
+            write(directory.resolve("frames.csv"), csv.toString());
+            write(directory.resolve("frames.json"), json.toString());
+            write(directory.resolve("trace.json"), trace.toString());
+        }
+
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    // Counts follow from the frame number, so a record mixing two frames shows
+    private static void recordFrame(FrameProfiler profiler, long frame) {
+        profiler.beginFrame();
+        for (int pass = 0; pass < FrameProfiler.PASS_COUNT; pass++) {
+            profiler.beginPass(pass);
+            profiler.endPass(pass);
+        }
+        profiler.endFrame(frame, frame * 3, frame * 5, frame * 7);
+    }
+
+    private static long timeFrames(FrameProfiler profiler) {
+        long start = System.nanoTime();
+        for (int frame = 0; frame < TIMING_FRAMES; frame++) {
+            recordFrame(profiler, frame);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void write(Path path, String text) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path)) {
+            writer.write(text);
+        }
+        System.out.println("wrote " + path);
+    }
+
+    // Reads the ring over and over and checks every record it gets
+    private static final class Reader implements Runnable {
+
+        private final FrameProfiler profiler;
+
+        private volatile boolean running = true;
+
+        private long read;
+
+        private long torn;
+
+        private long withoutGpu;
+
+        Reader(FrameProfiler profiler) {
+            this.profiler = profiler;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                for (FrameRecord record : profiler.getRecords()) {
+                    long frame = record.getFrame();
+                    read++;
+                    if (record.getDrawCalls() != frame || record.getTriangles() != frame * 3
+                            || record.getUniformUploads() != frame * 5 || record.getStateChanges() != frame * 7) {
+                        torn++;
+                    }
+                    if (record.getPassGpuNanos(FrameProfiler.PASS_HUD) != FakeGpuClock.PASS_NANOS) {
+                        withoutGpu++;
+                    }
+                }
+            }
+        }
+    }
+
+    // Every pass takes the GPU the same time, and timestamps show up some frames after they were taken
+    private static final class FakeGpuClock implements GpuClock {
+
+        static final long PASS_NANOS = 1000;
+
+        private final long[] timestamps = new long[FrameProfiler.GPU_LATENCY * FrameProfiler.GPU_MARKERS];
+
+        private final long[] frames = new long[timestamps.length];
+
+        private long frame;
+
+        private int delay = GPU_DELAY;
+
+        @Override
+        public void timestamp(int slot, int marker) {
+            int index = slot * FrameProfiler.GPU_MARKERS + marker;
+            timestamps[index] = frame * 1_000_000 + marker / 2 * PASS_NANOS * 2 + marker % 2 * PASS_NANOS;
+            frames[index] = frame;
+        }
+
+        @Override
+        public boolean isAvailable(int slot, int marker) {
+            return frame >= frames[slot * FrameProfiler.GPU_MARKERS + marker] + delay;
+        }
+
+        @Override
+        public long getTimestamp(int slot, int marker) {
+            return timestamps[slot * FrameProfiler.GPU_MARKERS + marker];
+        }
+
+        @Override
+        public void cleanup() {
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package engine.spatial;
+
+import org.joml.FrustumIntersection;
+import org.joml.Intersectionf;
+import org.joml.Matrix4f;
+import org.joml.Vector2f;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Compares the query throughput of the AABB tree against a linear scan of the same boxes
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpatialIndexBenchmark {
+
+    private static final float WORLD_SIZE = 1000f;
+
+    private static final float MAX_ITEM_SIZE = 3f;
+
+    private static final float QUERY_SIZE = 50f;
+
+    private static final float RAY_LENGTH = 200f;
+
+    private static final int NUM_QUERIES = 1024;
+
+    @Param({"10000", "100000", "1000000"})
+    public int itemCount;
+
+    private float[] itemBounds;
+
+    private Integer[] items;
+
+    private int[] proxies;
+
+    private AabbTree<Integer> tree;
+
+    private float[] queryPoints;
+
+    private float[] rayDirections;
+
+    private FrustumIntersection[] frustums;
+
+    private List<Integer> result;
+
+    private Vector2f rayResult;
+
+    private int queryIndex;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        itemBounds = new float[itemCount * 6];
+        items = new Integer[itemCount];
+        proxies = new int[itemCount];
+        tree = new AabbTree<>();
+        for (int i = 0; i < itemCount; i++) {
+            int b = i * 6;
+            for (int axis = 0; axis < 3; axis++) {
+                float min = random.nextFloat() * WORLD_SIZE;
+                itemBounds[b + axis] = min;
+                itemBounds[b + 3 + axis] = min + random.nextFloat() * MAX_ITEM_SIZE;
+            }
+            items[i] = i;
+            proxies[i] = tree.createProxy(itemBounds[b], itemBounds[b + 1], itemBounds[b + 2],
+                    itemBounds[b + 3], itemBounds[b + 4], itemBounds[b + 5], items[i]);
+        }
+
+        queryPoints = new float[NUM_QUERIES * 3];
+        rayDirections = new float[NUM_QUERIES * 3];
+        frustums = new FrustumIntersection[NUM_QUERIES];
+        Matrix4f projView = new Matrix4f();
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            float x = random.nextFloat() * WORLD_SIZE;
+            float y = random.nextFloat() * WORLD_SIZE;
+            float z = random.nextFloat() * WORLD_SIZE;
+            queryPoints[i * 3] = x;
+            queryPoints[i * 3 + 1] = y;
+            queryPoints[i * 3 + 2] = z;
+
+            float dx = random.nextFloat() - 0.5f;
+            float dy = random.nextFloat() - 0.5f;
+            float dz = random.nextFloat() - 0.5f;
+            float invLength = 1.0f / (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+            rayDirections[i * 3] = dx * invLength;
+            rayDirections[i * 3 + 1] = dy * invLength;
+            rayDirections[i * 3 + 2] = dz * invLength;
+
+            projView.setPerspective((float) Math.toRadians(60), 4f / 3f, 0.01f, QUERY_SIZE * 5)
+                    .lookAt(x, y, z, x + dx, y + dy, z + dz, 0, 1, 0);
+            frustums[i] = new FrustumIntersection(projView);
+        }
+
+        result = new ArrayList<>();
+        rayResult = new Vector2f();
+    }
+
+    private int nextQuery() {
+        queryIndex = (queryIndex + 1) & (NUM_QUERIES - 1);
+        return queryIndex;
+    }
+
+    @Benchmark
+    public int boxTree() {
+        int q = nextQuery() * 3;
+        float x = queryPoints[q], y = queryPoints[q + 1], z = queryPoints[q + 2];
+        result.clear();
+        tree.queryBox(x, y, z, x + QUERY_SIZE, y + QUERY_SIZE, z + QUERY_SIZE, result);
+        return result.size();
+    }
+
+    @Benchmark
+    public int boxLinear() {
+        int q = nextQuery() * 3;
+        float x = queryPoints[q], y = queryPoints[q + 1], z = queryPoints[q + 2];
+        float maxX = x + QUERY_SIZE, maxY = y + QUERY_SIZE, maxZ = z + QUERY_SIZE;
+        result.clear();
+        for (int i = 0; i < itemCount; i++) {
+            int b = i * 6;
+            if (itemBounds[b] <= maxX && itemBounds[b + 1] <= maxY && itemBounds[b + 2] <= maxZ
+                    && itemBounds[b + 3] >= x && itemBounds[b + 4] >= y && itemBounds[b + 5] >= z) {
+                result.add(items[i]);
+            }
+        }
+        return result.size();
+    }
+
+    @Benchmark
+    public int sphereTree() {
+        int q = nextQuery() * 3;
+        result.clear();
+        tree.querySphere(queryPoints[q], queryPoints[q + 1], queryPoints[q + 2], QUERY_SIZE, result);
+        return result.size();
+    }
+
+    @Benchmark
+    public int sphereLinear() {
+        int q = nextQuery() * 3;
+        float x = queryPoints[q], y = queryPoints[q + 1], z = queryPoints[q + 2];
+        float radiusSquared = QUERY_SIZE * QUERY_SIZE;
+        result.clear();
+        for (int i = 0; i < itemCount; i++) {
+            int b = i * 6;
+            float dx = Math.max(Math.max(itemBounds[b] - x, 0), x - itemBounds[b + 3]);
+            float dy = Math.max(Math.max(itemBounds[b + 1] - y, 0), y - itemBounds[b + 4]);
+            float dz = Math.max(Math.max(itemBounds[b + 2] - z, 0), z - itemBounds[b + 5]);
+            if (dx * dx + dy * dy + dz * dz <= radiusSquared) {
+                result.add(items[i]);
+            }
+        }
+        return result.size();
+    }
+
+    @Benchmark
+    public int frustumTree() {
+        result.clear();
+        tree.queryFrustum(frustums[nextQuery()], result);
+        return result.size();
+    }
+
+    @Benchmark
+    public int frustumLinear() {
+        FrustumIntersection frustum = frustums[nextQuery()];
+        result.clear();
+        for (int i = 0; i < itemCount; i++) {
+            int b = i * 6;
+            if (frustum.testAab(itemBounds[b], itemBounds[b + 1], itemBounds[b + 2],
+                    itemBounds[b + 3], itemBounds[b + 4], itemBounds[b + 5])) {
+                result.add(items[i]);
+            }
+        }
+        return result.size();
+    }
+
+    @Benchmark
+    public int rayTree() {
+        int q = nextQuery() * 3;
+        result.clear();
+        tree.queryRay(queryPoints[q], queryPoints[q + 1], queryPoints[q + 2],
+                rayDirections[q], rayDirections[q + 1], rayDirections[q + 2], RAY_LENGTH, result);
+        return result.size();
+    }
+
+    @Benchmark
+    public int rayLinear() {
+        int q = nextQuery() * 3;
+        result.clear();
+        for (int i = 0; i < itemCount; i++) {
+            int b = i * 6;
+            boolean hit = Intersectionf.intersectRayAab(queryPoints[q], queryPoints[q + 1], queryPoints[q + 2],
+                    rayDirections[q], rayDirections[q + 1], rayDirections[q + 2],
+                    itemBounds[b], itemBounds[b + 1], itemBounds[b + 2],
+                    itemBounds[b + 3], itemBounds[b + 4], itemBounds[b + 5], rayResult);
+            if (hit && rayResult.x <= RAY_LENGTH) {
+                result.add(items[i]);
+            }
+        }
+        return result.size();
+    }
+
+    @Benchmark
+    public void moveTree(Blackhole blackhole) {
+        // Nudge one item, most moves stay inside the enlarged box and do not touch the tree
+        int i = nextQuery() % itemCount;
+        int b = i * 6;
+        float offset = (queryIndex & 1) == 0 ? 0.05f : -0.05f;
+        itemBounds[b] += offset;
+        itemBounds[b + 3] += offset;
+        blackhole.consume(tree.moveProxy(proxies[i], itemBounds[b], itemBounds[b + 1], itemBounds[b + 2],
+                itemBounds[b + 3], itemBounds[b + 4], itemBounds[b + 5]));
+    }
+}
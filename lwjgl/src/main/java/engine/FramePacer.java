@@ -0,0 +1,112 @@
+package engine;
+
+import java.util.concurrent.locks.LockSupport;
+
+// Holds each frame until its deadline on the nanosecond clock. It parks for most of the wait and spins the last
+// stretch, parking short by how late parks have been waking up, so frames end close to the deadline without a
+// sleep loop overshooting by a millisecond. Deadlines follow each other a frame apart, a late frame does not
+// push the ones after it unless it falls more than a frame behind.
+//
+// Frame times, from the end of one frame to the end of the next, go to its stats
+public class FramePacer {
+
+    // Left to spin on top of the oversleep estimate
+    private static final long SPIN_NANOS = 100_000;
+
+    private final long frameNanos;
+
+    private long nextFrame;
+
+    private long lastFrame;
+
+    // How late parks wake up, adapted from every park
+    private long oversleepEstimate;
+
+    private final FrameTimeStats stats;
+
+    // Frames that ended more than a frame past their deadline
+    private long lateFrames;
+
+    // How far the deadlines moved when late frames started them again from their end
+    private long slipNanos;
+
+    public FramePacer(int framesPerSecond) {
+        this.frameNanos = 1_000_000_000L / framesPerSecond;
+        this.oversleepEstimate = 50_000;
+        this.stats = new FrameTimeStats(frameNanos);
+        start();
+    }
+
+    // The first deadline is a frame from now
+    public void start() {
+        lastFrame = System.nanoTime();
+        nextFrame = lastFrame + frameNanos;
+        resetStats();
+    }
+
+    // Returns at the deadline of the frame, or at once when it is already past
+    public void sync() {
+        long deadline = nextFrame;
+        while (true) {
+            long now = System.nanoTime();
+            long park = deadline - now - oversleepEstimate - SPIN_NANOS;
+            if (park <= 0) {
+                break;
+            }
+            LockSupport.parkNanos(park);
+            adaptOversleep(System.nanoTime() - now - park);
+        }
+        long now;
+        while ((now = System.nanoTime()) < deadline) {
+            Thread.onSpinWait();
+        }
+
+        stats.record(now - lastFrame);
+        lastFrame = now;
+        nextFrame += frameNanos;
+        if (now - nextFrame > 0) {
+            // More than a frame behind, start again from now instead of rushing frames out
+            lateFrames++;
+            slipNanos += now + frameNanos - nextFrame;
+            nextFrame = now + frameNanos;
+        }
+    }
+
+    private void adaptOversleep(long oversleep) {
+        // Quick to grow so the next frames are not late, slow to shrink after a lucky wake up
+        if (oversleep > oversleepEstimate) {
+            oversleepEstimate += (oversleep - oversleepEstimate) / 2;
+        } else {
+            oversleepEstimate -= (oversleepEstimate - Math.max(oversleep, 0)) / 16;
+        }
+        oversleepEstimate = Math.min(oversleepEstimate, frameNanos / 2);
+    }
+
+    public void resetStats() {
+        stats.reset();
+        lateFrames = 0;
+        slipNanos = 0;
+    }
+
+    public long getFrameNanos() {
+        return frameNanos;
+    }
+
+    public long getOversleepEstimate() {
+        return oversleepEstimate;
+    }
+
+    // Time between the ends of consecutive frames since the stats were reset
+    public FrameTimeStats getStats() {
+        return stats;
+    }
+
+    public long getLateFrames() {
+        return lateFrames;
+    }
+
+    // Since the stats were reset
+    public long getSlipNanos() {
+        return slipNanos;
+    }
+}
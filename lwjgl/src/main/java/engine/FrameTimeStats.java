@@ -0,0 +1,80 @@
+package engine;
+
+// Mean, spread and extremes of frame times against a target, updated one frame at a time without storing them
+public class FrameTimeStats {
+
+    private final long targetNanos;
+
+    private long frames;
+
+    private double mean;
+
+    // Sum of squared differences from the mean, Welford's method
+    private double m2;
+
+    private long min;
+
+    private long max;
+
+    private long maxDeviation;
+
+    public FrameTimeStats(long targetNanos) {
+        this.targetNanos = targetNanos;
+        reset();
+    }
+
+    public void record(long frameNanos) {
+        frames++;
+        double delta = frameNanos - mean;
+        mean += delta / frames;
+        m2 += delta * (frameNanos - mean);
+        min = Math.min(min, frameNanos);
+        max = Math.max(max, frameNanos);
+        maxDeviation = Math.max(maxDeviation, Math.abs(frameNanos - targetNanos));
+    }
+
+    public void reset() {
+        frames = 0;
+        mean = 0;
+        m2 = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+        maxDeviation = 0;
+    }
+
+    public long getTargetNanos() {
+        return targetNanos;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public double getMeanNanos() {
+        return mean;
+    }
+
+    // Standard deviation of the frame times
+    public double getJitterNanos() {
+        return frames > 1 ? Math.sqrt(m2 / (frames - 1)) : 0;
+    }
+
+    public long getMinNanos() {
+        return frames > 0 ? min : 0;
+    }
+
+    public long getMaxNanos() {
+        return max;
+    }
+
+    // Largest distance of a frame time from the target
+    public long getMaxDeviationNanos() {
+        return maxDeviation;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("mean %.3f ms, jitter %.3f ms, min %.3f ms, max %.3f ms, max deviation %.3f ms",
+                mean / 1e6, getJitterNanos() / 1e6, getMinNanos() / 1e6, max / 1e6, maxDeviation / 1e6);
+    }
+}
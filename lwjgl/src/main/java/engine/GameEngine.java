@@ -9,14 +9,26 @@ public class GameEngine implements Runnable {
 
     private final Timer timer;
 
+    private final FramePacer framePacer;
+
     private final MouseInput mouseInput;
 
     private final IGameLogic gameLogic;
 
+    private final boolean threadedUpdates;
+
     public GameEngine(String windowTitle, int width, int height, boolean vSync, IGameLogic gameLogic) throws Exception {
+        this(windowTitle, width, height, vSync, false, gameLogic);
+    }
+
+    // Threaded updates run the game logic updates on a thread of their own, rendering interpolates between them
+    public GameEngine(String windowTitle, int width, int height, boolean vSync, boolean threadedUpdates,
+                      IGameLogic gameLogic) throws Exception {
         window = new Window(windowTitle, width, height, vSync);
         this.gameLogic = gameLogic;
+        this.threadedUpdates = threadedUpdates;
         timer = new Timer();
+        framePacer = new FramePacer(TARGET_FPS);
         mouseInput = new MouseInput();
     }
 
@@ -24,7 +36,11 @@ public class GameEngine implements Runnable {
     public void run() {
         try {
             init();
-            gameLoop();
+            if (threadedUpdates) {
+                threadedGameLoop();
+            } else {
+                gameLoop();
+            }
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
@@ -35,6 +51,7 @@ public class GameEngine implements Runnable {
     private void init() throws Exception {
         window.init();
         timer.init();
+        framePacer.start();
         mouseInput.init(window);
         gameLogic.init();
     }
@@ -64,20 +81,44 @@ public class GameEngine implements Runnable {
         }
     }
 
+    // A slow render no longer holds back the updates, it draws the state between the last two of them. This thread
+    // only records the input, the update thread hands it to the game logic
+    private void threadedGameLoop() {
+        UpdateLoop updateLoop = new UpdateLoop(gameLogic, TARGET_UPS);
+        SnapshotExchange exchange = updateLoop.getExchange();
+        InputExchange inputExchange = updateLoop.getInputExchange();
+        InterpolatedScene interpolatedScene = new InterpolatedScene(gameLogic.getScene());
+        updateLoop.start();
+        try {
+            while (updateLoop.isRunning() && !window.windowShouldClose()) {
+                mouseInput.input(window);
+                inputExchange.record(window, mouseInput);
+
+                exchange.poll();
+                interpolatedScene.update(exchange.getPrevious(), exchange.getCurrent(),
+                        exchange.getAlpha(System.nanoTime()));
+                gameLogic.render(window, interpolatedScene.getScene(), interpolatedScene.getCamera());
+                window.update();
+
+                if (!window.isvSync()) {
+                    sync();
+                }
+            }
+        } finally {
+            updateLoop.stop();
+        }
+    }
+
     private void cleanUp() {
         gameLogic.cleanup();
     }
 
     private void sync() {
-        float loopSlot = 1f / TARGET_FPS;
-        double endTime = timer.getLastLoopTime() + loopSlot;
-        while (timer.getTime() < endTime) {
-            try {
-                Thread.sleep(1);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
+        framePacer.sync();
+    }
+
+    public FramePacer getFramePacer() {
+        return framePacer;
     }
 
     protected void input() {
@@ -1,14 +1,33 @@
 package engine;
 
+import engine.graph.Camera;
+
 public interface IGameLogic {
 
     void init() throws Exception;
 
-    void input(Window window, MouseInput mouseInput);
+    // Keys are the window itself, or the keys recorded for the update with threaded updates
+    void input(KeyInput keys, MouseInput mouseInput);
 
     void update(float interval, MouseInput mouseInput);
 
     void render(Window window);
 
+    // With threaded updates, input and update run on a thread of their own while render stays on the window thread.
+    // Input gets the keys and mouse the window thread recorded since the last update. Render gets snapshots of the
+    // scene, lights and camera the updates change, and update must not touch what render reads
+    default Scene getScene() {
+        return null;
+    }
+
+    default Camera getCamera() {
+        return null;
+    }
+
+    // Renders copies of the scene and camera owned by the render thread, between the last two updates
+    default void render(Window window, Scene scene, Camera camera) {
+        render(window);
+    }
+
     void cleanup();
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+package engine;
+
+import org.joml.Vector2f;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_LAST;
+
+// Hands the keyboard and mouse from the window thread to the update thread without locks, the way snapshots go the
+// other way. The window thread records them after every event poll into a state it publishes; the update thread
+// takes the state published since its last update before running the next one. A state not taken yet goes back to
+// the window thread at the next recording, which adds to it and publishes it again, so mouse movement adds up and
+// none is lost or counted twice whatever the two rates are. A key or button counts as pressed for the next update
+// when it was down at any recording since the last one, so a tap shorter than an update is still seen. Updates
+// with nothing recorded before them keep the keys and buttons as the last recording left them, with no movement.
+//
+// One thread records and one takes, each calling only its own side
+public class InputExchange {
+
+    // Recorded and not taken yet
+    private final AtomicReference<InputState> latest;
+
+    // Let go by the update thread, for the window thread to record into
+    private final AtomicReference<InputState> recycled;
+
+    // Taken by the update thread, only used there
+    private final boolean[] keys;
+
+    private final boolean[] lastKeys;
+
+    private boolean lastLeftButton;
+
+    private boolean lastRightButton;
+
+    private final KeyInput keyInput;
+
+    private final MouseInput mouseInput;
+
+    public InputExchange() {
+        latest = new AtomicReference<>();
+        recycled = new AtomicReference<>();
+        keys = new boolean[GLFW_KEY_LAST + 1];
+        lastKeys = new boolean[GLFW_KEY_LAST + 1];
+        keyInput = keyCode -> keyCode >= 0 && keyCode < keys.length && keys[keyCode];
+        mouseInput = new MouseInput();
+    }
+
+    // Window thread. Keys as the window has them now and the mouse after its input for this frame
+    public void record(KeyInput window, MouseInput mouse) {
+        InputState state = latest.getAndSet(null);
+        if (state == null) {
+            state = recycled.getAndSet(null);
+            if (state == null) {
+                state = new InputState();
+            }
+            state.clear();
+        }
+        state.add(window, mouse);
+        latest.set(state);
+    }
+
+    // Update thread. Moves what was recorded since the last take to the keys and mouse of the update
+    public void take() {
+        InputState state = latest.getAndSet(null);
+        if (state == null) {
+            System.arraycopy(lastKeys, 0, keys, 0, keys.length);
+            mouseInput.set(0, 0, lastLeftButton, lastRightButton);
+            return;
+        }
+        System.arraycopy(state.keys, 0, keys, 0, keys.length);
+        System.arraycopy(state.lastKeys, 0, lastKeys, 0, lastKeys.length);
+        lastLeftButton = state.lastLeftButton;
+        lastRightButton = state.lastRightButton;
+        mouseInput.set(state.displX, state.displY, state.leftButton, state.rightButton);
+        recycled.set(state);
+    }
+
+    // Update thread. Keys of the last take
+    public KeyInput getKeys() {
+        return keyInput;
+    }
+
+    // Update thread. Mouse movement since the take before and buttons of the last take
+    public MouseInput getMouseInput() {
+        return mouseInput;
+    }
+
+    // What the recordings since the last take add up to, owned by one thread at a time
+    private static final class InputState {
+
+        // Down at any of the recordings
+        private final boolean[] keys;
+
+        // Down at the last one
+        private final boolean[] lastKeys;
+
+        private float displX;
+
+        private float displY;
+
+        private boolean leftButton;
+
+        private boolean rightButton;
+
+        private boolean lastLeftButton;
+
+        private boolean lastRightButton;
+
+        InputState() {
+            keys = new boolean[GLFW_KEY_LAST + 1];
+            lastKeys = new boolean[GLFW_KEY_LAST + 1];
+        }
+
+        void clear() {
+            Arrays.fill(keys, false);
+            displX = 0;
+            displY = 0;
+            leftButton = false;
+            rightButton = false;
+        }
+
+        void add(KeyInput window, MouseInput mouse) {
+            for (int key = 0; key < lastKeys.length; key++) {
+                lastKeys[key] = window.isKeyPressed(key);
+                keys[key] |= lastKeys[key];
+            }
+            Vector2f displVec = mouse.getDisplVec();
+            displX += displVec.x;
+            displY += displVec.y;
+            lastLeftButton = mouse.isLeftButtonPressed();
+            lastRightButton = mouse.isRightButtonPressed();
+            leftButton |= lastLeftButton;
+            rightButton |= lastRightButton;
+        }
+    }
+}
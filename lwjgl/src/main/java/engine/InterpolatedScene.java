@@ -0,0 +1,78 @@
+package engine;
+
+import engine.graph.Camera;
+import engine.items.GameItem;
+
+// Copy of a scene and its camera owned by the render thread, moved to the state between the last two updates.
+// Items are copied again only when the snapshots show items added, removed or reordered. Lights and fog are the
+// copies of the newest snapshot, not interpolated. The sky box is the one of the simulated scene, updates must
+// not change it
+public class InterpolatedScene {
+
+    private final Scene source;
+
+    private final Camera camera;
+
+    private Scene scene;
+
+    private GameItem[] sourceItems;
+
+    private GameItem[] items;
+
+    public InterpolatedScene(Scene source) {
+        this.source = source;
+        this.camera = new Camera();
+        this.scene = new Scene();
+        this.sourceItems = new GameItem[0];
+        this.items = new GameItem[0];
+    }
+
+    public void update(TransformSnapshot previous, TransformSnapshot current, float alpha) {
+        if (current == null) {
+            return;
+        }
+        if (itemsChanged(current)) {
+            copyItems(current);
+        }
+        scene.setSkyBox(source.getSkyBox());
+        scene.setSceneLight(current.getSceneLight());
+        scene.setFog(current.getFog());
+
+        for (int i = 0; i < items.length; i++) {
+            current.interpolate(previous, alpha, i, items[i]);
+        }
+        current.interpolateCamera(previous, alpha, camera);
+    }
+
+    private boolean itemsChanged(TransformSnapshot snapshot) {
+        if (snapshot.getItemCount() != sourceItems.length) {
+            return true;
+        }
+        for (int i = 0; i < sourceItems.length; i++) {
+            if (snapshot.getItem(i) != sourceItems[i] || snapshot.getMesh(i) != items[i].getMesh()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void copyItems(TransformSnapshot snapshot) {
+        int count = snapshot.getItemCount();
+        scene = new Scene();
+        sourceItems = new GameItem[count];
+        items = new GameItem[count];
+        for (int i = 0; i < count; i++) {
+            sourceItems[i] = snapshot.getItem(i);
+            items[i] = new GameItem(snapshot.getMesh(i));
+            scene.addGameItem(items[i]);
+        }
+    }
+
+    public Scene getScene() {
+        return scene;
+    }
+
+    public Camera getCamera() {
+        return camera;
+    }
+}
@@ -0,0 +1,7 @@
+package engine;
+
+// Keys by GLFW key code. The window answers for the keys down now, threaded updates get the keys recorded for them
+public interface KeyInput {
+
+    boolean isKeyPressed(int keyCode);
+}
@@ -22,17 +22,34 @@ public class MouseInput {
     }
 
     public void init(Window window) {
-        glfwSetCursorPosCallback(window.getWindowHandle(), (windowHandle, xpos, ypos) -> {
-            currentPos.x = xpos;
-            currentPos.y = ypos;
-        });
-        glfwSetCursorEnterCallback(window.getWindowHandle(), (windowHandle, entered) -> {
-            inWindow = entered;
-        });
-        glfwSetMouseButtonCallback(window.getWindowHandle(), (windowHandle, button, action, mode) -> {
-            leftButtonPressed = button == GLFW_MOUSE_BUTTON_1 && action == GLFW_PRESS;
-            rightButtonPressed = button == GLFW_MOUSE_BUTTON_2 && action == GLFW_PRESS;
-        });
+        glfwSetCursorPosCallback(window.getWindowHandle(), (windowHandle, xpos, ypos) -> cursorMoved(xpos, ypos));
+        glfwSetCursorEnterCallback(window.getWindowHandle(), (windowHandle, entered) -> cursorEntered(entered));
+        glfwSetMouseButtonCallback(window.getWindowHandle(),
+                (windowHandle, button, action, mode) -> buttonChanged(button, action));
+    }
+
+    // What the window callbacks report, during the event poll
+
+    void cursorMoved(double xpos, double ypos) {
+        currentPos.x = xpos;
+        currentPos.y = ypos;
+    }
+
+    void cursorEntered(boolean entered) {
+        inWindow = entered;
+    }
+
+    void buttonChanged(int button, int action) {
+        leftButtonPressed = button == GLFW_MOUSE_BUTTON_1 && action == GLFW_PRESS;
+        rightButtonPressed = button == GLFW_MOUSE_BUTTON_2 && action == GLFW_PRESS;
+    }
+
+    // The mouse of a threaded update, as taken from an InputExchange
+    void set(float displX, float displY, boolean leftButtonPressed, boolean rightButtonPressed) {
+        displVec.x = displX;
+        displVec.y = displY;
+        this.leftButtonPressed = leftButtonPressed;
+        this.rightButtonPressed = rightButtonPressed;
     }
 
     public Vector2f getDisplVec() {
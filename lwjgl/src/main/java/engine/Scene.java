@@ -4,12 +4,20 @@ import engine.graph.Mesh;
 import engine.graph.weather.Fog;
 import engine.items.GameItem;
 import engine.items.SkyBox;
+import engine.spatial.AabbTree;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 public class Scene {
 
-    private GameItem[] gameItems;
+    private final List<GameItem> gameItems;
+
+    // Array getGameItems returns, made again after items are added or removed
+    private GameItem[] gameItemArray;
 
     private SkyBox skyBox;
 
@@ -19,24 +27,91 @@ public class Scene {
 
     private Fog fog;
 
+    private final AabbTree<GameItem> spatialIndex;
+
+    // Proxies of the items that moved since the last query
+    private final BitSet movedProxies;
+
+    private final Consumer<GameItem> transformListener;
+
+    private final Matrix4f modelMatrix;
+
+    private final Vector3f boundsMin;
+
+    private final Vector3f boundsMax;
+
     public Scene() {
+        this.gameItems = new ArrayList<>();
+        this.gameItemArray = new GameItem[0];
         this.meshMap = new HashMap<>();
         this.fog = Fog.NOFOG;
+        this.spatialIndex = new AabbTree<>();
+        this.movedProxies = new BitSet();
+        this.transformListener = gameItem -> movedProxies.set(gameItem.getSpatialProxy());
+        this.modelMatrix = new Matrix4f();
+        this.boundsMin = new Vector3f();
+        this.boundsMax = new Vector3f();
     }
 
     public void setGameItems(GameItem[] gameItems) {
         int numGameItems = gameItems != null ? gameItems.length : 0;
         for (int i = 0; i < numGameItems; i++) {
-            GameItem gameItem = gameItems[i];
-            Mesh mesh = gameItem.getMesh();
-            List<GameItem> list = meshMap.computeIfAbsent(mesh, k -> new ArrayList<>());
-            list.add(gameItem);
+            addGameItem(gameItems[i]);
         }
-        this.gameItems = gameItems;
     }
 
+    // An item belongs to one scene at a time, it has to be removed from the other before
+    public void addGameItem(GameItem gameItem) {
+        if (gameItem.getSpatialProxy() != AabbTree.NULL_NODE) {
+            throw new IllegalArgumentException("Game item already belongs to a scene");
+        }
+        Mesh mesh = gameItem.getMesh();
+        List<GameItem> list = meshMap.computeIfAbsent(mesh, k -> new ArrayList<>());
+        list.add(gameItem);
+        gameItems.add(gameItem);
+        gameItemArray = null;
+
+        calcWorldBounds(gameItem);
+        int proxy = spatialIndex.createProxy(boundsMin.x, boundsMin.y, boundsMin.z,
+                boundsMax.x, boundsMax.y, boundsMax.z, gameItem);
+        gameItem.setSpatialProxy(proxy);
+        gameItem.setTransformListener(transformListener);
+    }
+
+    public void removeGameItem(GameItem gameItem) {
+        Mesh mesh = gameItem.getMesh();
+        List<GameItem> list = meshMap.get(mesh);
+        if (list == null || !list.remove(gameItem)) {
+            return;
+        }
+        if (list.isEmpty()) {
+            meshMap.remove(mesh);
+        }
+        gameItems.remove(gameItem);
+        gameItemArray = null;
+
+        int proxy = gameItem.getSpatialProxy();
+        movedProxies.clear(proxy);
+        spatialIndex.destroyProxy(proxy);
+        gameItem.setSpatialProxy(AabbTree.NULL_NODE);
+        gameItem.setTransformListener(null);
+    }
+
+    // Shared until items are added or removed, it must not be changed
     public GameItem[] getGameItems() {
-        return gameItems;
+        if (gameItemArray == null) {
+            gameItemArray = gameItems.toArray(new GameItem[0]);
+        }
+        return gameItemArray;
+    }
+
+    // Items in the order they were added, without copying them
+    public int getGameItemCount() {
+        return gameItems.size();
+    }
+
+    public GameItem getGameItem(int index) {
+        return gameItems.get(index);
     }
 
     public SkyBox getSkyBox() {
@@ -70,4 +145,53 @@ public class Scene {
     public void setFog(Fog fog) {
         this.fog = fog;
     }
+
+    public void queryFrustum(FrustumIntersection frustum, List<GameItem> result) {
+        updateSpatialIndex();
+        spatialIndex.queryFrustum(frustum, result);
+    }
+
+    public void querySphere(Vector3f center, float radius, List<GameItem> result) {
+        updateSpatialIndex();
+        spatialIndex.querySphere(center.x, center.y, center.z, radius, result);
+    }
+
+    public void queryBox(Vector3f min, Vector3f max, List<GameItem> result) {
+        updateSpatialIndex();
+        spatialIndex.queryBox(min.x, min.y, min.z, max.x, max.y, max.z, result);
+    }
+
+    public void queryRay(Vector3f origin, Vector3f direction, float maxDistance, List<GameItem> result) {
+        updateSpatialIndex();
+        spatialIndex.queryRay(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, maxDistance, result);
+    }
+
+    private void updateSpatialIndex() {
+        for (int proxy = movedProxies.nextSetBit(0); proxy >= 0; proxy = movedProxies.nextSetBit(proxy + 1)) {
+            calcWorldBounds(spatialIndex.getItem(proxy));
+            spatialIndex.moveProxy(proxy, boundsMin.x, boundsMin.y, boundsMin.z, boundsMax.x, boundsMax.y, boundsMax.z);
+        }
+        movedProxies.clear();
+    }
+
+    private void calcWorldBounds(GameItem gameItem) {
+        Mesh mesh = gameItem.getMesh();
+        Vector3f position = gameItem.getPosition();
+        Vector3f rotation = gameItem.getRotation();
+        float scale = gameItem.getScale();
+
+        if (rotation.x == 0 && rotation.y == 0 && rotation.z == 0 && scale >= 0) {
+            boundsMin.set(mesh.getBoundingMin()).mul(scale).add(position);
+            boundsMax.set(mesh.getBoundingMax()).mul(scale).add(position);
+        } else {
+            modelMatrix
+                    .identity()
+                    .translate(position)
+                    .rotateX((float) Math.toRadians(-rotation.x))
+                    .rotateY((float) Math.toRadians(-rotation.y))
+                    .rotateZ((float) Math.toRadians(-rotation.z))
+                    .scale(scale)
+                    .transformAab(mesh.getBoundingMin(), mesh.getBoundingMax(), boundsMin, boundsMax);
+        }
+    }
 }
@@ -47,4 +47,45 @@ public class SceneLight {
         this.directionalLight = directionalLight;
     }
 
+    // Copies the lights of the other one into this one. The lights this one has are reused when there are as many
+    public void set(SceneLight sceneLight) {
+        Vector3f ambient = sceneLight.getAmbientLight();
+        if (ambient == null || ambientLight == null) {
+            ambientLight = ambient != null ? new Vector3f(ambient) : null;
+        } else {
+            ambientLight.set(ambient);
+        }
+
+        PointLight[] pointLights = sceneLight.getPointLightList();
+        if (pointLights == null || pointLightList == null || pointLightList.length != pointLights.length) {
+            pointLightList = pointLights != null ? new PointLight[pointLights.length] : null;
+        }
+        for (int i = 0; pointLights != null && i < pointLights.length; i++) {
+            if (pointLightList[i] == null) {
+                pointLightList[i] = new PointLight(pointLights[i]);
+            } else {
+                pointLightList[i].set(pointLights[i]);
+            }
+        }
+
+        SpotLight[] spotLights = sceneLight.getSpotLightList();
+        if (spotLights == null || spotLightList == null || spotLightList.length != spotLights.length) {
+            spotLightList = spotLights != null ? new SpotLight[spotLights.length] : null;
+        }
+        for (int i = 0; spotLights != null && i < spotLights.length; i++) {
+            if (spotLightList[i] == null) {
+                spotLightList[i] = new SpotLight(spotLights[i]);
+            } else {
+                spotLightList[i].set(spotLights[i]);
+            }
+        }
+
+        DirectionalLight dirLight = sceneLight.getDirectionalLight();
+        if (dirLight == null || directionalLight == null) {
+            directionalLight = dirLight != null ? new DirectionalLight(dirLight) : null;
+        } else {
+            directionalLight.set(dirLight);
+        }
+    }
+
 }
@@ -0,0 +1,85 @@
+package engine;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// Hands snapshots from the update thread to the render thread without locks. The update thread captures into
+// a snapshot of its own and publishes it; the render thread takes the latest one published and keeps it with the
+// one before, to interpolate between them. A snapshot the render thread lets go goes back to the update thread,
+// so only a few are ever created.
+//
+// One thread writes and one reads, each calling only its own side
+public class SnapshotExchange {
+
+    // Published and not taken yet
+    private final AtomicReference<TransformSnapshot> latest;
+
+    // Let go by the render thread, for the update thread to capture into
+    private final AtomicReference<TransformSnapshot> recycled;
+
+    private TransformSnapshot writing;
+
+    private TransformSnapshot previous;
+
+    private TransformSnapshot current;
+
+    public SnapshotExchange() {
+        latest = new AtomicReference<>();
+        recycled = new AtomicReference<>();
+        writing = new TransformSnapshot();
+    }
+
+    // Update thread. The snapshot to capture into, until the next publish
+    public TransformSnapshot getWriteSnapshot() {
+        return writing;
+    }
+
+    public void publish() {
+        // A snapshot the render thread did not take yet is overwritten next
+        TransformSnapshot next = latest.getAndSet(writing);
+        if (next == null) {
+            next = recycled.getAndSet(null);
+            if (next == null) {
+                next = new TransformSnapshot();
+            }
+        }
+        writing = next;
+    }
+
+    // Render thread. Takes the latest snapshot when there is a new one, true if it did
+    public boolean poll() {
+        TransformSnapshot taken = latest.getAndSet(null);
+        if (taken == null) {
+            return false;
+        }
+        if (previous != null) {
+            recycled.set(previous);
+        }
+        previous = current;
+        current = taken;
+        return true;
+    }
+
+    // The one before the current snapshot, null until two were taken
+    public TransformSnapshot getPrevious() {
+        return previous;
+    }
+
+    // Newest snapshot taken, null until the first one
+    public TransformSnapshot getCurrent() {
+        return current;
+    }
+
+    // How far the time is from the previous snapshot to the current one, in [0, 1]. The render thread shows the
+    // state one update behind, so it has two to interpolate between
+    public float getAlpha(long time) {
+        if (previous == null || current == null) {
+            return 1;
+        }
+        long step = current.getTime() - previous.getTime();
+        if (step <= 0) {
+            return 1;
+        }
+        float alpha = (float) (time - current.getTime()) / step;
+        return Math.max(0, Math.min(1, alpha));
+    }
+}
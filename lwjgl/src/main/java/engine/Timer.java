@@ -1,25 +1,32 @@
 package engine;
 
+// Loop clock on System.nanoTime, kept as whole nanoseconds so it does not lose precision as the process runs
 public class Timer {
 
-    private double lastLoopTime;
+    private long lastLoopTime;
 
     public void init() {
-        lastLoopTime = getTime();
+        lastLoopTime = getNanoTime();
+    }
+
+    // Only differences between two readings mean something
+    public long getNanoTime() {
+        return System.nanoTime();
     }
 
     public double getTime() {
-        return System.nanoTime() / 1_000_000_000.0;
+        return getNanoTime() / 1_000_000_000.0;
     }
 
+    // Seconds since the last call
     public float getElapsedTime() {
-        double time = getTime();
-        float elapsedTime = (float) (time - lastLoopTime);
+        long time = getNanoTime();
+        float elapsedTime = (time - lastLoopTime) / 1_000_000_000f;
         lastLoopTime = time;
         return elapsedTime;
     }
 
-    public double getLastLoopTime() {
+    public long getLastLoopNanoTime() {
         return lastLoopTime;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,180 @@
+package engine;
+
+import engine.graph.Camera;
+import engine.graph.Mesh;
+import engine.graph.weather.Fog;
+import engine.items.GameItem;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+
+// Position, rotation and scale of every item of a scene and of the camera after one update, with copies of the
+// lights and fog. The update thread captures it and hands it to the render thread through a SnapshotExchange, from
+// then on it is only read until the exchange gives it back to be captured again
+public class TransformSnapshot {
+
+    // Position, rotation and scale of each item, one after the other
+    private static final int ITEM_FLOATS = 7;
+
+    private long tick;
+
+    private long time;
+
+    private GameItem[] items;
+
+    private Mesh[] meshes;
+
+    private float[] transforms;
+
+    private int numItems;
+
+    private final float[] cameraTransform;
+
+    // Copies kept from capture to capture, null when the scene had none
+    private SceneLight sceneLight;
+
+    private Fog fog;
+
+    public TransformSnapshot() {
+        items = new GameItem[64];
+        meshes = new Mesh[64];
+        transforms = new float[64 * ITEM_FLOATS];
+        cameraTransform = new float[6];
+    }
+
+    // Time is the System.nanoTime the state belongs to
+    public void capture(long tick, long time, Scene scene, Camera camera) {
+        this.tick = tick;
+        this.time = time;
+        int count = scene.getGameItemCount();
+        if (count > items.length) {
+            int capacity = Math.max(count, items.length * 2);
+            items = new GameItem[capacity];
+            meshes = new Mesh[capacity];
+            transforms = new float[capacity * ITEM_FLOATS];
+        }
+        for (int i = 0; i < count; i++) {
+            GameItem gameItem = scene.getGameItem(i);
+            items[i] = gameItem;
+            meshes[i] = gameItem.getMesh();
+            int t = i * ITEM_FLOATS;
+            Vector3f position = gameItem.getPosition();
+            Vector3f rotation = gameItem.getRotation();
+            transforms[t] = position.x;
+            transforms[t + 1] = position.y;
+            transforms[t + 2] = position.z;
+            transforms[t + 3] = rotation.x;
+            transforms[t + 4] = rotation.y;
+            transforms[t + 5] = rotation.z;
+            transforms[t + 6] = gameItem.getScale();
+        }
+        if (numItems > count) {
+            // Let removed items be collected
+            Arrays.fill(items, count, numItems, null);
+            Arrays.fill(meshes, count, numItems, null);
+        }
+        numItems = count;
+
+        Vector3f position = camera.getPosition();
+        Vector3f rotation = camera.getRotation();
+        cameraTransform[0] = position.x;
+        cameraTransform[1] = position.y;
+        cameraTransform[2] = position.z;
+        cameraTransform[3] = rotation.x;
+        cameraTransform[4] = rotation.y;
+        cameraTransform[5] = rotation.z;
+
+        SceneLight sourceLight = scene.getSceneLight();
+        if (sourceLight == null) {
+            sceneLight = null;
+        } else {
+            if (sceneLight == null) {
+                sceneLight = new SceneLight();
+            }
+            sceneLight.set(sourceLight);
+        }
+        Fog sourceFog = scene.getFog();
+        if (sourceFog == null) {
+            fog = null;
+        } else {
+            if (fog == null) {
+                fog = new Fog();
+            }
+            fog.set(sourceFog);
+        }
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public int getItemCount() {
+        return numItems;
+    }
+
+    public GameItem getItem(int index) {
+        return items[index];
+    }
+
+    public Mesh getMesh(int index) {
+        return meshes[index];
+    }
+
+    public SceneLight getSceneLight() {
+        return sceneLight;
+    }
+
+    public Fog getFog() {
+        return fog;
+    }
+
+    // Sets the target to the item at index, a fraction alpha of the way from where the previous snapshot had it.
+    // Items the previous snapshot had elsewhere, or not at all, are not interpolated
+    public void interpolate(TransformSnapshot previous, float alpha, int index, GameItem target) {
+        int t = index * ITEM_FLOATS;
+        float[] from = previous != null && index < previous.numItems && previous.items[index] == items[index]
+                ? previous.transforms : transforms;
+        target.setPosition(lerp(from[t], transforms[t], alpha), lerp(from[t + 1], transforms[t + 1], alpha),
+                lerp(from[t + 2], transforms[t + 2], alpha));
+        target.setRotation(lerpAngle(from[t + 3], transforms[t + 3], alpha),
+                lerpAngle(from[t + 4], transforms[t + 4], alpha), lerpAngle(from[t + 5], transforms[t + 5], alpha));
+        target.setScale(lerp(from[t + 6], transforms[t + 6], alpha));
+    }
+
+    public void interpolateCamera(TransformSnapshot previous, float alpha, Camera target) {
+        float[] from = previous != null ? previous.cameraTransform : cameraTransform;
+        float[] to = cameraTransform;
+        target.setPosition(lerp(from[0], to[0], alpha), lerp(from[1], to[1], alpha), lerp(from[2], to[2], alpha));
+        target.setRotation(lerpAngle(from[3], to[3], alpha), lerpAngle(from[4], to[4], alpha),
+                lerpAngle(from[5], to[5], alpha));
+    }
+
+    private static float lerp(float from, float to, float alpha) {
+        return from + (to - from) * alpha;
+    }
+
+    // Degrees, the short way round
+    private static float lerpAngle(float from, float to, float alpha) {
+        float delta = to - from;
+        if (delta > 180 || delta < -180) {
+            delta -= 360 * (float) Math.floor((delta + 180) / 360);
+        }
+        return from + delta * alpha;
+    }
+
+    // Hash of the captured state, two snapshots of the same state have the same one
+    public long stateHash() {
+        long hash = tick;
+        for (int i = 0; i < numItems * ITEM_FLOATS; i++) {
+            hash = hash * 31 + Float.floatToIntBits(transforms[i]);
+        }
+        for (float value : cameraTransform) {
+            hash = hash * 31 + Float.floatToIntBits(value);
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,120 @@
+package engine;
+
+import engine.graph.Camera;
+
+import java.util.concurrent.locks.LockSupport;
+
+// Runs the input and updates of the game logic at a fixed rate on a thread of its own and publishes the scene and
+// camera after each one. Input comes from what the window thread records in the input exchange. Every update steps
+// by the same interval whatever the timing, so the state after n updates with the same input is the one n updates
+// give on a single thread
+public class UpdateLoop implements Runnable {
+
+    // Updates further behind than this are dropped rather than run back to back
+    private static final int MAX_CATCH_UP = 5;
+
+    private final IGameLogic gameLogic;
+
+    private final InputExchange inputExchange;
+
+    private final SnapshotExchange exchange;
+
+    private final float interval;
+
+    private final long intervalNanos;
+
+    private volatile boolean running;
+
+    private Thread thread;
+
+    private long tick;
+
+    private long tickTime;
+
+    public UpdateLoop(IGameLogic gameLogic, int updatesPerSecond) {
+        this.gameLogic = gameLogic;
+        this.inputExchange = new InputExchange();
+        this.exchange = new SnapshotExchange();
+        this.interval = 1f / updatesPerSecond;
+        this.intervalNanos = 1_000_000_000L / updatesPerSecond;
+    }
+
+    public SnapshotExchange getExchange() {
+        return exchange;
+    }
+
+    public InputExchange getInputExchange() {
+        return inputExchange;
+    }
+
+    // Publishes the state before the first update and starts updating
+    public void start() {
+        if (gameLogic.getScene() == null || gameLogic.getCamera() == null) {
+            throw new IllegalStateException("Threaded updates need the scene and camera of the game logic");
+        }
+        tick = 0;
+        tickTime = System.nanoTime();
+        publish();
+        running = true;
+        thread = new Thread(this, "update");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    // False once stopped or after an update failed
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                long wait = tickTime + intervalNanos - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                    continue;
+                }
+                if (-wait > MAX_CATCH_UP * intervalNanos) {
+                    tickTime = System.nanoTime() - intervalNanos;
+                }
+                step();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            running = false;
+        }
+    }
+
+    // Takes the input recorded since the last update, runs one update and publishes the state after it
+    public void step() {
+        inputExchange.take();
+        MouseInput mouseInput = inputExchange.getMouseInput();
+        gameLogic.input(inputExchange.getKeys(), mouseInput);
+        gameLogic.update(interval, mouseInput);
+        tick++;
+        tickTime += intervalNanos;
+        publish();
+    }
+
+    private void publish() {
+        Scene scene = gameLogic.getScene();
+        Camera camera = gameLogic.getCamera();
+        exchange.getWriteSnapshot().capture(tick, tickTime, scene, camera);
+        exchange.publish();
+    }
+}
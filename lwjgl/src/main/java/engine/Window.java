@@ -6,10 +6,11 @@ import org.lwjgl.glfw.GLFWVidMode;
 import org.lwjgl.opengl.GL;
 
 import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.glfw.Callbacks.glfwFreeCallbacks;
 import static org.lwjgl.opengl.GL33.*;
 import static org.lwjgl.system.MemoryUtil.NULL;
 
-public class Window {
+public class Window implements KeyInput {
 
     private String title;
     private int width;
@@ -17,14 +18,24 @@ public class Window {
     private long windowHandle;
     private boolean resized;
     private boolean vSync;
+    private final boolean visible;
 
+    // Keys down as of the last event poll, by key code, kept by the key callback
+    private final boolean[] keysDown;
 
     public Window(String title, int width, int height, boolean vSync) {
+        this(title, width, height, vSync, true);
+    }
+
+    // An invisible window still has a default framebuffer of its size to render to, with no monitor needed
+    public Window(String title, int width, int height, boolean vSync, boolean visible) {
         this.title = title;
         this.width = width;
         this.height = height;
         this.vSync = vSync;
+        this.visible = visible;
         this.resized = false;
+        this.keysDown = new boolean[GLFW_KEY_LAST + 1];
     }
 
     public void init() {
@@ -41,7 +52,7 @@ public class Window {
         glfwWindowHint(GLFW_VISIBLE, GL_FALSE); // the window will stay hidden after creation
         glfwWindowHint(GLFW_RESIZABLE, GL_TRUE); // the window will be resizable
         glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, 3);
-        glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 2);
+        glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 3);
         glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_CORE_PROFILE);
         glfwWindowHint(GLFW_OPENGL_FORWARD_COMPAT, GL_TRUE);
 
@@ -59,19 +70,24 @@ public class Window {
 
         // Setup a key callback. It will be called every time a key is pressed, repeated or released.
         glfwSetKeyCallback(windowHandle, (window, key, scancode, action, mods) -> {
+            if (key >= 0 && key < keysDown.length && action != GLFW_REPEAT) {
+                keysDown[key] = action == GLFW_PRESS;
+            }
             if ( key == GLFW_KEY_ESCAPE && action == GLFW_RELEASE )
                 glfwSetWindowShouldClose(window, true); // We will detect this in the rendering loop
         });
 
-        // Get the resolution of the primary monitor
-        GLFWVidMode vidmode = glfwGetVideoMode(glfwGetPrimaryMonitor());
+        if (visible) {
+            // Get the resolution of the primary monitor
+            GLFWVidMode vidmode = glfwGetVideoMode(glfwGetPrimaryMonitor());
 
-        // Center the window
-        glfwSetWindowPos(
-                windowHandle,
-                (vidmode.width() - width) / 2,
-                (vidmode.height() - height) / 2
-        );
+            // Center the window
+            glfwSetWindowPos(
+                    windowHandle,
+                    (vidmode.width() - width) / 2,
+                    (vidmode.height() - height) / 2
+            );
+        }
 
         // Make the OpenGL context current
         glfwMakeContextCurrent(windowHandle);
@@ -89,7 +105,9 @@ public class Window {
         }
 
         // Make the window visible
-        glfwShowWindow(windowHandle);
+        if (visible) {
+            glfwShowWindow(windowHandle);
+        }
 
         // Let the rendering process consider the distance of the rendered pixels for drawing order
         glEnable(GL_DEPTH_TEST);
@@ -110,8 +128,10 @@ public class Window {
         glClearColor(r, g, b, a);
     }
 
+    // Same as glfwGetKey, from the state the callback keeps so any key code can be asked without a GLFW call
+    @Override
     public boolean isKeyPressed(int keyCode) {
-        return glfwGetKey(windowHandle, keyCode) == GLFW_PRESS;
+        return keyCode >= 0 && keyCode < keysDown.length && keysDown[keyCode];
     }
 
     public boolean windowShouldClose() {
@@ -154,4 +174,14 @@ public class Window {
         glfwSwapBuffers(windowHandle);
         glfwPollEvents();
     }
+
+    public void cleanup() {
+        glfwFreeCallbacks(windowHandle);
+        glfwDestroyWindow(windowHandle);
+        glfwTerminate();
+        GLFWErrorCallback callback = glfwSetErrorCallback(null);
+        if (callback != null) {
+            callback.free();
+        }
+    }
 }
@@ -8,6 +8,7 @@ import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.util.HashMap;
+import java.util.Map;
 
 public class FontTexture {
 
@@ -15,25 +16,30 @@ public class FontTexture {
 
     private static final int CHAR_PADDING = 2;
 
-    private final Font font;
-    private final String charSetName;
+    private final Map<Character, CharInfo> charMap;
+    private final int width;
+    private final int height;
 
-    private HashMap<Character, CharInfo> charMap;
-    private int width;
-    private int height;
-
-    private Texture texture;
+    private final Texture texture;
 
     // A much more clean approach would be to use the stb library to render text.
     public FontTexture(Font font, String charSetName) throws Exception {
-        this.font = font;
-        this.charSetName = charSetName;
-        charMap = new HashMap<>();
+        this(buildAtlas(font, charSetName));
+    }
+
+    private FontTexture(Atlas atlas) throws Exception {
+        this(atlas, new Texture(atlas.image()));
+    }
 
-        buildTexture();
+    // The texture is the one made from the image of the atlas, or null where nothing is drawn
+    public FontTexture(Atlas atlas, Texture texture) {
+        this.charMap = atlas.charMap();
+        this.width = atlas.width();
+        this.height = atlas.height();
+        this.texture = texture;
     }
 
-    private String getAllAvailableChars(String charSetName) {
+    private static String getAllAvailableChars(String charSetName) {
         CharsetEncoder ce = Charset.forName(charSetName).newEncoder();
         StringBuilder result = new StringBuilder();
         for (char c = 0; c < Character.MAX_VALUE; c++) {
@@ -44,7 +50,10 @@ public class FontTexture {
         return result.toString();
     }
 
-    private void buildTexture() throws Exception {
+    // Lays every character of the charset out in one row and encodes the image as PNG, needs no OpenGL
+    public static Atlas buildAtlas(Font font, String charSetName) throws Exception {
+        Map<Character, CharInfo> charMap = new HashMap<>();
+
         // Get the font metrics for each character for the selected font by using image
         BufferedImage img = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
         Graphics2D g2D = img.createGraphics();
@@ -52,8 +61,8 @@ public class FontTexture {
         FontMetrics fontMetrics = g2D.getFontMetrics();
 
         String allChars = getAllAvailableChars(charSetName);
-        this.width = 0;
-        this.height = fontMetrics.getHeight();
+        int width = 0;
+        int height = fontMetrics.getHeight();
         for (char c : allChars.toCharArray()) {
             // Get the size for each character and update global image size
             CharInfo charInfo = new CharInfo(width, fontMetrics.charWidth(c));
@@ -86,7 +95,7 @@ public class FontTexture {
             buf.put(data, 0, data.length);
             buf.flip();
         }
-        texture = new Texture(buf);
+        return new Atlas(charMap, width, height, buf);
     }
 
     public CharInfo getCharInfo(char chr) {
@@ -106,4 +115,6 @@ public class FontTexture {
     }
 
     public record CharInfo(int startX, int width) {}
+
+    public record Atlas(Map<Character, CharInfo> charMap, int width, int height, ByteBuffer image) {}
 }
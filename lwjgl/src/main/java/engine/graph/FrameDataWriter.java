@@ -0,0 +1,159 @@
+package engine.graph;
+
+import engine.SceneLight;
+import engine.graph.lights.DirectionalLight;
+import engine.graph.lights.PointLight;
+import engine.graph.lights.SpotLight;
+import engine.graph.weather.Fog;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.nio.ByteBuffer;
+
+// Packs the frame data and the lights with the std140 layout of frame.glsl and lights.glsl. Lights are moved
+// to view coordinates through scratch vectors owned by the writer, so writing a frame allocates nothing.
+// It does not touch OpenGL, the buffers can be any ByteBuffer in native order
+public class FrameDataWriter {
+
+    // FrameData
+    private static final int PROJECTION_MATRIX = 0;
+    private static final int VIEW_MATRIX = 64;
+    private static final int AMBIENT_LIGHT = 128;
+    private static final int SPECULAR_POWER = 140;
+    private static final int FOG_ACTIVE = 144;
+    private static final int FOG_COLOR = 160;
+    private static final int FOG_DENSITY = 172;
+    private static final int DIR_LIGHT_COLOR = 176;
+    private static final int DIR_LIGHT_DIRECTION = 192;
+    private static final int DIR_LIGHT_INTENSITY = 204;
+    private static final int NUM_POINT_LIGHTS = 208;
+    private static final int NUM_SPOT_LIGHTS = 212;
+    private static final int CLUSTER_SCALE = 216;
+    private static final int CLUSTER_DIMS = 224;
+    private static final int CLUSTER_Z_SCALE = 236;
+    private static final int CLUSTER_Z_BIAS = 240;
+    public static final int FRAME_DATA_SIZE = 256;
+
+    // PointLight, also the first member of SpotLight
+    private static final int LIGHT_COLOR = 0;
+    private static final int LIGHT_POSITION = 16;
+    private static final int LIGHT_INTENSITY = 28;
+    private static final int LIGHT_ATT_CONSTANT = 32;
+    private static final int LIGHT_ATT_LINEAR = 36;
+    private static final int LIGHT_ATT_EXPONENT = 40;
+    private static final int POINT_LIGHT_SIZE = 48;
+
+    // SpotLight
+    private static final int SPOT_CONE_DIRECTION = 48;
+    private static final int SPOT_CUTOFF = 60;
+    private static final int SPOT_LIGHT_SIZE = 64;
+
+    private final int maxPointLights;
+
+    private final int maxSpotLights;
+
+    private final Vector3f lightPosition;
+
+    private final Vector3f lightDirection;
+
+    private int numPointLights;
+
+    private int numSpotLights;
+
+    public FrameDataWriter(int maxPointLights, int maxSpotLights) {
+        this.maxPointLights = maxPointLights;
+        this.maxSpotLights = maxSpotLights;
+        this.lightPosition = new Vector3f();
+        this.lightDirection = new Vector3f();
+    }
+
+    public static int lightDataSize(int maxPointLights, int maxSpotLights) {
+        return maxPointLights * POINT_LIGHT_SIZE + maxSpotLights * SPOT_LIGHT_SIZE;
+    }
+
+    // Lights past the maximums are left out
+    public void write(ByteBuffer frame, ByteBuffer lights, Matrix4f projectionMatrix, Matrix4f viewMatrix,
+                      SceneLight sceneLight, Fog fog, float specularPower) {
+        projectionMatrix.get(PROJECTION_MATRIX, frame);
+        viewMatrix.get(VIEW_MATRIX, frame);
+        sceneLight.getAmbientLight().get(AMBIENT_LIGHT, frame);
+        frame.putFloat(SPECULAR_POWER, specularPower);
+
+        frame.putInt(FOG_ACTIVE, fog.isActiveFog() ? 1 : 0);
+        fog.getColor().get(FOG_COLOR, frame);
+        frame.putFloat(FOG_DENSITY, fog.getDensity());
+
+        DirectionalLight dirLight = sceneLight.getDirectionalLight();
+        Vector3f direction = dirLight.getDirection();
+        viewMatrix.transformDirection(direction.x, direction.y, direction.z, lightDirection);
+        dirLight.getColor().get(DIR_LIGHT_COLOR, frame);
+        lightDirection.get(DIR_LIGHT_DIRECTION, frame);
+        frame.putFloat(DIR_LIGHT_INTENSITY, dirLight.getIntensity());
+
+        PointLight[] pointLightList = sceneLight.getPointLightList();
+        numPointLights = pointLightList != null ? Math.min(pointLightList.length, maxPointLights) : 0;
+        for (int i = 0; i < numPointLights; i++) {
+            putPointLight(lights, i * POINT_LIGHT_SIZE, pointLightList[i], viewMatrix);
+        }
+
+        int spotLightsOffset = getSpotLightsOffset();
+        SpotLight[] spotLightList = sceneLight.getSpotLightList();
+        numSpotLights = spotLightList != null ? Math.min(spotLightList.length, maxSpotLights) : 0;
+        for (int i = 0; i < numSpotLights; i++) {
+            SpotLight spotLight = spotLightList[i];
+            int offset = spotLightsOffset + i * SPOT_LIGHT_SIZE;
+            putPointLight(lights, offset, spotLight.getPointLight(), viewMatrix);
+            Vector3f coneDirection = spotLight.getConeDirection();
+            viewMatrix.transformDirection(coneDirection.x, coneDirection.y, coneDirection.z, lightDirection);
+            lightDirection.get(offset + SPOT_CONE_DIRECTION, lights);
+            lights.putFloat(offset + SPOT_CUTOFF, spotLight.getCutOff());
+        }
+
+        frame.putInt(NUM_POINT_LIGHTS, numPointLights);
+        frame.putInt(NUM_SPOT_LIGHTS, numSpotLights);
+    }
+
+    // How fragments find their cluster, for a viewport of the given size
+    public void writeClusters(ByteBuffer frame, LightClusterer clusterer, int width, int height) {
+        frame.putFloat(CLUSTER_SCALE, (float) clusterer.getDimX() / width);
+        frame.putFloat(CLUSTER_SCALE + 4, (float) clusterer.getDimY() / height);
+        frame.putInt(CLUSTER_DIMS, clusterer.getDimX());
+        frame.putInt(CLUSTER_DIMS + 4, clusterer.getDimY());
+        frame.putInt(CLUSTER_DIMS + 8, clusterer.getDimZ());
+        frame.putFloat(CLUSTER_Z_SCALE, clusterer.getZScale());
+        frame.putFloat(CLUSTER_Z_BIAS, clusterer.getZBias());
+    }
+
+    private void putPointLight(ByteBuffer lights, int offset, PointLight pointLight, Matrix4f viewMatrix) {
+        Vector3f position = pointLight.getPosition();
+        viewMatrix.transformPosition(position.x, position.y, position.z, lightPosition);
+        pointLight.getColor().get(offset + LIGHT_COLOR, lights);
+        lightPosition.get(offset + LIGHT_POSITION, lights);
+        lights.putFloat(offset + LIGHT_INTENSITY, pointLight.getIntensity());
+        PointLight.Attenuation att = pointLight.getAttenuation();
+        lights.putFloat(offset + LIGHT_ATT_CONSTANT, att.getConstant());
+        lights.putFloat(offset + LIGHT_ATT_LINEAR, att.getLinear());
+        lights.putFloat(offset + LIGHT_ATT_EXPONENT, att.getExponent());
+    }
+
+    public int getNumPointLights() {
+        return numPointLights;
+    }
+
+    public int getNumSpotLights() {
+        return numSpotLights;
+    }
+
+    // Bytes of the point lights written by the last frame, from the start of the lights buffer
+    public int getPointLightsSize() {
+        return numPointLights * POINT_LIGHT_SIZE;
+    }
+
+    public int getSpotLightsOffset() {
+        return maxPointLights * POINT_LIGHT_SIZE;
+    }
+
+    public int getSpotLightsSize() {
+        return numSpotLights * SPOT_LIGHT_SIZE;
+    }
+}
@@ -0,0 +1,362 @@
+package engine.graph;
+
+import engine.Scene;
+import engine.items.GameItem;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Prepares the scene draws of a frame without touching OpenGL, so it can run on any thread. The items in view come
+// from the spatial index of the scene, split by mesh. Worker tasks on the common fork join pool take them in
+// chunks of one mesh, write their matrices to off-heap buffers of their own and record a command for each draw.
+// The commands end in one render queue, sorted, that the render thread replays.
+//
+// The opaque items of a chunk are one instanced command with their model matrices when instanced rendering is
+// on. Every other item is a command of its own with its model view matrix
+public class FramePreparer {
+
+    // Items of a mesh handed to a worker at once
+    private static final int CHUNK_SIZE = 512;
+
+    // Fewer items than this are prepared on the calling thread
+    private static final int PARALLEL_THRESHOLD = 2048;
+
+    private static final int MATRIX_SIZE_FLOATS = 16;
+
+    // Commands are the index of the worker that recorded them and their index in that worker
+    private static final int WORKER_SHIFT = 24;
+
+    private static final int COMMAND_MASK = (1 << WORKER_SHIFT) - 1;
+
+    private final int shader;
+
+    private final RenderQueue queue;
+
+    private final Matrix4f projectionMatrix;
+
+    private final Matrix4f viewMatrix;
+
+    private final Matrix4f projViewMatrix;
+
+    private final FrustumIntersection frustum;
+
+    // Items the last frustum query returned, and the same items by mesh. The lists are kept from frame to frame
+    private final List<GameItem> visibleQuery;
+
+    private final Map<Mesh, List<GameItem>> visibleByMesh;
+
+    private float zFar;
+
+    private boolean frustumCulling;
+
+    private boolean instancedRendering;
+
+    private final List<Mesh> chunkMeshes;
+
+    private final List<List<GameItem>> chunkItems;
+
+    private int[] chunkStarts;
+
+    private int numChunks;
+
+    private final AtomicInteger nextChunk;
+
+    private Worker[] workers;
+
+    private int visibleItems;
+
+    private int culledItems;
+
+    // Shader is the program id the sort keys group the draws by
+    public FramePreparer(int shader) {
+        this.shader = shader;
+        this.queue = new RenderQueue();
+        this.projectionMatrix = new Matrix4f();
+        this.viewMatrix = new Matrix4f();
+        this.projViewMatrix = new Matrix4f();
+        this.frustum = new FrustumIntersection();
+        this.visibleQuery = new ArrayList<>();
+        this.visibleByMesh = new HashMap<>();
+        this.frustumCulling = true;
+        this.instancedRendering = true;
+        this.chunkMeshes = new ArrayList<>();
+        this.chunkItems = new ArrayList<>();
+        this.chunkStarts = new int[64];
+        this.nextChunk = new AtomicInteger();
+        setParallelism(Runtime.getRuntime().availableProcessors());
+    }
+
+    // Number of workers, 1 prepares everything on the calling thread
+    public void setParallelism(int parallelism) {
+        if (workers != null) {
+            for (Worker worker : workers) {
+                worker.free();
+            }
+        }
+        workers = new Worker[Math.max(1, Math.min(parallelism, 1 << (Integer.SIZE - 1 - WORKER_SHIFT)))];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i);
+        }
+    }
+
+    public int getParallelism() {
+        return workers.length;
+    }
+
+    public boolean isFrustumCulling() {
+        return frustumCulling;
+    }
+
+    public void setFrustumCulling(boolean frustumCulling) {
+        this.frustumCulling = frustumCulling;
+    }
+
+    public boolean isInstancedRendering() {
+        return instancedRendering;
+    }
+
+    public void setInstancedRendering(boolean instancedRendering) {
+        this.instancedRendering = instancedRendering;
+    }
+
+    // Fills the queue with the draws of the visible items, sorted. Matrices stay valid until the next call
+    public void prepare(Scene scene, Matrix4f projectionMatrix, Matrix4f viewMatrix, float zFar) {
+        this.projectionMatrix.set(projectionMatrix);
+        this.viewMatrix.set(viewMatrix);
+        this.zFar = zFar;
+
+        int numItems = frustumCulling ? queryVisible(scene) : scene.getGameItemCount();
+        splitChunks(scene);
+        for (Worker worker : workers) {
+            worker.reset();
+        }
+        nextChunk.set(0);
+        if (workers.length > 1 && numItems >= PARALLEL_THRESHOLD) {
+            for (Worker worker : workers) {
+                worker.reinitialize();
+            }
+            ForkJoinTask.invokeAll(workers);
+        } else {
+            workers[0].prepareChunks();
+        }
+
+        queue.clear();
+        for (Worker worker : workers) {
+            for (int i = 0; i < worker.numCommands; i++) {
+                queue.submit(worker.keys[i], worker.meshes[i], worker.index << WORKER_SHIFT | i);
+            }
+        }
+        queue.sort();
+        visibleItems = numItems;
+        culledItems = scene.getGameItemCount() - numItems;
+    }
+
+    // Number of items in view, sorted into their mesh lists
+    private int queryVisible(Scene scene) {
+        projViewMatrix.set(projectionMatrix).mul(viewMatrix);
+        frustum.set(projViewMatrix);
+        visibleQuery.clear();
+        scene.queryFrustum(frustum, visibleQuery);
+
+        // Lists of meshes no longer in the scene are dropped, the others emptied
+        if (visibleByMesh.size() > scene.getMeshes().size()) {
+            visibleByMesh.keySet().retainAll(scene.getMeshes());
+        }
+        for (List<GameItem> gameItems : visibleByMesh.values()) {
+            gameItems.clear();
+        }
+        for (int i = 0; i < visibleQuery.size(); i++) {
+            GameItem gameItem = visibleQuery.get(i);
+            visibleByMesh.computeIfAbsent(gameItem.getMesh(), k -> new ArrayList<>()).add(gameItem);
+        }
+        return visibleQuery.size();
+    }
+
+    private void splitChunks(Scene scene) {
+        chunkMeshes.clear();
+        chunkItems.clear();
+        numChunks = 0;
+        for (Mesh mesh : scene.getMeshes()) {
+            List<GameItem> gameItems = frustumCulling ? visibleByMesh.get(mesh) : scene.getGameItemList(mesh);
+            if (gameItems == null) {
+                continue;
+            }
+            for (int start = 0; start < gameItems.size(); start += CHUNK_SIZE) {
+                if (numChunks == chunkStarts.length) {
+                    chunkStarts = Arrays.copyOf(chunkStarts, numChunks * 2);
+                }
+                chunkMeshes.add(mesh);
+                chunkItems.add(gameItems);
+                chunkStarts[numChunks++] = start;
+            }
+        }
+    }
+
+    public RenderQueue getQueue() {
+        return queue;
+    }
+
+    // Matrices of a command of the queue, model matrices when it is instanced and a model view matrix otherwise
+    public FloatBuffer getMatrices(int command) {
+        return workers[command >>> WORKER_SHIFT].matrices;
+    }
+
+    // Index of the first matrix of the command in its buffer
+    public int getFirstMatrix(int command) {
+        return workers[command >>> WORKER_SHIFT].firstMatrices[command & COMMAND_MASK];
+    }
+
+    // Instances drawn by the command, 0 when it is a plain draw of one item
+    public int getInstanceCount(int command) {
+        return workers[command >>> WORKER_SHIFT].instanceCounts[command & COMMAND_MASK];
+    }
+
+    public int getVisibleItems() {
+        return visibleItems;
+    }
+
+    public int getCulledItems() {
+        return culledItems;
+    }
+
+    public void cleanup() {
+        for (Worker worker : workers) {
+            worker.free();
+        }
+    }
+
+    private static float viewDepth(GameItem gameItem, Matrix4f viewMatrix) {
+        Vector3f position = gameItem.getPosition();
+        return -(viewMatrix.m02() * position.x + viewMatrix.m12() * position.y + viewMatrix.m22() * position.z
+                + viewMatrix.m32());
+    }
+
+    // Takes chunks until there are none left. Everything it writes is its own
+    private final class Worker extends RecursiveAction {
+
+        private final int index;
+
+        private final Transformation transformation;
+
+        private FloatBuffer matrices;
+
+        private int numMatrices;
+
+        private long[] keys;
+
+        private Mesh[] meshes;
+
+        private int[] firstMatrices;
+
+        private int[] instanceCounts;
+
+        private int numCommands;
+
+        Worker(int index) {
+            this.index = index;
+            this.transformation = new Transformation();
+            this.keys = new long[64];
+            this.meshes = new Mesh[64];
+            this.firstMatrices = new int[64];
+            this.instanceCounts = new int[64];
+        }
+
+        void reset() {
+            Arrays.fill(meshes, 0, numCommands, null);
+            numCommands = 0;
+            numMatrices = 0;
+        }
+
+        @Override
+        protected void compute() {
+            prepareChunks();
+        }
+
+        void prepareChunks() {
+            int chunk;
+            while ((chunk = nextChunk.getAndIncrement()) < numChunks) {
+                prepareChunk(chunkMeshes.get(chunk), chunkItems.get(chunk), chunkStarts[chunk]);
+            }
+        }
+
+        private void prepareChunk(Mesh mesh, List<GameItem> gameItems, int start) {
+            int end = Math.min(start + CHUNK_SIZE, gameItems.size());
+            ensureMatrixCapacity(numMatrices + end - start);
+
+            Material material = mesh.getMaterial();
+            int materialId = material.getId();
+            int texture = material.isTextured() ? material.getTexture().id : 0;
+            boolean blended = material.isTransparent();
+            boolean instanced = instancedRendering && !blended;
+            int firstInstance = numMatrices;
+            float nearestDepth = Float.POSITIVE_INFINITY;
+            for (int i = start; i < end; i++) {
+                GameItem gameItem = gameItems.get(i);
+                float depth = viewDepth(gameItem, viewMatrix) / zFar;
+                if (instanced) {
+                    transformation.buildModelMatrix(gameItem).get(numMatrices * MATRIX_SIZE_FLOATS, matrices);
+                    nearestDepth = Math.min(nearestDepth, depth);
+                } else {
+                    transformation.buildModelViewMatrix(gameItem, viewMatrix)
+                            .get(numMatrices * MATRIX_SIZE_FLOATS, matrices);
+                    long key = blended
+                            ? RenderQueue.blendedKey(shader, materialId, texture, mesh.vaoId, depth)
+                            : RenderQueue.opaqueKey(shader, materialId, texture, mesh.vaoId, depth);
+                    addCommand(key, mesh, numMatrices, 0);
+                }
+                numMatrices++;
+            }
+            if (instanced && numMatrices > firstInstance) {
+                addCommand(RenderQueue.opaqueKey(shader, materialId, texture, mesh.vaoId, nearestDepth), mesh,
+                        firstInstance, numMatrices - firstInstance);
+            }
+        }
+
+        private void addCommand(long key, Mesh mesh, int firstMatrix, int instanceCount) {
+            if (numCommands == keys.length) {
+                int capacity = numCommands * 2;
+                keys = Arrays.copyOf(keys, capacity);
+                meshes = Arrays.copyOf(meshes, capacity);
+                firstMatrices = Arrays.copyOf(firstMatrices, capacity);
+                instanceCounts = Arrays.copyOf(instanceCounts, capacity);
+            }
+            keys[numCommands] = key;
+            meshes[numCommands] = mesh;
+            firstMatrices[numCommands] = firstMatrix;
+            instanceCounts[numCommands] = instanceCount;
+            numCommands++;
+        }
+
+        // Direct buffers rather than native allocations, so preparing needs no native library
+        private void ensureMatrixCapacity(int numMatrices) {
+            int floats = numMatrices * MATRIX_SIZE_FLOATS;
+            if (matrices != null && matrices.capacity() >= floats) {
+                return;
+            }
+            int capacity = matrices != null ? matrices.capacity() * 2 : CHUNK_SIZE * MATRIX_SIZE_FLOATS;
+            capacity = Math.max(capacity, floats);
+            FloatBuffer grown = ByteBuffer.allocateDirect(capacity * Float.BYTES).order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+            if (matrices != null) {
+                grown.put(0, matrices, 0, this.numMatrices * MATRIX_SIZE_FLOATS);
+            }
+            matrices = grown;
+        }
+
+        void free() {
+            matrices = null;
+        }
+    }
+}
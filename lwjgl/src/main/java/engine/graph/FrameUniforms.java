@@ -0,0 +1,138 @@
+package engine.graph;
+
+import engine.SceneLight;
+import engine.graph.weather.Fog;
+import org.joml.Matrix4f;
+
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL33.*;
+
+// Per frame data written once into the FrameData and LightData uniform blocks (frame.glsl and lights.glsl)
+// and read by every program that declares them. The lights reaching each cluster go to two buffer textures
+public class FrameUniforms {
+
+    public static final int FRAME_BINDING = 0;
+
+    public static final int LIGHTS_BINDING = 1;
+
+    public static final String FRAME_BLOCK = "FrameData";
+
+    public static final String LIGHTS_BLOCK = "LightData";
+
+    // Texture units of the cluster grid and the light index list, after the material textures
+    public static final int CLUSTER_GRID_UNIT = 2;
+
+    public static final int CLUSTER_LIGHTS_UNIT = 3;
+
+    // Clusters across the viewport and in depth
+    private static final int CLUSTERS_X = 16;
+    private static final int CLUSTERS_Y = 9;
+    private static final int CLUSTERS_Z = 24;
+
+    private final int maxPointLights;
+
+    private final int maxSpotLights;
+
+    private final UniformBuffer frameBuffer;
+
+    private final UniformBuffer lightsBuffer;
+
+    private final FrameDataWriter writer;
+
+    private final LightClusterer clusterer;
+
+    private final TextureBuffer clusterGrid;
+
+    private final TextureBuffer clusterLights;
+
+    private int width;
+
+    private int height;
+
+    private float zNear;
+
+    private float zFar;
+
+    public FrameUniforms(int maxPointLights, int maxSpotLights) throws Exception {
+        int lightDataSize = FrameDataWriter.lightDataSize(maxPointLights, maxSpotLights);
+        int maxBlockSize = glGetInteger(GL_MAX_UNIFORM_BLOCK_SIZE);
+        if (lightDataSize > maxBlockSize) {
+            throw new Exception("Lights take " + lightDataSize + " bytes, more than the " + maxBlockSize
+                    + " bytes of a uniform block. Lower the maximum number of lights");
+        }
+        this.maxPointLights = maxPointLights;
+        this.maxSpotLights = maxSpotLights;
+        this.frameBuffer = new UniformBuffer(FRAME_BINDING, FrameDataWriter.FRAME_DATA_SIZE);
+        this.lightsBuffer = new UniformBuffer(LIGHTS_BINDING, lightDataSize);
+        this.writer = new FrameDataWriter(maxPointLights, maxSpotLights);
+        this.clusterer = new LightClusterer(CLUSTERS_X, CLUSTERS_Y, CLUSTERS_Z, maxPointLights, maxSpotLights);
+        clusterer.setMaxIndices(glGetInteger(GL_MAX_TEXTURE_BUFFER_SIZE));
+        this.clusterGrid = new TextureBuffer(GL_RG32UI, clusterer.getClusterCount() * 2 * Integer.BYTES);
+        this.clusterLights = new TextureBuffer(GL_R16UI, clusterer.getClusterCount() * Short.BYTES);
+    }
+
+    public int getMaxPointLights() {
+        return maxPointLights;
+    }
+
+    public int getMaxSpotLights() {
+        return maxSpotLights;
+    }
+
+    // Sizes of the arrays in lights.glsl, to pass when loading the shader sources
+    public void addDefines(Map<String, Object> defines) {
+        defines.put("MAX_POINT_LIGHTS", maxPointLights);
+        defines.put("MAX_SPOT_LIGHTS", maxSpotLights);
+    }
+
+    public void bindFrameBlock(ShaderProgram shaderProgram) throws Exception {
+        checkSize(shaderProgram.bindUniformBlock(FRAME_BLOCK, FRAME_BINDING), frameBuffer);
+    }
+
+    public void bindLightsBlock(ShaderProgram shaderProgram) throws Exception {
+        checkSize(shaderProgram.bindUniformBlock(LIGHTS_BLOCK, LIGHTS_BINDING), lightsBuffer);
+    }
+
+    private static void checkSize(int blockSize, UniformBuffer buffer) throws Exception {
+        if (blockSize > buffer.getSize()) {
+            throw new Exception("Uniform block needs " + blockSize + " bytes but its buffer has " + buffer.getSize());
+        }
+    }
+
+    public LightClusterer getClusterer() {
+        return clusterer;
+    }
+
+    // Size of the viewport and depth range of the projection passed to update
+    public void setViewport(int width, int height, float zNear, float zFar) {
+        this.width = width;
+        this.height = height;
+        this.zNear = zNear;
+        this.zFar = zFar;
+    }
+
+    public void update(Matrix4f projectionMatrix, Matrix4f viewMatrix, SceneLight sceneLight, Fog fog,
+                       float specularPower) {
+        writer.write(frameBuffer.getData(), lightsBuffer.getData(), projectionMatrix, viewMatrix, sceneLight, fog,
+                specularPower);
+        clusterer.setProjection(projectionMatrix, zNear, zFar);
+        clusterer.update(viewMatrix, sceneLight);
+        writer.writeClusters(frameBuffer.getData(), clusterer, width, height);
+        clusterGrid.upload(clusterer.getGrid(), clusterer.getClusterCount() * 2);
+        clusterLights.upload(clusterer.getIndices(), clusterer.getIndexCount());
+        clusterGrid.bind(CLUSTER_GRID_UNIT);
+        clusterLights.bind(CLUSTER_LIGHTS_UNIT);
+
+        frameBuffer.upload();
+        // The shaders only read the lights in use
+        lightsBuffer.upload(0, writer.getPointLightsSize(), writer.getSpotLightsOffset(), writer.getSpotLightsSize());
+    }
+
+    public void cleanup() {
+        frameBuffer.cleanup();
+        lightsBuffer.cleanup();
+        clusterGrid.cleanup();
+        clusterLights.cleanup();
+    }
+}
@@ -0,0 +1,17 @@
+package engine.graph;
+
+// The OpenGL calls whose state RenderState keeps track of. Texture units are given as indices, not GL_TEXTUREi
+public interface GLBackend {
+
+    void useProgram(int program);
+
+    void bindVertexArray(int vao);
+
+    void activeTexture(int unit);
+
+    void bindTexture(int target, int texture);
+
+    void enableVertexAttribArray(int index);
+
+    void disableVertexAttribArray(int index);
+}
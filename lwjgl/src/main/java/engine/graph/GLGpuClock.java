@@ -0,0 +1,46 @@
+package engine.graph;
+
+import engine.profiling.FrameProfiler;
+import engine.profiling.GpuClock;
+
+import static org.lwjgl.opengl.GL33.*;
+
+// Timestamp queries, one for each marker of each frame in flight
+public class GLGpuClock implements GpuClock {
+
+    private final int[] queries;
+
+    public GLGpuClock() {
+        queries = new int[FrameProfiler.GPU_LATENCY * FrameProfiler.GPU_MARKERS];
+        glGenQueries(queries);
+    }
+
+    // Drivers without timestamps report a counter of no bits
+    public static boolean isSupported() {
+        return glGetQueryi(GL_TIMESTAMP, GL_QUERY_COUNTER_BITS) > 0;
+    }
+
+    @Override
+    public void timestamp(int slot, int marker) {
+        glQueryCounter(query(slot, marker), GL_TIMESTAMP);
+    }
+
+    @Override
+    public boolean isAvailable(int slot, int marker) {
+        return glGetQueryObjecti(query(slot, marker), GL_QUERY_RESULT_AVAILABLE) == GL_TRUE;
+    }
+
+    @Override
+    public long getTimestamp(int slot, int marker) {
+        return glGetQueryObjecti64(query(slot, marker), GL_QUERY_RESULT);
+    }
+
+    private int query(int slot, int marker) {
+        return queries[slot * FrameProfiler.GPU_MARKERS + marker];
+    }
+
+    @Override
+    public void cleanup() {
+        glDeleteQueries(queries);
+    }
+}
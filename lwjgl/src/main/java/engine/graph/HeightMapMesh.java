@@ -1,17 +1,20 @@
 package engine.graph;
 
 import org.joml.Vector3f;
-import utils.Arrays;
+import utils.Files;
 import utils.Images;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class HeightMapMesh {
 
     private static final int MAX_COLOR = 255 * 255 * 255;
 
+    // Rows below which a normals task is not split any further
+    private static final int MIN_NORMAL_ROWS = 16;
+
     public static final float STARTX = -0.5f;
 
     public static final float STARTZ = -0.5f;
@@ -26,44 +29,111 @@ public class HeightMapMesh {
 
     public final Mesh mesh;
 
-    public final Images.ImageInfo image;
+    private final float[] heights;
 
-    private final float[][] heightArray;
+    private final int width;
 
     public HeightMapMesh(float minY, float maxY, String heightMapFile, String textureFile, int textInc) throws Exception {
+        this(minY, maxY, heightMapFile, textureFile, textInc, ForkJoinPool.commonPool());
+    }
+
+    public HeightMapMesh(float minY, float maxY, String heightMapFile, String textureFile, int textInc,
+                         ForkJoinPool pool) throws Exception {
+        this(minY, maxY, heightMapFile, textureFile, textInc, VertexFormat.DEFAULT, pool);
+    }
+
+    // The mesh is compiled into the mesh cache the first time, later loads skip decoding the height map. The cache
+    // only holds the default vertex layout, other layouts decode the height map every time
+    public HeightMapMesh(float minY, float maxY, String heightMapFile, String textureFile, int textInc,
+                         VertexFormat format, ForkJoinPool pool) throws Exception {
         this.minY = minY;
         this.maxY = maxY;
 
-        int width;
-        int height;
-        image = Images.load(heightMapFile);
-        width = image.width;
-        height = image.height;
-        ByteBuffer buf = image.buffer;
-        heightArray = new float[width][height];
+        MeshCache cache = MeshCache.getDefault();
+        String key = MeshCache.key(Files.map(heightMapFile), "heightmap/" + minY + "/" + maxY + "/" + textInc);
+        MeshFile meshFile = format == VertexFormat.DEFAULT ? cache.find(key) : null;
+        if (meshFile != null) {
+            width = calcWidth(meshFile);
+            heights = new float[meshFile.getVertexCount()];
+            for (int i = 0; i < heights.length; i++) {
+                heights[i] = meshFile.getPosition(i, 1);
+            }
+            this.mesh = new Mesh(meshFile);
+        } else {
+            Images.ImageInfo image = Images.load(heightMapFile);
+            MeshData meshData;
+            try {
+                width = image.width;
+                heights = new float[width * image.height];
+                meshData = buildMeshData(image.buffer, width, image.height, minY, maxY, textInc, heights, pool);
+            } finally {
+                image.free();
+            }
+            if (format == VertexFormat.DEFAULT) {
+                cache.store(key, meshData);
+                this.mesh = new Mesh(meshData);
+            } else {
+                this.mesh = new Mesh(meshData, format);
+            }
+        }
 
         Texture texture = new Texture(textureFile);
+        Material material = new Material(texture, 0.0f);
+        mesh.setMaterial(material);
+    }
 
+    // Heights of the vertices row by row, for a mesh built from them elsewhere
+    public HeightMapMesh(float minY, float maxY, float[] heights, int width, Mesh mesh) {
+        this.minY = minY;
+        this.maxY = maxY;
+        this.heights = heights;
+        this.width = width;
+        this.mesh = mesh;
+    }
+
+    // Vertices go row by row, so the first row ends where z changes
+    private static int calcWidth(MeshFile meshFile) {
+        float firstZ = meshFile.getPosition(0, 2);
+        int vertexCount = meshFile.getVertexCount();
+        int width = 1;
+        while (width < vertexCount && meshFile.getPosition(width, 2) == firstZ) {
+            width++;
+        }
+        return width;
+    }
+
+    public static MeshData buildMeshData(ByteBuffer buf, int width, int height, float minY, float maxY,
+                                         int textInc, float[] heights) {
+        return buildMeshData(buf, width, height, minY, maxY, textInc, heights, null);
+    }
+
+    // Builds the vertices of the height map straight into arrays sized up front and stores the height
+    // of every vertex, row by row, in the heights array. Normals are computed in the pool when there is one
+    public static MeshData buildMeshData(ByteBuffer buf, int width, int height, float minY, float maxY,
+                                         int textInc, float[] heights, ForkJoinPool pool) {
         float incx = getXLength() / (width - 1);
         float incz = getZLength() / (height - 1);
 
-        List<Float> positions = new ArrayList<>();
-        List<Float> textCoords = new ArrayList<>();
-        List<Integer> indices = new ArrayList<>();
+        float[] positions = new float[width * height * 3];
+        float[] textCoords = new float[width * height * 2];
+        int[] indices = new int[(width - 1) * (height - 1) * 6];
 
+        int posIdx = 0;
+        int textIdx = 0;
+        int indIdx = 0;
         for (int row = 0; row < height; row++) {
             for (int col = 0; col < width; col++) {
-                float vertexHeight = getHeight(col, row, width, buf);
-                heightArray[row][col] = vertexHeight;
+                float vertexHeight = calcHeight(col, row, width, buf, minY, maxY);
+                heights[row * width + col] = vertexHeight;
 
                 // Create vertex for current position
-                positions.add(STARTX + col * incx); // x
-                positions.add(vertexHeight); //y
-                positions.add(STARTZ + row * incz); //z
+                positions[posIdx++] = STARTX + col * incx; // x
+                positions[posIdx++] = vertexHeight; //y
+                positions[posIdx++] = STARTZ + row * incz; //z
 
                 // Set texture coordinates
-                textCoords.add((float) textInc * (float) col / (float) width);
-                textCoords.add((float) textInc * (float) row / (float) height);
+                textCoords[textIdx++] = (float) textInc * (float) col / (float) width;
+                textCoords[textIdx++] = (float) textInc * (float) row / (float) height;
 
                 // Create indices
                 if (col < width - 1 && row < height - 1) {
@@ -72,31 +142,33 @@ public class HeightMapMesh {
                     int rightBottom = (row + 1) * width + col + 1;
                     int rightTop = row * width + col + 1;
 
-                    indices.add(leftTop);
-                    indices.add(leftBottom);
-                    indices.add(rightTop);
+                    indices[indIdx++] = leftTop;
+                    indices[indIdx++] = leftBottom;
+                    indices[indIdx++] = rightTop;
 
-                    indices.add(rightTop);
-                    indices.add(leftBottom);
-                    indices.add(rightBottom);
+                    indices[indIdx++] = rightTop;
+                    indices[indIdx++] = leftBottom;
+                    indices[indIdx++] = rightBottom;
                 }
             }
         }
-        float[] posArr = Arrays.toArray(positions);
-        int[] indicesArr = indices.stream().mapToInt(i -> i).toArray();
-        float[] textCoordsArr = Arrays.toArray(textCoords);
-        float[] normalsArr = calcNormals(posArr, width, height);
-        this.mesh = new Mesh(posArr, textCoordsArr, normalsArr, indicesArr);
-        Material material = new Material(texture, 0.0f);
-        mesh.setMaterial(material);
-
-        image.free();
+        float[] normals = pool != null ? calcNormals(positions, width, height, pool) : calcNormals(positions, width, height);
+        return new MeshData(positions, textCoords, normals, indices);
     }
 
     public Mesh getMesh() {
         return mesh;
     }
 
+    public int getWidth() {
+        return width;
+    }
+
+    // Number of vertex rows, along the z axis
+    public int getDepth() {
+        return heights.length / width;
+    }
+
     public static float getXLength() {
         return Math.abs(-STARTX * 2);
     }
@@ -105,7 +177,20 @@ public class HeightMapMesh {
         return Math.abs(-STARTZ * 2);
     }
 
-    private float[] calcNormals(float[] posArr, int width, int height) {
+    public static float[] calcNormals(float[] posArr, int width, int height) {
+        float[] normals = new float[width * height * 3];
+        calcNormals(posArr, width, height, 0, height, normals);
+        return normals;
+    }
+
+    // Rows are independent from each other, so splitting them between tasks gives the same bits as the serial path
+    public static float[] calcNormals(float[] posArr, int width, int height, ForkJoinPool pool) {
+        float[] normals = new float[width * height * 3];
+        pool.invoke(new NormalsTask(posArr, width, height, 0, height, normals));
+        return normals;
+    }
+
+    private static void calcNormals(float[] posArr, int width, int height, int startRow, int endRow, float[] normals) {
         Vector3f v0 = new Vector3f();
         Vector3f v1 = new Vector3f();
         Vector3f v2 = new Vector3f();
@@ -115,9 +200,9 @@ public class HeightMapMesh {
         Vector3f v23 = new Vector3f();
         Vector3f v34 = new Vector3f();
         Vector3f v41 = new Vector3f();
-        List<Float> normals = new ArrayList<>();
         Vector3f normal = new Vector3f();
-        for (int row = 0; row < height; row++) {
+        int normIdx = startRow * width * 3;
+        for (int row = startRow; row < endRow; row++) {
             for (int col = 0; col < width; col++) {
                 if (row > 0 && row < height - 1 && col > 0 && col < width - 1) {
                     int i0 = row * width * 3 + col * 3;
@@ -129,25 +214,25 @@ public class HeightMapMesh {
                     v1.x = posArr[i1];
                     v1.y = posArr[i1 + 1];
                     v1.z = posArr[i1 + 2];
-                    v1 = v1.sub(v0);
+                    v1.sub(v0);
 
                     int i2 = (row + 1) * width * 3 + col * 3;
                     v2.x = posArr[i2];
                     v2.y = posArr[i2 + 1];
                     v2.z = posArr[i2 + 2];
-                    v2 = v2.sub(v0);
+                    v2.sub(v0);
 
                     int i3 = (row) * width * 3 + (col + 1) * 3;
                     v3.x = posArr[i3];
                     v3.y = posArr[i3 + 1];
                     v3.z = posArr[i3 + 2];
-                    v3 = v3.sub(v0);
+                    v3.sub(v0);
 
                     int i4 = (row - 1) * width * 3 + col * 3;
                     v4.x = posArr[i4];
                     v4.y = posArr[i4 + 1];
                     v4.z = posArr[i4 + 2];
-                    v4 = v4.sub(v0);
+                    v4.sub(v0);
 
                     v1.cross(v2, v12);
                     v12.normalize();
@@ -161,7 +246,7 @@ public class HeightMapMesh {
                     v4.cross(v1, v41);
                     v41.normalize();
 
-                    normal = v12.add(v23).add(v34).add(v41);
+                    normal.set(v12).add(v23).add(v34).add(v41);
                     normal.normalize();
                 } else {
                     normal.x = 0;
@@ -169,26 +254,60 @@ public class HeightMapMesh {
                     normal.z = 0;
                 }
                 normal.normalize();
-                normals.add(normal.x);
-                normals.add(normal.y);
-                normals.add(normal.z);
+                normals[normIdx++] = normal.x;
+                normals[normIdx++] = normal.y;
+                normals[normIdx++] = normal.z;
+            }
+        }
+    }
+
+    private static class NormalsTask extends RecursiveAction {
+
+        private final float[] posArr;
+
+        private final int width;
+
+        private final int height;
+
+        private final int startRow;
+
+        private final int endRow;
+
+        private final float[] normals;
+
+        NormalsTask(float[] posArr, int width, int height, int startRow, int endRow, float[] normals) {
+            this.posArr = posArr;
+            this.width = width;
+            this.height = height;
+            this.startRow = startRow;
+            this.endRow = endRow;
+            this.normals = normals;
+        }
+
+        @Override
+        protected void compute() {
+            if (endRow - startRow <= MIN_NORMAL_ROWS) {
+                calcNormals(posArr, width, height, startRow, endRow, normals);
+                return;
             }
+            int middleRow = (startRow + endRow) >>> 1;
+            invokeAll(new NormalsTask(posArr, width, height, startRow, middleRow, normals),
+                    new NormalsTask(posArr, width, height, middleRow, endRow, normals));
         }
-        return Arrays.toArray(normals);
     }
 
-    private float getHeight(int x, int z, int width, ByteBuffer buffer) {
+    public static float calcHeight(int x, int z, int width, ByteBuffer buffer, float minY, float maxY) {
         byte r = buffer.get(x * 4 + z * 4 * width);
         byte g = buffer.get(x * 4 + 1 + z * 4 * width);
         byte b = buffer.get(x * 4 + 2 + z * 4 * width);
         byte a = buffer.get(x * 4 + 3 + z * 4 * width);
         int argb = ((0xFF & a) << 24) | ((0xFF & r) << 16)
                 | ((0xFF & g) << 8) | (0xFF & b);
-        return this.minY + Math.abs(this.maxY - this.minY) * ((float) argb / (float) MAX_COLOR);
+        return minY + Math.abs(maxY - minY) * ((float) argb / (float) MAX_COLOR);
     }
 
     public float getHeight(int row, int col) {
-        return heightArray[row][col];
+        return heights[row * width + col];
     }
 
 }
\ No newline at end of file
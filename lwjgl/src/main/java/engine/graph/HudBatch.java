@@ -0,0 +1,353 @@
+package engine.graph;
+
+import engine.items.GameItem;
+import engine.items.TextItem;
+import org.joml.Matrix4f;
+import org.joml.Vector4f;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// HUD items turned into triangles on the CPU, already in clip space, and grouped by texture so each group takes
+// one draw. Text items give the quads they laid out for their characters, other items need their mesh to keep its
+// vertices on the CPU. Flat colored items are a group of their own, with no texture. Groups come out in the order
+// their texture was first added and stay for the next frames, so overlapping items of different textures may be
+// drawn in another order than they were added. Needs no OpenGL, HudBatchRenderer draws the groups.
+//
+// The vertices of an item stay in its group from one frame to the next. An item added at the same place as the
+// frame before, with the same transform, color and vertices, is not written again. Mesh data counts as the same
+// while it is the same object, changing its arrays in place needs a new MeshData. A text item whose text changed
+// since only has the characters that changed rewritten, and keeps room for its capacity so a longer or shorter
+// text does not move the items after it. What was written is the dirty range of the group, which the renderer
+// uploads before the next begin
+public class HudBatch {
+
+    // Position and texture coordinates as floats, then the color as four normalized bytes
+    public static final int VERTEX_BYTES = 4 * Float.BYTES + 4;
+
+    // How an item compares to the one in its place the frame before
+    private static final int KEEP = 0;
+
+    private static final int PATCH = 1;
+
+    private static final int WRITE = 2;
+
+    private Group[] groups;
+
+    private int numGroups;
+
+    private int writtenVertices;
+
+    public HudBatch() {
+        groups = new Group[8];
+    }
+
+    // Starts a frame, the vertices of the last one are kept for the items added again
+    public void begin() {
+        for (int i = 0; i < numGroups; i++) {
+            groups[i].begin();
+        }
+        writtenVertices = 0;
+    }
+
+    // False for items that cannot be batched, their mesh has to be drawn on its own
+    public boolean add(GameItem gameItem, Matrix4f projModelMatrix) {
+        Mesh mesh = gameItem.getMesh();
+        if (mesh == null || mesh.getMaterial() == null) {
+            return false;
+        }
+        Material material = mesh.getMaterial();
+        int color = packColor(material.getAmbientColor());
+        if (gameItem instanceof TextItem textItem) {
+            addText(textItem, projModelMatrix, color);
+            return true;
+        }
+        MeshData meshData = mesh.getMeshData();
+        if (meshData == null) {
+            return false;
+        }
+        Group group = group(material.isTextured() ? material.getTexture() : null);
+        int slot = group.claim(gameItem, meshData, 0, meshData.indices.length, projModelMatrix, color);
+        if (group.states[slot] != KEEP) {
+            writeTriangles(group, slot, meshData, projModelMatrix, color);
+        }
+        return true;
+    }
+
+    // Characters as the item laid them out when its text was set, transformed here when they or the item changed
+    private void addText(TextItem textItem, Matrix4f m, int color) {
+        Group group = group(textItem.getFontTexture().getTexture());
+        int slot = group.claim(textItem, textItem.getQuadVertices(), textItem.getVersion(),
+                textItem.getQuadCapacity(), m, color);
+        switch (group.states[slot]) {
+            case PATCH -> writeText(group, slot, textItem, m, color, textItem.getChangedStart(),
+                    Math.min(textItem.getChangedEnd(), textItem.getQuadCapacity()));
+            case WRITE -> writeText(group, slot, textItem, m, color, 0, textItem.getQuadCapacity());
+            default -> {
+            }
+        }
+    }
+
+    // Room past the end of the text is zero, triangles of no area
+    private void writeText(Group group, int slot, TextItem textItem, Matrix4f m, int color, int start, int end) {
+        float[] quadVertices = textItem.getQuadVertices();
+        int numVertices = textItem.getQuadVertexCount();
+        ByteBuffer buffer = group.vertices;
+        int offset = (group.firstVertices[slot] + start) * VERTEX_BYTES;
+        for (int i = start; i < end; i++, offset += VERTEX_BYTES) {
+            if (i < numVertices) {
+                int v = i * TextItem.VERTEX_FLOATS;
+                putVertex(buffer, offset, m, quadVertices[v], quadVertices[v + 1], quadVertices[v + 2],
+                        quadVertices[v + 3], color);
+            } else {
+                putEmptyVertex(buffer, offset);
+            }
+        }
+        group.written(group.firstVertices[slot] + start, group.firstVertices[slot] + end);
+        writtenVertices += end - start;
+    }
+
+    private void writeTriangles(Group group, int slot, MeshData meshData, Matrix4f m, int color) {
+        int[] indices = meshData.indices;
+        float[] positions = meshData.positions;
+        // Meshes without texture coordinates sample the middle of the white texture
+        float[] textCoords = meshData.textCoords.length >= meshData.getVertexCount() * 2 ? meshData.textCoords : null;
+        ByteBuffer buffer = group.vertices;
+        int offset = group.firstVertices[slot] * VERTEX_BYTES;
+        for (int index : indices) {
+            float u = textCoords != null ? textCoords[index * 2] : 0.5f;
+            float v = textCoords != null ? textCoords[index * 2 + 1] : 0.5f;
+            putVertex(buffer, offset, m, positions[index * 3], positions[index * 3 + 1], u, v, color);
+            offset += VERTEX_BYTES;
+        }
+        group.written(group.firstVertices[slot], group.firstVertices[slot] + indices.length);
+        writtenVertices += indices.length;
+    }
+
+    // Transformed to clip space, HUD items are flat so z is dropped
+    private static void putVertex(ByteBuffer buffer, int offset, Matrix4f m, float x, float y, float u, float v,
+                                  int color) {
+        buffer.putFloat(offset, m.m00() * x + m.m10() * y + m.m30());
+        buffer.putFloat(offset + Float.BYTES, m.m01() * x + m.m11() * y + m.m31());
+        buffer.putFloat(offset + 2 * Float.BYTES, u);
+        buffer.putFloat(offset + 3 * Float.BYTES, v);
+        buffer.putInt(offset + 4 * Float.BYTES, color);
+    }
+
+    private static void putEmptyVertex(ByteBuffer buffer, int offset) {
+        for (int i = 0; i < VERTEX_BYTES; i += Integer.BYTES) {
+            buffer.putInt(offset + i, 0);
+        }
+    }
+
+    // Red, green, blue and alpha bytes in that order in memory
+    private static int packColor(Vector4f color) {
+        int red = toByte(color.x);
+        int green = toByte(color.y);
+        int blue = toByte(color.z);
+        int alpha = toByte(color.w);
+        return ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN
+                ? alpha << 24 | blue << 16 | green << 8 | red
+                : red << 24 | green << 16 | blue << 8 | alpha;
+    }
+
+    private static int toByte(float component) {
+        return Math.round(Math.max(0, Math.min(1, component)) * 255);
+    }
+
+    // Group of the texture, a new one the first time the texture is used
+    private Group group(Texture texture) {
+        for (int i = 0; i < numGroups; i++) {
+            if (groups[i].texture == texture) {
+                return groups[i];
+            }
+        }
+        if (numGroups == groups.length) {
+            groups = Arrays.copyOf(groups, numGroups * 2);
+        }
+        Group group = new Group(texture);
+        groups[numGroups++] = group;
+        return group;
+    }
+
+    public int getGroupCount() {
+        return numGroups;
+    }
+
+    // Null for the flat colored group
+    public Texture getTexture(int group) {
+        return groups[group].texture;
+    }
+
+    public int getVertexCount(int group) {
+        return groups[group].vertexCount;
+    }
+
+    // Vertices of the group from the start of the buffer, getVertexCount of them are drawn
+    public ByteBuffer getVertices(int group) {
+        return groups[group].vertices;
+    }
+
+    // Bytes of the buffer that ever held vertices, what has to be uploaded when the renderer's buffer is new
+    public int getUsedBytes(int group) {
+        return groups[group].usedBytes;
+    }
+
+    // Bytes written since begin, from the start to before the end. Empty when the start is not before the end
+    public int getDirtyStart(int group) {
+        return groups[group].dirtyStart;
+    }
+
+    public int getDirtyEnd(int group) {
+        return groups[group].dirtyEnd;
+    }
+
+    public int getTotalVertexCount() {
+        int total = 0;
+        for (int i = 0; i < numGroups; i++) {
+            total += groups[i].vertexCount;
+        }
+        return total;
+    }
+
+    // Vertices transformed since begin
+    public int getWrittenVertexCount() {
+        return writtenVertices;
+    }
+
+    // The items of a texture in the order they were added, each with the place it had in the vertices
+    private static final class Group {
+
+        private final Texture texture;
+
+        private ByteBuffer vertices;
+
+        private int vertexCount;
+
+        private int usedBytes;
+
+        private int dirtyStart;
+
+        private int dirtyEnd;
+
+        // Items in the order added this frame, and past them the ones of earlier frames still in the vertices
+        private GameItem[] items;
+
+        // Vertices the item was written from, the laid out quads of a text or the mesh data
+        private Object[] sources;
+
+        private int[] versions;
+
+        private int[] firstVertices;
+
+        private int[] reservedVertices;
+
+        private int[] colors;
+
+        // The parts of the transform that place a flat item, six for each
+        private float[] transforms;
+
+        private int[] states;
+
+        // Slots claimed this frame, and slots whose vertices are still in the buffer
+        private int numSlots;
+
+        private int validSlots;
+
+        Group(Texture texture) {
+            this.texture = texture;
+            vertices = ByteBuffer.allocateDirect(64 * VERTEX_BYTES).order(ByteOrder.nativeOrder());
+            items = new GameItem[16];
+            sources = new Object[16];
+            versions = new int[16];
+            firstVertices = new int[16];
+            reservedVertices = new int[16];
+            colors = new int[16];
+            transforms = new float[16 * 6];
+            states = new int[16];
+            begin();
+        }
+
+        void begin() {
+            vertexCount = 0;
+            numSlots = 0;
+            dirtyStart = Integer.MAX_VALUE;
+            dirtyEnd = 0;
+        }
+
+        // Places the item after the ones claimed this frame and tells what of it has to be written
+        int claim(GameItem item, Object source, int version, int reserved, Matrix4f m, int color) {
+            int slot = numSlots++;
+            if (slot == items.length) {
+                grow();
+            }
+            int first = vertexCount;
+            vertexCount += reserved;
+            ensureCapacity(vertexCount * VERTEX_BYTES);
+            usedBytes = Math.max(usedBytes, vertexCount * VERTEX_BYTES);
+
+            int state = WRITE;
+            boolean samePlace = slot < validSlots && firstVertices[slot] == first && reservedVertices[slot] == reserved;
+            if (samePlace && items[slot] == item && sources[slot] == source && colors[slot] == color
+                    && sameTransform(slot, m)) {
+                state = versions[slot] == version ? KEEP : versions[slot] + 1 == version ? PATCH : WRITE;
+            }
+            if (!samePlace) {
+                // Vertices of the slots after may be written over now
+                validSlots = slot;
+            }
+            validSlots = Math.max(validSlots, slot + 1);
+            items[slot] = item;
+            sources[slot] = source;
+            versions[slot] = version;
+            firstVertices[slot] = first;
+            reservedVertices[slot] = reserved;
+            colors[slot] = color;
+            int t = slot * 6;
+            transforms[t] = m.m00();
+            transforms[t + 1] = m.m01();
+            transforms[t + 2] = m.m10();
+            transforms[t + 3] = m.m11();
+            transforms[t + 4] = m.m30();
+            transforms[t + 5] = m.m31();
+            states[slot] = state;
+            return slot;
+        }
+
+        private boolean sameTransform(int slot, Matrix4f m) {
+            int t = slot * 6;
+            return transforms[t] == m.m00() && transforms[t + 1] == m.m01() && transforms[t + 2] == m.m10()
+                    && transforms[t + 3] == m.m11() && transforms[t + 4] == m.m30() && transforms[t + 5] == m.m31();
+        }
+
+        void written(int startVertex, int endVertex) {
+            if (startVertex < endVertex) {
+                dirtyStart = Math.min(dirtyStart, startVertex * VERTEX_BYTES);
+                dirtyEnd = Math.max(dirtyEnd, endVertex * VERTEX_BYTES);
+            }
+        }
+
+        private void ensureCapacity(int bytes) {
+            if (vertices.capacity() >= bytes) {
+                return;
+            }
+            ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(vertices.capacity() * 2, bytes))
+                    .order(ByteOrder.nativeOrder());
+            grown.put(0, vertices, 0, vertices.capacity());
+            vertices = grown;
+        }
+
+        private void grow() {
+            int capacity = items.length * 2;
+            items = Arrays.copyOf(items, capacity);
+            sources = Arrays.copyOf(sources, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+            firstVertices = Arrays.copyOf(firstVertices, capacity);
+            reservedVertices = Arrays.copyOf(reservedVertices, capacity);
+            colors = Arrays.copyOf(colors, capacity);
+            transforms = Arrays.copyOf(transforms, capacity * 6);
+            states = Arrays.copyOf(states, capacity);
+        }
+    }
+}
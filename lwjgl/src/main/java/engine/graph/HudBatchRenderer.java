@@ -0,0 +1,144 @@
+package engine.graph;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import utils.Files;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL33.*;
+
+// Draws the groups of a HudBatch, one draw for each group. Every group has a vertex buffer of its own that keeps
+// its vertices from frame to frame, only the bytes the batch wrote since the last frame are uploaded. Flat colored
+// groups sample a white texture so every group goes through the same program
+public class HudBatchRenderer {
+
+    private static final int POSITION_LOCATION = 0;
+
+    private static final int TEXT_COORDS_LOCATION = 1;
+
+    private static final int COLOR_LOCATION = 2;
+
+    private final ShaderProgram shaderProgram;
+
+    private final Uniform textureSampler;
+
+    // For each group of the batch, which keeps its groups in the same order
+    private int[] vaoIds;
+
+    private int[] vboIds;
+
+    // Bytes of storage of each vertex buffer
+    private int[] capacities;
+
+    private int numBuffers;
+
+    private final Texture whiteTexture;
+
+    public HudBatchRenderer() throws Exception {
+        shaderProgram = new ShaderProgram();
+        shaderProgram.createVertexShader(Files.read("shaders/hudbatch.vsh"));
+        shaderProgram.createFragmentShader(Files.read("shaders/hudbatch.fsh"));
+        shaderProgram.link();
+        textureSampler = shaderProgram.createUniform("texture_sampler");
+
+        vaoIds = new int[8];
+        vboIds = new int[8];
+        capacities = new int[8];
+        whiteTexture = createWhiteTexture();
+    }
+
+    private void createBuffer() {
+        if (numBuffers == vaoIds.length) {
+            vaoIds = Arrays.copyOf(vaoIds, numBuffers * 2);
+            vboIds = Arrays.copyOf(vboIds, numBuffers * 2);
+            capacities = Arrays.copyOf(capacities, numBuffers * 2);
+        }
+        RenderState renderState = RenderState.current();
+        int vaoId = glGenVertexArrays();
+        renderState.bindVertexArray(vaoId);
+        int vboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        renderState.enableVertexAttribArray(POSITION_LOCATION);
+        glVertexAttribPointer(POSITION_LOCATION, 2, GL_FLOAT, false, HudBatch.VERTEX_BYTES, 0);
+        renderState.enableVertexAttribArray(TEXT_COORDS_LOCATION);
+        glVertexAttribPointer(TEXT_COORDS_LOCATION, 2, GL_FLOAT, false, HudBatch.VERTEX_BYTES, 2 * Float.BYTES);
+        renderState.enableVertexAttribArray(COLOR_LOCATION);
+        glVertexAttribPointer(COLOR_LOCATION, 4, GL_UNSIGNED_BYTE, true, HudBatch.VERTEX_BYTES, 4 * Float.BYTES);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        renderState.bindVertexArray(0);
+        vaoIds[numBuffers] = vaoId;
+        vboIds[numBuffers] = vboId;
+        capacities[numBuffers] = 0;
+        numBuffers++;
+    }
+
+    private static Texture createWhiteTexture() {
+        int textureId = glGenTextures();
+        RenderState.current().bindTexture(GL_TEXTURE_2D, textureId);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            ByteBuffer white = stack.bytes((byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF);
+            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, 1, 1, 0, GL_RGBA, GL_UNSIGNED_BYTE, white);
+        }
+        return new Texture(textureId, 1, 1);
+    }
+
+    public void render(HudBatch batch) {
+        int numGroups = batch.getGroupCount();
+        if (numGroups == 0) {
+            return;
+        }
+        while (numBuffers < numGroups) {
+            createBuffer();
+        }
+        RenderState renderState = RenderState.current();
+        shaderProgram.bind();
+        textureSampler.set(0);
+        for (int i = 0; i < numGroups; i++) {
+            upload(batch, i);
+            int count = batch.getVertexCount(i);
+            if (count == 0) {
+                continue;
+            }
+            renderState.bindVertexArray(vaoIds[i]);
+            Texture texture = batch.getTexture(i);
+            renderState.bindTexture(0, GL_TEXTURE_2D, (texture != null ? texture : whiteTexture).id);
+            glDrawArrays(GL_TRIANGLES, 0, count);
+            renderState.countDraw(count, 1);
+        }
+    }
+
+    // A buffer too small for the vertices of its group gets new storage with all of them, otherwise only the bytes
+    // written this frame are replaced
+    private void upload(HudBatch batch, int group) {
+        ByteBuffer vertices = batch.getVertices(group);
+        long address = MemoryUtil.memAddress0(vertices);
+        if (capacities[group] < vertices.capacity()) {
+            glBindBuffer(GL_ARRAY_BUFFER, vboIds[group]);
+            glBufferData(GL_ARRAY_BUFFER, vertices.capacity(), GL_DYNAMIC_DRAW);
+            nglBufferSubData(GL_ARRAY_BUFFER, 0, batch.getUsedBytes(group), address);
+            capacities[group] = vertices.capacity();
+        } else if (batch.getDirtyStart(group) < batch.getDirtyEnd(group)) {
+            int start = batch.getDirtyStart(group);
+            glBindBuffer(GL_ARRAY_BUFFER, vboIds[group]);
+            nglBufferSubData(GL_ARRAY_BUFFER, start, batch.getDirtyEnd(group) - start, address + start);
+        } else {
+            return;
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    public void cleanup() {
+        RenderState renderState = RenderState.current();
+        shaderProgram.cleanup();
+        for (int i = 0; i < numBuffers; i++) {
+            glDeleteBuffers(vboIds[i]);
+            glDeleteVertexArrays(vaoIds[i]);
+            renderState.vertexArrayDeleted(vaoIds[i]);
+        }
+        whiteTexture.cleanup();
+    }
+}
@@ -0,0 +1,491 @@
+package engine.graph;
+
+import engine.SceneLight;
+import engine.graph.lights.PointLight;
+import engine.graph.lights.SpotLight;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// Assigns the point and spot lights of a frame to the clusters they reach. Clusters split the view frustum in
+// tiles across the screen and in depth slices that grow exponentially, like the lookup in scene.fsh.
+//
+// The result is a grid with, for every cluster, the offset of its lights in the index list and the number of
+// point and spot lights, packed as (spot << 16 | point). Point light indices come first in each list. It does
+// not touch OpenGL. Slices are binned in parallel on the common fork join pool
+public class LightClusterer {
+
+    // Contributions below this are dropped, it is what an 8 bit channel can tell apart
+    private static final float LIGHT_CUTOFF = 1f / 256f;
+
+    // Fewer lights than this are binned on the calling thread
+    private static final int PARALLEL_THRESHOLD = 32;
+
+    private final int dimX;
+
+    private final int dimY;
+
+    private final int dimZ;
+
+    private final int maxPointLights;
+
+    private final int maxSpotLights;
+
+    private int maxIndices;
+
+    // Projection the cluster bounds were computed for
+    private float scaleX;
+
+    private float scaleY;
+
+    private float zNear;
+
+    private float zFar;
+
+    private float zScale;
+
+    private float zBias;
+
+    // Depth where each slice starts, and where the last one ends
+    private final float[] sliceDepths;
+
+    // View space bounds of the clusters of each slice, min and max x per column and min and max y per row
+    private final float[] columnBounds;
+
+    private final float[] rowBounds;
+
+    // Lights in view space, point lights first
+    private final float[] lightX;
+
+    private final float[] lightY;
+
+    private final float[] lightDepth;
+
+    private final float[] lightRadius;
+
+    // Slices each light may reach, empty when it reaches none
+    private final int[] lightMinZ;
+
+    private final int[] lightMaxZ;
+
+    private int numPointLights;
+
+    private int numLights;
+
+    // Clusters each slice found for its lights in the counting pass, as (cluster in the slice << 17 | light)
+    private final int[][] slicePairs;
+
+    private final int[] slicePairCounts;
+
+    private final int[] pointCounts;
+
+    private final int[] spotCounts;
+
+    private final int[] pointCursors;
+
+    private final int[] spotCursors;
+
+    private final int[] grid;
+
+    private short[] indices;
+
+    private int indexCount;
+
+    private int droppedIndices;
+
+    private final Vector3f lightPosition;
+
+    private SliceTask[] tasks;
+
+    public LightClusterer(int dimX, int dimY, int dimZ, int maxPointLights, int maxSpotLights) {
+        if (maxPointLights > 0xFFFF || maxSpotLights > 0xFFFF) {
+            throw new IllegalArgumentException("Light indices are stored in 16 bits");
+        }
+        if (dimX * dimY > 1 << 15) {
+            throw new IllegalArgumentException("Too many clusters in a slice");
+        }
+        this.dimX = dimX;
+        this.dimY = dimY;
+        this.dimZ = dimZ;
+        this.maxPointLights = maxPointLights;
+        this.maxSpotLights = maxSpotLights;
+        this.maxIndices = Integer.MAX_VALUE;
+
+        int clusterCount = getClusterCount();
+        sliceDepths = new float[dimZ + 1];
+        columnBounds = new float[dimZ * dimX * 2];
+        rowBounds = new float[dimZ * dimY * 2];
+        int lightCapacity = maxPointLights + maxSpotLights;
+        lightX = new float[lightCapacity];
+        lightY = new float[lightCapacity];
+        lightDepth = new float[lightCapacity];
+        lightRadius = new float[lightCapacity];
+        lightMinZ = new int[lightCapacity];
+        lightMaxZ = new int[lightCapacity];
+        slicePairs = new int[dimZ][];
+        for (int z = 0; z < dimZ; z++) {
+            slicePairs[z] = new int[dimX * dimY];
+        }
+        slicePairCounts = new int[dimZ];
+        pointCounts = new int[clusterCount];
+        spotCounts = new int[clusterCount];
+        pointCursors = new int[clusterCount];
+        spotCursors = new int[clusterCount];
+        grid = new int[clusterCount * 2];
+        indices = new short[clusterCount];
+        lightPosition = new Vector3f();
+        setParallelism(Runtime.getRuntime().availableProcessors());
+    }
+
+    public int getDimX() {
+        return dimX;
+    }
+
+    public int getDimY() {
+        return dimY;
+    }
+
+    public int getDimZ() {
+        return dimZ;
+    }
+
+    public int getClusterCount() {
+        return dimX * dimY * dimZ;
+    }
+
+    // Slice of a depth is floor(log(depth) * zScale - zBias)
+    public float getZScale() {
+        return zScale;
+    }
+
+    public float getZBias() {
+        return zBias;
+    }
+
+    // Size of the index list, lights past it are left out of the clusters that did not fit
+    public void setMaxIndices(int maxIndices) {
+        this.maxIndices = maxIndices;
+    }
+
+    // Number of tasks slices are binned with, 1 bins everything on the calling thread
+    public void setParallelism(int parallelism) {
+        // Each task takes every n-th slice, the near slices are thinner and hold fewer lights
+        tasks = new SliceTask[Math.max(1, Math.min(parallelism, dimZ))];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new SliceTask(i, tasks.length);
+        }
+    }
+
+    // Must be called before the first update. The projection must be a symmetric perspective, bounds are only
+    // computed again when it changes
+    public void setProjection(Matrix4f projectionMatrix, float zNear, float zFar) {
+        float scaleX = projectionMatrix.m00();
+        float scaleY = projectionMatrix.m11();
+        if (scaleX == this.scaleX && scaleY == this.scaleY && zNear == this.zNear && zFar == this.zFar) {
+            return;
+        }
+        this.scaleX = scaleX;
+        this.scaleY = scaleY;
+        this.zNear = zNear;
+        this.zFar = zFar;
+        float logRatio = (float) Math.log(zFar / zNear);
+        zScale = dimZ / logRatio;
+        zBias = dimZ * (float) Math.log(zNear) / logRatio;
+
+        for (int z = 0; z <= dimZ; z++) {
+            sliceDepths[z] = zNear * (float) Math.pow(zFar / zNear, (double) z / dimZ);
+        }
+        for (int z = 0; z < dimZ; z++) {
+            setBounds(columnBounds, z, dimX, scaleX);
+            setBounds(rowBounds, z, dimY, scaleY);
+        }
+    }
+
+    private void setBounds(float[] bounds, int z, int dim, float scale) {
+        float near = sliceDepths[z];
+        float far = sliceDepths[z + 1];
+        for (int i = 0; i < dim; i++) {
+            float ndcMin = -1 + 2f * i / dim;
+            float ndcMax = -1 + 2f * (i + 1) / dim;
+            int base = (z * dim + i) * 2;
+            bounds[base] = Math.min(ndcMin * near, ndcMin * far) / scale;
+            bounds[base + 1] = Math.max(ndcMax * near, ndcMax * far) / scale;
+        }
+    }
+
+    public int clusterIndex(int x, int y, int z) {
+        return x + dimX * (y + dimY * z);
+    }
+
+    // Cluster holding a view space position, the same lookup scene.fsh does per fragment
+    public int findCluster(float viewX, float viewY, float viewZ) {
+        float depth = -viewZ;
+        int x = clamp((int) Math.floor((scaleX * viewX / depth * 0.5f + 0.5f) * dimX), 0, dimX - 1);
+        int y = clamp((int) Math.floor((scaleY * viewY / depth * 0.5f + 0.5f) * dimY), 0, dimY - 1);
+        return clusterIndex(x, y, slice(depth));
+    }
+
+    private int slice(float depth) {
+        return clamp((int) Math.floor(Math.log(depth) * zScale - zBias), 0, dimZ - 1);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    // Distance at which a light falls below the cutoff, infinite when the attenuation never gets there
+    public static float lightRadius(PointLight light) {
+        Vector3f color = light.getColor();
+        float brightness = Math.max(color.x, Math.max(color.y, color.z)) * light.getIntensity();
+        if (brightness <= 0) {
+            return 0;
+        }
+        PointLight.Attenuation att = light.getAttenuation();
+        // Solve constant + linear * d + exponent * d^2 = brightness / cutoff
+        float c = att.getConstant() - brightness / LIGHT_CUTOFF;
+        float b = att.getLinear();
+        float a = att.getExponent();
+        if (c >= 0) {
+            return 0;
+        }
+        if (a > 0) {
+            return (float) ((-b + Math.sqrt((double) b * b - 4.0 * a * c)) / (2 * a));
+        }
+        if (b > 0) {
+            return -c / b;
+        }
+        return Float.POSITIVE_INFINITY;
+    }
+
+    // Bins the lights for the view. Lights past the maximums are left out, as FrameDataWriter does
+    public void update(Matrix4f viewMatrix, SceneLight sceneLight) {
+        numLights = 0;
+        PointLight[] pointLightList = sceneLight.getPointLightList();
+        int pointLights = pointLightList != null ? Math.min(pointLightList.length, maxPointLights) : 0;
+        for (int i = 0; i < pointLights; i++) {
+            addLight(pointLightList[i], viewMatrix);
+        }
+        numPointLights = numLights;
+        SpotLight[] spotLightList = sceneLight.getSpotLightList();
+        int spotLights = spotLightList != null ? Math.min(spotLightList.length, maxSpotLights) : 0;
+        for (int i = 0; i < spotLights; i++) {
+            addLight(spotLightList[i].getPointLight(), viewMatrix);
+        }
+
+        int clusterCount = getClusterCount();
+        boolean parallel = tasks.length > 1 && numLights >= PARALLEL_THRESHOLD;
+        runSlices(false, parallel);
+
+        // Prefix sum over the counts, trimming the clusters that do not fit in the index list
+        int offset = 0;
+        droppedIndices = 0;
+        for (int c = 0; c < clusterCount; c++) {
+            int available = maxIndices - offset;
+            int points = Math.min(pointCounts[c], available);
+            int spots = Math.min(spotCounts[c], available - points);
+            droppedIndices += pointCounts[c] + spotCounts[c] - points - spots;
+            grid[c * 2] = offset;
+            grid[c * 2 + 1] = spots << 16 | points;
+            pointCursors[c] = offset;
+            spotCursors[c] = offset + points;
+            // The cursors stop at these counts when filling
+            pointCounts[c] = points;
+            spotCounts[c] = spots;
+            offset += points + spots;
+        }
+        indexCount = offset;
+        if (indices.length < indexCount) {
+            indices = new short[Math.max(indexCount, indices.length * 2)];
+        }
+
+        runSlices(true, parallel);
+    }
+
+    private void addLight(PointLight light, Matrix4f viewMatrix) {
+        float radius = light.getIntensity() > 0 ? lightRadius(light) : 0;
+        Vector3f position = light.getPosition();
+        viewMatrix.transformPosition(position.x, position.y, position.z, lightPosition);
+        int l = numLights++;
+        lightX[l] = lightPosition.x;
+        lightY[l] = lightPosition.y;
+        lightDepth[l] = -lightPosition.z;
+        lightRadius[l] = radius;
+
+        float minDepth = Math.max(lightDepth[l] - radius, zNear);
+        float maxDepth = lightDepth[l] + radius;
+        if (radius <= 0 || maxDepth < zNear || minDepth > zFar) {
+            lightMinZ[l] = 0;
+            lightMaxZ[l] = -1;
+            return;
+        }
+        lightMinZ[l] = slice(minDepth);
+        lightMaxZ[l] = slice(Math.min(maxDepth, zFar));
+    }
+
+    private static float minProjected(float value, float minDepth, float maxDepth) {
+        return value < 0 ? value / minDepth : value / maxDepth;
+    }
+
+    private static float maxProjected(float value, float minDepth, float maxDepth) {
+        return value > 0 ? value / minDepth : value / maxDepth;
+    }
+
+    private static int tile(float ndc, int dim) {
+        float tile = (float) Math.floor((ndc * 0.5f + 0.5f) * dim);
+        return (int) Math.max(0, Math.min(dim - 1, tile));
+    }
+
+    private void runSlices(boolean fill, boolean parallel) {
+        if (!parallel) {
+            for (int z = 0; z < dimZ; z++) {
+                binSlice(z, fill);
+            }
+            return;
+        }
+        for (SliceTask task : tasks) {
+            task.reinitialize();
+            task.fill = fill;
+        }
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    private void binSlice(int z, boolean fill) {
+        if (fill) {
+            fillSlice(z);
+        } else {
+            countSlice(z);
+        }
+    }
+
+    private void countSlice(int z) {
+        int first = clusterIndex(0, 0, z);
+        Arrays.fill(pointCounts, first, first + dimX * dimY, 0);
+        Arrays.fill(spotCounts, first, first + dimX * dimY, 0);
+        int[] pairs = slicePairs[z];
+        int pairCount = 0;
+        for (int l = 0; l < numLights; l++) {
+            if (z < lightMinZ[l] || z > lightMaxZ[l]) {
+                continue;
+            }
+            // Tiles covered by the box around the section of the sphere inside the slice
+            float radius = lightRadius[l];
+            float radiusSquared = radius * radius;
+            float sliceNear = sliceDepths[z];
+            float sliceFar = sliceDepths[z + 1];
+            float dz = distance(lightDepth[l], sliceNear, sliceFar);
+            float sectionRadius = (float) Math.sqrt(radiusSquared - dz * dz);
+            float minDepth = Math.max(sliceNear, lightDepth[l] - radius);
+            float maxDepth = Math.min(sliceFar, lightDepth[l] + radius);
+            int minX = tile(minProjected(lightX[l] - sectionRadius, minDepth, maxDepth) * scaleX, dimX);
+            int maxX = tile(maxProjected(lightX[l] + sectionRadius, minDepth, maxDepth) * scaleX, dimX);
+            int minY = tile(minProjected(lightY[l] - sectionRadius, minDepth, maxDepth) * scaleY, dimY);
+            int maxY = tile(maxProjected(lightY[l] + sectionRadius, minDepth, maxDepth) * scaleY, dimY);
+
+            // Sphere against the box of each cluster, the depth and row distances are shared along the way
+            int[] counts = l < numPointLights ? pointCounts : spotCounts;
+            float sectionSquared = radiusSquared - dz * dz;
+            for (int y = minY; y <= maxY; y++) {
+                int row = (z * dimY + y) * 2;
+                float dy = distance(lightY[l], rowBounds[row], rowBounds[row + 1]);
+                float rowSquared = sectionSquared - dy * dy;
+                if (rowSquared < 0) {
+                    continue;
+                }
+                for (int x = minX; x <= maxX; x++) {
+                    int column = (z * dimX + x) * 2;
+                    float dx = distance(lightX[l], columnBounds[column], columnBounds[column + 1]);
+                    if (dx * dx > rowSquared) {
+                        continue;
+                    }
+                    int c = clusterIndex(x, y, z);
+                    counts[c]++;
+                    if (pairCount == pairs.length) {
+                        pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                        slicePairs[z] = pairs;
+                    }
+                    pairs[pairCount++] = (c - first) << 17 | l;
+                }
+            }
+        }
+        slicePairCounts[z] = pairCount;
+    }
+
+    // Pairs are in light order, so each cluster gets its point lights and then its spot lights in order
+    private void fillSlice(int z) {
+        int first = clusterIndex(0, 0, z);
+        int[] pairs = slicePairs[z];
+        int pairCount = slicePairCounts[z];
+        for (int i = 0; i < pairCount; i++) {
+            int c = first + (pairs[i] >>> 17);
+            int l = pairs[i] & 0x1FFFF;
+            if (l >= numPointLights) {
+                if (spotCursors[c] < grid[c * 2] + pointCounts[c] + spotCounts[c]) {
+                    indices[spotCursors[c]++] = (short) (l - numPointLights);
+                }
+            } else if (pointCursors[c] < grid[c * 2] + pointCounts[c]) {
+                indices[pointCursors[c]++] = (short) l;
+            }
+        }
+    }
+
+    private static float distance(float value, float min, float max) {
+        return value < min ? min - value : value > max ? value - max : 0;
+    }
+
+    // Two ints per cluster, the offset of its lights and the packed counts
+    public int[] getGrid() {
+        return grid;
+    }
+
+    // Only the first getIndexCount() are valid
+    public short[] getIndices() {
+        return indices;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    public int getPointLightCount(int cluster) {
+        return grid[cluster * 2 + 1] & 0xFFFF;
+    }
+
+    public int getSpotLightCount(int cluster) {
+        return grid[cluster * 2 + 1] >>> 16;
+    }
+
+    public int getOffset(int cluster) {
+        return grid[cluster * 2];
+    }
+
+    // Light indices that did not fit in the index list in the last update
+    public int getDroppedIndices() {
+        return droppedIndices;
+    }
+
+    // Bins every slice it is given, once finding the clusters of each light and once filling the index list.
+    // Slices own disjoint clusters
+    private final class SliceTask extends RecursiveAction {
+
+        private final int first;
+
+        private final int stride;
+
+        private boolean fill;
+
+        SliceTask(int first, int stride) {
+            this.first = first;
+            this.stride = stride;
+        }
+
+        @Override
+        protected void compute() {
+            for (int z = first; z < dimZ; z += stride) {
+                binSlice(z, fill);
+            }
+        }
+    }
+}
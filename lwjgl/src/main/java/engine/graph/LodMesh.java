@@ -0,0 +1,90 @@
+package engine.graph;
+
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.GL33.*;
+
+// Mesh that shares one set of vertices between several index buffers, one per level of detail
+public class LodMesh extends Mesh {
+
+    private final int[] indexVboIds;
+
+    private final int[] indexCounts;
+
+    private int lod;
+
+    public LodMesh(float[] positions, float[] textCoords, float[] normals, int[][] lodIndices) {
+        super(positions, textCoords, normals, lodIndices[0]);
+        int numLevels = lodIndices.length;
+        indexVboIds = new int[numLevels];
+        indexCounts = new int[numLevels];
+        indexVboIds[0] = vboIdList.get(vboIdList.size() - 1);
+        indexCounts[0] = lodIndices[0].length;
+
+        for (int level = 1; level < numLevels; level++) {
+            IntBuffer indicesBuffer = null;
+            try {
+                int vboId = glGenBuffers();
+                vboIdList.add(vboId);
+                indicesBuffer = MemoryUtil.memAllocInt(lodIndices[level].length);
+                indicesBuffer.put(lodIndices[level]).flip();
+                // Upload through the array target, the element target is only bound inside the VAO
+                glBindBuffer(GL_ARRAY_BUFFER, vboId);
+                glBufferData(GL_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
+                glBindBuffer(GL_ARRAY_BUFFER, 0);
+                indexVboIds[level] = vboId;
+                indexCounts[level] = lodIndices[level].length;
+            } finally {
+                if (indicesBuffer != null) {
+                    MemoryUtil.memFree(indicesBuffer);
+                }
+            }
+        }
+        // Restore the index buffer of the most detailed level in the VAO
+        setLod(0, true);
+    }
+
+    // Bounds and index counts without any buffer, for streaming tiles where there is no OpenGL context
+    public LodMesh(Vector3f boundingMin, Vector3f boundingMax, int[][] lodIndices) {
+        super(0, boundingMin, boundingMax);
+        int numLevels = lodIndices.length;
+        indexVboIds = new int[numLevels];
+        indexCounts = new int[numLevels];
+        for (int level = 0; level < numLevels; level++) {
+            indexCounts[level] = lodIndices[level].length;
+        }
+    }
+
+    public int getLod() {
+        return lod;
+    }
+
+    public int getNumLods() {
+        return indexVboIds.length;
+    }
+
+    public void setLod(int lod) {
+        setLod(lod, false);
+    }
+
+    private void setLod(int lod, boolean force) {
+        if (lod == this.lod && !force) {
+            return;
+        }
+        this.lod = lod;
+        if (vaoId == 0) {
+            return;
+        }
+        // The element array binding is part of the VAO state
+        RenderState.current().bindVertexArray(vaoId);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexVboIds[lod]);
+    }
+
+    @Override
+    public int getVertexCount() {
+        return indexCounts[lod];
+    }
+}
@@ -2,10 +2,17 @@ package engine.graph;
 
 import org.joml.Vector4f;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class Material {
 
     private static final Vector4f DEFAULT_COLOR = new Vector4f(1.0f, 1.0f, 1.0f, 1.0f);
 
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    // Small number that tells materials apart in the render queue sort keys
+    private final int id = NEXT_ID.getAndIncrement();
+
     private Vector4f ambientColor;
 
     private Vector4f diffuseColor;
@@ -18,6 +25,8 @@ public class Material {
 
     private Texture normalMap;
 
+    private boolean transparent;
+
     public Material() {
         this.ambientColor = DEFAULT_COLOR;
         this.diffuseColor = DEFAULT_COLOR;
@@ -78,6 +87,20 @@ public class Material {
         this.reflectance = reflectance;
     }
 
+    public int getId() {
+        return id;
+    }
+
+    // Blended materials are drawn after the opaque ones, back to front. A diffuse alpha below 1 makes it
+    // transparent too
+    public boolean isTransparent() {
+        return transparent || diffuseColor.w < 1.0f;
+    }
+
+    public void setTransparent(boolean transparent) {
+        this.transparent = transparent;
+    }
+
     public boolean isTextured() {
         return this.texture != null;
     }
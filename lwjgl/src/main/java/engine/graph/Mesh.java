@@ -1,27 +1,54 @@
 package engine.graph;
 
-import engine.items.GameItem;
+import org.joml.Vector3f;
 import org.lwjgl.opengl.GL33;
 import org.lwjgl.system.MemoryUtil;
 
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Consumer;
 
 import static org.lwjgl.opengl.GL33.*;
 
 public class Mesh {
 
+    private static final int INSTANCE_MATRIX_LOCATION = 3;
+
+    private static final int VECTOR4F_SIZE_FLOATS = 4;
+
+    private static final int MATRIX_SIZE_FLOATS = 4 * VECTOR4F_SIZE_FLOATS;
+
+    private static final int MATRIX_SIZE_BYTES = MATRIX_SIZE_FLOATS * Float.BYTES;
+
     public final int vaoId;
 
     public final List<Integer> vboIdList;
 
     public final int vertex;
 
+    private final Vector3f boundingMin;
+
+    private final Vector3f boundingMax;
+
+    private final Vector3f boundingCenter;
+
+    private final float boundingRadius;
+
     private Material material;
 
+    private int instanceVboId;
+
+    private int instanceCapacity;
+
+    // Vertices kept on the CPU for the meshes the HUD batch transforms itself, null for the others
+    private MeshData meshData;
+
+    public Mesh(MeshData meshData) {
+        this(meshData.positions, meshData.textCoords, meshData.normals, meshData.indices);
+    }
+
     public Mesh(float[] positions, float[] textCoords, float[] normals, int[] indices) {
         FloatBuffer posBuffer = null;
         FloatBuffer textCoordsBuffer = null;
@@ -31,8 +58,16 @@ public class Mesh {
             vertex = indices.length;
             vboIdList = new ArrayList<>();
 
+            // Bounding volumes in model coordinates, used to cull the items that use this mesh
+            boundingMin = new Vector3f();
+            boundingMax = new Vector3f();
+            calcBoundingBox(positions, boundingMin, boundingMax);
+            boundingCenter = new Vector3f(boundingMin).add(boundingMax).mul(0.5f);
+            boundingRadius = calcBoundingRadius(positions, boundingCenter);
+
+            RenderState renderState = RenderState.current();
             vaoId = glGenVertexArrays();
-            glBindVertexArray(vaoId);
+            renderState.bindVertexArray(vaoId);
 
             // Position VBO
             int vboId = glGenBuffers();
@@ -41,7 +76,7 @@ public class Mesh {
             posBuffer.put(positions).flip();
             glBindBuffer(GL_ARRAY_BUFFER, vboId);
             glBufferData(GL_ARRAY_BUFFER, posBuffer, GL_STATIC_DRAW);
-            glEnableVertexAttribArray(0);
+            renderState.enableVertexAttribArray(0);
             glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
 
             // Texture coordinates VBO
@@ -51,7 +86,7 @@ public class Mesh {
             textCoordsBuffer.put(textCoords).flip();
             glBindBuffer(GL_ARRAY_BUFFER, vboId);
             glBufferData(GL_ARRAY_BUFFER, textCoordsBuffer, GL_STATIC_DRAW);
-            glEnableVertexAttribArray(1);
+            renderState.enableVertexAttribArray(1);
             glVertexAttribPointer(1, 2, GL_FLOAT, false, 0, 0);
 
             // Vertex normals VBO
@@ -61,7 +96,7 @@ public class Mesh {
             vecNormalsBuffer.put(normals).flip();
             glBindBuffer(GL_ARRAY_BUFFER, vboId);
             glBufferData(GL_ARRAY_BUFFER, vecNormalsBuffer, GL_STATIC_DRAW);
-            glEnableVertexAttribArray(2);
+            renderState.enableVertexAttribArray(2);
             glVertexAttribPointer(2, 3, GL_FLOAT, false, 0, 0);
 
             // Index VBO
@@ -73,7 +108,7 @@ public class Mesh {
             glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
 
             glBindBuffer(GL_ARRAY_BUFFER, 0);
-            glBindVertexArray(0);
+            renderState.bindVertexArray(0);
         } finally {
             if (posBuffer != null) {
                 MemoryUtil.memFree(posBuffer);
@@ -90,88 +125,263 @@ public class Mesh {
         }
     }
 
-    private void initRender() {
+    // Bounds without any buffer, for preparing frames where there is no OpenGL context
+    public Mesh(Vector3f boundingMin, Vector3f boundingMax) {
+        this(0, boundingMin, boundingMax);
+    }
+
+    // For meshes that fill the buffers of their vertex array themselves and add them to the list
+    protected Mesh(int vaoId, Vector3f boundingMin, Vector3f boundingMax) {
+        this.vaoId = vaoId;
+        vboIdList = new ArrayList<>();
+        vertex = 0;
+        this.boundingMin = new Vector3f(boundingMin);
+        this.boundingMax = new Vector3f(boundingMax);
+        boundingCenter = new Vector3f(boundingMin).add(boundingMax).mul(0.5f);
+        boundingRadius = boundingCenter.distance(boundingMax);
+    }
+
+    // Uploads the interleaved vertices and the indices straight from the mapped file
+    public Mesh(MeshFile meshFile) {
+        vertex = meshFile.getIndexCount();
+        vboIdList = new ArrayList<>();
+
+        boundingMin = new Vector3f(meshFile.getBoundingMin());
+        boundingMax = new Vector3f(meshFile.getBoundingMax());
+        boundingCenter = new Vector3f(boundingMin).add(boundingMax).mul(0.5f);
+        boundingRadius = meshFile.getBoundingRadius();
+
+        RenderState renderState = RenderState.current();
+        vaoId = glGenVertexArrays();
+        renderState.bindVertexArray(vaoId);
+        createInterleavedBuffers(VertexFormat.DEFAULT, meshFile.getVertices(), meshFile.getIndices());
+        renderState.bindVertexArray(0);
+    }
+
+    // Stores all the attributes in one VBO laid out by the format, tangents are computed when it has them
+    public Mesh(MeshData meshData, VertexFormat format) {
+        ByteBuffer vertexBuffer = null;
+        ByteBuffer indicesBuffer = null;
+        try {
+            vertex = meshData.indices.length;
+            vboIdList = new ArrayList<>();
+
+            boundingMin = new Vector3f();
+            boundingMax = new Vector3f();
+            calcBoundingBox(meshData.positions, boundingMin, boundingMax);
+            boundingCenter = new Vector3f(boundingMin).add(boundingMax).mul(0.5f);
+            boundingRadius = calcBoundingRadius(meshData.positions, boundingCenter);
+
+            float[] tangents = format.hasTangents() ? VertexFormat.calcTangents(meshData) : null;
+            vertexBuffer = MemoryUtil.memAlloc(meshData.getVertexCount() * format.getStride());
+            format.write(meshData, tangents, vertexBuffer);
+            vertexBuffer.flip();
+            indicesBuffer = MemoryUtil.memAlloc(meshData.indices.length * Integer.BYTES);
+            indicesBuffer.asIntBuffer().put(meshData.indices);
+
+            RenderState renderState = RenderState.current();
+            vaoId = glGenVertexArrays();
+            renderState.bindVertexArray(vaoId);
+            createInterleavedBuffers(format, vertexBuffer, indicesBuffer);
+            renderState.bindVertexArray(0);
+        } finally {
+            if (vertexBuffer != null) {
+                MemoryUtil.memFree(vertexBuffer);
+            }
+            if (indicesBuffer != null) {
+                MemoryUtil.memFree(indicesBuffer);
+            }
+        }
+    }
+
+    private void createInterleavedBuffers(VertexFormat format, ByteBuffer vertices, ByteBuffer indices) {
+        // Interleaved VBO with every vertex attribute
+        int vboId = glGenBuffers();
+        vboIdList.add(vboId);
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ARRAY_BUFFER, vertices, GL_STATIC_DRAW);
+        format.setAttributes();
+
+        // Index VBO
+        vboId = glGenBuffers();
+        vboIdList.add(vboId);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    static void calcBoundingBox(float[] positions, Vector3f min, Vector3f max) {
+        if (positions.length < 3) {
+            return;
+        }
+        min.set(Float.POSITIVE_INFINITY);
+        max.set(Float.NEGATIVE_INFINITY);
+        for (int i = 0; i + 2 < positions.length; i += 3) {
+            min.x = Math.min(min.x, positions[i]);
+            min.y = Math.min(min.y, positions[i + 1]);
+            min.z = Math.min(min.z, positions[i + 2]);
+            max.x = Math.max(max.x, positions[i]);
+            max.y = Math.max(max.y, positions[i + 1]);
+            max.z = Math.max(max.z, positions[i + 2]);
+        }
+    }
+
+    static float calcBoundingRadius(float[] positions, Vector3f center) {
+        float maxDistanceSquared = 0;
+        for (int i = 0; i + 2 < positions.length; i += 3) {
+            float dx = positions[i] - center.x;
+            float dy = positions[i + 1] - center.y;
+            float dz = positions[i + 2] - center.z;
+            maxDistanceSquared = Math.max(maxDistanceSquared, dx * dx + dy * dy + dz * dz);
+        }
+        return (float) Math.sqrt(maxDistanceSquared);
+    }
+
+    // The vertex array keeps the enabled attributes and the bindings are left for the next mesh, so the state
+    // only changes where meshes differ
+    private void initRender(RenderState renderState) {
         Texture texture = material.getTexture();
         if (texture != null) {
-            // Activate firs texture bank
-            glActiveTexture(GL_TEXTURE0);
-            // Bind the texture
-            glBindTexture(GL_TEXTURE_2D, texture.id);
+            renderState.bindTexture(0, GL_TEXTURE_2D, texture.id);
         }
         Texture normalMap = material.getNormalMap();
         if ( normalMap != null ) {
-            // Activate first texture bank
-            glActiveTexture(GL_TEXTURE1);
-            // Bind the texture
-            glBindTexture(GL_TEXTURE_2D, normalMap.id);
+            renderState.bindTexture(1, GL_TEXTURE_2D, normalMap.id);
         }
 
-        // Draw the mesh
-        glBindVertexArray(vaoId);
-        glEnableVertexAttribArray(0);
-        glEnableVertexAttribArray(1);
-        glEnableVertexAttribArray(2);
+        renderState.bindVertexArray(vaoId);
     }
 
-    private void endRender() {
-        // Restore state
-        glDisableVertexAttribArray(0);
-        glDisableVertexAttribArray(1);
-        glDisableVertexAttribArray(2);
-        glBindVertexArray(0);
-
-        glBindTexture(GL_TEXTURE_2D, 0);
+    private void setInstanced(RenderState renderState, boolean instanced) {
+        if (instanceVboId == 0) {
+            return;
+        }
+        for (int i = 0; i < 4; i++) {
+            if (instanced) {
+                renderState.enableVertexAttribArray(INSTANCE_MATRIX_LOCATION + i);
+            } else {
+                renderState.disableVertexAttribArray(INSTANCE_MATRIX_LOCATION + i);
+            }
+        }
     }
 
     public void render() {
-        initRender();
+        RenderState renderState = RenderState.current();
+        initRender(renderState);
+        setInstanced(renderState, false);
 
-        glDrawElements(GL_TRIANGLES, vertex, GL_UNSIGNED_INT, 0);
-
-        endRender();
+        glDrawElements(GL_TRIANGLES, getVertexCount(), GL_UNSIGNED_INT, 0);
+        renderState.countDraw(getVertexCount(), 1);
     }
 
-    public void renderList(List<GameItem>gameItems, Consumer<GameItem>consumer) {
-        initRender();
+    // Draws one instance for each of the model matrices from first, packed one after the other
+    public void renderInstanced(FloatBuffer matrices, int first, int numInstances) {
+        if (numInstances == 0) {
+            return;
+        }
+        ensureInstanceCapacity(numInstances);
 
-        for (GameItem gameItem : gameItems) {
-            // Set up data required by gameItem
-            consumer.accept(gameItem);
+        RenderState renderState = RenderState.current();
+        initRender(renderState);
+        setInstanced(renderState, true);
 
-            // Render this game item
-            glDrawElements(GL_TRIANGLES, vertex, GL_UNSIGNED_INT, 0);
-        }
+        // Orphan the previous storage so the driver does not have to wait for the last draw
+        glBindBuffer(GL_ARRAY_BUFFER, instanceVboId);
+        glBufferData(GL_ARRAY_BUFFER, (long) instanceCapacity * MATRIX_SIZE_BYTES, GL_STREAM_DRAW);
+        nglBufferSubData(GL_ARRAY_BUFFER, 0, (long) numInstances * MATRIX_SIZE_BYTES,
+                MemoryUtil.memAddress(matrices, first * MATRIX_SIZE_FLOATS));
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
 
-        endRender();
+        glDrawElementsInstanced(GL_TRIANGLES, getVertexCount(), GL_UNSIGNED_INT, 0, numInstances);
+        renderState.countDraw(getVertexCount(), numInstances);
     }
 
+    private void ensureInstanceCapacity(int numInstances) {
+        if (numInstances <= instanceCapacity) {
+            return;
+        }
+        int capacity = Math.max(numInstances, instanceCapacity * 2);
 
-    public void cleanUp() {
-        glDisableVertexAttribArray(0);
-        glDisableVertexAttribArray(1);
-        glDisableVertexAttribArray(2);
+        RenderState renderState = RenderState.current();
+        renderState.bindVertexArray(vaoId);
+        if (instanceVboId == 0) {
+            instanceVboId = glGenBuffers();
+            vboIdList.add(instanceVboId);
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, instanceVboId);
+        glBufferData(GL_ARRAY_BUFFER, (long) capacity * MATRIX_SIZE_BYTES, GL_STREAM_DRAW);
+
+        // A mat4 attribute takes four consecutive locations, one per column
+        for (int i = 0; i < 4; i++) {
+            int location = INSTANCE_MATRIX_LOCATION + i;
+            glVertexAttribPointer(location, VECTOR4F_SIZE_FLOATS, GL_FLOAT, false, MATRIX_SIZE_BYTES,
+                    (long) i * VECTOR4F_SIZE_FLOATS * Float.BYTES);
+            glVertexAttribDivisor(location, 1);
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
 
+        instanceCapacity = capacity;
+    }
+
+    public void cleanUp() {
         // Delete the VBO
         glBindBuffer(GL_ARRAY_BUFFER, 0);
         vboIdList.forEach(GL33::glDeleteBuffers);
+        resetInstanceState();
 
         // Delete the VAO
-        glBindVertexArray(0);
+        RenderState renderState = RenderState.current();
+        renderState.bindVertexArray(0);
         glDeleteVertexArrays(vaoId);
+        renderState.vertexArrayDeleted(vaoId);
     }
 
     public void deleteBuffers() {
-        glDisableVertexAttribArray(0);
-        glDisableVertexAttribArray(1);
-        glDisableVertexAttribArray(2);
-
         // Delete the VBOs
         glBindBuffer(GL_ARRAY_BUFFER, 0);
         vboIdList.forEach(GL33::glDeleteBuffers);
+        resetInstanceState();
 
         // Delete the VAO
-        glBindVertexArray(0);
+        RenderState renderState = RenderState.current();
+        renderState.bindVertexArray(0);
         glDeleteVertexArrays(vaoId);
+        renderState.vertexArrayDeleted(vaoId);
+    }
+
+    // The instance buffer is in the VBO list and deleted with the others, this only forgets it
+    private void resetInstanceState() {
+        instanceVboId = 0;
+        instanceCapacity = 0;
+    }
+
+    public int getVertexCount() {
+        return vertex;
+    }
+
+    public Vector3f getBoundingMin() {
+        return boundingMin;
+    }
+
+    public Vector3f getBoundingMax() {
+        return boundingMax;
+    }
+
+    public Vector3f getBoundingCenter() {
+        return boundingCenter;
+    }
+
+    public float getBoundingRadius() {
+        return boundingRadius;
+    }
+
+    public MeshData getMeshData() {
+        return meshData;
+    }
+
+    public void setMeshData(MeshData meshData) {
+        this.meshData = meshData;
     }
 
     public Material getMaterial() {
@@ -0,0 +1,93 @@
+package engine.graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Directory of compiled mesh files, named after a hash of the source they were built from
+public final class MeshCache {
+
+    private static final String EXTENSION = ".mesh";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static MeshCache defaultCache;
+
+    private final Path directory;
+
+    public MeshCache(Path directory) {
+        this.directory = directory;
+    }
+
+    // The directory can be changed with the engine.meshCache system property
+    public static synchronized MeshCache getDefault() {
+        if (defaultCache == null) {
+            String directory = System.getProperty("engine.meshCache");
+            defaultCache = new MeshCache(directory != null
+                    ? Paths.get(directory)
+                    : Paths.get(System.getProperty("user.home"), ".lwjgl-engine", "meshes"));
+        }
+        return defaultCache;
+    }
+
+    // The variant tells apart meshes built from the same source with different loaders or parameters
+    public static String key(ByteBuffer source, String variant) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(source.duplicate());
+        digest.update((variant + '/' + MeshFile.VERSION).getBytes(StandardCharsets.UTF_8));
+
+        byte[] hash = digest.digest();
+        char[] key = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            key[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+            key[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xF];
+        }
+        return new String(key);
+    }
+
+    // Returns the compiled mesh stored under the key, or null when it has not been built yet
+    public MeshFile find(String key) {
+        Path path = directory.resolve(key + EXTENSION);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try {
+            return MeshFile.map(path);
+        } catch (IOException e) {
+            // Unreadable or from another version, it gets written again
+            return null;
+        }
+    }
+
+    // Writes to a temporary file first so a crash never leaves a half written mesh behind
+    public void store(String key, MeshData meshData) {
+        Path tempFile = null;
+        try {
+            Files.createDirectories(directory);
+            tempFile = Files.createTempFile(directory, key, ".tmp");
+            MeshFile.write(meshData, tempFile);
+            Files.move(tempFile, directory.resolve(key + EXTENSION), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The cache is only an optimization, the mesh is built from its source next time
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException ignored) {
+                    // Nothing else to do
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package engine.graph;
+
+// Vertex attributes and indices of a mesh before they are uploaded to the GPU
+public class MeshData {
+
+    public final float[] positions;
+
+    public final float[] textCoords;
+
+    public final float[] normals;
+
+    public final int[] indices;
+
+    // Number of vertices referenced by the source faces, before shared ones were merged
+    public final int faceVertexCount;
+
+    public MeshData(float[] positions, float[] textCoords, float[] normals, int[] indices) {
+        this(positions, textCoords, normals, indices, indices.length);
+    }
+
+    public MeshData(float[] positions, float[] textCoords, float[] normals, int[] indices, int faceVertexCount) {
+        this.positions = positions;
+        this.textCoords = textCoords;
+        this.normals = normals;
+        this.indices = indices;
+        this.faceVertexCount = faceVertexCount;
+    }
+
+    public int getVertexCount() {
+        return positions.length / 3;
+    }
+
+    // Average number of face vertices sharing each unique vertex
+    public float getVertexReuse() {
+        int vertexCount = getVertexCount();
+        return vertexCount > 0 ? (float) faceVertexCount / vertexCount : 0;
+    }
+}
@@ -0,0 +1,127 @@
+package engine.graph;
+
+import org.joml.Vector3f;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Compiled mesh stored as a header followed by the interleaved vertices and the indices, all little endian:
+//
+//  0  magic, version, vertex count, index count, vertex stride
+// 20  bounding box min and max, bounding radius
+// 48  vertices, position (3 floats), texture coordinates (2 floats) and normal (3 floats) each
+//  .  indices, one int each
+public final class MeshFile {
+
+    private static final int MAGIC = 0x434D574C; // "LWMC"
+
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 48;
+
+    // Vertices use the default interleaved layout
+    public static final int VERTEX_SIZE = VertexFormat.DEFAULT.getStride();
+
+    private final int vertexCount;
+
+    private final int indexCount;
+
+    private final ByteBuffer vertices;
+
+    private final ByteBuffer indices;
+
+    private final Vector3f boundingMin;
+
+    private final Vector3f boundingMax;
+
+    private final float boundingRadius;
+
+    private MeshFile(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                || buffer.getInt(16) != VERTEX_SIZE) {
+            throw new IOException("Not a mesh file of version " + VERSION);
+        }
+        vertexCount = buffer.getInt(8);
+        indexCount = buffer.getInt(12);
+        long verticesSize = (long) vertexCount * VERTEX_SIZE;
+        long indicesSize = (long) indexCount * Integer.BYTES;
+        if (vertexCount < 0 || indexCount < 0 || HEADER_SIZE + verticesSize + indicesSize != buffer.limit()) {
+            throw new IOException("Truncated mesh file");
+        }
+        boundingMin = new Vector3f(buffer.getFloat(20), buffer.getFloat(24), buffer.getFloat(28));
+        boundingMax = new Vector3f(buffer.getFloat(32), buffer.getFloat(36), buffer.getFloat(40));
+        boundingRadius = buffer.getFloat(44);
+
+        vertices = buffer.slice(HEADER_SIZE, (int) verticesSize).order(ByteOrder.LITTLE_ENDIAN);
+        indices = buffer.slice(HEADER_SIZE + (int) verticesSize, (int) indicesSize).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static MeshFile map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MeshFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static void write(MeshData meshData, Path path) throws IOException {
+        int vertexCount = meshData.getVertexCount();
+        int indexCount = meshData.indices.length;
+        long size = HEADER_SIZE + (long) vertexCount * VERTEX_SIZE + (long) indexCount * Integer.BYTES;
+
+        Vector3f min = new Vector3f();
+        Vector3f max = new Vector3f();
+        Mesh.calcBoundingBox(meshData.positions, min, max);
+        float radius = Mesh.calcBoundingRadius(meshData.positions, new Vector3f(min).add(max).mul(0.5f));
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(vertexCount).putInt(indexCount).putInt(VERTEX_SIZE);
+            buffer.putFloat(min.x).putFloat(min.y).putFloat(min.z);
+            buffer.putFloat(max.x).putFloat(max.y).putFloat(max.z);
+            buffer.putFloat(radius);
+
+            VertexFormat.DEFAULT.write(meshData, null, buffer);
+            buffer.asIntBuffer().put(meshData.indices);
+            buffer.force();
+        }
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    public ByteBuffer getVertices() {
+        return vertices;
+    }
+
+    public ByteBuffer getIndices() {
+        return indices;
+    }
+
+    public float getPosition(int vertex, int component) {
+        return vertices.getFloat(vertex * VERTEX_SIZE + component * Float.BYTES);
+    }
+
+    public Vector3f getBoundingMin() {
+        return boundingMin;
+    }
+
+    public Vector3f getBoundingMax() {
+        return boundingMax;
+    }
+
+    public float getBoundingRadius() {
+        return boundingRadius;
+    }
+}
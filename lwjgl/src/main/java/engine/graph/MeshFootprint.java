@@ -0,0 +1,44 @@
+package engine.graph;
+
+import java.util.Locale;
+
+// GPU memory taken by a mesh with one VBO per attribute compared with one interleaved VBO per vertex format
+public final class MeshFootprint {
+
+    // Positions, texture coordinates and normals as floats, plus the indices
+    private static final int SEPARATE_BUFFERS = 4;
+
+    // Interleaved vertices plus the indices
+    private static final int INTERLEAVED_BUFFERS = 2;
+
+    private MeshFootprint() {}
+
+    public static long separateBytes(MeshData meshData) {
+        return (long) (meshData.positions.length + meshData.textCoords.length + meshData.normals.length) * Float.BYTES
+                + indexBytes(meshData);
+    }
+
+    public static long interleavedBytes(MeshData meshData, VertexFormat format) {
+        return (long) meshData.getVertexCount() * format.getStride() + indexBytes(meshData);
+    }
+
+    private static long indexBytes(MeshData meshData) {
+        return (long) meshData.indices.length * Integer.BYTES;
+    }
+
+    public static String report(String name, MeshData meshData, VertexFormat... formats) {
+        StringBuilder sb = new StringBuilder();
+        long separate = separateBytes(meshData);
+        sb.append(String.format(Locale.ROOT, "%s: %d vertices, %d indices%n", name, meshData.getVertexCount(),
+                meshData.indices.length));
+        sb.append(String.format(Locale.ROOT, "  %-40s %3s %7s %12s %8s%n", "layout", "vbo", "stride", "bytes", "ratio"));
+        sb.append(String.format(Locale.ROOT, "  %-40s %3d %7s %12d %7.2fx%n", "separate float", SEPARATE_BUFFERS, "-",
+                separate, 1f));
+        for (VertexFormat format : formats) {
+            long interleaved = interleavedBytes(meshData, format);
+            sb.append(String.format(Locale.ROOT, "  %-40s %3d %7d %12d %7.2fx%n", "interleaved " + format,
+                    INTERLEAVED_BUFFERS, format.getStride(), interleaved, (float) interleaved / separate));
+        }
+        return sb.toString();
+    }
+}
@@ -1,163 +1,403 @@
 package engine.graph;
 
-import org.joml.Vector2f;
-import org.joml.Vector3f;
+import utils.FloatList;
 import utils.Files;
+import utils.IntList;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.nio.file.Path;
 
 public final class OBJLoader {
 
+    private static final int NO_VALUE = -1;
+
+    // Changes whenever the parser produces different meshes from the same file
+    private static final String CACHE_VARIANT = "obj-2";
+
     private OBJLoader() {}
 
+    // Compiles the model into the mesh cache the first time, later loads map the compiled file instead
     public static Mesh loadMesh(String fileName) throws Exception {
-        List<String> lines = Files.readLines(fileName);
-
-        List<Vector3f> vertices = new ArrayList<>();
-        List<Vector2f> textures = new ArrayList<>();
-        List<Vector3f> normals = new ArrayList<>();
-        List<Face> faces = new ArrayList<>();
-
-        for (String line : lines) {
-            String[] tokens = line.split("\\s+");
-            switch(tokens[0]) {
-                case "v":
-                    // Geometric vertex
-                    Vector3f vec3f = new Vector3f(
-                            Float.parseFloat(tokens[1]),
-                            Float.parseFloat(tokens[2]),
-                            Float.parseFloat(tokens[3]));
-                    vertices.add(vec3f);
-                    break;
-                case "vt":
-                    // Texture coordinate
-                    Vector2f vec2f = new Vector2f(
-                            Float.parseFloat(tokens[1]),
-                            Float.parseFloat(tokens[2]));
-                    textures.add(vec2f);
-                    break;
-                case "vn":
-                    // Vertex normal
-                    Vector3f vec3fNorm = new Vector3f(
-                            Float.parseFloat(tokens[1]),
-                            Float.parseFloat(tokens[2]),
-                            Float.parseFloat(tokens[3]));
-                    normals.add(vec3fNorm);
-                    break;
-                case "f":
-                    Face face = new Face(tokens[1], tokens[2], tokens[3]);
-                    faces.add(face);
-                    break;
-                default:
-                    // Ignore other lines
-                    break;
-            }
+        return loadMesh(fileName, MeshCache.getDefault());
+    }
+
+    public static Mesh loadMesh(String fileName, MeshCache cache) throws Exception {
+        ByteBuffer source = Files.map(fileName);
+        String key = MeshCache.key(source, CACHE_VARIANT);
+        MeshFile meshFile = cache.find(key);
+        if (meshFile != null) {
+            return new Mesh(meshFile);
+        }
+        MeshData meshData = parse(source);
+        cache.store(key, meshData);
+        return new Mesh(meshData);
+    }
+
+    // Vertices stored in the given layout. The mesh cache only holds the default one, other layouts parse the model
+    public static Mesh loadMesh(String fileName, VertexFormat format) throws Exception {
+        if (format == VertexFormat.DEFAULT) {
+            return loadMesh(fileName);
         }
-        return reorderLists(vertices, textures, normals, faces);
+        return new Mesh(loadMeshData(fileName), format);
     }
 
-    private static Mesh reorderLists(List<Vector3f> posList, List<Vector2f> textCoordList,
-                                     List<Vector3f> normList, List<Face> facesList) {
-
-        List<Integer> indices = new ArrayList();
-        // Create position array in the order it has been declared
-        float[] posArr = new float[posList.size() * 3];
-        int i = 0;
-        for (Vector3f pos : posList) {
-            posArr[i * 3] = pos.x;
-            posArr[i * 3 + 1] = pos.y;
-            posArr[i * 3 + 2] = pos.z;
-            i++;
-        }
-        float[] textCoordArr = new float[posList.size() * 2];
-        float[] normArr = new float[posList.size() * 3];
-
-        for (Face face : facesList) {
-            IdxGroup[] faceVertexIndices = face.getFaceVertexIndices();
-            for (IdxGroup indValue : faceVertexIndices) {
-                processFaceVertex(indValue, textCoordList, normList,
-                        indices, textCoordArr, normArr);
-            }
-        }
-        int[] indicesArr = new int[indices.size()];
-        indicesArr = indices.stream().mapToInt((Integer v) -> v).toArray();
-        Mesh mesh = new Mesh(posArr, textCoordArr, normArr, indicesArr);
-        return mesh;
+    public static MeshData loadMeshData(String fileName) throws Exception {
+        return parse(Files.map(fileName));
     }
 
-    private static void processFaceVertex(IdxGroup indices, List<Vector2f> textCoordList,
-                                          List<Vector3f> normList, List<Integer> indicesList,
-                                          float[] texCoordArr, float[] normArr) {
+    public static MeshData loadMeshData(Path path) throws Exception {
+        return parse(Files.map(path));
+    }
 
-        // Set index for vertex coordinates
-        int posIndex = indices.idxPos;
-        indicesList.add(posIndex);
+    // Scans the bytes of the file in place, numbers are parsed without creating any string
+    public static MeshData parse(ByteBuffer buffer) {
+        FloatList positions = new FloatList(1024);
+        FloatList textCoords = new FloatList(1024);
+        FloatList normals = new FloatList(1024);
+        MeshBuilder builder = new MeshBuilder(positions, textCoords, normals);
 
-        // Reorder texture coordinates
-        if (indices.idxTextCoord >= 0) {
-            Vector2f textCoord = textCoordList.get(indices.idxTextCoord);
-            texCoordArr[posIndex * 2] = textCoord.x;
-            texCoordArr[posIndex * 2 + 1] = 1 - textCoord.y;
+        Scanner scanner = new Scanner(buffer);
+        while (scanner.hasRemaining()) {
+            scanner.skipBlanks();
+            byte first = scanner.peek(0);
+            byte second = scanner.peek(1);
+            if (first == 'v' && isBlank(second)) {
+                // Geometric vertex
+                scanner.skip(1);
+                positions.add(scanner.nextFloat());
+                positions.add(scanner.nextFloat());
+                positions.add(scanner.nextFloat());
+            } else if (first == 'v' && second == 't' && isBlank(scanner.peek(2))) {
+                // Texture coordinate
+                scanner.skip(2);
+                textCoords.add(scanner.nextFloat());
+                textCoords.add(scanner.nextFloat());
+            } else if (first == 'v' && second == 'n' && isBlank(scanner.peek(2))) {
+                // Vertex normal
+                scanner.skip(2);
+                normals.add(scanner.nextFloat());
+                normals.add(scanner.nextFloat());
+                normals.add(scanner.nextFloat());
+            } else if (first == 'f' && isBlank(second)) {
+                scanner.skip(1);
+                parseFace(scanner, builder);
+            }
+            // Ignore other lines and anything left on the current one
+            scanner.skipLine();
         }
-        if (indices.idxVecNormal >= 0) {
-            // Reorder vectornormals
-            Vector3f vecNorm = normList.get(indices.idxVecNormal);
-            normArr[posIndex * 3] = vecNorm.x;
-            normArr[posIndex * 3 + 1] = vecNorm.y;
-            normArr[posIndex * 3 + 2] = vecNorm.z;
+        return builder.build();
+    }
+
+    // Triangles, quads and n-gons are split in a fan around their first vertex
+    private static void parseFace(Scanner scanner, MeshBuilder builder) {
+        int numPositions = builder.positions.size() / 3;
+        int numTextCoords = builder.textCoords.size() / 2;
+        int numNormals = builder.normals.size() / 3;
+
+        int firstVertex = NO_VALUE;
+        int lastVertex = NO_VALUE;
+        while (scanner.hasFaceVertex()) {
+            int vertex = scanner.nextFaceVertex(builder, numPositions, numTextCoords, numNormals);
+            if (firstVertex == NO_VALUE) {
+                firstVertex = vertex;
+            } else if (lastVertex != NO_VALUE) {
+                builder.addTriangle(firstVertex, lastVertex, vertex);
+                lastVertex = vertex;
+            } else {
+                lastVertex = vertex;
+            }
         }
     }
 
-    protected static class Face {
-        // List of idxGroup groups for a face triangle (3 vertices per face)
-        private IdxGroup[] idxGroups = new IdxGroup[3];
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    // Emits one vertex for each distinct (position, text coord, normal) tuple referenced by the faces
+    private static final class MeshBuilder {
+
+        private static final int EMPTY = -1;
+
+        private final FloatList positions;
+
+        private final FloatList textCoords;
 
-        public Face(String v1, String v2, String v3) {
-            idxGroups = new IdxGroup[3];
-            // Parse the lines
-            idxGroups[0] = parseLine(v1);
-            idxGroups[1] = parseLine(v2);
-            idxGroups[2] = parseLine(v3);
+        private final FloatList normals;
+
+        private final FloatList vertexPositions;
+
+        private final FloatList vertexTextCoords;
+
+        private final FloatList vertexNormals;
+
+        private final IntList indices;
+
+        // Open addressing table, three key ints and the vertex index per slot
+        private int[] keys;
+
+        private int[] values;
+
+        private int mask;
+
+        private int numVertices;
+
+        private int numFaceVertices;
+
+        MeshBuilder(FloatList positions, FloatList textCoords, FloatList normals) {
+            this.positions = positions;
+            this.textCoords = textCoords;
+            this.normals = normals;
+            this.vertexPositions = new FloatList(1024);
+            this.vertexTextCoords = new FloatList(1024);
+            this.vertexNormals = new FloatList(1024);
+            this.indices = new IntList(1024);
+            this.values = new int[1024];
+            this.keys = new int[values.length * 3];
+            this.mask = values.length - 1;
+            Arrays.fill(values, EMPTY);
         }
 
-        private IdxGroup parseLine(String line) {
-            IdxGroup idxGroup = new IdxGroup();
+        int vertexIndex(int posIndex, int textCoordIndex, int normalIndex) {
+            numFaceVertices++;
+            int slot = hash(posIndex, textCoordIndex, normalIndex) & mask;
+            while (values[slot] != EMPTY) {
+                int k = slot * 3;
+                if (keys[k] == posIndex && keys[k + 1] == textCoordIndex && keys[k + 2] == normalIndex) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            int vertex = numVertices++;
+            keys[slot * 3] = posIndex;
+            keys[slot * 3 + 1] = textCoordIndex;
+            keys[slot * 3 + 2] = normalIndex;
+            values[slot] = vertex;
+            addVertex(posIndex, textCoordIndex, normalIndex);
+            // Keep the table at most half full
+            if (numVertices * 2 > values.length) {
+                rehash();
+            }
+            return vertex;
+        }
 
-            String[] lineTokens = line.split("/");
-            int length = lineTokens.length;
-            idxGroup.idxPos = Integer.parseInt(lineTokens[0]) - 1;
-            if (length > 1) {
-                // It can be empty if the obj does not define text coords
-                String textCoord = lineTokens[1];
-                idxGroup.idxTextCoord = textCoord.length() > 0 ? Integer.parseInt(textCoord) - 1 : IdxGroup.NO_VALUE;
-                if (length > 2) {
-                    idxGroup.idxVecNormal = Integer.parseInt(lineTokens[2]) - 1;
+        void addTriangle(int v0, int v1, int v2) {
+            indices.add(v0);
+            indices.add(v1);
+            indices.add(v2);
+        }
+
+        MeshData build() {
+            return new MeshData(vertexPositions.toArray(), vertexTextCoords.toArray(),
+                    vertexNormals.toArray(), indices.toArray(), numFaceVertices);
+        }
+
+        private void addVertex(int posIndex, int textCoordIndex, int normalIndex) {
+            vertexPositions.add(positions.get(posIndex * 3));
+            vertexPositions.add(positions.get(posIndex * 3 + 1));
+            vertexPositions.add(positions.get(posIndex * 3 + 2));
+            if (textCoordIndex >= 0) {
+                vertexTextCoords.add(textCoords.get(textCoordIndex * 2));
+                vertexTextCoords.add(1 - textCoords.get(textCoordIndex * 2 + 1));
+            } else {
+                vertexTextCoords.add(0);
+                vertexTextCoords.add(0);
+            }
+            if (normalIndex >= 0) {
+                vertexNormals.add(normals.get(normalIndex * 3));
+                vertexNormals.add(normals.get(normalIndex * 3 + 1));
+                vertexNormals.add(normals.get(normalIndex * 3 + 2));
+            } else {
+                vertexNormals.add(0);
+                vertexNormals.add(0);
+                vertexNormals.add(0);
+            }
+        }
+
+        private void rehash() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            values = new int[oldValues.length * 2];
+            keys = new int[values.length * 3];
+            mask = values.length - 1;
+            Arrays.fill(values, EMPTY);
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] == EMPTY) {
+                    continue;
                 }
+                int k = i * 3;
+                int slot = hash(oldKeys[k], oldKeys[k + 1], oldKeys[k + 2]) & mask;
+                while (values[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                System.arraycopy(oldKeys, k, keys, slot * 3, 3);
+                values[slot] = oldValues[i];
             }
-            return idxGroup;
         }
 
-        public IdxGroup[] getFaceVertexIndices() {
-            return idxGroups;
+        private static int hash(int posIndex, int textCoordIndex, int normalIndex) {
+            int h = posIndex * 0x9E3779B1;
+            h = (h ^ textCoordIndex) * 0x85EBCA6B;
+            h = (h ^ normalIndex) * 0xC2B2AE35;
+            return h ^ (h >>> 16);
         }
     }
 
-    protected static class IdxGroup {
+    private static final class Scanner {
+
+        private static final double[] POWERS_OF_TEN = {
+                1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+                1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+        };
 
-        public static final int NO_VALUE = -1;
+        private static final int MAX_MANTISSA_DIGITS = 18;
 
-        public int idxPos;
+        private final ByteBuffer buffer;
 
-        public int idxTextCoord;
+        private final int limit;
 
-        public int idxVecNormal;
+        private int pos;
 
-        public IdxGroup() {
-            idxPos = NO_VALUE;
-            idxTextCoord = NO_VALUE;
-            idxVecNormal = NO_VALUE;
+        Scanner(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.pos = buffer.position();
+            this.limit = buffer.limit();
         }
-    }
 
+        boolean hasRemaining() {
+            return pos < limit;
+        }
+
+        byte peek(int offset) {
+            int index = pos + offset;
+            return index < limit ? buffer.get(index) : (byte) '\n';
+        }
+
+        void skip(int count) {
+            pos += count;
+        }
+
+        void skipBlanks() {
+            while (pos < limit) {
+                byte b = buffer.get(pos);
+                if (b != ' ' && b != '\t' && b != '\r') {
+                    break;
+                }
+                pos++;
+            }
+        }
+
+        void skipLine() {
+            while (pos < limit && buffer.get(pos++) != '\n') {
+                // Keep moving until the end of the line
+            }
+        }
+
+        float nextFloat() {
+            skipBlanks();
+            int start = pos;
+            boolean negative = false;
+            byte b = peek(0);
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                pos++;
+            }
+
+            long mantissa = 0;
+            int digits = 0;
+            int exponent = 0;
+            while (pos < limit && isDigit(b = buffer.get(pos))) {
+                if (digits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                } else {
+                    exponent++;
+                }
+                pos++;
+            }
+            if (pos < limit && buffer.get(pos) == '.') {
+                pos++;
+                while (pos < limit && isDigit(b = buffer.get(pos))) {
+                    if (digits < MAX_MANTISSA_DIGITS) {
+                        mantissa = mantissa * 10 + (b - '0');
+                        exponent--;
+                        if (mantissa != 0) {
+                            digits++;
+                        }
+                    }
+                    pos++;
+                }
+            }
+            if (pos < limit && ((b = buffer.get(pos)) == 'e' || b == 'E')) {
+                pos++;
+                exponent += nextInt();
+            }
+
+            // Fast path: both the mantissa and the power of ten are exact doubles, so the result is correctly rounded
+            if (mantissa < (1L << 53) && exponent >= -22 && exponent <= 22) {
+                double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+                return (float) (negative ? -value : value);
+            }
+            return slowParse(start);
+        }
+
+        private float slowParse(int start) {
+            byte[] bytes = new byte[pos - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(start + i);
+            }
+            return Float.parseFloat(new String(bytes, StandardCharsets.US_ASCII));
+        }
+
+        int nextInt() {
+            boolean negative = false;
+            byte b = peek(0);
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                pos++;
+            }
+            int value = 0;
+            while (pos < limit && isDigit(b = buffer.get(pos))) {
+                value = value * 10 + (b - '0');
+                pos++;
+            }
+            return negative ? -value : value;
+        }
+
+        boolean hasFaceVertex() {
+            skipBlanks();
+            byte b = peek(0);
+            return isDigit(b) || b == '-' || b == '+';
+        }
+
+        // Parses a v, v/vt, v//vn or v/vt/vn group, negative indices are relative to the end of each list
+        int nextFaceVertex(MeshBuilder builder, int numPositions, int numTextCoords, int numNormals) {
+            int posIndex = toIndex(nextInt(), numPositions);
+            int textCoordIndex = NO_VALUE;
+            int normalIndex = NO_VALUE;
+            if (peek(0) == '/') {
+                pos++;
+                // It can be empty if the obj does not define text coords
+                if (peek(0) != '/') {
+                    textCoordIndex = toIndex(nextInt(), numTextCoords);
+                }
+                if (peek(0) == '/') {
+                    pos++;
+                    normalIndex = toIndex(nextInt(), numNormals);
+                }
+            }
+            return builder.vertexIndex(posIndex, textCoordIndex, normalIndex);
+        }
+
+        private static int toIndex(int objIndex, int count) {
+            return objIndex < 0 ? count + objIndex : objIndex - 1;
+        }
+
+        private static boolean isDigit(byte b) {
+            return b >= '0' && b <= '9';
+        }
+    }
 }
@@ -0,0 +1,37 @@
+package engine.graph;
+
+import static org.lwjgl.opengl.GL33.*;
+
+// Sends the calls to the OpenGL context current on the calling thread
+public class OpenGLBackend implements GLBackend {
+
+    @Override
+    public void useProgram(int program) {
+        glUseProgram(program);
+    }
+
+    @Override
+    public void bindVertexArray(int vao) {
+        glBindVertexArray(vao);
+    }
+
+    @Override
+    public void activeTexture(int unit) {
+        glActiveTexture(GL_TEXTURE0 + unit);
+    }
+
+    @Override
+    public void bindTexture(int target, int texture) {
+        glBindTexture(target, texture);
+    }
+
+    @Override
+    public void enableVertexAttribArray(int index) {
+        glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void disableVertexAttribArray(int index) {
+        glDisableVertexAttribArray(index);
+    }
+}
@@ -0,0 +1,183 @@
+package engine.graph;
+
+import java.util.Arrays;
+
+// Draws of a frame, each submitted with a 64 bit key and executed in key order after an LSD radix sort.
+// Opaque keys group the draws by state and then go front to back:
+//
+//   63 pass (2) | shader (6) | material (12) | texture (12) | mesh (12) | depth (20) 0
+//
+// Blended keys put the depth, reversed, right after the pass, so they go back to front whatever their state:
+//
+//   63 pass (2) | far to near depth (20) | shader (6) | material (12) | texture (12) | mesh (12) 0
+//
+// Ids are masked to their width, two objects that collide are only grouped less well
+public class RenderQueue {
+
+    public static final int PASS_OPAQUE = 0;
+
+    public static final int PASS_BLENDED = 1;
+
+    private static final int DEPTH_BITS = 20;
+
+    private static final int DEPTH_MAX = (1 << DEPTH_BITS) - 1;
+
+    private static final int RADIX_BITS = 8;
+
+    private static final int RADIX_PASSES = Long.SIZE / RADIX_BITS;
+
+    private static final int BUCKETS = 1 << RADIX_BITS;
+
+    private long[] keys;
+
+    private long[] sortedKeys;
+
+    // Submission index of each key, sorted along with them
+    private int[] order;
+
+    private int[] sortedOrder;
+
+    private Mesh[] meshes;
+
+    // What to draw, read by whoever submitted it
+    private int[] commands;
+
+    private final int[] histograms;
+
+    private int size;
+
+    public RenderQueue() {
+        this(1024);
+    }
+
+    public RenderQueue(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        keys = new long[capacity];
+        sortedKeys = new long[capacity];
+        order = new int[capacity];
+        sortedOrder = new int[capacity];
+        meshes = new Mesh[capacity];
+        commands = new int[capacity];
+        histograms = new int[RADIX_PASSES * BUCKETS];
+    }
+
+    // Depth is the distance to the camera divided by the far plane, clamped to [0, 1]
+    public static long opaqueKey(int shader, int material, int texture, int mesh, float depth) {
+        return (long) PASS_OPAQUE << 62
+                | (long) (shader & 0x3F) << 56
+                | (long) (material & 0xFFF) << 44
+                | (long) (texture & 0xFFF) << 32
+                | (long) (mesh & 0xFFF) << 20
+                | quantize(depth);
+    }
+
+    public static long blendedKey(int shader, int material, int texture, int mesh, float depth) {
+        return (long) PASS_BLENDED << 62
+                | (long) (DEPTH_MAX - quantize(depth)) << 42
+                | (long) (shader & 0x3F) << 36
+                | (long) (material & 0xFFF) << 24
+                | (long) (texture & 0xFFF) << 12
+                | (mesh & 0xFFF);
+    }
+
+    private static long quantize(float depth) {
+        float clamped = Math.max(0, Math.min(1, depth));
+        return (long) (clamped * DEPTH_MAX);
+    }
+
+    public static int getPass(long key) {
+        return (int) (key >>> 62);
+    }
+
+    public void clear() {
+        // Drop the references so removed meshes can be collected
+        Arrays.fill(meshes, 0, size, null);
+        size = 0;
+    }
+
+    public void submit(long key, Mesh mesh, int command) {
+        if (size == keys.length) {
+            grow();
+        }
+        keys[size] = key;
+        order[size] = size;
+        meshes[size] = mesh;
+        commands[size] = command;
+        size++;
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        sortedKeys = new long[capacity];
+        order = Arrays.copyOf(order, capacity);
+        sortedOrder = new int[capacity];
+        meshes = Arrays.copyOf(meshes, capacity);
+        commands = Arrays.copyOf(commands, capacity);
+    }
+
+    // Stable, so draws with equal keys keep the order they were submitted in
+    public void sort() {
+        Arrays.fill(histograms, 0);
+        for (int i = 0; i < size; i++) {
+            long key = keys[i];
+            for (int pass = 0; pass < RADIX_PASSES; pass++) {
+                histograms[pass * BUCKETS + ((int) (key >>> (pass * RADIX_BITS)) & (BUCKETS - 1))]++;
+            }
+        }
+
+        for (int pass = 0; pass < RADIX_PASSES; pass++) {
+            int base = pass * BUCKETS;
+            int shift = pass * RADIX_BITS;
+            // Every key has the same digit, the pass would not move anything
+            if (size == 0 || histograms[base + ((int) (keys[0] >>> shift) & (BUCKETS - 1))] == size) {
+                continue;
+            }
+            int offset = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                int count = histograms[base + bucket];
+                histograms[base + bucket] = offset;
+                offset += count;
+            }
+            for (int i = 0; i < size; i++) {
+                long key = keys[i];
+                int target = histograms[base + ((int) (key >>> shift) & (BUCKETS - 1))]++;
+                sortedKeys[target] = key;
+                sortedOrder[target] = order[i];
+            }
+            long[] swapKeys = keys;
+            keys = sortedKeys;
+            sortedKeys = swapKeys;
+            int[] swapOrder = order;
+            order = sortedOrder;
+            sortedOrder = swapOrder;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Accessors take the position in sorted order
+    public long getKey(int index) {
+        return keys[index];
+    }
+
+    public Mesh getMesh(int index) {
+        return meshes[order[index]];
+    }
+
+    public int getCommand(int index) {
+        return commands[order[index]];
+    }
+
+    // Position of the first draw of the pass, or size when there is none
+    public int findPass(int pass) {
+        for (int i = 0; i < size; i++) {
+            if (getPass(keys[i]) >= pass) {
+                return i;
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,259 @@
+package engine.graph;
+
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL33.*;
+
+// Remembers the bound program, vertex array, textures of each unit and the attributes enabled in each vertex
+// array, and only passes the calls that change them to the backend. Every bind of the engine goes through the
+// current state, code that calls OpenGL directly must call invalidate afterwards
+public class RenderState {
+
+    public static final int MAX_TEXTURE_UNITS = 16;
+
+    // Texture targets that are tracked, binds to other targets always reach the backend
+    private static final int[] TEXTURE_TARGETS = {GL_TEXTURE_2D, GL_TEXTURE_BUFFER, GL_TEXTURE_CUBE_MAP};
+
+    private static final int UNKNOWN = -1;
+
+    private static RenderState current;
+
+    private final GLBackend backend;
+
+    private int program;
+
+    private int vao;
+
+    private int activeUnit;
+
+    // Texture bound to each target of each unit, target major
+    private final int[] textures;
+
+    // Enabled attributes of each vertex array as a bit mask, by name. Vertex array 0 has no attributes in core
+    private int[] enabledAttribs;
+
+    // Attributes of each vertex array whose state is known, set once they go through here
+    private int[] knownAttribs;
+
+    private int stateChanges;
+
+    private int skippedChanges;
+
+    private int lastFrameStateChanges;
+
+    private int lastFrameSkippedChanges;
+
+    private int drawCalls;
+
+    private long triangles;
+
+    private int uniformUploads;
+
+    private int lastFrameDrawCalls;
+
+    private long lastFrameTriangles;
+
+    private int lastFrameUniformUploads;
+
+    public RenderState(GLBackend backend) {
+        this.backend = backend;
+        this.textures = new int[TEXTURE_TARGETS.length * MAX_TEXTURE_UNITS];
+        this.enabledAttribs = new int[64];
+        this.knownAttribs = new int[64];
+        invalidate();
+    }
+
+    // State of the OpenGL context of the render thread
+    public static RenderState current() {
+        if (current == null) {
+            current = new RenderState(new OpenGLBackend());
+        }
+        return current;
+    }
+
+    public static void setCurrent(RenderState renderState) {
+        current = renderState;
+    }
+
+    // Forgets everything, the next call of each kind reaches the backend
+    public void invalidate() {
+        program = UNKNOWN;
+        vao = UNKNOWN;
+        activeUnit = UNKNOWN;
+        Arrays.fill(textures, UNKNOWN);
+        Arrays.fill(knownAttribs, 0);
+    }
+
+    public void useProgram(int program) {
+        if (this.program == program) {
+            skippedChanges++;
+            return;
+        }
+        this.program = program;
+        stateChanges++;
+        backend.useProgram(program);
+    }
+
+    public void bindVertexArray(int vao) {
+        if (this.vao == vao) {
+            skippedChanges++;
+            return;
+        }
+        this.vao = vao;
+        stateChanges++;
+        backend.bindVertexArray(vao);
+    }
+
+    public void activeTexture(int unit) {
+        if (activeUnit == unit) {
+            skippedChanges++;
+            return;
+        }
+        activeUnit = unit;
+        stateChanges++;
+        backend.activeTexture(unit);
+    }
+
+    // Binds to the texture unit, making it the active one only when the binding changes
+    public void bindTexture(int unit, int target, int texture) {
+        int slot = textureSlot(unit, target);
+        if (slot != UNKNOWN && textures[slot] == texture) {
+            skippedChanges++;
+            return;
+        }
+        activeTexture(unit);
+        bindTexture(target, texture);
+    }
+
+    // Binds to the active texture unit
+    public void bindTexture(int target, int texture) {
+        int slot = activeUnit != UNKNOWN ? textureSlot(activeUnit, target) : UNKNOWN;
+        if (slot != UNKNOWN) {
+            if (textures[slot] == texture) {
+                skippedChanges++;
+                return;
+            }
+            textures[slot] = texture;
+        }
+        stateChanges++;
+        backend.bindTexture(target, texture);
+    }
+
+    private static int textureSlot(int unit, int target) {
+        if (unit < 0 || unit >= MAX_TEXTURE_UNITS) {
+            return UNKNOWN;
+        }
+        for (int i = 0; i < TEXTURE_TARGETS.length; i++) {
+            if (TEXTURE_TARGETS[i] == target) {
+                return i * MAX_TEXTURE_UNITS + unit;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    // Applies to the bound vertex array
+    public void enableVertexAttribArray(int index) {
+        setVertexAttribArray(index, true);
+    }
+
+    public void disableVertexAttribArray(int index) {
+        setVertexAttribArray(index, false);
+    }
+
+    private void setVertexAttribArray(int index, boolean enabled) {
+        if (vao > 0 && index < Integer.SIZE) {
+            int bit = 1 << index;
+            ensureVaoCapacity(vao);
+            if ((knownAttribs[vao] & bit) != 0 && ((enabledAttribs[vao] & bit) != 0) == enabled) {
+                skippedChanges++;
+                return;
+            }
+            knownAttribs[vao] |= bit;
+            enabledAttribs[vao] = enabled ? enabledAttribs[vao] | bit : enabledAttribs[vao] & ~bit;
+        }
+        stateChanges++;
+        apply(index, enabled);
+    }
+
+    private void apply(int index, boolean enabled) {
+        if (enabled) {
+            backend.enableVertexAttribArray(index);
+        } else {
+            backend.disableVertexAttribArray(index);
+        }
+    }
+
+    private void ensureVaoCapacity(int vao) {
+        if (vao >= enabledAttribs.length) {
+            int capacity = Math.max(vao + 1, enabledAttribs.length * 2);
+            enabledAttribs = Arrays.copyOf(enabledAttribs, capacity);
+            knownAttribs = Arrays.copyOf(knownAttribs, capacity);
+        }
+    }
+
+    // To call after deleting a vertex array, its name may be given to a new one
+    public void vertexArrayDeleted(int vao) {
+        if (vao < enabledAttribs.length) {
+            knownAttribs[vao] = 0;
+        }
+        if (this.vao == vao) {
+            this.vao = 0;
+        }
+    }
+
+    // A deleted texture is unbound from every unit
+    public void textureDeleted(int texture) {
+        for (int i = 0; i < textures.length; i++) {
+            if (textures[i] == texture) {
+                textures[i] = 0;
+            }
+        }
+    }
+
+    // Counted by the meshes for every draw they issue
+    public void countDraw(int indices, int instances) {
+        drawCalls++;
+        triangles += (long) (indices / 3) * instances;
+    }
+
+    // Counted by the uniforms for every value that reaches the driver
+    public void countUniformUpload() {
+        uniformUploads++;
+    }
+
+    // Ends the frame being counted, its counts are the ones of the last frame from now on
+    public void newFrame() {
+        lastFrameStateChanges = stateChanges;
+        lastFrameSkippedChanges = skippedChanges;
+        lastFrameDrawCalls = drawCalls;
+        lastFrameTriangles = triangles;
+        lastFrameUniformUploads = uniformUploads;
+        stateChanges = 0;
+        skippedChanges = 0;
+        drawCalls = 0;
+        triangles = 0;
+        uniformUploads = 0;
+    }
+
+    // Calls that reached the backend in the last frame
+    public int getStateChanges() {
+        return lastFrameStateChanges;
+    }
+
+    // Calls that were dropped because they did not change anything in the last frame
+    public int getSkippedChanges() {
+        return lastFrameSkippedChanges;
+    }
+
+    public int getDrawCalls() {
+        return lastFrameDrawCalls;
+    }
+
+    public long getTriangles() {
+        return lastFrameTriangles;
+    }
+
+    public int getUniformUploads() {
+        return lastFrameUniformUploads;
+    }
+}
@@ -1,17 +1,18 @@
 package engine.graph;
 
 import engine.*;
-import engine.graph.lights.DirectionalLight;
-import engine.graph.lights.PointLight;
-import engine.SceneLight;
-import engine.graph.lights.SpotLight;
 import engine.items.GameItem;
 import engine.items.SkyBox;
+import engine.profiling.FrameProfiler;
 import org.joml.Matrix4f;
-import org.joml.Vector3f;
-import org.joml.Vector4f;
 import utils.Files;
 
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import static org.lwjgl.opengl.GL33.*;
 
 public class Renderer {
@@ -20,54 +21,107 @@ public class Renderer {
     private static final float Z_NEAR = 0.01f;
     private static final float Z_FAR = 1000f;
 
-    private static final float MAX_POINT_LIGHTS = 5;
+    // Programs in the render queue sort keys
+    private static final int SCENE_SHADER = 0;
+
+    // Fragments only shade the lights of their cluster, the limit is the size of the LightData block
+    public static final int DEFAULT_MAX_POINT_LIGHTS = 192;
+
+    public static final int DEFAULT_MAX_SPOT_LIGHTS = 64;
+
+    // Frames the profiler keeps, ten seconds at 60 frames per second
+    private static final int PROFILED_FRAMES = 600;
+
+    private final int maxPointLights;
 
-    private static final float MAX_SPOT_LIGHTS = 5;
+    private final int maxSpotLights;
+
+    private FrameUniforms frameUniforms;
 
     private final Transformation transformation;
 
+    private final FramePreparer framePreparer;
+
+    private final FrameProfiler profiler;
+
+    private final HudBatch hudBatch;
+
+    // HUD items the batch cannot take, drawn one by one after it
+    private final List<GameItem> unbatchedHudItems;
+
+    private HudBatchRenderer hudBatchRenderer;
+
     private ShaderProgram sceneShaderProgram;
     private ShaderProgram hudShaderProgram;
     private ShaderProgram skyBoxShaderProgram;
 
+    private Uniform sceneModelViewMatrix;
+    private Uniform sceneIsInstanced;
+    private Uniform sceneTextureSampler;
+    private Uniform sceneNormalMap;
+    private Uniform sceneClusterGrid;
+    private Uniform sceneClusterLights;
+    private ShaderProgram.MaterialUniform sceneMaterial;
+
+    private Uniform hudProjModelMatrix;
+    private Uniform hudColor;
+    private Uniform hudHasTexture;
+
+    private Uniform skyBoxModelViewMatrix;
+    private Uniform skyBoxTextureSampler;
+
     private float specularPower;
 
     public Renderer() {
+        this(DEFAULT_MAX_POINT_LIGHTS, DEFAULT_MAX_SPOT_LIGHTS);
+    }
+
+    // The maximums size the light arrays of the scene shader, lights past them are not rendered
+    public Renderer(int maxPointLights, int maxSpotLights) {
+        this.maxPointLights = maxPointLights;
+        this.maxSpotLights = maxSpotLights;
         transformation = new Transformation();
+        framePreparer = new FramePreparer(SCENE_SHADER);
+        profiler = new FrameProfiler(PROFILED_FRAMES);
+        hudBatch = new HudBatch();
+        unbatchedHudItems = new ArrayList<>();
         specularPower = 10f;
     }
 
     public void init() throws Exception {
+        frameUniforms = new FrameUniforms(maxPointLights, maxSpotLights);
         setupSceneShader();
         setupHudShader();
         setupSkyBoxShader();
+        if (GLGpuClock.isSupported()) {
+            profiler.setGpuClock(new GLGpuClock());
+        }
     }
 
     public void setupSceneShader() throws Exception {
         // Create shader
+        Map<String, Object> defines = new HashMap<>();
+        frameUniforms.addDefines(defines);
         sceneShaderProgram = new ShaderProgram();
-        sceneShaderProgram.createVertexShader(Files.read("shaders/scene.vsh"));
-        sceneShaderProgram.createFragmentShader(Files.read("shaders/scene.fsh"));
+        sceneShaderProgram.createVertexShader(ShaderProgram.loadSource("scene.vsh", defines));
+        sceneShaderProgram.createFragmentShader(ShaderProgram.loadSource("scene.fsh", defines));
         sceneShaderProgram.link();
 
-        // Create uniforms for modelView and projection matrices and texture
-        sceneShaderProgram.createUniform("projectionMatrix");
-        sceneShaderProgram.createUniform("modelViewMatrix");
-        sceneShaderProgram.createUniform("texture_sampler");
-        sceneShaderProgram.createUniform("normalMap");
+        // Matrices, lights and fog come from the per frame uniform blocks
+        frameUniforms.bindFrameBlock(sceneShaderProgram);
+        frameUniforms.bindLightsBlock(sceneShaderProgram);
 
-        // Create uniform for material
-        sceneShaderProgram.createMaterialUniform("material");
+        // Create uniforms for the modelView matrix and textures
+        sceneModelViewMatrix = sceneShaderProgram.createUniform("modelViewMatrix");
+        sceneIsInstanced = sceneShaderProgram.createUniform("isInstanced");
+        sceneTextureSampler = sceneShaderProgram.createUniform("texture_sampler");
+        sceneNormalMap = sceneShaderProgram.createUniform("normalMap");
+        sceneClusterGrid = sceneShaderProgram.createUniform("clusterGrid");
+        sceneClusterLights = sceneShaderProgram.createUniform("clusterLights");
 
-        // Create lighting related uniforms
-        sceneShaderProgram.createUniform("specularPower");
-        sceneShaderProgram.createUniform("ambientLight");
-        sceneShaderProgram.createPointLightListUniform("pointLights", 5);
-        sceneShaderProgram.createSpotLightListUniform("spotLights", 5);
-        sceneShaderProgram.createDirectionalLightUniform("directionalLight");
+        // Create uniform for material
+        sceneMaterial = sceneShaderProgram.createMaterialUniform("material");
 
-        // Create weather uniforms
-        sceneShaderProgram.createFogUniform("fog");
     }
 
     public void setupHudShader() throws Exception {
@@ -77,21 +131,24 @@ public class Renderer {
         hudShaderProgram.link();
 
         // Create uniforms for Ortographic-model proection matrix and base color
-        hudShaderProgram.createUniform("projModelMatrix");
-        hudShaderProgram.createUniform("color");
-        hudShaderProgram.createUniform("hasTexture");
+        hudProjModelMatrix = hudShaderProgram.createUniform("projModelMatrix");
+        hudColor = hudShaderProgram.createUniform("color");
+        hudHasTexture = hudShaderProgram.createUniform("hasTexture");
+
+        hudBatchRenderer = new HudBatchRenderer();
     }
 
     public void setupSkyBoxShader() throws Exception {
         skyBoxShaderProgram = new ShaderProgram();
-        skyBoxShaderProgram.createVertexShader(Files.read("shaders/skybox.vsh"));
-        skyBoxShaderProgram.createFragmentShader(Files.read("shaders/skybox.fsh"));
+        skyBoxShaderProgram.createVertexShader(ShaderProgram.loadSource("skybox.vsh", Map.of()));
+        skyBoxShaderProgram.createFragmentShader(ShaderProgram.loadSource("skybox.fsh", Map.of()));
         skyBoxShaderProgram.link();
 
-        skyBoxShaderProgram.createUniform("projectionMatrix");
-        skyBoxShaderProgram.createUniform("modelViewMatrix");
-        skyBoxShaderProgram.createUniform("texture_sampler");
-        skyBoxShaderProgram.createUniform("ambientLight");
+        // Projection and ambient light come from the per frame uniform block
+        frameUniforms.bindFrameBlock(skyBoxShaderProgram);
+
+        skyBoxModelViewMatrix = skyBoxShaderProgram.createUniform("modelViewMatrix");
+        skyBoxTextureSampler = skyBoxShaderProgram.createUniform("texture_sampler");
     }
 
     public void clear() {
@@ -99,6 +156,7 @@ public class Renderer {
     }
 
     public void render(Window window, Camera camera, Scene scene, IHud hud) {
+        profiler.beginFrame();
         clear();
 
         if (window.isResized()) {
@@ -110,105 +168,103 @@ public class Renderer {
         transformation.updateProjectionMatrix(FOV, window.getWidth(), window.getHeight(), Z_NEAR, Z_FAR);
         transformation.updateViewMatrix(camera);
 
-        renderScene(window, camera, scene);
-
+        // Culling and matrices are prepared on worker threads, this thread only replays the draws
+        profiler.beginPass(FrameProfiler.PASS_PREPARE);
+        framePreparer.prepare(scene, transformation.getProjectionMatrix(), transformation.getViewMatrix(), Z_FAR);
+        RenderQueue renderQueue = framePreparer.getQueue();
+        profiler.endPass(FrameProfiler.PASS_PREPARE);
+
+        // Shared by every program that reads the frame uniform blocks, lights are clustered here
+        profiler.beginPass(FrameProfiler.PASS_LIGHTS);
+        frameUniforms.setViewport(window.getWidth(), window.getHeight(), Z_NEAR, Z_FAR);
+        frameUniforms.update(transformation.getProjectionMatrix(), transformation.getViewMatrix(),
+                scene.getSceneLight(), scene.getFog(), specularPower);
+        profiler.endPass(FrameProfiler.PASS_LIGHTS);
+
+        // Opaque draws, then the sky behind them and last the blended draws over both
+        int firstBlended = renderQueue.findPass(RenderQueue.PASS_BLENDED);
+        profiler.beginPass(FrameProfiler.PASS_SCENE);
+        renderScene(renderQueue, 0, firstBlended);
+        profiler.endPass(FrameProfiler.PASS_SCENE);
+
+        profiler.beginPass(FrameProfiler.PASS_SKYBOX);
         renderSkyBox(window, scene);
+        profiler.endPass(FrameProfiler.PASS_SKYBOX);
 
-        renderHud(window, hud);
-    }
-
-    private void renderScene(Window window, Camera camera, Scene scene) {
-
-        sceneShaderProgram.bind();
+        profiler.beginPass(FrameProfiler.PASS_BLENDED);
+        renderScene(renderQueue, firstBlended, renderQueue.size());
+        profiler.endPass(FrameProfiler.PASS_BLENDED);
 
-        // Update projection matrix
-        Matrix4f projectionMatrix = transformation.getProjectionMatrix();
-        sceneShaderProgram.setUniform("projectionMatrix", projectionMatrix);
-
-        // Update view Matrix
-        Matrix4f viewMatrix = transformation.getViewMatrix();
-
-        renderLights(viewMatrix, scene.getSceneLight());
-
-        sceneShaderProgram.setUniform("fog", scene.getFog());
+        profiler.beginPass(FrameProfiler.PASS_HUD);
+        renderHud(window, hud);
+        profiler.endPass(FrameProfiler.PASS_HUD);
 
-        sceneShaderProgram.setUniform("texture_sampler", 0);
-        sceneShaderProgram.setUniform("normalMap", 1);
-        // Render each gameItem
-        for(Mesh mesh : scene.getMeshes()) {
-            sceneShaderProgram.setUniform("material", mesh.getMaterial());
-            mesh.renderList(scene.getGameItemList(mesh), gameItem -> {
-                Matrix4f modelViewMatrix = transformation.buildModelViewMatrix(gameItem, viewMatrix);
-                sceneShaderProgram.setUniform("modelViewMatrix", modelViewMatrix);
-            });
-        }
+        // The counts of this frame become the ones of the last frame
+        RenderState renderState = RenderState.current();
+        renderState.newFrame();
+        profiler.endFrame(renderState.getDrawCalls(), renderState.getTriangles(), renderState.getUniformUploads(),
+                renderState.getStateChanges());
+    }
 
-        sceneShaderProgram.unbind();
-    }
-
-    private void renderLights(Matrix4f viewMatrix, SceneLight sceneLight) {
-        sceneShaderProgram.setUniform("ambientLight", sceneLight.getAmbientLight());
-        sceneShaderProgram.setUniform("specularPower", specularPower);
-
-        // Process Point Lights
-        PointLight[] pointLightList = sceneLight.getPointLightList();
-        int numLights = pointLightList != null ? pointLightList.length : 0;
-        for (int i = 0; i < numLights; i++) {
-            // Get a copy of the point light object and transform its position to view coordinates
-            PointLight currPointLight = new PointLight(pointLightList[i]);
-            Vector3f lightPos = currPointLight.getPosition();
-            Vector4f aux = new Vector4f(lightPos, 1);
-            aux.mul(viewMatrix);
-            lightPos.x = aux.x;
-            lightPos.y = aux.y;
-            lightPos.z = aux.z;
-            sceneShaderProgram.setUniform("pointLights", currPointLight, i);
+    private void renderScene(RenderQueue renderQueue, int from, int to) {
+        if (from == to) {
+            return;
         }
+        // Programs are left bound after each pass, binding the next one is enough
+        sceneShaderProgram.bind();
 
-        SpotLight[] spotLightList = sceneLight.getSpotLightList();
-        numLights = spotLightList != null ? spotLightList.length : 0;
-        for (int i = 0; i < numLights; i++) {
-            // Get a copy of the spot light object and transform its position to view coordinates
-            SpotLight currSpotLight = new SpotLight(spotLightList[i]);
-            Vector4f spotLightDir = new Vector4f(currSpotLight.getConeDirection(), 0);
-            spotLightDir.mul(viewMatrix);
-            currSpotLight.setConeDirection((new Vector3f(spotLightDir.x, spotLightDir.y, spotLightDir.z)));
-
-            Vector3f spotLightPos = currSpotLight.getPointLight().getPosition();
-            Vector4f auxSpot = new Vector4f(spotLightPos, 1);
-            auxSpot.mul(viewMatrix);
-            spotLightPos.x = auxSpot.x;
-            spotLightPos.y = auxSpot.y;
-            spotLightPos.z = auxSpot.z;
-
-            sceneShaderProgram.setUniform("spotLights", currSpotLight, i);
+        sceneTextureSampler.set(0);
+        sceneNormalMap.set(1);
+        sceneClusterGrid.set(FrameUniforms.CLUSTER_GRID_UNIT);
+        sceneClusterLights.set(FrameUniforms.CLUSTER_LIGHTS_UNIT);
+        Material currentMaterial = null;
+        for (int i = from; i < to; i++) {
+            Mesh mesh = renderQueue.getMesh(i);
+            if (mesh.getMaterial() != currentMaterial) {
+                currentMaterial = mesh.getMaterial();
+                sceneMaterial.set(currentMaterial);
+            }
+            int command = renderQueue.getCommand(i);
+            FloatBuffer matrices = framePreparer.getMatrices(command);
+            int firstMatrix = framePreparer.getFirstMatrix(command);
+            int instances = framePreparer.getInstanceCount(command);
+            if (instances > 0) {
+                sceneIsInstanced.set(1);
+                mesh.renderInstanced(matrices, firstMatrix, instances);
+            } else {
+                sceneIsInstanced.set(0);
+                sceneModelViewMatrix.set(matrices, firstMatrix);
+                mesh.render();
+            }
         }
-
-        // Get a copy of the directional light object and transform its position to view coordinates
-        DirectionalLight currDirLight = new DirectionalLight(sceneLight.getDirectionalLight());
-        Vector4f dirLightDir = new Vector4f(currDirLight.getDirection(), 0);
-        dirLightDir.mul(viewMatrix);
-        currDirLight.setDirection(new Vector3f(dirLightDir.x, dirLightDir.y, dirLightDir.z));
-        sceneShaderProgram.setUniform("directionalLight", currDirLight);
     }
 
     private void renderHud(Window window, IHud hud) {
-        hudShaderProgram.bind();
-
         Matrix4f ortho = transformation.getOrthoProjectionMatrix(0, window.getWidth(), window.getHeight(), 0);
+        hudBatch.begin();
+        unbatchedHudItems.clear();
         for (GameItem gameItem : hud.getGameItems()) {
+            if (!hudBatch.add(gameItem, transformation.buildOrthoProjModelMatrix(gameItem, ortho))) {
+                unbatchedHudItems.add(gameItem);
+            }
+        }
+        hudBatchRenderer.render(hudBatch);
+
+        if (unbatchedHudItems.isEmpty()) {
+            return;
+        }
+        hudShaderProgram.bind();
+        for (GameItem gameItem : unbatchedHudItems) {
             Mesh mesh = gameItem.getMesh();
             // Set orthographic and model matrix for this HUD item
             Matrix4f projModelMatrix = transformation.buildOrthoProjModelMatrix(gameItem, ortho);
-            hudShaderProgram.setUniform("projModelMatrix", projModelMatrix);
-            hudShaderProgram.setUniform("color", gameItem.getMesh().getMaterial().getAmbientColor());
-            hudShaderProgram.setUniform("hasTexture", gameItem.getMesh().getMaterial().isTextured() ? 1 : 0);
+            hudProjModelMatrix.set(projModelMatrix);
+            hudColor.set(gameItem.getMesh().getMaterial().getAmbientColor());
+            hudHasTexture.set(gameItem.getMesh().getMaterial().isTextured() ? 1 : 0);
 
             // Render the mesh for this HUD item
             mesh.render();
         }
-
-        hudShaderProgram.unbind();
     }
 
     private void renderSkyBox(Window window, Scene scene) {
@@ -217,32 +273,97 @@ public class Renderer {
         }
         skyBoxShaderProgram.bind();
 
-        skyBoxShaderProgram.setUniform("texture_sampler", 0);
+        skyBoxTextureSampler.set(0);
 
-        // Update projection Matrix
-        Matrix4f projectionMatrix = transformation.updateProjectionMatrix(FOV, window.getWidth(), window.getHeight(), Z_NEAR, Z_FAR);
-        skyBoxShaderProgram.setUniform("projectionMatrix", projectionMatrix);
         SkyBox skyBox = scene.getSkyBox();
         Matrix4f viewMatrix = transformation.getViewMatrix();
         viewMatrix.m30(0);
         viewMatrix.m31(0);
         viewMatrix.m32(0);
         Matrix4f modelViewMatrix = transformation.buildModelViewMatrix(skyBox, viewMatrix);
-        skyBoxShaderProgram.setUniform("modelViewMatrix", modelViewMatrix);
-        skyBoxShaderProgram.setUniform("ambientLight", scene.getSceneLight().getAmbientLight());
+        skyBoxModelViewMatrix.set(modelViewMatrix);
 
         scene.getSkyBox().getMesh().render();
+    }
+
+    public boolean isInstancedRendering() {
+        return framePreparer.isInstancedRendering();
+    }
+
+    public void setInstancedRendering(boolean instancedRendering) {
+        framePreparer.setInstancedRendering(instancedRendering);
+    }
+
+    public boolean isFrustumCulling() {
+        return framePreparer.isFrustumCulling();
+    }
+
+    public void setFrustumCulling(boolean frustumCulling) {
+        framePreparer.setFrustumCulling(frustumCulling);
+    }
+
+    // Threads the scene is prepared with, 1 prepares it on the render thread
+    public void setPrepareParallelism(int parallelism) {
+        framePreparer.setParallelism(parallelism);
+    }
+
+    public int getVisibleItems() {
+        return framePreparer.getVisibleItems();
+    }
+
+    public int getCulledItems() {
+        return framePreparer.getCulledItems();
+    }
+
+    // OpenGL state changes made and avoided in the last frame
+    public int getStateChanges() {
+        return RenderState.current().getStateChanges();
+    }
 
-        skyBoxShaderProgram.unbind();
+    public int getSkippedStateChanges() {
+        return RenderState.current().getSkippedChanges();
+    }
+
+    public int getDrawCalls() {
+        return RenderState.current().getDrawCalls();
+    }
+
+    public long getTriangles() {
+        return RenderState.current().getTriangles();
+    }
+
+    public int getUniformUploads() {
+        return RenderState.current().getUniformUploads();
+    }
+
+    // Disabled until enabled, frames are recorded from the next one on
+    public FrameProfiler getProfiler() {
+        return profiler;
+    }
+
+    public int getMaxPointLights() {
+        return maxPointLights;
+    }
+
+    public int getMaxSpotLights() {
+        return maxSpotLights;
     }
 
     public void cleanup() {
+        framePreparer.cleanup();
+        profiler.cleanup();
+        if (frameUniforms != null) {
+            frameUniforms.cleanup();
+        }
         if (sceneShaderProgram != null) {
             sceneShaderProgram.cleanup();
         }
         if (hudShaderProgram != null) {
             hudShaderProgram.cleanup();
         }
+        if (hudBatchRenderer != null) {
+            hudBatchRenderer.cleanup();
+        }
         if (skyBoxShaderProgram != null) {
             skyBoxShaderProgram.cleanup();
         }
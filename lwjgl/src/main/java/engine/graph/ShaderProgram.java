@@ -1,13 +1,9 @@
 package engine.graph;
 
-import engine.graph.lights.DirectionalLight;
-import engine.graph.lights.PointLight;
-import engine.graph.lights.SpotLight;
-import engine.graph.weather.Fog;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
-import org.lwjgl.system.MemoryStack;
+import utils.Files;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -16,8 +12,10 @@ import static org.lwjgl.opengl.GL33.*;
 
 public class ShaderProgram {
 
+    private static final String SHADERS_FOLDER = "shaders/";
+
     private final int programId;
-    private final Map<String, Integer> uniforms;
+    private final Map<String, Uniform> uniforms;
 
     private int vertexShaderId;
     private int fragmentShaderId;
@@ -30,6 +28,32 @@ public class ShaderProgram {
         uniforms = new HashMap<>();
     }
 
+    // Reads a shader from the shaders folder. #include "file" lines are replaced by that file, and every
+    // define is added right after the #version line, so it wins over the defaults of the shader
+    public static String loadSource(String fileName, Map<String, ?> defines) throws Exception {
+        StringBuilder source = new StringBuilder();
+        boolean versionSeen = false;
+        for (String line : Files.readLines(SHADERS_FOLDER + fileName)) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("#include")) {
+                int start = trimmed.indexOf('"');
+                int end = trimmed.lastIndexOf('"');
+                if (start < 0 || end <= start) {
+                    throw new Exception("Malformed include in " + fileName + ": " + line);
+                }
+                source.append(loadSource(trimmed.substring(start + 1, end), Map.of())).append('\n');
+                continue;
+            }
+            source.append(line).append('\n');
+            if (!versionSeen && trimmed.startsWith("#version")) {
+                versionSeen = true;
+                defines.forEach((name, value) -> source.append("#define ").append(name).append(' ')
+                        .append(value).append('\n'));
+            }
+        }
+        return source.toString();
+    }
+
     public void createVertexShader(String shaderCode) throws Exception {
         vertexShaderId = createShader(shaderCode, GL_VERTEX_SHADER);
     }
@@ -76,11 +100,11 @@ public class ShaderProgram {
     }
 
     public void bind() {
-        glUseProgram(programId);
+        RenderState.current().useProgram(programId);
     }
 
     public void unbind() {
-        glUseProgram(0);
+        RenderState.current().useProgram(0);
     }
 
     public void cleanup(){
@@ -90,141 +114,88 @@ public class ShaderProgram {
         }
     }
 
-    public void createUniform(String uniformName) throws Exception {
+    public Uniform createUniform(String uniformName) throws Exception {
         int uniformLocation = glGetUniformLocation(programId, uniformName);
         if (uniformLocation < 0) {
             throw new Exception("Could not find uniform:" + uniformName);
         }
-        uniforms.put(uniformName, uniformLocation);
+        Uniform uniform = new Uniform(uniformName, uniformLocation);
+        uniforms.put(uniformName, uniform);
+        return uniform;
     }
 
-    public void createPointLightUniform(String uniformName) throws Exception {
-        createUniform(uniformName + ".color");
-        createUniform(uniformName + ".position");
-        createUniform(uniformName + ".intensity");
-        createUniform(uniformName + ".att.constant");
-        createUniform(uniformName + ".att.linear");
-        createUniform(uniformName + ".att.exponent");
-    }
-
-    public void createPointLightListUniform(String uniformName, int size) throws Exception {
-        for (int i = 0; i < size; i++) {
-            createPointLightUniform(uniformName + "[" + i + "]");
+    // Connects a uniform block of the program to the buffer bound at the binding point and returns the
+    // number of bytes the block takes
+    public int bindUniformBlock(String blockName, int binding) throws Exception {
+        int blockIndex = glGetUniformBlockIndex(programId, blockName);
+        if (blockIndex == GL_INVALID_INDEX) {
+            throw new Exception("Could not find uniform block:" + blockName);
         }
+        glUniformBlockBinding(programId, blockIndex, binding);
+        return glGetActiveUniformBlocki(programId, blockIndex, GL_UNIFORM_BLOCK_DATA_SIZE);
     }
 
-    public void createSpotLightUniform(String uniformName) throws Exception {
-        createPointLightUniform(uniformName + ".pl");
-        createUniform(uniformName + ".conedir");
-        createUniform(uniformName + ".cutoff");
+    public Uniform getUniform(String uniformName) {
+        return uniforms.get(uniformName);
     }
 
-    public void createSpotLightListUniform(String uniformName, int size) throws Exception {
-        for (int i = 0; i < size; i++) {
-            createSpotLightUniform(uniformName + "[" + i + "]");
-        }
+    public MaterialUniform createMaterialUniform(String uniformName) throws Exception {
+        return new MaterialUniform(this, uniformName);
     }
 
-    public void createDirectionalLightUniform(String uniformName) throws Exception {
-        createUniform(uniformName + ".color");
-        createUniform(uniformName + ".direction");
-        createUniform(uniformName + ".intensity");
-    }
-
-    public void createMaterialUniform(String uniformName) throws Exception {
-        createUniform(uniformName + ".ambient");
-        createUniform(uniformName + ".diffuse");
-        createUniform(uniformName + ".specular");
-        createUniform(uniformName + ".hasTexture");
-        createUniform(uniformName + ".hasNormalMap");
-        createUniform(uniformName + ".reflectance");
-    }
-
-    public void createFogUniform(String uniformName) throws Exception {
-        createUniform(uniformName + ".activeFog");
-        createUniform(uniformName + ".color");
-        createUniform(uniformName + ".density");
-    }
+    // Name based setters, for code outside the render loop. Hot paths keep the handles returned by createUniform
 
     public void setUniform(String uniformName, Vector3f value) {
-        glUniform3f(uniforms.get(uniformName), value.x, value.y, value.z);
+        uniforms.get(uniformName).set(value);
     }
 
     public void setUniform(String uniformName, Vector4f value) {
-        glUniform4f(uniforms.get(uniformName), value.x, value.y, value.z, value.w);
+        uniforms.get(uniformName).set(value);
     }
 
     public void setUniform(String uniformName, Matrix4f value) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            glUniformMatrix4fv(uniforms.get(uniformName), false, value.get(stack.mallocFloat(16)));
-        }
+        uniforms.get(uniformName).set(value);
     }
 
     public void setUniform(String uniformName, int value) {
-        glUniform1i(uniforms.get(uniformName), value);
+        uniforms.get(uniformName).set(value);
     }
 
     public void setUniform(String uniformName, float value) {
-        glUniform1f(uniforms.get(uniformName), value);
+        uniforms.get(uniformName).set(value);
     }
 
-    private void setUniform(String uniformName, PointLight pointLight) {
-        setUniform(uniformName + ".color", pointLight.getColor() );
-        setUniform(uniformName + ".position", pointLight.getPosition());
-        setUniform(uniformName + ".intensity", pointLight.getIntensity());
-        PointLight.Attenuation att = pointLight.getAttenuation();
-        setUniform(uniformName + ".att.constant", att.getConstant());
-        setUniform(uniformName + ".att.linear", att.getLinear());
-        setUniform(uniformName + ".att.exponent", att.getExponent());
-    }
+    public static final class MaterialUniform {
 
-    public void setUniform(String uniformName, PointLight[] pointLights) {
-        int numLights = pointLights != null ? pointLights.length : 0;
-        for (int i = 0; i < numLights; i++) {
-            setUniform(uniformName, pointLights[i], i);
-        }
-    }
+        private final Uniform ambient;
 
-    public void setUniform(String uniformName, PointLight pointLight, int pos) {
-        setUniform(uniformName + "[" + pos + "]", pointLight);
-    }
+        private final Uniform diffuse;
 
-    private void setUniform(String uniformName, SpotLight spotLight) {
-        setUniform(uniformName + ".pl", spotLight.getPointLight());
-        setUniform(uniformName + ".conedir", spotLight.getConeDirection());
-        setUniform(uniformName + ".cutoff", spotLight.getCutOff());
-    }
+        private final Uniform specular;
 
-    public void setUniform(String uniformName, SpotLight[] spotLights) {
-        int numLights = spotLights != null ? spotLights.length : 0;
-        for (int i = 0; i < numLights; i++) {
-            setUniform(uniformName, spotLights[i], i);
-        }
-    }
+        private final Uniform hasTexture;
 
-    public void setUniform(String uniformName, SpotLight spotLight, int pos) {
-        setUniform(uniformName + "[" + pos + "]", spotLight);
-    }
+        private final Uniform hasNormalMap;
 
-    public void setUniform(String uniformName, DirectionalLight dirLight) {
-        setUniform(uniformName + ".color", dirLight.getColor());
-        setUniform(uniformName + ".direction", dirLight.getDirection());
-        setUniform(uniformName + ".intensity", dirLight.getIntensity());
-    }
+        private final Uniform reflectance;
 
-    public void setUniform(String uniformName, Material material) {
-        setUniform(uniformName + ".ambient", material.getAmbientColor());
-        setUniform(uniformName + ".diffuse", material.getDiffuseColor());
-        setUniform(uniformName + ".specular", material.getSpecularColor());
-        setUniform(uniformName + ".hasTexture", material.isTextured() ? 1 : 0);
-        setUniform(uniformName + ".hasNormalMap", material.hasNormalMap() ? 1 : 0);
-        setUniform(uniformName + ".reflectance", material.getReflectance());
-    }
+        private MaterialUniform(ShaderProgram program, String uniformName) throws Exception {
+            ambient = program.createUniform(uniformName + ".ambient");
+            diffuse = program.createUniform(uniformName + ".diffuse");
+            specular = program.createUniform(uniformName + ".specular");
+            hasTexture = program.createUniform(uniformName + ".hasTexture");
+            hasNormalMap = program.createUniform(uniformName + ".hasNormalMap");
+            reflectance = program.createUniform(uniformName + ".reflectance");
+        }
 
-    public void setUniform(String uniformName, Fog fog) {
-        setUniform(uniformName + ".activeFog", fog.isActiveFog() ? 1 : 0);
-        setUniform(uniformName + ".color", fog.getColor() );
-        setUniform(uniformName + ".density", fog.getDensity());
+        public void set(Material material) {
+            ambient.set(material.getAmbientColor());
+            diffuse.set(material.getDiffuseColor());
+            specular.set(material.getSpecularColor());
+            hasTexture.set(material.isTextured());
+            hasNormalMap.set(material.hasNormalMap());
+            reflectance.set(material.getReflectance());
+        }
     }
 
 }
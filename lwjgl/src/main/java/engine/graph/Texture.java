@@ -42,6 +42,13 @@ public class Texture {
         stbi_image_free(buf);
     }
 
+    // Wraps a texture created elsewhere, cleanup deletes it
+    public Texture(int id, int width, int height) {
+        this.id = id;
+        this.width = width;
+        this.height = height;
+    }
+
     public Texture(ByteBuffer imageBuffer) throws Exception {
         ByteBuffer buf;
         // Load Texture file
@@ -69,7 +76,7 @@ public class Texture {
         int textureId = glGenTextures();
 
         // Bind the texture
-        glBindTexture(GL_TEXTURE_2D, textureId);
+        RenderState.current().bindTexture(GL_TEXTURE_2D, textureId);
 
         // Tell OpenGL how to unpack the RGBA bytes. Each component is 1 byte size
         glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
@@ -86,6 +93,7 @@ public class Texture {
 
     public void cleanup() {
         glDeleteTextures(id);
+        RenderState.current().textureDeleted(id);
     }
 
 }
@@ -0,0 +1,85 @@
+package engine.graph;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import static org.lwjgl.opengl.GL33.*;
+
+// Buffer texture the shaders read with texelFetch. Its storage grows to fit the largest upload so far
+public class TextureBuffer {
+
+    private final int bufferId;
+
+    private final int textureId;
+
+    // Staging copy of the last upload and the views over it, recreated when it grows
+    private ByteBuffer data;
+
+    private IntBuffer ints;
+
+    private ShortBuffer shorts;
+
+    public TextureBuffer(int internalFormat, int initialSize) {
+        data = MemoryUtil.memAlloc(Math.max(initialSize, Integer.BYTES));
+        createViews();
+
+        bufferId = glGenBuffers();
+        glBindBuffer(GL_TEXTURE_BUFFER, bufferId);
+        glBufferData(GL_TEXTURE_BUFFER, data.capacity(), GL_STREAM_DRAW);
+        glBindBuffer(GL_TEXTURE_BUFFER, 0);
+
+        textureId = glGenTextures();
+        RenderState.current().bindTexture(GL_TEXTURE_BUFFER, textureId);
+        glTexBuffer(GL_TEXTURE_BUFFER, internalFormat, bufferId);
+    }
+
+    private void createViews() {
+        ints = data.asIntBuffer();
+        shorts = data.asShortBuffer();
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > data.capacity()) {
+            data = MemoryUtil.memRealloc(data, Math.max(size, data.capacity() * 2));
+            createViews();
+        }
+    }
+
+    public void upload(int[] values, int length) {
+        ensureCapacity(length * Integer.BYTES);
+        ints.clear();
+        ints.put(values, 0, length);
+        upload(length * Integer.BYTES);
+    }
+
+    public void upload(short[] values, int length) {
+        ensureCapacity(length * Short.BYTES);
+        shorts.clear();
+        shorts.put(values, 0, length);
+        upload(length * Short.BYTES);
+    }
+
+    // Orphans the storage, the draws of the previous frame may still read it
+    private void upload(int size) {
+        glBindBuffer(GL_TEXTURE_BUFFER, bufferId);
+        glBufferData(GL_TEXTURE_BUFFER, data.capacity(), GL_STREAM_DRAW);
+        if (size > 0) {
+            nglBufferSubData(GL_TEXTURE_BUFFER, 0, size, MemoryUtil.memAddress(data));
+        }
+        glBindBuffer(GL_TEXTURE_BUFFER, 0);
+    }
+
+    public void bind(int unit) {
+        RenderState.current().bindTexture(unit, GL_TEXTURE_BUFFER, textureId);
+    }
+
+    public void cleanup() {
+        glDeleteTextures(textureId);
+        RenderState.current().textureDeleted(textureId);
+        glDeleteBuffers(bufferId);
+        MemoryUtil.memFree(data);
+    }
+}
@@ -55,15 +55,19 @@ public class Transformation {
         return orthoMatrix;
     }
 
-    public Matrix4f buildModelViewMatrix(GameItem gameItem, Matrix4f viewMatrix) {
+    public Matrix4f buildModelMatrix(GameItem gameItem) {
         Vector3f rotation = gameItem.getRotation();
-        modelMatrix
+        return modelMatrix
                 .identity()
                 .translate(gameItem.getPosition())
                 .rotateX((float)Math.toRadians(-rotation.x))
                 .rotateY((float)Math.toRadians(-rotation.y))
                 .rotateZ((float)Math.toRadians(-rotation.z))
                 .scale(gameItem.getScale());
+    }
+
+    public Matrix4f buildModelViewMatrix(GameItem gameItem, Matrix4f viewMatrix) {
+        buildModelMatrix(gameItem);
         modelViewMatrix.set(viewMatrix);
         return modelViewMatrix.mul(modelMatrix);
     }
@@ -0,0 +1,152 @@
+package engine.graph;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL33.*;
+
+// Uniform location resolved when the program is set up. It remembers the last value sent to the program,
+// so setting the same value again does not reach the driver
+public final class Uniform {
+
+    private static final int MATRIX_SIZE_FLOATS = 16;
+
+    private final String name;
+
+    private final int location;
+
+    // Last value uploaded, ints are kept as their bits
+    private final float[] shadow;
+
+    // Scratch space to compare matrices before uploading them
+    private float[] matrix;
+
+    private boolean uploaded;
+
+    private int uploads;
+
+    private int skippedUploads;
+
+    Uniform(String name, int location) {
+        this.name = name;
+        this.location = location;
+        this.shadow = new float[MATRIX_SIZE_FLOATS];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLocation() {
+        return location;
+    }
+
+    public void set(int value) {
+        if (unchanged(Float.intBitsToFloat(value))) {
+            return;
+        }
+        glUniform1i(location, value);
+    }
+
+    public void set(boolean value) {
+        set(value ? 1 : 0);
+    }
+
+    public void set(float value) {
+        if (unchanged(value)) {
+            return;
+        }
+        glUniform1f(location, value);
+    }
+
+    public void set(Vector3f value) {
+        set(value.x, value.y, value.z);
+    }
+
+    public void set(float x, float y, float z) {
+        if (uploaded && shadow[0] == x && shadow[1] == y && shadow[2] == z) {
+            skippedUploads++;
+            return;
+        }
+        shadow[0] = x;
+        shadow[1] = y;
+        shadow[2] = z;
+        markUploaded();
+        glUniform3f(location, x, y, z);
+    }
+
+    public void set(Vector4f value) {
+        if (uploaded && shadow[0] == value.x && shadow[1] == value.y && shadow[2] == value.z && shadow[3] == value.w) {
+            skippedUploads++;
+            return;
+        }
+        shadow[0] = value.x;
+        shadow[1] = value.y;
+        shadow[2] = value.z;
+        shadow[3] = value.w;
+        markUploaded();
+        glUniform4f(location, value.x, value.y, value.z, value.w);
+    }
+
+    public void set(Matrix4f value) {
+        value.get(matrixScratch());
+        setMatrix();
+    }
+
+    // The index-th of the column major matrices packed one after the other in the buffer
+    public void set(FloatBuffer matrices, int index) {
+        matrices.get(index * MATRIX_SIZE_FLOATS, matrixScratch());
+        setMatrix();
+    }
+
+    private float[] matrixScratch() {
+        if (matrix == null) {
+            matrix = new float[MATRIX_SIZE_FLOATS];
+        }
+        return matrix;
+    }
+
+    private void setMatrix() {
+        if (uploaded && Arrays.equals(matrix, shadow)) {
+            skippedUploads++;
+            return;
+        }
+        System.arraycopy(matrix, 0, shadow, 0, MATRIX_SIZE_FLOATS);
+        markUploaded();
+        glUniformMatrix4fv(location, false, shadow);
+    }
+
+    private boolean unchanged(float value) {
+        // Compare the bits, so ints stored as floats never match a NaN or collapse -0 and 0
+        if (uploaded && Float.floatToRawIntBits(shadow[0]) == Float.floatToRawIntBits(value)) {
+            skippedUploads++;
+            return true;
+        }
+        shadow[0] = value;
+        markUploaded();
+        return false;
+    }
+
+    private void markUploaded() {
+        uploaded = true;
+        uploads++;
+        RenderState.current().countUniformUpload();
+    }
+
+    // Forgets the last value, the next set always uploads. Needed when the program is linked again
+    public void invalidate() {
+        uploaded = false;
+    }
+
+    public int getUploads() {
+        return uploads;
+    }
+
+    public int getSkippedUploads() {
+        return skippedUploads;
+    }
+}
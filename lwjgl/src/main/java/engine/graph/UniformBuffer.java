@@ -0,0 +1,73 @@
+package engine.graph;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL33.*;
+
+// Uniform buffer object bound to a fixed binding point, filled from an off heap buffer that lives as long as it
+public class UniformBuffer {
+
+    private final int bufferId;
+
+    private final int binding;
+
+    private final int size;
+
+    private final ByteBuffer data;
+
+    public UniformBuffer(int binding, int size) {
+        this.binding = binding;
+        this.size = size;
+        this.data = MemoryUtil.memCalloc(size);
+
+        bufferId = glGenBuffers();
+        glBindBuffer(GL_UNIFORM_BUFFER, bufferId);
+        glBufferData(GL_UNIFORM_BUFFER, size, GL_DYNAMIC_DRAW);
+        glBindBuffer(GL_UNIFORM_BUFFER, 0);
+        glBindBufferBase(GL_UNIFORM_BUFFER, binding, bufferId);
+    }
+
+    public int getBinding() {
+        return binding;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    // Contents for the next upload, written with absolute puts
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    public void upload() {
+        upload(0, size, 0, 0);
+    }
+
+    public void upload(int offset, int length) {
+        upload(offset, length, 0, 0);
+    }
+
+    // Orphans the previous storage so the driver does not wait for the draws still reading it. Only the ranges
+    // given are uploaded, the rest of the buffer is undefined until the next upload
+    public void upload(int offset, int length, int secondOffset, int secondLength) {
+        glBindBuffer(GL_UNIFORM_BUFFER, bufferId);
+        glBufferData(GL_UNIFORM_BUFFER, size, GL_DYNAMIC_DRAW);
+        uploadRange(offset, length);
+        uploadRange(secondOffset, secondLength);
+        glBindBuffer(GL_UNIFORM_BUFFER, 0);
+    }
+
+    private void uploadRange(int offset, int length) {
+        if (length > 0) {
+            nglBufferSubData(GL_UNIFORM_BUFFER, offset, length, MemoryUtil.memAddress(data) + offset);
+        }
+    }
+
+    public void cleanup() {
+        glDeleteBuffers(bufferId);
+        MemoryUtil.memFree(data);
+    }
+}
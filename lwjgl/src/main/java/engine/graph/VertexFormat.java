@@ -0,0 +1,293 @@
+package engine.graph;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL33.*;
+
+// Layout of the vertices of an interleaved VBO. Positions are always floats, the other attributes can be
+// stored as halfs, and normals and tangents also packed in 10 bits per component. Every attribute starts
+// on a 4 byte boundary
+public final class VertexFormat {
+
+    public static final int POSITION_LOCATION = 0;
+
+    public static final int TEXT_COORDS_LOCATION = 1;
+
+    public static final int NORMAL_LOCATION = 2;
+
+    // Locations 3 to 6 hold the instanced model matrix
+    public static final int TANGENT_LOCATION = 7;
+
+    public enum Encoding {
+        FLOAT,
+        HALF_FLOAT,
+        // Signed normalized 2_10_10_10, only for unit vectors
+        PACKED
+    }
+
+    // Same layout as the compiled mesh files
+    public static final VertexFormat DEFAULT = new VertexFormat(Encoding.FLOAT, Encoding.FLOAT, null);
+
+    // Smallest layout, 20 bytes per vertex
+    public static final VertexFormat COMPACT = new VertexFormat(Encoding.HALF_FLOAT, Encoding.PACKED, null);
+
+    private final Encoding textCoordsEncoding;
+
+    private final Encoding normalEncoding;
+
+    // Null when the format has no tangents
+    private final Encoding tangentEncoding;
+
+    private final int textCoordsOffset;
+
+    private final int normalOffset;
+
+    private final int tangentOffset;
+
+    private final int stride;
+
+    public VertexFormat(Encoding textCoordsEncoding, Encoding normalEncoding, Encoding tangentEncoding) {
+        if (textCoordsEncoding == Encoding.PACKED) {
+            throw new IllegalArgumentException("Texture coordinates cannot be packed");
+        }
+        this.textCoordsEncoding = textCoordsEncoding;
+        this.normalEncoding = normalEncoding;
+        this.tangentEncoding = tangentEncoding;
+
+        textCoordsOffset = 3 * Float.BYTES;
+        normalOffset = textCoordsOffset + size(textCoordsEncoding, 2);
+        tangentOffset = normalOffset + size(normalEncoding, 3);
+        stride = tangentOffset + (tangentEncoding != null ? size(tangentEncoding, 4) : 0);
+    }
+
+    private static int size(Encoding encoding, int components) {
+        switch (encoding) {
+            case HALF_FLOAT:
+                // Rounded up to keep the next attribute aligned
+                return (components * 2 + 3) & ~3;
+            case PACKED:
+                return Integer.BYTES;
+            default:
+                return components * Float.BYTES;
+        }
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    public boolean hasTangents() {
+        return tangentEncoding != null;
+    }
+
+    @Override
+    public String toString() {
+        return "uv " + name(textCoordsEncoding) + ", n " + name(normalEncoding)
+                + (tangentEncoding != null ? ", t " + name(tangentEncoding) : "");
+    }
+
+    private static String name(Encoding encoding) {
+        switch (encoding) {
+            case HALF_FLOAT:
+                return "half";
+            case PACKED:
+                return "packed";
+            default:
+                return "float";
+        }
+    }
+
+    // Points the attributes of the bound VAO to the VBO bound to GL_ARRAY_BUFFER
+    public void setAttributes() {
+        RenderState renderState = RenderState.current();
+        renderState.enableVertexAttribArray(POSITION_LOCATION);
+        glVertexAttribPointer(POSITION_LOCATION, 3, GL_FLOAT, false, stride, 0);
+        renderState.enableVertexAttribArray(TEXT_COORDS_LOCATION);
+        setAttribute(TEXT_COORDS_LOCATION, textCoordsEncoding, 2, textCoordsOffset);
+        renderState.enableVertexAttribArray(NORMAL_LOCATION);
+        setAttribute(NORMAL_LOCATION, normalEncoding, 3, normalOffset);
+        if (tangentEncoding != null) {
+            renderState.enableVertexAttribArray(TANGENT_LOCATION);
+            setAttribute(TANGENT_LOCATION, tangentEncoding, 4, tangentOffset);
+        }
+    }
+
+    private void setAttribute(int location, Encoding encoding, int components, int offset) {
+        switch (encoding) {
+            case HALF_FLOAT:
+                glVertexAttribPointer(location, components, GL_HALF_FLOAT, false, stride, offset);
+                break;
+            case PACKED:
+                // Packed attributes always have four components, the shader ignores the ones it does not declare
+                glVertexAttribPointer(location, 4, GL_INT_2_10_10_10_REV, true, stride, offset);
+                break;
+            default:
+                glVertexAttribPointer(location, components, GL_FLOAT, false, stride, offset);
+                break;
+        }
+    }
+
+    // Writes every vertex at the buffer position. Tangents are only read when the format has them
+    public void write(MeshData meshData, float[] tangents, ByteBuffer buffer) {
+        float[] positions = meshData.positions;
+        float[] textCoords = meshData.textCoords;
+        float[] normals = meshData.normals;
+        int vertexCount = meshData.getVertexCount();
+        int start = buffer.position();
+        for (int i = 0; i < vertexCount; i++) {
+            int base = start + i * stride;
+            buffer.putFloat(base, positions[i * 3]);
+            buffer.putFloat(base + 4, positions[i * 3 + 1]);
+            buffer.putFloat(base + 8, positions[i * 3 + 2]);
+            put(buffer, base + textCoordsOffset, textCoordsEncoding, textCoords, i * 2, 2);
+            put(buffer, base + normalOffset, normalEncoding, normals, i * 3, 3);
+            if (tangentEncoding != null) {
+                put(buffer, base + tangentOffset, tangentEncoding, tangents, i * 4, 4);
+            }
+        }
+        buffer.position(start + vertexCount * stride);
+    }
+
+    private static void put(ByteBuffer buffer, int offset, Encoding encoding, float[] values, int first,
+                            int components) {
+        switch (encoding) {
+            case HALF_FLOAT:
+                for (int c = 0; c < components; c++) {
+                    buffer.putShort(offset + c * 2, toHalfFloat(values[first + c]));
+                }
+                break;
+            case PACKED:
+                float w = components > 3 ? values[first + 3] : 0;
+                buffer.putInt(offset, pack(values[first], values[first + 1], values[first + 2], w));
+                break;
+            default:
+                for (int c = 0; c < components; c++) {
+                    buffer.putFloat(offset + c * Float.BYTES, values[first + c]);
+                }
+                break;
+        }
+    }
+
+    // x, y and z take 10 bits each and w the top 2 bits, all as signed normalized values
+    static int pack(float x, float y, float z, float w) {
+        return (snorm(x, 511) & 0x3FF)
+                | (snorm(y, 511) & 0x3FF) << 10
+                | (snorm(z, 511) & 0x3FF) << 20
+                | (snorm(w, 1) & 0x3) << 30;
+    }
+
+    private static int snorm(float value, int max) {
+        return Math.round(Math.max(-1f, Math.min(1f, value)) * max);
+    }
+
+    // Rounds to the nearest half, values out of range become infinities
+    static short toHalfFloat(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+        if (exponent >= 0x1F) {
+            // Overflow, infinity or NaN
+            boolean nan = ((bits >>> 23) & 0xFF) == 0xFF && mantissa != 0;
+            return (short) (sign | 0x7C00 | (nan ? 0x200 : 0));
+        }
+        if (exponent <= 0) {
+            if (exponent < -10) {
+                return (short) sign;
+            }
+            // Subnormal half
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = (exponent << 10) | (mantissa >> 13);
+        int remainder = mantissa & 0x1FFF;
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+            // Carrying into the exponent is still the right rounding, up to infinity
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    // Per vertex tangents, xyz orthogonal to the normal and w the handedness of the bitangent
+    public static float[] calcTangents(MeshData meshData) {
+        float[] positions = meshData.positions;
+        float[] textCoords = meshData.textCoords;
+        float[] normals = meshData.normals;
+        int[] indices = meshData.indices;
+        int vertexCount = meshData.getVertexCount();
+        float[] tangents = new float[vertexCount * 3];
+        float[] bitangents = new float[vertexCount * 3];
+
+        for (int i = 0; i + 2 < indices.length; i += 3) {
+            int i0 = indices[i];
+            int i1 = indices[i + 1];
+            int i2 = indices[i + 2];
+            float e1x = positions[i1 * 3] - positions[i0 * 3];
+            float e1y = positions[i1 * 3 + 1] - positions[i0 * 3 + 1];
+            float e1z = positions[i1 * 3 + 2] - positions[i0 * 3 + 2];
+            float e2x = positions[i2 * 3] - positions[i0 * 3];
+            float e2y = positions[i2 * 3 + 1] - positions[i0 * 3 + 1];
+            float e2z = positions[i2 * 3 + 2] - positions[i0 * 3 + 2];
+            float du1 = textCoords[i1 * 2] - textCoords[i0 * 2];
+            float dv1 = textCoords[i1 * 2 + 1] - textCoords[i0 * 2 + 1];
+            float du2 = textCoords[i2 * 2] - textCoords[i0 * 2];
+            float dv2 = textCoords[i2 * 2 + 1] - textCoords[i0 * 2 + 1];
+            float det = du1 * dv2 - du2 * dv1;
+            if (det == 0) {
+                continue;
+            }
+            float r = 1.0f / det;
+            float tx = (e1x * dv2 - e2x * dv1) * r;
+            float ty = (e1y * dv2 - e2y * dv1) * r;
+            float tz = (e1z * dv2 - e2z * dv1) * r;
+            float bx = (e2x * du1 - e1x * du2) * r;
+            float by = (e2y * du1 - e1y * du2) * r;
+            float bz = (e2z * du1 - e1z * du2) * r;
+            accumulate(tangents, i0, i1, i2, tx, ty, tz);
+            accumulate(bitangents, i0, i1, i2, bx, by, bz);
+        }
+
+        float[] result = new float[vertexCount * 4];
+        for (int v = 0; v < vertexCount; v++) {
+            float nx = normals[v * 3], ny = normals[v * 3 + 1], nz = normals[v * 3 + 2];
+            float tx = tangents[v * 3], ty = tangents[v * 3 + 1], tz = tangents[v * 3 + 2];
+            // Gram-Schmidt against the normal
+            float dot = nx * tx + ny * ty + nz * tz;
+            tx -= nx * dot;
+            ty -= ny * dot;
+            tz -= nz * dot;
+            float length = (float) Math.sqrt(tx * tx + ty * ty + tz * tz);
+            if (length > 0) {
+                tx /= length;
+                ty /= length;
+                tz /= length;
+            }
+            // Handedness from the sign of (n x t) . b
+            float cx = ny * tz - nz * ty;
+            float cy = nz * tx - nx * tz;
+            float cz = nx * ty - ny * tx;
+            float handedness = cx * bitangents[v * 3] + cy * bitangents[v * 3 + 1] + cz * bitangents[v * 3 + 2];
+            result[v * 4] = tx;
+            result[v * 4 + 1] = ty;
+            result[v * 4 + 2] = tz;
+            result[v * 4 + 3] = handedness < 0 ? -1 : 1;
+        }
+        return result;
+    }
+
+    private static void accumulate(float[] vectors, int i0, int i1, int i2, float x, float y, float z) {
+        for (int i = 0; i < 3; i++) {
+            int v = i == 0 ? i0 : i == 1 ? i1 : i2;
+            vectors[v * 3] += x;
+            vectors[v * 3 + 1] += y;
+            vectors[v * 3 + 2] += z;
+        }
+    }
+}
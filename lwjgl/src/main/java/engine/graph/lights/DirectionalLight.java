@@ -20,6 +20,13 @@ public class DirectionalLight {
         this(new Vector3f(light.getColor()), new Vector3f(light.getDirection()), light.getIntensity());
     }
 
+    // Copies the values of the light into the vectors of this one
+    public void set(DirectionalLight light) {
+        color.set(light.getColor());
+        direction.set(light.getDirection());
+        intensity = light.getIntensity();
+    }
+
     public Vector3f getColor() {
         return color;
     }
@@ -26,7 +26,15 @@ public class PointLight {
 
     public PointLight(PointLight pointLight) {
         this(new Vector3f(pointLight.getColor()), new Vector3f(pointLight.getPosition()),
-                pointLight.getIntensity(), pointLight.getAttenuation());
+                pointLight.getIntensity(), new Attenuation(pointLight.getAttenuation()));
+    }
+
+    // Copies the values of the light into the vectors and attenuation of this one
+    public void set(PointLight pointLight) {
+        color.set(pointLight.getColor());
+        position.set(pointLight.getPosition());
+        intensity = pointLight.getIntensity();
+        attenuation.set(pointLight.getAttenuation());
     }
 
     public Vector3f getColor() {
@@ -75,6 +83,16 @@ public class PointLight {
             this.exponent = exponent;
         }
 
+        public Attenuation(Attenuation attenuation) {
+            this(attenuation.getConstant(), attenuation.getLinear(), attenuation.getExponent());
+        }
+
+        public void set(Attenuation attenuation) {
+            constant = attenuation.getConstant();
+            linear = attenuation.getLinear();
+            exponent = attenuation.getExponent();
+        }
+
         public float getConstant() {
             return constant;
         }
@@ -21,6 +21,13 @@ public class SpotLight {
         setCutOff(spotLight.getCutOff());
     }
 
+    // Copies the values of the light into the point light and vector of this one
+    public void set(SpotLight spotLight) {
+        pointLight.set(spotLight.getPointLight());
+        coneDirection.set(spotLight.getConeDirection());
+        cutOff = spotLight.getCutOff();
+    }
+
     public PointLight getPointLight() {
         return pointLight;
     }
@@ -24,6 +24,13 @@ public class Fog {
         this.activeFog = activeFog;
     }
 
+    // Copies the values of the fog into the color of this one
+    public void set(Fog fog) {
+        activeFog = fog.isActiveFog();
+        color.set(fog.getColor());
+        density = fog.getDensity();
+    }
+
     public boolean isActiveFog() {
         return activeFog;
     }
@@ -0,0 +1,453 @@
+package engine.items;
+
+import engine.Scene;
+import engine.graph.Camera;
+import engine.graph.HeightMapMesh;
+import engine.graph.LodMesh;
+import engine.graph.Material;
+import engine.graph.Texture;
+import org.joml.Vector3f;
+import utils.Images;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Terrain split in square tiles that are built on a loader thread and streamed in and out around the camera.
+// Each tile keeps one index buffer per level of detail and hides the cracks between levels with skirts.
+public class ChunkedTerrain {
+
+    private static final int MAX_UPLOADS_PER_UPDATE = 4;
+
+    private final int tileSize;
+
+    private final int numLods;
+
+    private final float cellSize;
+
+    private final float lodDistance;
+
+    private final int loadRadius;
+
+    private final int mapWidth;
+
+    private final int mapHeight;
+
+    private final int tilesX;
+
+    private final int tilesZ;
+
+    private final float originX;
+
+    private final float originZ;
+
+    private final float skirtDepth;
+
+    private final int textInc;
+
+    private final float[] heights;
+
+    private final int[][] lodIndices;
+
+    private final Material material;
+
+    private final boolean ownsMaterial;
+
+    private final ExecutorService loader;
+
+    private final boolean ownsLoader;
+
+    private final Map<Long, Tile> loadedTiles;
+
+    private final Set<Long> pendingTiles;
+
+    private final Queue<TileData> builtTiles;
+
+    // Tiles the loader failed to build, requested again at the next update
+    private final Queue<Long> failedTiles;
+
+    private final List<Tile> releasedTiles;
+
+    public ChunkedTerrain(String heightMapFile, String textureFile, float minY, float maxY, float cellSize,
+                          int tileSize, int numLods, float lodDistance, float viewDistance, int textInc) throws Exception {
+        this(HeightMap.load(heightMapFile, minY, maxY), new Material(new Texture(textureFile), 0.0f), true, cellSize,
+                tileSize, numLods, lodDistance, viewDistance, textInc, Executors.newSingleThreadExecutor(r -> {
+                    Thread thread = new Thread(r, "terrain-loader");
+                    thread.setDaemon(true);
+                    return thread;
+                }), true);
+    }
+
+    public ChunkedTerrain(String heightMapFile, String textureFile, float minY, float maxY, float cellSize,
+                          int tileSize, int numLods, float lodDistance, float viewDistance, int textInc,
+                          ExecutorService loader) throws Exception {
+        this(HeightMap.load(heightMapFile, minY, maxY), new Material(new Texture(textureFile), 0.0f), true, cellSize,
+                tileSize, numLods, lodDistance, viewDistance, textInc, loader, false);
+    }
+
+    // Heights already loaded and a material owned by the caller, neither is released by cleanup
+    public ChunkedTerrain(HeightMap heightMap, Material material, float cellSize, int tileSize, int numLods,
+                          float lodDistance, float viewDistance, int textInc, ExecutorService loader) {
+        this(heightMap, material, false, cellSize, tileSize, numLods, lodDistance, viewDistance, textInc, loader,
+                false);
+    }
+
+    private ChunkedTerrain(HeightMap heightMap, Material material, boolean ownsMaterial, float cellSize,
+                           int tileSize, int numLods, float lodDistance, float viewDistance, int textInc,
+                           ExecutorService loader, boolean ownsLoader) {
+        if (Integer.bitCount(tileSize) != 1 || numLods < 1 || (1 << (numLods - 1)) > tileSize) {
+            throw new IllegalArgumentException("Tile size must be a power of two with at least one vertex per level");
+        }
+        this.tileSize = tileSize;
+        this.numLods = numLods;
+        this.cellSize = cellSize;
+        this.lodDistance = lodDistance;
+        this.textInc = textInc;
+        this.loader = loader;
+        this.ownsLoader = ownsLoader;
+        this.material = material;
+        this.ownsMaterial = ownsMaterial;
+        this.heights = heightMap.heights();
+        this.mapWidth = heightMap.width();
+        this.mapHeight = heightMap.height();
+        float minY = heightMap.minY();
+        float maxY = heightMap.maxY();
+
+        tilesX = (mapWidth - 1) / tileSize;
+        tilesZ = (mapHeight - 1) / tileSize;
+        if (tilesX == 0 || tilesZ == 0) {
+            throw new IllegalArgumentException("Height map is smaller than a tile");
+        }
+        // Center the map on the origin
+        originX = -tilesX * tileSize * cellSize / 2;
+        originZ = -tilesZ * tileSize * cellSize / 2;
+        // Skirts as deep as the whole height range always reach below the coarser neighbour
+        skirtDepth = Math.max(Math.abs(maxY - minY), cellSize);
+        loadRadius = (int) Math.ceil(viewDistance / (tileSize * cellSize));
+
+        lodIndices = new int[numLods][];
+        for (int lod = 0; lod < numLods; lod++) {
+            lodIndices[lod] = buildLodIndices(lod);
+        }
+
+        loadedTiles = new HashMap<>();
+        pendingTiles = new HashSet<>();
+        builtTiles = new ConcurrentLinkedQueue<>();
+        failedTiles = new ConcurrentLinkedQueue<>();
+        releasedTiles = new ArrayList<>();
+    }
+
+    // Must be called from the thread that owns the GL context, tiles are uploaded and released here
+    public void update(Camera camera, Scene scene) {
+        Vector3f cameraPos = camera.getPosition();
+        float tileWorldSize = tileSize * cellSize;
+        int cameraTileX = (int) Math.floor((cameraPos.x - originX) / tileWorldSize);
+        int cameraTileZ = (int) Math.floor((cameraPos.z - originZ) / tileWorldSize);
+
+        // Release the tiles that went out of range, one extra ring avoids thrashing at the border
+        for (Tile tile : loadedTiles.values()) {
+            if (ringDistance(tile.tileX, tile.tileZ, cameraTileX, cameraTileZ) > loadRadius + 1) {
+                releasedTiles.add(tile);
+            }
+        }
+        for (Tile tile : releasedTiles) {
+            loadedTiles.remove(key(tile.tileX, tile.tileZ));
+            scene.removeGameItem(tile.gameItem);
+            releaseTileMesh(tile.mesh);
+        }
+        releasedTiles.clear();
+
+        Long failed;
+        while ((failed = failedTiles.poll()) != null) {
+            pendingTiles.remove(failed);
+        }
+
+        // Request the missing tiles around the camera
+        for (int tileZ = Math.max(0, cameraTileZ - loadRadius); tileZ <= Math.min(tilesZ - 1, cameraTileZ + loadRadius); tileZ++) {
+            for (int tileX = Math.max(0, cameraTileX - loadRadius); tileX <= Math.min(tilesX - 1, cameraTileX + loadRadius); tileX++) {
+                long key = key(tileX, tileZ);
+                if (!loadedTiles.containsKey(key) && pendingTiles.add(key)) {
+                    int x = tileX;
+                    int z = tileZ;
+                    loader.execute(() -> {
+                        try {
+                            builtTiles.add(buildTile(x, z));
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                            failedTiles.add(key);
+                        }
+                    });
+                }
+            }
+        }
+
+        // Upload a bounded number of built tiles per call to avoid frame spikes
+        TileData tileData;
+        int uploads = 0;
+        while (uploads < MAX_UPLOADS_PER_UPDATE && (tileData = builtTiles.poll()) != null) {
+            long key = key(tileData.tileX, tileData.tileZ);
+            pendingTiles.remove(key);
+            if (ringDistance(tileData.tileX, tileData.tileZ, cameraTileX, cameraTileZ) > loadRadius + 1) {
+                continue;
+            }
+            LodMesh mesh = createTileMesh(tileData.positions, tileData.textCoords, tileData.normals, lodIndices);
+            mesh.setMaterial(material);
+            GameItem gameItem = new GameItem(mesh);
+            gameItem.setPosition(originX + tileData.tileX * tileWorldSize, 0, originZ + tileData.tileZ * tileWorldSize);
+            scene.addGameItem(gameItem);
+            loadedTiles.put(key, new Tile(tileData.tileX, tileData.tileZ, mesh, gameItem));
+            uploads++;
+        }
+
+        // Select the level of detail of each tile by its distance to the camera
+        for (Tile tile : loadedTiles.values()) {
+            float centerX = originX + (tile.tileX + 0.5f) * tileWorldSize;
+            float centerZ = originZ + (tile.tileZ + 0.5f) * tileWorldSize;
+            float dx = centerX - cameraPos.x;
+            float dz = centerZ - cameraPos.z;
+            float distance = (float) Math.sqrt(dx * dx + dz * dz);
+            tile.mesh.setLod(Math.min(numLods - 1, (int) (distance / lodDistance)));
+        }
+    }
+
+    public float getHeight(Vector3f position) {
+        return getHeight(position.x, position.z);
+    }
+
+    public float getHeight(float x, float z) {
+        float fx = (x - originX) / cellSize;
+        float fz = (z - originZ) / cellSize;
+        int col = (int) Math.floor(fx);
+        int row = (int) Math.floor(fz);
+        if (col < 0 || row < 0 || col >= mapWidth - 1 || row >= mapHeight - 1) {
+            return Float.MIN_VALUE;
+        }
+        float u = fx - col;
+        float v = fz - row;
+        float leftTop = heights[row * mapWidth + col];
+        float rightTop = heights[row * mapWidth + col + 1];
+        float leftBottom = heights[(row + 1) * mapWidth + col];
+        float rightBottom = heights[(row + 1) * mapWidth + col + 1];
+        // Same split as the mesh: the diagonal goes from the left bottom to the right top vertex
+        if (u + v <= 1) {
+            return leftTop + u * (rightTop - leftTop) + v * (leftBottom - leftTop);
+        }
+        return rightBottom + (1 - u) * (leftBottom - rightBottom) + (1 - v) * (rightTop - rightBottom);
+    }
+
+    // Uploads the vertices of a tile, on the thread that calls update
+    protected LodMesh createTileMesh(float[] positions, float[] textCoords, float[] normals, int[][] lodIndices) {
+        return new LodMesh(positions, textCoords, normals, lodIndices);
+    }
+
+    protected void releaseTileMesh(LodMesh mesh) {
+        mesh.cleanUp();
+    }
+
+    public int getLoadedTiles() {
+        return loadedTiles.size();
+    }
+
+    // Requested and not uploaded yet
+    public int getPendingTiles() {
+        return pendingTiles.size();
+    }
+
+    // Level of detail of a loaded tile, -1 when it is not loaded
+    public int getTileLod(int tileX, int tileZ) {
+        Tile tile = loadedTiles.get(key(tileX, tileZ));
+        return tile != null ? tile.mesh.getLod() : -1;
+    }
+
+    public int getTilesX() {
+        return tilesX;
+    }
+
+    public int getTilesZ() {
+        return tilesZ;
+    }
+
+    public int getLoadRadius() {
+        return loadRadius;
+    }
+
+    // World position of the left top corner of a tile
+    public float getTileX(int tileX) {
+        return originX + tileX * tileSize * cellSize;
+    }
+
+    public float getTileZ(int tileZ) {
+        return originZ + tileZ * tileSize * cellSize;
+    }
+
+    public float getSkirtDepth() {
+        return skirtDepth;
+    }
+
+    public void cleanup(Scene scene) {
+        if (ownsLoader) {
+            loader.shutdownNow();
+        }
+        for (Tile tile : loadedTiles.values()) {
+            scene.removeGameItem(tile.gameItem);
+            releaseTileMesh(tile.mesh);
+        }
+        loadedTiles.clear();
+        pendingTiles.clear();
+        builtTiles.clear();
+        failedTiles.clear();
+        if (ownsMaterial) {
+            material.getTexture().cleanup();
+        }
+    }
+
+    private TileData buildTile(int tileX, int tileZ) {
+        int n = tileSize + 1;
+        int numVertices = n * n + 4 * n;
+        float[] positions = new float[numVertices * 3];
+        float[] textCoords = new float[numVertices * 2];
+        float[] normals = new float[numVertices * 3];
+
+        int startCol = tileX * tileSize;
+        int startRow = tileZ * tileSize;
+        for (int row = 0; row < n; row++) {
+            for (int col = 0; col < n; col++) {
+                writeVertex(row * n + col, startCol + col, startRow + row, col, row, 0, positions, textCoords, normals);
+            }
+        }
+        // Skirt vertices hang below the four borders of the tile
+        for (int edge = 0; edge < 4; edge++) {
+            for (int k = 0; k < n; k++) {
+                int gridVertex = edgeVertex(edge, k);
+                int col = gridVertex % n;
+                int row = gridVertex / n;
+                writeVertex(skirtVertex(edge, k), startCol + col, startRow + row, col, row, skirtDepth,
+                        positions, textCoords, normals);
+            }
+        }
+        return new TileData(tileX, tileZ, positions, textCoords, normals);
+    }
+
+    private void writeVertex(int index, int mapCol, int mapRow, int tileCol, int tileRow, float depth,
+                             float[] positions, float[] textCoords, float[] normals) {
+        positions[index * 3] = tileCol * cellSize;
+        positions[index * 3 + 1] = heights[mapRow * mapWidth + mapCol] - depth;
+        positions[index * 3 + 2] = tileRow * cellSize;
+
+        textCoords[index * 2] = (float) textInc * (float) mapCol / (float) mapWidth;
+        textCoords[index * 2 + 1] = (float) textInc * (float) mapRow / (float) mapHeight;
+
+        // Normals come from the whole map so that they match across tile borders
+        float left = heights[mapRow * mapWidth + Math.max(mapCol - 1, 0)];
+        float right = heights[mapRow * mapWidth + Math.min(mapCol + 1, mapWidth - 1)];
+        float up = heights[Math.max(mapRow - 1, 0) * mapWidth + mapCol];
+        float down = heights[Math.min(mapRow + 1, mapHeight - 1) * mapWidth + mapCol];
+        float nx = left - right;
+        float ny = 2 * cellSize;
+        float nz = up - down;
+        float invLength = 1.0f / (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        normals[index * 3] = nx * invLength;
+        normals[index * 3 + 1] = ny * invLength;
+        normals[index * 3 + 2] = nz * invLength;
+    }
+
+    private int[] buildLodIndices(int lod) {
+        int step = 1 << lod;
+        int n = tileSize + 1;
+        int cells = tileSize / step;
+        int[] indices = new int[cells * cells * 6 + 4 * cells * 12];
+        int i = 0;
+        for (int row = 0; row < tileSize; row += step) {
+            for (int col = 0; col < tileSize; col += step) {
+                int leftTop = row * n + col;
+                int leftBottom = (row + step) * n + col;
+                int rightBottom = (row + step) * n + col + step;
+                int rightTop = row * n + col + step;
+
+                indices[i++] = leftTop;
+                indices[i++] = leftBottom;
+                indices[i++] = rightTop;
+
+                indices[i++] = rightTop;
+                indices[i++] = leftBottom;
+                indices[i++] = rightBottom;
+            }
+        }
+        // Skirts are emitted with both windings so that they are visible from either side
+        for (int edge = 0; edge < 4; edge++) {
+            for (int k = 0; k < tileSize; k += step) {
+                int a = edgeVertex(edge, k);
+                int b = edgeVertex(edge, k + step);
+                int skirtA = skirtVertex(edge, k);
+                int skirtB = skirtVertex(edge, k + step);
+
+                indices[i++] = a;
+                indices[i++] = skirtA;
+                indices[i++] = b;
+                indices[i++] = b;
+                indices[i++] = skirtA;
+                indices[i++] = skirtB;
+
+                indices[i++] = a;
+                indices[i++] = b;
+                indices[i++] = skirtA;
+                indices[i++] = b;
+                indices[i++] = skirtB;
+                indices[i++] = skirtA;
+            }
+        }
+        return indices;
+    }
+
+    // Index of the k-th grid vertex along an edge: 0 top, 1 bottom, 2 left, 3 right
+    private int edgeVertex(int edge, int k) {
+        int n = tileSize + 1;
+        return switch (edge) {
+            case 0 -> k;
+            case 1 -> tileSize * n + k;
+            case 2 -> k * n;
+            default -> k * n + tileSize;
+        };
+    }
+
+    private int skirtVertex(int edge, int k) {
+        int n = tileSize + 1;
+        return n * n + edge * n + k;
+    }
+
+    private static int ringDistance(int x1, int z1, int x2, int z2) {
+        return Math.max(Math.abs(x1 - x2), Math.abs(z1 - z2));
+    }
+
+    private static long key(int tileX, int tileZ) {
+        return ((long) tileX << 32) | (tileZ & 0xFFFFFFFFL);
+    }
+
+    // Heights of the whole map, row by row
+    public record HeightMap(float[] heights, int width, int height, float minY, float maxY) {
+
+        public static HeightMap load(String heightMapFile, float minY, float maxY) throws Exception {
+            Images.ImageInfo image = Images.load(heightMapFile);
+            try {
+                int width = image.width;
+                int height = image.height;
+                float[] heights = new float[width * height];
+                ByteBuffer buf = image.buffer;
+                for (int row = 0; row < height; row++) {
+                    for (int col = 0; col < width; col++) {
+                        heights[row * width + col] = HeightMapMesh.calcHeight(col, row, width, buf, minY, maxY);
+                    }
+                }
+                return new HeightMap(heights, width, height, minY, maxY);
+            } finally {
+                image.free();
+            }
+        }
+    }
+
+    private record TileData(int tileX, int tileZ, float[] positions, float[] textCoords, float[] normals) {}
+
+    private record Tile(int tileX, int tileZ, LodMesh mesh, GameItem gameItem) {}
+}
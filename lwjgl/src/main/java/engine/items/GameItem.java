@@ -1,8 +1,11 @@
 package engine.items;
 
 import engine.graph.Mesh;
+import engine.spatial.AabbTree;
 import org.joml.Vector3f;
 
+import java.util.function.Consumer;
+
 public class GameItem {
 
     private final Vector3f position;
@@ -13,10 +16,15 @@ public class GameItem {
 
     private Mesh mesh;
 
+    private int spatialProxy;
+
+    private Consumer<GameItem> transformListener;
+
     public GameItem() {
         position = new Vector3f();
         scale = 1;
         rotation = new Vector3f();
+        spatialProxy = AabbTree.NULL_NODE;
     }
 
     public GameItem(Mesh mesh) {
@@ -24,6 +32,7 @@ public class GameItem {
         this.mesh = mesh;
     }
 
+    // Changing the vector in place skips the scene's spatial index, call notifyTransformChanged after
     public Vector3f getPosition() {
         return position;
     }
@@ -32,6 +41,7 @@ public class GameItem {
         this.position.x = x;
         this.position.y = y;
         this.position.z = z;
+        notifyTransformChanged();
     }
 
     public float getScale() {
@@ -40,8 +50,10 @@ public class GameItem {
 
     public void setScale(float scale) {
         this.scale = scale;
+        notifyTransformChanged();
     }
 
+    // Same as the position, in place changes need notifyTransformChanged
     public Vector3f getRotation() {
         return rotation;
     }
@@ -50,13 +62,37 @@ public class GameItem {
         this.rotation.x = x;
         this.rotation.y = y;
         this.rotation.z = z;
+        notifyTransformChanged();
     }
 
     public Mesh getMesh() {
         return mesh;
     }
 
+    // The scene files items by mesh and bounds them with it, so the mesh is set before the item is added
     public void setMesh(Mesh mesh) {
+        if (spatialProxy != AabbTree.NULL_NODE) {
+            throw new IllegalStateException("Remove the game item from its scene before changing its mesh");
+        }
         this.mesh = mesh;
     }
+
+    public int getSpatialProxy() {
+        return spatialProxy;
+    }
+
+    public void setSpatialProxy(int spatialProxy) {
+        this.spatialProxy = spatialProxy;
+    }
+
+    public void setTransformListener(Consumer<GameItem> transformListener) {
+        this.transformListener = transformListener;
+    }
+
+    // Must be called after changing the position or rotation vectors in place, the setters already do it
+    public void notifyTransformChanged() {
+        if (transformListener != null) {
+            transformListener.accept(this);
+        }
+    }
 }
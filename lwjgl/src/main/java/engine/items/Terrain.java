@@ -1,27 +1,47 @@
 package engine.items;
 
 import engine.graph.HeightMapMesh;
+import engine.graph.VertexFormat;
 import org.joml.Vector3f;
 
+import java.util.concurrent.ForkJoinPool;
+
 public class Terrain {
 
     private final GameItem[] gameItems;
     private final HeightMapMesh heightMapMesh;
-    private final Box2D[][] boundingBoxes;
 
     private final int terrainSize;
     private final int verticesPerCol;
     private final int verticesPerRow;
 
+    // World coordinates of the top left corner of the grid and the size of each block
+    private final float originX;
+    private final float originZ;
+    private final float blockWidth;
+    private final float blockDepth;
+    private final float cellWidth;
+    private final float cellDepth;
+
     public Terrain(int terrainSize, float scale, float minY, float maxY, String heightMap, String textureFile, int textInc) throws Exception {
+        this(terrainSize, scale, new HeightMapMesh(minY, maxY, heightMap, textureFile, textInc));
+    }
+
+    public Terrain(int terrainSize, float scale, float minY, float maxY, String heightMap, String textureFile, int textInc,
+                   VertexFormat format) throws Exception {
+        this(terrainSize, scale, new HeightMapMesh(minY, maxY, heightMap, textureFile, textInc, format,
+                ForkJoinPool.commonPool()));
+    }
+
+    // Blocks of the height map mesh, terrainSize by terrainSize of them
+    public Terrain(int terrainSize, float scale, HeightMapMesh heightMapMesh) {
         this.terrainSize = terrainSize;
         this.gameItems = new GameItem[terrainSize * terrainSize];
-        this.heightMapMesh = new HeightMapMesh(minY, maxY, heightMap, textureFile, textInc);
-        this.boundingBoxes = new Box2D[terrainSize][terrainSize];
+        this.heightMapMesh = heightMapMesh;
 
         // The number of vertices per column and row
-        verticesPerCol = heightMapMesh.image.width - 1;
-        verticesPerRow = heightMapMesh.image.height - 1;
+        verticesPerCol = heightMapMesh.getWidth() - 1;
+        verticesPerRow = heightMapMesh.getDepth() - 1;
 
         for (int row = 0; row < terrainSize; row++) {
             for (int col = 0; col < terrainSize; col++) {
@@ -32,81 +52,68 @@ public class Terrain {
                 terrainBlock.setScale(scale);
                 terrainBlock.setPosition(xDisplacement, 0, zDisplacement);
                 gameItems[row * terrainSize + col] = terrainBlock;
-
-                boundingBoxes[row][col] = getBoundingBox(terrainBlock);
             }
         }
+
+        // All the blocks share the same size, so the block under a position can be found with index arithmetic
+        Vector3f firstPosition = gameItems[0].getPosition();
+        originX = HeightMapMesh.STARTX * scale + firstPosition.x;
+        originZ = HeightMapMesh.STARTZ * scale + firstPosition.z;
+        blockWidth = HeightMapMesh.LENGTH_X * scale;
+        blockDepth = HeightMapMesh.LENGTH_Z * scale;
+        cellWidth = blockWidth / (float) verticesPerCol;
+        cellDepth = blockDepth / (float) verticesPerRow;
     }
 
     public GameItem[] getGameItems() {
         return gameItems;
     }
 
-    private Box2D getBoundingBox(GameItem terrainBlock) {
-        float scale = terrainBlock.getScale();
-        Vector3f position = terrainBlock.getPosition();
-
-        float topLeftX = HeightMapMesh.STARTX * scale + position.x;
-        float topLeftZ = HeightMapMesh.STARTZ * scale + position.z;
-        float width = Math.abs(HeightMapMesh.STARTX * 2) * scale;
-        float height = Math.abs(HeightMapMesh.STARTZ * 2) * scale;
-        return new Box2D(topLeftX, topLeftZ, width, height);
-    }
-
     public float getHeight(Vector3f position) {
-        float result = Float.MIN_VALUE;
-        // For each terrain block we get the bounding box, translate it to view coodinates
-        // and check if the position is contained in that bounding box
-        Box2D boundingBox = null;
-        boolean found = false;
-        GameItem terrainBlock = null;
-        for (int row = 0; row < terrainSize && !found; row++) {
-            for (int col = 0; col < terrainSize && !found; col++) {
-                terrainBlock = gameItems[row * terrainSize + col];
-                boundingBox = boundingBoxes[row][col];
-                found = boundingBox.contains(position.x, position.z);
-            }
-        }
+        return getHeight(position.x, position.z);
+    }
 
-        // If we have found a terrain block that contains the position we need
-        // to calculate the height of the terrain on that position
-        if (found) {
-            Vector3f[] triangle = getTriangle(position, boundingBox, terrainBlock);
-            result = interpolateHeight(triangle[0], triangle[1], triangle[2], position.x, position.z);
+    public float getHeight(float x, float z) {
+        int blockCol = (int) Math.floor((x - originX) / blockWidth);
+        int blockRow = (int) Math.floor((z - originZ) / blockDepth);
+        if (blockCol < 0 || blockCol >= terrainSize || blockRow < 0 || blockRow >= terrainSize) {
+            return Float.MIN_VALUE;
         }
+        GameItem terrainBlock = gameItems[blockRow * terrainSize + blockCol];
+        float blockX = originX + blockCol * blockWidth;
+        float blockZ = originZ + blockRow * blockDepth;
 
-        return result;
-    }
-
-    protected Vector3f[] getTriangle(Vector3f position, Box2D boundingBox, GameItem terrainBlock) {
         // Get the column and row of the heightmap associated to the current position
-        float cellWidth = boundingBox.width / (float) verticesPerCol;
-        float cellHeight = boundingBox.height / (float) verticesPerRow;
-        int col = (int) ((position.x - boundingBox.x) / cellWidth);
-        int row = (int) ((position.z - boundingBox.y) / cellHeight);
-
-        Vector3f[] triangle = new Vector3f[3];
-        triangle[1] = new Vector3f(
-                boundingBox.x + col * cellWidth,
-                getWorldHeight(row + 1, col, terrainBlock),
-                boundingBox.y + (row + 1) * cellHeight);
-        triangle[2] = new Vector3f(
-                boundingBox.x + (col + 1) * cellWidth,
-                getWorldHeight(row, col + 1, terrainBlock),
-                boundingBox.y + row * cellHeight);
-        if (position.z < getDiagonalZCoord(triangle[1].x, triangle[1].z, triangle[2].x, triangle[2].z, position.x)) {
-            triangle[0] = new Vector3f(
-                    boundingBox.x + col * cellWidth,
-                    getWorldHeight(row, col, terrainBlock),
-                    boundingBox.y + row * cellHeight);
+        int col = Math.min((int) ((x - blockX) / cellWidth), verticesPerCol - 1);
+        int row = Math.min((int) ((z - blockZ) / cellDepth), verticesPerRow - 1);
+
+        // Every cell is split in two triangles by the diagonal from the left bottom to the right top vertex
+        float x1 = blockX + col * cellWidth;
+        float y1 = getWorldHeight(row + 1, col, terrainBlock);
+        float z1 = blockZ + (row + 1) * cellDepth;
+        float x2 = blockX + (col + 1) * cellWidth;
+        float y2 = getWorldHeight(row, col + 1, terrainBlock);
+        float z2 = blockZ + row * cellDepth;
+        float x0;
+        float y0;
+        float z0;
+        if (z < getDiagonalZCoord(x1, z1, x2, z2, x)) {
+            x0 = x1;
+            y0 = getWorldHeight(row, col, terrainBlock);
+            z0 = z2;
         } else {
-            triangle[0] = new Vector3f(
-                    boundingBox.x + (col + 1) * cellWidth,
-                    getWorldHeight((row + 2) % verticesPerRow, col + 1, terrainBlock),
-                    boundingBox.y + (row + 1) * cellHeight);
+            x0 = x2;
+            y0 = getWorldHeight(row + 1, col + 1, terrainBlock);
+            z0 = z1;
         }
+        return interpolateHeight(x0, y0, z0, x1, y1, z1, x2, y2, z2, x, z);
+    }
 
-        return triangle;
+    // Resolves the height of count positions stored as consecutive x, z pairs
+    public void getHeights(float[] positionsXZ, float[] heights, int count) {
+        for (int i = 0; i < count; i++) {
+            heights[i] = getHeight(positionsXZ[i * 2], positionsXZ[i * 2 + 1]);
+        }
     }
 
     protected float getDiagonalZCoord(float x1, float z1, float x2, float z2, float x) {
@@ -118,38 +125,14 @@ public class Terrain {
         return y * gameItem.getScale() + gameItem.getPosition().y;
     }
 
-    protected float interpolateHeight(Vector3f pA, Vector3f pB, Vector3f pC, float x, float z) {
+    protected float interpolateHeight(float ax, float ay, float az, float bx, float by, float bz,
+                                      float cx, float cy, float cz, float x, float z) {
         // Plane equation ax+by+cz+d=0
-        float a = (pB.y - pA.y) * (pC.z - pA.z) - (pC.y - pA.y) * (pB.z - pA.z);
-        float b = (pB.z - pA.z) * (pC.x - pA.x) - (pC.z - pA.z) * (pB.x - pA.x);
-        float c = (pB.x - pA.x) * (pC.y - pA.y) - (pC.x - pA.x) * (pB.y - pA.y);
-        float d = -(a * pA.x + b * pA.y + c * pA.z);
+        float a = (by - ay) * (cz - az) - (cy - ay) * (bz - az);
+        float b = (bz - az) * (cx - ax) - (cz - az) * (bx - ax);
+        float c = (bx - ax) * (cy - ay) - (cx - ax) * (by - ay);
+        float d = -(a * ax + b * ay + c * az);
         // y = (-d -ax -cz) / b
         return (-d - a * x - c * z) / b;
     }
-
-    static class Box2D {
-
-        public float x;
-
-        public float y;
-
-        public float width;
-
-        public float height;
-
-        public Box2D(float x, float y, float width, float height) {
-            this.x = x;
-            this.y = y;
-            this.width = width;
-            this.height = height;
-        }
-
-        public boolean contains(float x2, float y2) {
-            return x2 >= x
-                    && y2 >= y
-                    && x2 < x + width
-                    && y2 < y + height;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -3,97 +3,148 @@ package engine.items;
 import engine.graph.FontTexture;
 import engine.graph.Material;
 import engine.graph.Mesh;
-import utils.Arrays;
+import org.joml.Vector3f;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
+// Text is drawn by the HUD batch from quads laid out on the CPU when the text is set, so a text item has no
+// buffers of its own. Its mesh only holds the material, the font texture and the color. The batch keeps room for
+// the capacity of the item, and after a setText rewrites only the vertices it changed
 public class TextItem extends GameItem {
 
-    private static final float ZPOS = 0.0f;
+    // Two triangles for each character: left top, left bottom, right bottom, then right top, left top, right bottom
+    public static final int VERTICES_PER_CHAR = 6;
 
-    private static final int VERTICES_PER_QUAD = 4;
+    // Position and texture coordinates
+    public static final int VERTEX_FLOATS = 4;
 
     private String text;
 
-    private FontTexture fontTexture;
+    private final FontTexture fontTexture;
 
-    public TextItem(String text, FontTexture fontTexture) throws Exception {
-        super();
+    private float[] quadVertices;
+
+    // Counts the changes of the text, and the vertices the last one changed
+    private int version;
+
+    private int changedStart;
+
+    private int changedEnd;
+
+    public TextItem(String text, FontTexture fontTexture) {
+        this(text, fontTexture, text.length());
+    }
+
+    // Capacity in characters of the laid out quads, they grow when a longer text is set
+    public TextItem(String text, FontTexture fontTexture, int capacity) {
+        super(new Mesh(new Vector3f(), new Vector3f()));
         this.text = text;
         this.fontTexture = fontTexture;
-        this.setMesh(buildMesh());
+        this.quadVertices = new float[Math.max(capacity, text.length()) * VERTICES_PER_CHAR * VERTEX_FLOATS];
+        getMesh().setMaterial(new Material(fontTexture.getTexture()));
+        // New arrays are zero, which a quad of the text could be, so everything counts as changed
+        layOut(0);
+        changedStart = 0;
+        changedEnd = getQuadVertexCount();
     }
 
-    private Mesh buildMesh() {
-        List<Float> positions = new ArrayList<>();
-        List<Float> textCoords = new ArrayList<>();
-        float[] normals   = new float[0];
-        List<Integer> indices   = new ArrayList<>();
-
-        char[] characters = text.toCharArray();
-        int numChars = characters.length;
-
+    private void layOut(int oldVertexCount) {
+        int numChars = text.length();
+        changedStart = Integer.MAX_VALUE;
+        changedEnd = 0;
+        if (quadVertices.length < numChars * VERTICES_PER_CHAR * VERTEX_FLOATS) {
+            quadVertices = Arrays.copyOf(quadVertices, Math.max(quadVertices.length * 2,
+                    numChars * VERTICES_PER_CHAR * VERTEX_FLOATS));
+        }
+        float width = fontTexture.getWidth();
+        float height = fontTexture.getHeight();
+        int v = 0;
         float startX = 0.0f;
-        for(int i=0; i<numChars; i++) {
-            FontTexture.CharInfo charInfo = fontTexture.getCharInfo(characters[i]);
-
-            // Build a character tile composed by two triangles
-
-            // Left Top vertex
-            positions.add(startX); // x
-            positions.add(0.0f); //y
-            positions.add(ZPOS); //z
-            textCoords.add((float) charInfo.startX() / (float) fontTexture.getWidth());
-            textCoords.add(0.0f);
-            indices.add(i*VERTICES_PER_QUAD);
-
-            // Left Bottom vertex
-            positions.add(startX); // x
-            positions.add((float) fontTexture.getHeight()); //y
-            positions.add(ZPOS); //z
-            textCoords.add((float) charInfo.startX() / (float) fontTexture.getWidth() );
-            textCoords.add(1.0f);
-            indices.add(i*VERTICES_PER_QUAD + 1);
-
-            // Right Bottom vertex
-            positions.add(startX + charInfo.width()); // x
-            positions.add((float) fontTexture.getHeight()); //y
-            positions.add(ZPOS); //z
-            textCoords.add((float) (charInfo.startX() + charInfo.width()) / (float) fontTexture.getWidth());
-            textCoords.add(1.0f);
-            indices.add(i*VERTICES_PER_QUAD + 2);
-
-            // Right Top vertex
-            positions.add(startX + charInfo.width()); // x
-            positions.add(0.0f); //y
-            positions.add(ZPOS); //z
-            textCoords.add((float) (charInfo.startX() + charInfo.width()) / (float) fontTexture.getWidth());
-            textCoords.add(0.0f);
-            indices.add(i*VERTICES_PER_QUAD + 3);
-
-            // Add indices for left top and bottom right vertices
-            indices.add(i*VERTICES_PER_QUAD);
-            indices.add(i*VERTICES_PER_QUAD + 2);
-
-            startX += charInfo.width();
+        for (int i = 0; i < numChars; i++) {
+            FontTexture.CharInfo charInfo = fontTexture.getCharInfo(text.charAt(i));
+            float endX = startX + charInfo.width();
+            float startU = charInfo.startX() / width;
+            float endU = (charInfo.startX() + charInfo.width()) / width;
+            v = putVertex(v, startX, 0, startU, 0);
+            v = putVertex(v, startX, height, startU, 1);
+            v = putVertex(v, endX, height, endU, 1);
+            v = putVertex(v, endX, 0, endU, 0);
+            v = putVertex(v, startX, 0, startU, 0);
+            v = putVertex(v, endX, height, endU, 1);
+            startX = endX;
+        }
+        // Characters that left the text are gone, and ones past its old end were not drawn, whatever the array
+        // still holds there
+        int vertexCount = numChars * VERTICES_PER_CHAR;
+        if (oldVertexCount != vertexCount) {
+            changedStart = Math.min(changedStart, Math.min(oldVertexCount, vertexCount));
+            changedEnd = Math.max(changedEnd, Math.max(oldVertexCount, vertexCount));
+        }
+        if (changedStart > changedEnd) {
+            changedStart = changedEnd;
+        }
+    }
+
+    // Only writes what differs, so the vertices that changed are known
+    private int putVertex(int v, float x, float y, float u, float textV) {
+        if (quadVertices[v] == x && quadVertices[v + 1] == y && quadVertices[v + 2] == u
+                && quadVertices[v + 3] == textV) {
+            return v + VERTEX_FLOATS;
         }
+        int vertex = v / VERTEX_FLOATS;
+        changedStart = Math.min(changedStart, vertex);
+        changedEnd = Math.max(changedEnd, vertex + 1);
+        quadVertices[v] = x;
+        quadVertices[v + 1] = y;
+        quadVertices[v + 2] = u;
+        quadVertices[v + 3] = textV;
+        return v + VERTEX_FLOATS;
+    }
 
-        float[] posArr = Arrays.toArray(positions);
-        float[] textCoordsArr = Arrays.toArray(textCoords);
-        int[] indicesArr = indices.stream().mapToInt(i->i).toArray();
-        Mesh mesh = new Mesh(posArr, textCoordsArr, normals, indicesArr);
-        mesh.setMaterial(new Material(fontTexture.getTexture()));
-        return mesh;
+    public FontTexture getFontTexture() {
+        return fontTexture;
     }
 
     public String getText() {
         return text;
     }
 
+    // Setting the text it already shows does nothing
     public void setText(String text) {
+        if (text.equals(this.text)) {
+            return;
+        }
+        int oldVertexCount = getQuadVertexCount();
         this.text = text;
-        this.getMesh().deleteBuffers();
-        this.setMesh(buildMesh());
+        layOut(oldVertexCount);
+        version++;
+    }
+
+    // Vertices of the characters, VERTEX_FLOATS each, in the order they are drawn. Valid up to getQuadVertexCount
+    public float[] getQuadVertices() {
+        return quadVertices;
+    }
+
+    public int getQuadVertexCount() {
+        return text.length() * VERTICES_PER_CHAR;
+    }
+
+    // Vertices the quads have room for before they grow
+    public int getQuadCapacity() {
+        return quadVertices.length / VERTEX_FLOATS;
+    }
+
+    // Changes with every setText that changes the text
+    public int getVersion() {
+        return version;
+    }
+
+    // Vertices the last change of the text rewrote or dropped, from the first to before the end
+    public int getChangedStart() {
+        return changedStart;
+    }
+
+    public int getChangedEnd() {
+        return changedEnd;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,261 @@
+package engine.profiling;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Times the passes of each frame on the CPU, and on the GPU when it has a clock, and keeps the last frames in a
+// ring any thread can read while the render thread writes. Only the render thread records. Disabled, every call
+// tests a field and returns
+public class FrameProfiler {
+
+    public static final int PASS_PREPARE = 0;
+
+    public static final int PASS_LIGHTS = 1;
+
+    public static final int PASS_SCENE = 2;
+
+    public static final int PASS_SKYBOX = 3;
+
+    public static final int PASS_BLENDED = 4;
+
+    public static final int PASS_HUD = 5;
+
+    public static final int PASS_COUNT = 6;
+
+    private static final String[] PASS_NAMES = {"prepare", "lights", "scene", "skybox", "blended", "hud"};
+
+    // Frames that may wait for their GPU timestamps, a frame still waiting after that is published without them
+    public static final int GPU_LATENCY = 4;
+
+    // A timestamp at the start and one at the end of each pass
+    public static final int GPU_MARKERS = PASS_COUNT * 2;
+
+    // Layout of a record, pass times are a start and a duration for each pass
+    static final int FRAME = 0;
+    static final int START = 1;
+    static final int CPU_TIME = 2;
+    static final int DRAW_CALLS = 3;
+    static final int TRIANGLES = 4;
+    static final int UNIFORM_UPLOADS = 5;
+    static final int STATE_CHANGES = 6;
+    static final int CPU_PASSES = 7;
+    static final int GPU_PASSES = CPU_PASSES + PASS_COUNT * 2;
+    static final int RECORD_SIZE = GPU_PASSES + PASS_COUNT * 2;
+
+    private final int capacity;
+
+    private final long[] ring;
+
+    // Twice the number of the frame a slot holds, plus one while it is being written
+    private final AtomicLongArray sequences;
+
+    private volatile long published;
+
+    private volatile boolean enabled;
+
+    // Enabled as of the start of the frame, so a frame is recorded whole or not at all
+    private boolean recording;
+
+    private GpuClock gpuClock;
+
+    // Frames waiting for their GPU timestamps, oldest first. A frame's slot is its index here
+    private final long[][] pending;
+
+    private final int[] pendingMarkers;
+
+    private int pendingFirst;
+
+    private int pendingCount;
+
+    private long[] current;
+
+    private int currentSlot;
+
+    private final long[] passBegin;
+
+    private long frame;
+
+    public FrameProfiler(int capacity) {
+        this.capacity = capacity;
+        this.ring = new long[capacity * RECORD_SIZE];
+        this.sequences = new AtomicLongArray(capacity);
+        this.pending = new long[GPU_LATENCY][RECORD_SIZE];
+        this.pendingMarkers = new int[GPU_LATENCY];
+        this.passBegin = new long[PASS_COUNT];
+    }
+
+    public static String getPassName(int pass) {
+        return PASS_NAMES[pass];
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Null to time the CPU only. Set it between frames
+    public void setGpuClock(GpuClock gpuClock) {
+        while (pendingCount > 0) {
+            publishOldest(false);
+        }
+        this.gpuClock = gpuClock;
+    }
+
+    public GpuClock getGpuClock() {
+        return gpuClock;
+    }
+
+    public void beginFrame() {
+        recording = enabled;
+        if (!recording) {
+            return;
+        }
+        if (pendingCount == GPU_LATENCY) {
+            publishOldest(false);
+        }
+        currentSlot = (pendingFirst + pendingCount) % GPU_LATENCY;
+        current = pending[currentSlot];
+        pendingMarkers[currentSlot] = 0;
+        Arrays.fill(current, -1);
+        current[FRAME] = frame;
+        current[START] = System.nanoTime();
+    }
+
+    public void beginPass(int pass) {
+        if (!recording) {
+            return;
+        }
+        long now = System.nanoTime();
+        passBegin[pass] = now;
+        int cpu = CPU_PASSES + pass * 2;
+        if (current[cpu] < 0) {
+            current[cpu] = now - current[START];
+            current[cpu + 1] = 0;
+        }
+        // A pass run twice in a frame is timed on the GPU from its first start to its last end
+        int marker = pass * 2;
+        if (gpuClock != null && (pendingMarkers[currentSlot] & 1 << marker) == 0) {
+            gpuClock.timestamp(currentSlot, marker);
+            pendingMarkers[currentSlot] |= 1 << marker;
+        }
+    }
+
+    public void endPass(int pass) {
+        if (!recording) {
+            return;
+        }
+        current[CPU_PASSES + pass * 2 + 1] += System.nanoTime() - passBegin[pass];
+        int marker = pass * 2 + 1;
+        if (gpuClock != null) {
+            gpuClock.timestamp(currentSlot, marker);
+            pendingMarkers[currentSlot] |= 1 << marker;
+        }
+    }
+
+    // Counts are the ones of the frame that ends
+    public void endFrame(long drawCalls, long triangles, long uniformUploads, long stateChanges) {
+        if (!recording) {
+            return;
+        }
+        recording = false;
+        current[CPU_TIME] = System.nanoTime() - current[START];
+        current[DRAW_CALLS] = drawCalls;
+        current[TRIANGLES] = triangles;
+        current[UNIFORM_UPLOADS] = uniformUploads;
+        current[STATE_CHANGES] = stateChanges;
+        frame++;
+        pendingCount++;
+        if (gpuClock == null) {
+            publishOldest(false);
+            return;
+        }
+        while (pendingCount > 0 && gpuReady(pendingFirst)) {
+            publishOldest(true);
+        }
+    }
+
+    private boolean gpuReady(int slot) {
+        int markers = pendingMarkers[slot];
+        for (int marker = 0; marker < GPU_MARKERS; marker++) {
+            if ((markers & 1 << marker) != 0 && !gpuClock.isAvailable(slot, marker)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void publishOldest(boolean readGpu) {
+        int slot = pendingFirst;
+        long[] record = pending[slot];
+        int markers = pendingMarkers[slot];
+        if (readGpu && markers != 0) {
+            long first = Long.MAX_VALUE;
+            for (int marker = 0; marker < GPU_MARKERS; marker += 2) {
+                if ((markers & 1 << marker) != 0) {
+                    first = Math.min(first, gpuClock.getTimestamp(slot, marker));
+                }
+            }
+            for (int pass = 0; pass < PASS_COUNT; pass++) {
+                int begin = pass * 2;
+                if ((markers & 1 << begin) != 0 && (markers & 1 << begin + 1) != 0) {
+                    long start = gpuClock.getTimestamp(slot, begin);
+                    record[GPU_PASSES + begin] = start - first;
+                    record[GPU_PASSES + begin + 1] = gpuClock.getTimestamp(slot, begin + 1) - start;
+                }
+            }
+        }
+        publish(record);
+        pendingMarkers[slot] = 0;
+        pendingFirst = (pendingFirst + 1) % GPU_LATENCY;
+        pendingCount--;
+    }
+
+    // Seqlock per slot: readers copy a slot and keep the copy only if its sequence did not move meanwhile
+    private void publish(long[] record) {
+        long n = published;
+        int slot = (int) (n % capacity);
+        sequences.set(slot, n * 2 + 1);
+        VarHandle.storeStoreFence();
+        System.arraycopy(record, 0, ring, slot * RECORD_SIZE, RECORD_SIZE);
+        sequences.set(slot, n * 2 + 2);
+        published = n + 1;
+    }
+
+    // Number of frames published so far
+    public long getPublishedFrames() {
+        return published;
+    }
+
+    // The frames still in the ring, oldest first. Frames overwritten while being copied are left out
+    public List<FrameRecord> getRecords() {
+        long end = published;
+        long begin = Math.max(0, end - capacity);
+        List<FrameRecord> records = new ArrayList<>((int) (end - begin));
+        for (long n = begin; n < end; n++) {
+            int slot = (int) (n % capacity);
+            long sequence = sequences.get(slot);
+            if (sequence != n * 2 + 2) {
+                continue;
+            }
+            long[] data = Arrays.copyOfRange(ring, slot * RECORD_SIZE, (slot + 1) * RECORD_SIZE);
+            VarHandle.loadLoadFence();
+            if (sequences.get(slot) == sequence) {
+                records.add(new FrameRecord(data));
+            }
+        }
+        return records;
+    }
+
+    public void cleanup() {
+        if (gpuClock != null) {
+            gpuClock.cleanup();
+            gpuClock = null;
+        }
+    }
+}
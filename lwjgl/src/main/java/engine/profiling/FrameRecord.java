@@ -0,0 +1,57 @@
+package engine.profiling;
+
+// Copy of what the profiler recorded for a frame. Pass times are nanoseconds from the start of the frame on the
+// CPU, or from the first timestamp of the frame on the GPU, and -1 for passes that were not measured
+public final class FrameRecord {
+
+    private final long[] data;
+
+    FrameRecord(long[] data) {
+        this.data = data;
+    }
+
+    public long getFrame() {
+        return data[FrameProfiler.FRAME];
+    }
+
+    // System.nanoTime at the start of the frame
+    public long getStartNanos() {
+        return data[FrameProfiler.START];
+    }
+
+    public long getCpuNanos() {
+        return data[FrameProfiler.CPU_TIME];
+    }
+
+    public long getDrawCalls() {
+        return data[FrameProfiler.DRAW_CALLS];
+    }
+
+    public long getTriangles() {
+        return data[FrameProfiler.TRIANGLES];
+    }
+
+    public long getUniformUploads() {
+        return data[FrameProfiler.UNIFORM_UPLOADS];
+    }
+
+    public long getStateChanges() {
+        return data[FrameProfiler.STATE_CHANGES];
+    }
+
+    public long getPassCpuStart(int pass) {
+        return data[FrameProfiler.CPU_PASSES + pass * 2];
+    }
+
+    public long getPassCpuNanos(int pass) {
+        return data[FrameProfiler.CPU_PASSES + pass * 2 + 1];
+    }
+
+    public long getPassGpuStart(int pass) {
+        return data[FrameProfiler.GPU_PASSES + pass * 2];
+    }
+
+    public long getPassGpuNanos(int pass) {
+        return data[FrameProfiler.GPU_PASSES + pass * 2 + 1];
+    }
+}
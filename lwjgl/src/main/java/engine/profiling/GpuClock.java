@@ -0,0 +1,16 @@
+package engine.profiling;
+
+// Timestamps taken by the GPU when it reaches a point of the command stream. They are read back frames later, so
+// reading does not wait for the GPU. Each frame in flight has a slot with its own markers
+public interface GpuClock {
+
+    void timestamp(int slot, int marker);
+
+    // False while the GPU has not reached the marker yet
+    boolean isAvailable(int slot, int marker);
+
+    // Nanoseconds, only differences between timestamps mean something
+    long getTimestamp(int slot, int marker);
+
+    void cleanup();
+}
@@ -0,0 +1,125 @@
+package engine.profiling;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+// Writes frame records as CSV, as JSON, or as a Chrome trace to open in chrome://tracing or Perfetto. Times are
+// in milliseconds in CSV and JSON, and in microseconds in the trace as its format wants
+public final class ProfileExporter {
+
+    private static final int CPU_THREAD = 1;
+
+    private static final int GPU_THREAD = 2;
+
+    private ProfileExporter() {}
+
+    public static void writeCsv(List<FrameRecord> records, Appendable out) throws IOException {
+        out.append("frame,cpu_ms,draw_calls,triangles,uniform_uploads,state_changes");
+        for (int pass = 0; pass < FrameProfiler.PASS_COUNT; pass++) {
+            String name = FrameProfiler.getPassName(pass);
+            out.append(',').append(name).append("_cpu_ms,").append(name).append("_gpu_ms");
+        }
+        out.append('\n');
+        for (FrameRecord record : records) {
+            out.append(Long.toString(record.getFrame())).append(',').append(millis(record.getCpuNanos()))
+                    .append(',').append(Long.toString(record.getDrawCalls()))
+                    .append(',').append(Long.toString(record.getTriangles()))
+                    .append(',').append(Long.toString(record.getUniformUploads()))
+                    .append(',').append(Long.toString(record.getStateChanges()));
+            for (int pass = 0; pass < FrameProfiler.PASS_COUNT; pass++) {
+                // Empty for passes that were not measured
+                out.append(',');
+                if (record.getPassCpuNanos(pass) >= 0) {
+                    out.append(millis(record.getPassCpuNanos(pass)));
+                }
+                out.append(',');
+                if (record.getPassGpuNanos(pass) >= 0) {
+                    out.append(millis(record.getPassGpuNanos(pass)));
+                }
+            }
+            out.append('\n');
+        }
+    }
+
+    public static void writeJson(List<FrameRecord> records, Appendable out) throws IOException {
+        out.append("[\n");
+        for (int i = 0; i < records.size(); i++) {
+            FrameRecord record = records.get(i);
+            out.append("  {\"frame\": ").append(Long.toString(record.getFrame()))
+                    .append(", \"cpuMs\": ").append(millis(record.getCpuNanos()))
+                    .append(", \"drawCalls\": ").append(Long.toString(record.getDrawCalls()))
+                    .append(", \"triangles\": ").append(Long.toString(record.getTriangles()))
+                    .append(", \"uniformUploads\": ").append(Long.toString(record.getUniformUploads()))
+                    .append(", \"stateChanges\": ").append(Long.toString(record.getStateChanges()))
+                    .append(", \"passes\": {");
+            boolean first = true;
+            for (int pass = 0; pass < FrameProfiler.PASS_COUNT; pass++) {
+                if (record.getPassCpuNanos(pass) < 0) {
+                    continue;
+                }
+                out.append(first ? "" : ", ").append('"').append(FrameProfiler.getPassName(pass))
+                        .append("\": {\"cpuMs\": ").append(millis(record.getPassCpuNanos(pass)));
+                if (record.getPassGpuNanos(pass) >= 0) {
+                    out.append(", \"gpuMs\": ").append(millis(record.getPassGpuNanos(pass)));
+                }
+                out.append('}');
+                first = false;
+            }
+            out.append("}}").append(i < records.size() - 1 ? ",\n" : "\n");
+        }
+        out.append("]\n");
+    }
+
+    // CPU passes on one track and GPU passes on another, with the counters as counter tracks. GPU passes are placed
+    // from the start of their frame, the GPU clock and the CPU clock are not related
+    public static void writeChromeTrace(List<FrameRecord> records, Appendable out) throws IOException {
+        out.append("{\"traceEvents\": [\n");
+        threadName(out, CPU_THREAD, "CPU");
+        out.append(",\n");
+        threadName(out, GPU_THREAD, "GPU");
+        long origin = records.isEmpty() ? 0 : records.get(0).getStartNanos();
+        for (FrameRecord record : records) {
+            long start = record.getStartNanos() - origin;
+            completeEvent(out, "frame " + record.getFrame(), CPU_THREAD, start, record.getCpuNanos());
+            for (int pass = 0; pass < FrameProfiler.PASS_COUNT; pass++) {
+                String name = FrameProfiler.getPassName(pass);
+                if (record.getPassCpuNanos(pass) >= 0) {
+                    completeEvent(out, name, CPU_THREAD, start + record.getPassCpuStart(pass),
+                            record.getPassCpuNanos(pass));
+                }
+                if (record.getPassGpuNanos(pass) >= 0) {
+                    completeEvent(out, name, GPU_THREAD, start + record.getPassGpuStart(pass),
+                            record.getPassGpuNanos(pass));
+                }
+            }
+            out.append(",\n  {\"name\": \"counters\", \"ph\": \"C\", \"pid\": 1, \"ts\": ").append(micros(start))
+                    .append(", \"args\": {\"drawCalls\": ").append(Long.toString(record.getDrawCalls()))
+                    .append(", \"triangles\": ").append(Long.toString(record.getTriangles()))
+                    .append(", \"uniformUploads\": ").append(Long.toString(record.getUniformUploads()))
+                    .append(", \"stateChanges\": ").append(Long.toString(record.getStateChanges()))
+                    .append("}}");
+        }
+        out.append("\n], \"displayTimeUnit\": \"ms\"}\n");
+    }
+
+    private static void threadName(Appendable out, int thread, String name) throws IOException {
+        out.append("  {\"name\": \"thread_name\", \"ph\": \"M\", \"pid\": 1, \"tid\": ")
+                .append(Integer.toString(thread)).append(", \"args\": {\"name\": \"").append(name).append("\"}}");
+    }
+
+    private static void completeEvent(Appendable out, String name, int thread, long start, long duration)
+            throws IOException {
+        out.append(",\n  {\"name\": \"").append(name).append("\", \"ph\": \"X\", \"pid\": 1, \"tid\": ")
+                .append(Integer.toString(thread)).append(", \"ts\": ").append(micros(start))
+                .append(", \"dur\": ").append(micros(duration)).append('}');
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.4f", nanos / 1e6);
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e3);
+    }
+}
@@ -0,0 +1,473 @@
+package engine.spatial;
+
+import org.joml.FrustumIntersection;
+import org.joml.Intersectionf;
+import org.joml.Vector2f;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Dynamic bounding volume hierarchy. Leaves store boxes enlarged by a margin so that small moves
+// do not need a reinsertion, and nodes are recycled through a free list kept in primitive arrays
+public class AabbTree<T> {
+
+    public static final int NULL_NODE = -1;
+
+    public static final float DEFAULT_MARGIN = 0.1f;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final int MIN_X = 0;
+    private static final int MIN_Y = 1;
+    private static final int MIN_Z = 2;
+    private static final int MAX_X = 3;
+    private static final int MAX_Y = 4;
+    private static final int MAX_Z = 5;
+    private static final int BOUNDS_SIZE = 6;
+
+    private final float margin;
+
+    private final Vector2f rayResult;
+
+    private float[] bounds;
+
+    private int[] parent;
+
+    private int[] child1;
+
+    private int[] child2;
+
+    // Leaves have height 0, free nodes -1
+    private int[] height;
+
+    private Object[] items;
+
+    private int[] stack;
+
+    private int capacity;
+
+    private int freeList;
+
+    private int root;
+
+    private int proxyCount;
+
+    public AabbTree() {
+        this(DEFAULT_MARGIN);
+    }
+
+    public AabbTree(float margin) {
+        this.margin = margin;
+        rayResult = new Vector2f();
+        root = NULL_NODE;
+        stack = new int[64];
+        allocateStorage(INITIAL_CAPACITY);
+    }
+
+    public int createProxy(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, T item) {
+        int proxyId = allocateNode();
+        setFatBounds(proxyId, minX, minY, minZ, maxX, maxY, maxZ);
+        items[proxyId] = item;
+        height[proxyId] = 0;
+        insertLeaf(proxyId);
+        proxyCount++;
+        return proxyId;
+    }
+
+    public void destroyProxy(int proxyId) {
+        removeLeaf(proxyId);
+        freeNode(proxyId);
+        proxyCount--;
+    }
+
+    // Returns true if the new box escaped the enlarged one and the proxy has been reinserted
+    public boolean moveProxy(int proxyId, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int b = proxyId * BOUNDS_SIZE;
+        if (bounds[b + MIN_X] <= minX && bounds[b + MIN_Y] <= minY && bounds[b + MIN_Z] <= minZ
+                && bounds[b + MAX_X] >= maxX && bounds[b + MAX_Y] >= maxY && bounds[b + MAX_Z] >= maxZ) {
+            return false;
+        }
+        removeLeaf(proxyId);
+        setFatBounds(proxyId, minX, minY, minZ, maxX, maxY, maxZ);
+        insertLeaf(proxyId);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getItem(int proxyId) {
+        return (T) items[proxyId];
+    }
+
+    public int size() {
+        return proxyCount;
+    }
+
+    public int getHeight() {
+        return root == NULL_NODE ? 0 : height[root];
+    }
+
+    public void queryBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, List<T> result) {
+        int top = pushRoot();
+        while (top > 0) {
+            int node = stack[--top];
+            int b = node * BOUNDS_SIZE;
+            if (bounds[b + MIN_X] > maxX || bounds[b + MIN_Y] > maxY || bounds[b + MIN_Z] > maxZ
+                    || bounds[b + MAX_X] < minX || bounds[b + MAX_Y] < minY || bounds[b + MAX_Z] < minZ) {
+                continue;
+            }
+            top = visit(node, top, result);
+        }
+    }
+
+    public void querySphere(float centerX, float centerY, float centerZ, float radius, List<T> result) {
+        float radiusSquared = radius * radius;
+        int top = pushRoot();
+        while (top > 0) {
+            int node = stack[--top];
+            int b = node * BOUNDS_SIZE;
+            // Squared distance from the center to the closest point of the box
+            float dx = Math.max(Math.max(bounds[b + MIN_X] - centerX, 0), centerX - bounds[b + MAX_X]);
+            float dy = Math.max(Math.max(bounds[b + MIN_Y] - centerY, 0), centerY - bounds[b + MAX_Y]);
+            float dz = Math.max(Math.max(bounds[b + MIN_Z] - centerZ, 0), centerZ - bounds[b + MAX_Z]);
+            if (dx * dx + dy * dy + dz * dz > radiusSquared) {
+                continue;
+            }
+            top = visit(node, top, result);
+        }
+    }
+
+    public void queryFrustum(FrustumIntersection frustum, List<T> result) {
+        int top = pushRoot();
+        while (top > 0) {
+            int node = stack[--top];
+            if (node < NULL_NODE) {
+                // Node pushed by an ancestor that was found fully inside, there is no need to test it again
+                top = visit(NULL_NODE - 1 - node, top, result, true);
+                continue;
+            }
+            int b = node * BOUNDS_SIZE;
+            int intersection = frustum.intersectAab(bounds[b + MIN_X], bounds[b + MIN_Y], bounds[b + MIN_Z],
+                    bounds[b + MAX_X], bounds[b + MAX_Y], bounds[b + MAX_Z]);
+            if (intersection == FrustumIntersection.INSIDE) {
+                top = visit(node, top, result, true);
+            } else if (intersection == FrustumIntersection.INTERSECT) {
+                top = visit(node, top, result, false);
+            }
+        }
+    }
+
+    public void queryRay(float originX, float originY, float originZ, float dirX, float dirY, float dirZ,
+                         float maxDistance, List<T> result) {
+        int top = pushRoot();
+        while (top > 0) {
+            int node = stack[--top];
+            int b = node * BOUNDS_SIZE;
+            boolean hit = Intersectionf.intersectRayAab(originX, originY, originZ, dirX, dirY, dirZ,
+                    bounds[b + MIN_X], bounds[b + MIN_Y], bounds[b + MIN_Z],
+                    bounds[b + MAX_X], bounds[b + MAX_Y], bounds[b + MAX_Z], rayResult);
+            if (!hit || rayResult.x > maxDistance) {
+                continue;
+            }
+            top = visit(node, top, result);
+        }
+    }
+
+    private int visit(int node, int top, List<T> result) {
+        return visit(node, top, result, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int visit(int node, int top, List<T> result, boolean inside) {
+        if (height[node] == 0) {
+            result.add((T) items[node]);
+            return top;
+        }
+        if (top + 2 > stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        // Children of a node fully inside the query volume are pushed encoded as negative values
+        stack[top++] = inside ? NULL_NODE - 1 - child1[node] : child1[node];
+        stack[top++] = inside ? NULL_NODE - 1 - child2[node] : child2[node];
+        return top;
+    }
+
+    private int pushRoot() {
+        if (root == NULL_NODE) {
+            return 0;
+        }
+        stack[0] = root;
+        return 1;
+    }
+
+    private void setFatBounds(int node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int b = node * BOUNDS_SIZE;
+        bounds[b + MIN_X] = minX - margin;
+        bounds[b + MIN_Y] = minY - margin;
+        bounds[b + MIN_Z] = minZ - margin;
+        bounds[b + MAX_X] = maxX + margin;
+        bounds[b + MAX_Y] = maxY + margin;
+        bounds[b + MAX_Z] = maxZ + margin;
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL_NODE) {
+            root = leaf;
+            parent[root] = NULL_NODE;
+            return;
+        }
+
+        // Find the best sibling using the surface area heuristic
+        int index = root;
+        while (height[index] > 0) {
+            int c1 = child1[index];
+            int c2 = child2[index];
+
+            float area = surfaceArea(index);
+            float combinedArea = unionSurfaceArea(index, leaf);
+
+            // Cost of creating a new parent for this node and the new leaf
+            float cost = 2.0f * combinedArea;
+            // Minimum cost of pushing the leaf further down the tree
+            float inheritanceCost = 2.0f * (combinedArea - area);
+
+            float cost1 = descendCost(c1, leaf) + inheritanceCost;
+            float cost2 = descendCost(c2, leaf) + inheritanceCost;
+
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = cost1 < cost2 ? c1 : c2;
+        }
+        int sibling = index;
+
+        // Create a new parent for the sibling and the leaf
+        int oldParent = parent[sibling];
+        int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        items[newParent] = null;
+        union(newParent, sibling, leaf);
+        height[newParent] = height[sibling] + 1;
+
+        if (oldParent != NULL_NODE) {
+            if (child1[oldParent] == sibling) {
+                child1[oldParent] = newParent;
+            } else {
+                child2[oldParent] = newParent;
+            }
+        } else {
+            root = newParent;
+        }
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        refitAncestors(parent[leaf]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL_NODE;
+            return;
+        }
+
+        int leafParent = parent[leaf];
+        int grandParent = parent[leafParent];
+        int sibling = child1[leafParent] == leaf ? child2[leafParent] : child1[leafParent];
+
+        if (grandParent != NULL_NODE) {
+            // Connect the sibling to the grand parent and drop the parent
+            if (child1[grandParent] == leafParent) {
+                child1[grandParent] = sibling;
+            } else {
+                child2[grandParent] = sibling;
+            }
+            parent[sibling] = grandParent;
+            freeNode(leafParent);
+            refitAncestors(grandParent);
+        } else {
+            root = sibling;
+            parent[sibling] = NULL_NODE;
+            freeNode(leafParent);
+        }
+    }
+
+    private void refitAncestors(int index) {
+        while (index != NULL_NODE) {
+            index = balance(index);
+            int c1 = child1[index];
+            int c2 = child2[index];
+            height[index] = 1 + Math.max(height[c1], height[c2]);
+            union(index, c1, c2);
+            index = parent[index];
+        }
+    }
+
+    // Performs a left or right rotation if node a is imbalanced and returns the new root of the subtree
+    private int balance(int a) {
+        if (height[a] < 2) {
+            return a;
+        }
+        int b = child1[a];
+        int c = child2[a];
+        int balance = height[c] - height[b];
+
+        if (balance > 1) {
+            // Rotate c up
+            int f = child1[c];
+            int g = child2[c];
+
+            child1[c] = a;
+            parent[c] = parent[a];
+            parent[a] = c;
+            replaceChild(parent[c], a, c);
+
+            if (height[f] > height[g]) {
+                child2[c] = f;
+                child2[a] = g;
+                parent[g] = a;
+                union(a, b, g);
+                union(c, a, f);
+                height[a] = 1 + Math.max(height[b], height[g]);
+                height[c] = 1 + Math.max(height[a], height[f]);
+            } else {
+                child2[c] = g;
+                child2[a] = f;
+                parent[f] = a;
+                union(a, b, f);
+                union(c, a, g);
+                height[a] = 1 + Math.max(height[b], height[f]);
+                height[c] = 1 + Math.max(height[a], height[g]);
+            }
+            return c;
+        }
+
+        if (balance < -1) {
+            // Rotate b up
+            int d = child1[b];
+            int e = child2[b];
+
+            child1[b] = a;
+            parent[b] = parent[a];
+            parent[a] = b;
+            replaceChild(parent[b], a, b);
+
+            if (height[d] > height[e]) {
+                child2[b] = d;
+                child1[a] = e;
+                parent[e] = a;
+                union(a, c, e);
+                union(b, a, d);
+                height[a] = 1 + Math.max(height[c], height[e]);
+                height[b] = 1 + Math.max(height[a], height[d]);
+            } else {
+                child2[b] = e;
+                child1[a] = d;
+                parent[d] = a;
+                union(a, c, d);
+                union(b, a, e);
+                height[a] = 1 + Math.max(height[c], height[d]);
+                height[b] = 1 + Math.max(height[a], height[e]);
+            }
+            return b;
+        }
+
+        return a;
+    }
+
+    private void replaceChild(int node, int oldChild, int newChild) {
+        if (node == NULL_NODE) {
+            root = newChild;
+        } else if (child1[node] == oldChild) {
+            child1[node] = newChild;
+        } else {
+            child2[node] = newChild;
+        }
+    }
+
+    private float descendCost(int child, int leaf) {
+        float unionArea = unionSurfaceArea(child, leaf);
+        return height[child] == 0 ? unionArea : unionArea - surfaceArea(child);
+    }
+
+    private void union(int target, int n1, int n2) {
+        int t = target * BOUNDS_SIZE;
+        int b1 = n1 * BOUNDS_SIZE;
+        int b2 = n2 * BOUNDS_SIZE;
+        bounds[t + MIN_X] = Math.min(bounds[b1 + MIN_X], bounds[b2 + MIN_X]);
+        bounds[t + MIN_Y] = Math.min(bounds[b1 + MIN_Y], bounds[b2 + MIN_Y]);
+        bounds[t + MIN_Z] = Math.min(bounds[b1 + MIN_Z], bounds[b2 + MIN_Z]);
+        bounds[t + MAX_X] = Math.max(bounds[b1 + MAX_X], bounds[b2 + MAX_X]);
+        bounds[t + MAX_Y] = Math.max(bounds[b1 + MAX_Y], bounds[b2 + MAX_Y]);
+        bounds[t + MAX_Z] = Math.max(bounds[b1 + MAX_Z], bounds[b2 + MAX_Z]);
+    }
+
+    private float surfaceArea(int node) {
+        int b = node * BOUNDS_SIZE;
+        return surfaceArea(bounds[b + MAX_X] - bounds[b + MIN_X],
+                bounds[b + MAX_Y] - bounds[b + MIN_Y],
+                bounds[b + MAX_Z] - bounds[b + MIN_Z]);
+    }
+
+    private float unionSurfaceArea(int n1, int n2) {
+        int b1 = n1 * BOUNDS_SIZE;
+        int b2 = n2 * BOUNDS_SIZE;
+        return surfaceArea(
+                Math.max(bounds[b1 + MAX_X], bounds[b2 + MAX_X]) - Math.min(bounds[b1 + MIN_X], bounds[b2 + MIN_X]),
+                Math.max(bounds[b1 + MAX_Y], bounds[b2 + MAX_Y]) - Math.min(bounds[b1 + MIN_Y], bounds[b2 + MIN_Y]),
+                Math.max(bounds[b1 + MAX_Z], bounds[b2 + MAX_Z]) - Math.min(bounds[b1 + MIN_Z], bounds[b2 + MIN_Z]));
+    }
+
+    private static float surfaceArea(float dx, float dy, float dz) {
+        return 2.0f * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private int allocateNode() {
+        if (freeList == NULL_NODE) {
+            allocateStorage(capacity * 2);
+        }
+        int node = freeList;
+        freeList = parent[node];
+        parent[node] = NULL_NODE;
+        child1[node] = NULL_NODE;
+        child2[node] = NULL_NODE;
+        height[node] = 0;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        parent[node] = freeList;
+        height[node] = -1;
+        items[node] = null;
+        freeList = node;
+    }
+
+    private void allocateStorage(int newCapacity) {
+        int oldCapacity = capacity;
+        if (oldCapacity == 0) {
+            bounds = new float[newCapacity * BOUNDS_SIZE];
+            parent = new int[newCapacity];
+            child1 = new int[newCapacity];
+            child2 = new int[newCapacity];
+            height = new int[newCapacity];
+            items = new Object[newCapacity];
+        } else {
+            bounds = Arrays.copyOf(bounds, newCapacity * BOUNDS_SIZE);
+            parent = Arrays.copyOf(parent, newCapacity);
+            child1 = Arrays.copyOf(child1, newCapacity);
+            child2 = Arrays.copyOf(child2, newCapacity);
+            height = Arrays.copyOf(height, newCapacity);
+            items = Arrays.copyOf(items, newCapacity);
+        }
+
+        // Chain the new nodes into the free list
+        for (int i = oldCapacity; i < newCapacity - 1; i++) {
+            parent[i] = i + 1;
+            height[i] = -1;
+        }
+        parent[newCapacity - 1] = NULL_NODE;
+        height[newCapacity - 1] = -1;
+        freeList = oldCapacity;
+        capacity = newCapacity;
+    }
+}
@@ -87,7 +87,8 @@ public class DummyGame implements IGameLogic {
         float reflectance = 0.65f;
         Texture normalMap = new Texture("assets/textures/rock_normals.png");
 
-        Mesh quadMesh1 = OBJLoader.loadMesh("assets/models/quad.obj");
+        // Half float texture coordinates and packed normals, enough for a quad textured once
+        Mesh quadMesh1 = OBJLoader.loadMesh("assets/models/quad.obj", VertexFormat.COMPACT);
         Texture texture = new Texture("assets/textures/rock.png");
         Material quadMaterial1 = new Material(texture, reflectance);
         quadMesh1.setMaterial(quadMaterial1);
@@ -96,7 +97,7 @@ public class DummyGame implements IGameLogic {
         quadGameItem1.setScale(2.0f);
         quadGameItem1.setRotation(90, 0, 0);
 
-        Mesh quadMesh2 = OBJLoader.loadMesh("assets/models/quad.obj");
+        Mesh quadMesh2 = OBJLoader.loadMesh("assets/models/quad.obj", VertexFormat.COMPACT);
         Material quadMaterial2 = new Material(texture, reflectance);
         quadMaterial2.setNormalMap(normalMap);
         quadMesh2.setMaterial(quadMaterial2);
@@ -105,7 +106,9 @@ public class DummyGame implements IGameLogic {
         quadGameItem2.setScale(2.0f);
         quadGameItem2.setRotation(90, 0, 0);
 
-        terrain = new Terrain(3, 10, -0.1f, 0.1f, "assets/textures/heightmap.png", "assets/textures/terrain.png", 40);
+        // The texture repeats 40 times across the terrain, too far for half floats, so only the normals are packed
+        terrain = new Terrain(3, 10, -0.1f, 0.1f, "assets/textures/heightmap.png", "assets/textures/terrain.png", 40,
+                new VertexFormat(VertexFormat.Encoding.FLOAT, VertexFormat.Encoding.PACKED, null));
 
         scene.setGameItems(new GameItem[]{quadGameItem1, quadGameItem2});
 
@@ -167,29 +170,29 @@ public class DummyGame implements IGameLogic {
     }
 
     @Override
-    public void input(Window window, MouseInput mouseInput) {
+    public void input(KeyInput keys, MouseInput mouseInput) {
         cameraInc.set(0, 0, 0);
 
-        if (window.isKeyPressed(GLFW_KEY_W)) {
+        if (keys.isKeyPressed(GLFW_KEY_W)) {
            cameraInc.z = -1;
-        } else if (window.isKeyPressed(GLFW_KEY_S)) {
+        } else if (keys.isKeyPressed(GLFW_KEY_S)) {
            cameraInc.z = 1;
         }
-        if (window.isKeyPressed(GLFW_KEY_A)) {
+        if (keys.isKeyPressed(GLFW_KEY_A)) {
            cameraInc.x = -1;
-        } else if (window.isKeyPressed(GLFW_KEY_D)) {
+        } else if (keys.isKeyPressed(GLFW_KEY_D)) {
            cameraInc.x = 1;
         }
-        if (window.isKeyPressed(GLFW_KEY_Z)) {
+        if (keys.isKeyPressed(GLFW_KEY_Z)) {
            cameraInc.y = -1;
-        } else if (window.isKeyPressed(GLFW_KEY_X)) {
+        } else if (keys.isKeyPressed(GLFW_KEY_X)) {
            cameraInc.y = 1;
         }
 //        SpotLight[] spotLightList = scene.getSceneLight().getSpotLightList();
 //        float lightPos = spotLightList[0].getPointLight().getPosition().z;
-//        if (window.isKeyPressed(GLFW_KEY_N)) {
+//        if (keys.isKeyPressed(GLFW_KEY_N)) {
 //            spotLightList[0].getPointLight().getPosition().z = lightPos + 0.1f;
-//        } else if (window.isKeyPressed(GLFW_KEY_M)) {
+//        } else if (keys.isKeyPressed(GLFW_KEY_M)) {
 //            spotLightList[0].getPointLight().getPosition().z = lightPos - 0.1f;
 //        }
     }
@@ -214,9 +217,6 @@ public class DummyGame implements IGameLogic {
         if (mouseInput.isRightButtonPressed()) {
             Vector2f rotVec = mouseInput.getDisplVec();
             camera.moveRotation(rotVec.x * MOUSE_SENSITIVITY, rotVec.y * MOUSE_SENSITIVITY, 0);
-
-            // Update HUD compass
-            hud.rotateCompass(camera.getRotation().y);
         }
 
 //        // Update spot light direction
@@ -258,7 +258,24 @@ public class DummyGame implements IGameLogic {
 
     @Override
     public void render(Window window) {
+        render(window, scene, camera);
+    }
+
+    @Override
+    public Scene getScene() {
+        return scene;
+    }
+
+    @Override
+    public Camera getCamera() {
+        return camera;
+    }
+
+    @Override
+    public void render(Window window, Scene scene, Camera camera) {
+        // From the camera rendered, with threaded updates it is not the one update moves
         hud.updateSize(window);
+        hud.rotateCompass(camera.getRotation().y);
         renderer.render(window, camera, scene, hud);
     }
 
@@ -14,6 +14,9 @@ public class Hud implements IHud {
     private static final Font FONT = new Font("Arial", Font.BOLD, 48);
     private static final String CHARSET = "ISO-8859-1";
 
+    // Characters of status text the HUD holds before its buffers grow
+    private static final int STATUS_CAPACITY = 64;
+
     private final GameItem[] gameItems;
 
     private final TextItem statusTextItem;
@@ -22,11 +25,14 @@ public class Hud implements IHud {
 
     public Hud(String statusText) throws Exception {
         FontTexture fontTexture = new FontTexture(FONT, CHARSET);
-        this.statusTextItem = new TextItem(statusText, fontTexture);
+        this.statusTextItem = new TextItem(statusText, fontTexture, STATUS_CAPACITY);
         this.statusTextItem.getMesh().getMaterial().setAmbientColor(new Vector4f(1, 1, 1, 1));
 
         // Create compass
-        Mesh mesh = OBJLoader.loadMesh("assets/models/compass.obj");
+        // Kept on the CPU as well, so the compass goes through the HUD batch
+        MeshData compassData = OBJLoader.loadMeshData("assets/models/compass.obj");
+        Mesh mesh = new Mesh(compassData);
+        mesh.setMeshData(compassData);
         Material material = new Material();
         material.setAmbientColor(new Vector4f(1, 0, 0, 1));
         mesh.setMaterial(material);
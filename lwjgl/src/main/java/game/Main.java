@@ -8,8 +8,9 @@ public class Main {
     public static void main(String[] args) {
         try {
             boolean vSync = true;
+            boolean threadedUpdates = false;
             IGameLogic gameLogic = new DummyGame();
-            GameEngine gameEng = new GameEngine("GAME", 1024, 768, vSync, gameLogic);
+            GameEngine gameEng = new GameEngine("GAME", 1024, 768, vSync, threadedUpdates, gameLogic);
             gameEng.run();
         } catch (Exception e) {
             e.printStackTrace();
@@ -4,7 +4,14 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Consumer;
@@ -44,6 +51,30 @@ public final class Files {
         return bytesArray;
     }
 
+    // Maps the resource in memory when it is a plain file, otherwise reads it all at once
+    public static ByteBuffer map(String fileName) throws IOException {
+        URL url = Files.class.getClassLoader().getResource(fileName);
+        if (url == null) {
+            throw new IllegalArgumentException("file not found! " + fileName);
+        }
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return map(Paths.get(url.toURI()));
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+        }
+        try (InputStream is = url.openStream()) {
+            return ByteBuffer.wrap(is.readAllBytes());
+        }
+    }
+
+    public static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
     public static String toString(InputStream is) {
         StringBuffer sb = new StringBuffer();
         forEachLine(is, line -> {
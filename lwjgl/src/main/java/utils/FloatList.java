@@ -0,0 +1,42 @@
+package utils;
+
+import java.util.Arrays;
+
+// Growable list of primitive floats
+public final class FloatList {
+
+    private float[] data;
+
+    private int size;
+
+    public FloatList() {
+        this(16);
+    }
+
+    public FloatList(int initialCapacity) {
+        data = new float[Math.max(initialCapacity, 1)];
+    }
+
+    public void add(float value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[size++] = value;
+    }
+
+    public float get(int index) {
+        return data[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public float[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
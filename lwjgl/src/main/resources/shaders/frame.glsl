@@ -0,0 +1,32 @@
+// Per frame data shared by every program, laid out with std140 rules. Keep FrameDataWriter in sync
+
+struct Fog
+{
+    int activeFog;
+    vec3 color;
+    float density;
+};
+
+struct DirectionalLight
+{
+    vec3 color;
+    vec3 direction;
+    float intensity;
+};
+
+layout (std140) uniform FrameData
+{
+    mat4 projectionMatrix;
+    mat4 viewMatrix;
+    vec3 ambientLight;
+    float specularPower;
+    Fog fog;
+    DirectionalLight directionalLight;
+    int numPointLights;
+    int numSpotLights;
+    // Cluster of a fragment, see clusterIndex in lights.glsl
+    vec2 clusterScale;
+    ivec3 clusterDims;
+    float clusterZScale;
+    float clusterZBias;
+};
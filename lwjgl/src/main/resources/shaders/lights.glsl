@@ -0,0 +1,51 @@
+// Point and spot lights of the frame, laid out with std140 rules. Keep FrameDataWriter in sync.
+// The sizes of the arrays are defined by the renderer when the program is built
+
+#ifndef MAX_POINT_LIGHTS
+#define MAX_POINT_LIGHTS 5
+#endif
+
+#ifndef MAX_SPOT_LIGHTS
+#define MAX_SPOT_LIGHTS 5
+#endif
+
+struct Attenuation
+{
+    float constant;
+    float linear;
+    float exponent;
+};
+
+struct PointLight
+{
+    vec3 color;
+    vec3 position; // Light position is assumed to be in view coordinates
+    float intensity;
+    Attenuation att;
+};
+
+struct SpotLight
+{
+    PointLight pl;
+    vec3 conedir;
+    float cutoff;
+};
+
+layout (std140) uniform LightData
+{
+    PointLight pointLights[MAX_POINT_LIGHTS];
+    SpotLight spotLights[MAX_SPOT_LIGHTS];
+};
+
+// Lights reaching each cluster, filled by LightClusterer. The grid holds the offset of the cluster in the index
+// list and its number of point and spot lights as (spot << 16 | point), point light indices come first
+uniform usamplerBuffer clusterGrid;
+uniform usamplerBuffer clusterLights;
+
+// Needs FrameData. Tiles split the viewport evenly and slices grow exponentially with the depth
+int clusterIndex(vec2 fragCoord, float depth)
+{
+    ivec2 tile = min(ivec2(fragCoord * clusterScale), clusterDims.xy - 1);
+    int slice = clamp(int(floor(log(depth) * clusterZScale - clusterZBias)), 0, clusterDims.z - 1);
+    return tile.x + clusterDims.x * (tile.y + clusterDims.y * slice);
+}